@@ -0,0 +1,102 @@
+package com.github.hcsp;
+
+import com.github.zxh.classpy.classfile.attribute.LineNumberTableAttribute;
+
+/**
+ * 客户异常的栈轨迹。
+ * <p>
+ * 创建异常时只记下每个栈帧的方法和指令下标，不访问classfile。第一次需要{@link StackTraceElement}的时候
+ * 才按LineNumberTable换算成行号，结果缓存起来。大部分异常被捕获之后没有人看它的栈轨迹，这一步就省掉了
+ */
+final class Backtrace {
+    /**
+     * 预先分配的异常（见{@link VMOptions#setOmitStackTraceInFastThrow}）没有栈轨迹
+     */
+    static final Backtrace EMPTY = new Backtrace(new RuntimeMethod[0], new int[0]);
+
+    private final RuntimeMethod[] methods;
+    private final int[] indices;
+    private volatile StackTraceElement[] stackTrace;
+
+    private Backtrace(RuntimeMethod[] methods, int[] indices) {
+        this.methods = methods;
+        this.indices = indices;
+    }
+
+    /**
+     * 记录从frame开始（frame正在执行第index条指令）到栈底的所有栈帧
+     *
+     * @param constructed 异常对象正在被构造时传入它的类：栈顶的fillInStackTrace和这个异常自己的构造器不算在栈轨迹中。
+     *                    虚拟机创建的异常传入null
+     */
+    static Backtrace capture(StackFrame frame, int index, RuntimeClass constructed) {
+        GuestThread thread = frame.thread;
+        int top = frame.depth;
+        if (constructed != null) {
+            top = skip(thread, top, constructed, "fillInStackTrace");
+            top = skip(thread, top, constructed, "<init>");
+        }
+        RuntimeMethod[] methods = new RuntimeMethod[top + 1];
+        int[] indices = new int[top + 1];
+        for (int depth = top; depth >= 0; depth--) {
+            StackFrame f = thread.getFrame(depth);
+            methods[top - depth] = f.method;
+            // 调用者的pc已经指向调用指令的下一条
+            indices[top - depth] = f == frame ? index : f.pc - 1;
+        }
+        return new Backtrace(methods, indices);
+    }
+
+    private static int skip(GuestThread thread, int top, RuntimeClass constructed, String methodName) {
+        while (top > 0) {
+            RuntimeMethod method = thread.getFrame(top).method;
+            if (!method.getName().equals(methodName) || !constructed.isSubclassOf(method.getRuntimeClass())) {
+                break;
+            }
+            top--;
+        }
+        return top;
+    }
+
+    /**
+     * @return 栈轨迹，栈顶在前。第一次调用时计算行号
+     */
+    StackTraceElement[] getStackTrace() {
+        StackTraceElement[] result = stackTrace;
+        if (result == null) {
+            result = new StackTraceElement[methods.length];
+            for (int i = 0; i < methods.length; i++) {
+                RuntimeMethod method = methods[i];
+                RuntimeClass runtimeClass = method.getRuntimeClass();
+                result[i] = new StackTraceElement(runtimeClass.getName(), method.getName(),
+                        runtimeClass.getClassFile().getSourceFile(), lineNumberOf(method, method.getCode().pcs[indices[i]]));
+            }
+            stackTrace = result;
+        }
+        return result.clone();
+    }
+
+    boolean isResolved() {
+        return stackTrace != null;
+    }
+
+    /**
+     * @return pc所在的源代码行，没有LineNumberTable时返回-1
+     */
+    private static int lineNumberOf(RuntimeMethod method, int pc) {
+        LineNumberTableAttribute lineNumberTable = method.getMethodInfo().getLineNumberTable();
+        if (lineNumberTable == null) {
+            return -1;
+        }
+        // 表项不一定按start_pc排序，取不超过pc的最大的那一项
+        int line = -1;
+        int bestStartPc = -1;
+        for (LineNumberTableAttribute.LineNumberTableEntry entry : lineNumberTable.getEntries()) {
+            if (entry.getStartPc() <= pc && entry.getStartPc() > bestStartPc) {
+                bestStartPc = entry.getStartPc();
+                line = entry.getLineNumber();
+            }
+        }
+        return line;
+    }
+}
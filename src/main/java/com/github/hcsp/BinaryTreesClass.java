@@ -0,0 +1,50 @@
+package com.github.hcsp;
+
+public class BinaryTreesClass {
+    private static TreeNode longLived;
+
+    public static void main(String[] args) {
+        int maxDepth = 10;
+        System.out.println(bottomUp(maxDepth + 1).check());
+
+        longLived = bottomUp(maxDepth);
+        longLived.label = "long lived";
+        TreeNode left = longLived.left;
+        for (int depth = 4; depth <= maxDepth; depth += 2) {
+            int iterations = 1 << (maxDepth - depth + 4);
+            int check = 0;
+            for (int i = 0; i < iterations; i++) {
+                check += bottomUp(depth).check();
+            }
+            System.out.print(iterations);
+            System.out.print(" ");
+            System.out.print(depth);
+            System.out.print(" ");
+            System.out.println(check);
+        }
+
+        // 活过了多次垃圾收集的树，栈帧中的引用和字段中的引用仍然是同一个对象
+        System.out.println(longLived.check());
+        System.out.println(longLived.label);
+        System.out.println(longLived.left == left);
+    }
+
+    private static TreeNode bottomUp(int depth) {
+        TreeNode node = new TreeNode();
+        if (depth > 0) {
+            node.left = bottomUp(depth - 1);
+            node.right = bottomUp(depth - 1);
+        }
+        return node;
+    }
+
+    static class TreeNode {
+        TreeNode left;
+        TreeNode right;
+        String label;
+
+        int check() {
+            return left == null ? 1 : 1 + left.check() + right.check();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.github.hcsp;
+
+import com.github.zxh.classpy.classfile.ClassFile;
+import com.github.zxh.classpy.classfile.ClassFileParser;
+
+import java.lang.reflect.Modifier;
+
+import static com.github.hcsp.Bytecodes.*;
+
+/**
+ * 客户程序需要、但classpath中没有的java.lang类。
+ * <p>
+ * 目前只有异常类：客户代码抛出、捕获和继承异常时，Throwable和它的子类必须是真正的客户类，
+ * 这样异常对象才能在{@link GuestHeap}中，catch_type才能按类层次匹配。宿主JDK中的类不能直接执行，
+ * 所以按宿主类的继承关系生成最小的classfile：Throwable保存detailMessage和cause，
+ * 子类只有转调父类的构造器。
+ * <p>
+ * 和JDK一样，Throwable的构造器调用可以被覆盖的fillInStackTrace()记录栈轨迹，记录和打印栈轨迹由
+ * {@link ExceptionDispatcher}登记的虚拟机内部方法完成，栈轨迹保存在backtrace字段中。
+ */
+final class BootstrapClasses {
+    static final String THROWABLE = "java/lang/Throwable";
+    /**
+     * 保存{@link Backtrace}的字段
+     */
+    static final String BACKTRACE_FIELD = "backtrace";
+    static final String CAPTURE_BACKTRACE = "captureBacktrace";
+    static final String PRINT_BACKTRACE = "printBacktrace";
+    static final String BACKTRACE_DESCRIPTOR = "(Ljava/lang/Throwable;)V";
+
+    private static final String STRING = "Ljava/lang/String;";
+    private static final String THROWABLE_TYPE = "L" + THROWABLE + ";";
+
+    /**
+     * 生成的构造器的参数列表，宿主类声明了哪个就生成哪个
+     */
+    private static final Class<?>[][] CONSTRUCTORS = {
+            {},
+            {String.class},
+            {String.class, Throwable.class},
+            {Throwable.class},
+    };
+
+    private BootstrapClasses() {
+    }
+
+    /**
+     * @param binaryName 类的二进制名，例如java.lang.RuntimeException
+     * @return 生成的类，不是宿主JDK中的异常类时返回null
+     */
+    static ClassFile define(String binaryName) {
+        Class<?> hostClass = hostThrowableClass(binaryName);
+        if (hostClass == null) {
+            return null;
+        }
+        String className = binaryName.replace('.', '/');
+        String superClassName = hostClass == Throwable.class ? "java/lang/Object" : hostClass.getSuperclass().getName().replace('.', '/');
+        ClassFileWriter writer = new ClassFileWriter(accessFlagsOf(hostClass), className, superClassName);
+        if (hostClass == Throwable.class) {
+            writer.addField(ClassFileWriter.ACC_PRIVATE, "detailMessage", STRING);
+            writer.addField(ClassFileWriter.ACC_PRIVATE, "cause", THROWABLE_TYPE);
+            addGetter(writer, "getMessage", "detailMessage", STRING);
+            addGetter(writer, "getCause", "cause", THROWABLE_TYPE);
+            writer.addField(ClassFileWriter.ACC_PRIVATE, BACKTRACE_FIELD, "Ljava/lang/Object;");
+            addFillInStackTrace(writer);
+            addPrintStackTrace(writer);
+        }
+        for (Class<?>[] parameterTypes : CONSTRUCTORS) {
+            if (declaresConstructor(hostClass, parameterTypes)) {
+                addConstructor(writer, className, superClassName, parameterTypes);
+            }
+        }
+        return new ClassFileParser().parse(writer.toByteArray());
+    }
+
+    private static Class<?> hostThrowableClass(String binaryName) {
+        if (!binaryName.startsWith("java.")) {
+            return null;
+        }
+        try {
+            Class<?> hostClass = Class.forName(binaryName, false, BootstrapClasses.class.getClassLoader());
+            return Throwable.class.isAssignableFrom(hostClass) ? hostClass : null;
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static int accessFlagsOf(Class<?> hostClass) {
+        int flags = ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_SUPER;
+        return Modifier.isAbstract(hostClass.getModifiers()) ? flags | ClassFileWriter.ACC_ABSTRACT : flags;
+    }
+
+    private static boolean declaresConstructor(Class<?> hostClass, Class<?>[] parameterTypes) {
+        try {
+            return Modifier.isPublic(hostClass.getDeclaredConstructor(parameterTypes).getModifiers());
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Throwable的构造器调用Object的构造器，然后保存参数并记录栈轨迹；子类的构造器把参数原样传给父类的同一个构造器。
+     * Throwable(Throwable cause)只保存cause，detailMessage保持null
+     */
+    private static void addConstructor(ClassFileWriter writer, String className, String superClassName, Class<?>[] parameterTypes) {
+        StringBuilder descriptor = new StringBuilder("(");
+        for (Class<?> parameterType : parameterTypes) {
+            descriptor.append(parameterType == String.class ? STRING : THROWABLE_TYPE);
+        }
+        descriptor.append(")V");
+
+        ClassFileWriter.CodeBuilder code = new ClassFileWriter.CodeBuilder(writer.getConstantPool());
+        code.local(ALOAD, 0);
+        if (THROWABLE.equals(className)) {
+            code.method(INVOKESPECIAL, superClassName, "<init>", "()V");
+            for (int i = 0; i < parameterTypes.length; i++) {
+                code.local(ALOAD, 0);
+                code.local(ALOAD, i + 1);
+                code.field(PUTFIELD, className, parameterTypes[i] == String.class ? "detailMessage" : "cause",
+                        parameterTypes[i] == String.class ? STRING : THROWABLE_TYPE);
+            }
+            code.local(ALOAD, 0);
+            code.method(INVOKEVIRTUAL, THROWABLE, "fillInStackTrace", "()" + THROWABLE_TYPE);
+            code.op(POP);
+        } else {
+            for (int i = 0; i < parameterTypes.length; i++) {
+                code.local(ALOAD, i + 1);
+            }
+            code.method(INVOKESPECIAL, superClassName, "<init>", descriptor.toString());
+        }
+        code.op(RETURN);
+        code.setMaxs(parameterTypes.length + 1, parameterTypes.length + 1);
+        writer.addMethod(ClassFileWriter.ACC_PUBLIC, "<init>", descriptor.toString(), code);
+    }
+
+    private static void addGetter(ClassFileWriter writer, String name, String fieldName, String type) {
+        ClassFileWriter.CodeBuilder code = new ClassFileWriter.CodeBuilder(writer.getConstantPool());
+        code.local(ALOAD, 0);
+        code.field(GETFIELD, THROWABLE, fieldName, type);
+        code.op(ARETURN);
+        code.setMaxs(1, 1);
+        writer.addMethod(ClassFileWriter.ACC_PUBLIC, name, "()" + type, code);
+    }
+
+    /**
+     * fillInStackTrace()：记录栈轨迹，返回this。客户的异常类可以覆盖它来省掉栈轨迹
+     */
+    private static void addFillInStackTrace(ClassFileWriter writer) {
+        ClassFileWriter.CodeBuilder code = new ClassFileWriter.CodeBuilder(writer.getConstantPool());
+        code.local(ALOAD, 0);
+        code.method(INVOKESTATIC, THROWABLE, CAPTURE_BACKTRACE, BACKTRACE_DESCRIPTOR);
+        code.local(ALOAD, 0);
+        code.op(ARETURN);
+        code.setMaxs(1, 1);
+        writer.addMethod(ClassFileWriter.ACC_PUBLIC, "fillInStackTrace", "()" + THROWABLE_TYPE, code);
+    }
+
+    private static void addPrintStackTrace(ClassFileWriter writer) {
+        ClassFileWriter.CodeBuilder code = new ClassFileWriter.CodeBuilder(writer.getConstantPool());
+        code.local(ALOAD, 0);
+        code.method(INVOKESTATIC, THROWABLE, PRINT_BACKTRACE, BACKTRACE_DESCRIPTOR);
+        code.op(RETURN);
+        code.setMaxs(1, 1);
+        writer.addMethod(ClassFileWriter.ACC_PUBLIC, "printStackTrace", "()V", code);
+    }
+}
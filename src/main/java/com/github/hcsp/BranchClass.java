@@ -3,6 +3,11 @@ package com.github.hcsp;
 public class BranchClass {
     public static void main(String[] args) {
         System.out.println(foo(111));
+        System.out.println(max(3, 7) * 10 + max(5, 2));
+    }
+
+    private static int max(int a, int b) {
+        return a > b ? a : b;
     }
 
     private static int foo(int i) {
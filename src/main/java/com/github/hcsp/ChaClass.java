@@ -0,0 +1,41 @@
+package com.github.hcsp;
+
+public class ChaClass {
+    public static void main(String[] args) {
+        Counter counter = new Counter();
+        long total = 0;
+        for (int i = 0; i < 3000; i++) {
+            total += step(counter, i);
+        }
+        System.out.println(total);
+
+        // 第一次创建DoublingCounter时才加载它，它覆盖了next
+        Counter doubling = new DoublingCounter();
+        for (int i = 0; i < 3000; i++) {
+            total += step(doubling, i) + step(counter, i);
+        }
+        System.out.println(total);
+        System.out.println(doubling.count);
+    }
+
+    private static long step(Counter counter, int i) {
+        return counter.next(i) + counter.count;
+    }
+
+    static class Counter {
+        int count;
+
+        int next(int i) {
+            count++;
+            return i % 10;
+        }
+    }
+
+    static class DoublingCounter extends Counter {
+        @Override
+        int next(int i) {
+            count += 2;
+            return i % 10 * 2;
+        }
+    }
+}
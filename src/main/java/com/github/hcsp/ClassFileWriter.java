@@ -0,0 +1,427 @@
+package com.github.hcsp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 生成classfile，结构和classpy中解析classfile的类一一对应：常量池、字段、方法和Code属性。
+ * <p>
+ * 只生成执行所需的最少内容。版本号是49（Java 5），这样宿主JVM会使用类型推导校验器，不需要生成StackMapTable。
+ */
+class ClassFileWriter {
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int MAJOR_VERSION = 49;
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+    static final int ACC_ABSTRACT = 0x0400;
+
+    private final ConstantPoolWriter constantPool = new ConstantPoolWriter();
+    private final int accessFlags;
+    private final int thisClass;
+    private final int superClass;
+    private final List<Integer> interfaces = new ArrayList<>();
+    private final ByteArrayOutputStream fields = new ByteArrayOutputStream();
+    private int fieldCount;
+    private final ByteArrayOutputStream methods = new ByteArrayOutputStream();
+    private int methodCount;
+
+    /**
+     * @param className 内部形式的类名，例如com/github/hcsp/Foo
+     */
+    ClassFileWriter(String className, String superClassName) {
+        this(ACC_PUBLIC | ACC_FINAL | ACC_SUPER, className, superClassName);
+    }
+
+    ClassFileWriter(int accessFlags, String className, String superClassName) {
+        this.accessFlags = accessFlags;
+        this.thisClass = constantPool.classInfo(className);
+        this.superClass = constantPool.classInfo(superClassName);
+    }
+
+    ConstantPoolWriter getConstantPool() {
+        return constantPool;
+    }
+
+    void addInterface(String interfaceName) {
+        interfaces.add(constantPool.classInfo(interfaceName));
+    }
+
+    void addField(int accessFlags, String name, String descriptor) {
+        DataOutputStream out = new DataOutputStream(fields);
+        try {
+            out.writeShort(accessFlags);
+            out.writeShort(constantPool.utf8(name));
+            out.writeShort(constantPool.utf8(descriptor));
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        fieldCount++;
+    }
+
+    /**
+     * 添加一个带Code属性的方法
+     */
+    void addMethod(int accessFlags, String name, String descriptor, CodeBuilder code) {
+        byte[] bytecode = code.toByteArray();
+        DataOutputStream out = new DataOutputStream(methods);
+        try {
+            out.writeShort(accessFlags);
+            out.writeShort(constantPool.utf8(name));
+            out.writeShort(constantPool.utf8(descriptor));
+            out.writeShort(1);
+            out.writeShort(constantPool.utf8("Code"));
+            // max_stack + max_locals + code_length + code + exception_table_length + attributes_count
+            out.writeInt(2 + 2 + 4 + bytecode.length + 2 + 2);
+            out.writeShort(code.getMaxStack());
+            out.writeShort(code.getMaxLocals());
+            out.writeInt(bytecode.length);
+            out.write(bytecode);
+            out.writeShort(0);
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        methodCount++;
+    }
+
+    byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeShort(0);
+            out.writeShort(MAJOR_VERSION);
+            constantPool.writeTo(out);
+            out.writeShort(accessFlags);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.size());
+            for (int index : interfaces) {
+                out.writeShort(index);
+            }
+            out.writeShort(fieldCount);
+            fields.writeTo(out);
+            out.writeShort(methodCount);
+            methods.writeTo(out);
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 常量池，相同的常量只添加一次
+     */
+    static class ConstantPoolWriter {
+        private static final int CONSTANT_UTF8 = 1;
+        private static final int CONSTANT_INTEGER = 3;
+        private static final int CONSTANT_FLOAT = 4;
+        private static final int CONSTANT_LONG = 5;
+        private static final int CONSTANT_DOUBLE = 6;
+        private static final int CONSTANT_CLASS = 7;
+        private static final int CONSTANT_STRING = 8;
+        private static final int CONSTANT_FIELDREF = 9;
+        private static final int CONSTANT_METHODREF = 10;
+        private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> indices = new HashMap<>();
+        /**
+         * 下一个常量的下标，常量池下标从1开始
+         */
+        private int nextIndex = 1;
+
+        int utf8(String value) {
+            Integer index = indices.get("Utf8:" + value);
+            if (index != null) {
+                return index;
+            }
+            try {
+                out.writeByte(CONSTANT_UTF8);
+                out.writeUTF(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return register("Utf8:" + value, 1);
+        }
+
+        int classInfo(String className) {
+            return entry(CONSTANT_CLASS, "Class:" + className, utf8(className));
+        }
+
+        int string(String value) {
+            return entry(CONSTANT_STRING, "String:" + value, utf8(value));
+        }
+
+        int nameAndType(String name, String descriptor) {
+            return entry(CONSTANT_NAME_AND_TYPE, "NameAndType:" + name + ":" + descriptor, utf8(name), utf8(descriptor));
+        }
+
+        int fieldref(String owner, String name, String descriptor) {
+            return entry(CONSTANT_FIELDREF, "Fieldref:" + owner + "." + name + ":" + descriptor,
+                    classInfo(owner), nameAndType(name, descriptor));
+        }
+
+        int methodref(String owner, String name, String descriptor) {
+            return entry(CONSTANT_METHODREF, "Methodref:" + owner + "." + name + descriptor,
+                    classInfo(owner), nameAndType(name, descriptor));
+        }
+
+        /**
+         * 添加Integer、Float、Long、Double或者String常量
+         */
+        int constant(Object value) {
+            if (value instanceof String) {
+                return string((String) value);
+            }
+            String key = value.getClass().getSimpleName() + ":" + value;
+            Integer index = indices.get(key);
+            if (index != null) {
+                return index;
+            }
+            try {
+                if (value instanceof Integer) {
+                    out.writeByte(CONSTANT_INTEGER);
+                    out.writeInt((Integer) value);
+                } else if (value instanceof Float) {
+                    out.writeByte(CONSTANT_FLOAT);
+                    out.writeInt(Float.floatToRawIntBits((Float) value));
+                } else if (value instanceof Long) {
+                    out.writeByte(CONSTANT_LONG);
+                    out.writeLong((Long) value);
+                    return register(key, 2);
+                } else if (value instanceof Double) {
+                    out.writeByte(CONSTANT_DOUBLE);
+                    out.writeLong(Double.doubleToRawLongBits((Double) value));
+                    return register(key, 2);
+                } else {
+                    throw new IllegalArgumentException("Unsupported constant: " + value);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return register(key, 1);
+        }
+
+        private int entry(int tag, String key, int... refs) {
+            Integer index = indices.get(key);
+            if (index != null) {
+                return index;
+            }
+            try {
+                out.writeByte(tag);
+                for (int ref : refs) {
+                    out.writeShort(ref);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return register(key, 1);
+        }
+
+        /**
+         * long和double常量在常量池中占两项
+         */
+        private int register(String key, int size) {
+            int index = nextIndex;
+            indices.put(key, index);
+            nextIndex += size;
+            return index;
+        }
+
+        void writeTo(DataOutputStream target) throws IOException {
+            target.writeShort(nextIndex);
+            bytes.writeTo(target);
+        }
+    }
+
+    /**
+     * 一个方法的字节码。跳转目标用标签表示，标签的位置确定之后统一回填偏移量
+     */
+    static class CodeBuilder {
+        private final ConstantPoolWriter constantPool;
+        private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        private final Map<Integer, Integer> labelPositions = new HashMap<>();
+        private final List<int[]> fixups = new ArrayList<>();
+        private int maxStack;
+        private int maxLocals;
+
+        CodeBuilder(ConstantPoolWriter constantPool) {
+            this.constantPool = constantPool;
+        }
+
+        int getMaxStack() {
+            return maxStack;
+        }
+
+        int getMaxLocals() {
+            return maxLocals;
+        }
+
+        void setMaxs(int maxStack, int maxLocals) {
+            this.maxStack = maxStack;
+            this.maxLocals = maxLocals;
+        }
+
+        int position() {
+            return code.size();
+        }
+
+        void placeLabel(int label) {
+            labelPositions.put(label, position());
+        }
+
+        void op(int opcode) {
+            code.write(opcode);
+        }
+
+        private void u2(int value) {
+            code.write(value >>> 8);
+            code.write(value);
+        }
+
+        private void u4(int value) {
+            u2(value >>> 16);
+            u2(value);
+        }
+
+        /**
+         * xload/xstore，下标超过255时使用wide格式
+         */
+        void local(int opcode, int index) {
+            if (index > 255) {
+                op(Bytecodes.WIDE);
+                op(opcode);
+                u2(index);
+            } else {
+                op(opcode);
+                op(index);
+            }
+        }
+
+        void iinc(int index, int increment) {
+            if (index > 255 || increment < Byte.MIN_VALUE || increment > Byte.MAX_VALUE) {
+                op(Bytecodes.WIDE);
+                op(Bytecodes.IINC);
+                u2(index);
+                u2(increment);
+            } else {
+                op(Bytecodes.IINC);
+                op(index);
+                op(increment);
+            }
+        }
+
+        void intConstant(int value) {
+            if (value >= -1 && value <= 5) {
+                op(Bytecodes.ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                op(Bytecodes.BIPUSH);
+                op(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                op(Bytecodes.SIPUSH);
+                u2(value);
+            } else {
+                ldc(value);
+            }
+        }
+
+        void ldc(Object value) {
+            op(value instanceof Long || value instanceof Double ? Bytecodes.LDC2_W : Bytecodes.LDC_W);
+            u2(constantPool.constant(value));
+        }
+
+        void field(int opcode, String owner, String name, String descriptor) {
+            op(opcode);
+            u2(constantPool.fieldref(owner, name, descriptor));
+        }
+
+        /**
+         * 带类操作数的指令，例如checkcast
+         */
+        void type(int opcode, String className) {
+            op(opcode);
+            u2(constantPool.classInfo(className));
+        }
+
+        void method(int opcode, String owner, String name, String descriptor) {
+            op(opcode);
+            u2(constantPool.methodref(owner, name, descriptor));
+        }
+
+        /**
+         * 16位偏移量的跳转指令
+         */
+        void branch(int opcode, int label) {
+            int opcodePosition = position();
+            op(opcode);
+            fixups.add(new int[]{opcodePosition, position(), label, 2});
+            u2(0);
+        }
+
+        void tableSwitch(int low, int[] labels, int defaultLabel) {
+            int opcodePosition = switchHeader(Bytecodes.TABLESWITCH, defaultLabel);
+            u4(low);
+            u4(low + labels.length - 1);
+            for (int label : labels) {
+                offset4(opcodePosition, label);
+            }
+        }
+
+        void lookupSwitch(int[] matches, int[] labels, int defaultLabel) {
+            int opcodePosition = switchHeader(Bytecodes.LOOKUPSWITCH, defaultLabel);
+            u4(matches.length);
+            for (int i = 0; i < matches.length; i++) {
+                u4(matches[i]);
+                offset4(opcodePosition, labels[i]);
+            }
+        }
+
+        private int switchHeader(int opcode, int defaultLabel) {
+            int opcodePosition = position();
+            op(opcode);
+            // 操作码之后补齐到4字节对齐
+            while (position() % 4 != 0) {
+                op(0);
+            }
+            offset4(opcodePosition, defaultLabel);
+            return opcodePosition;
+        }
+
+        private void offset4(int opcodePosition, int label) {
+            fixups.add(new int[]{opcodePosition, position(), label, 4});
+            u4(0);
+        }
+
+        byte[] toByteArray() {
+            byte[] bytes = code.toByteArray();
+            for (int[] fixup : fixups) {
+                int offset = labelPositions.get(fixup[2]) - fixup[0];
+                int patchPosition = fixup[1];
+                if (fixup[3] == 2) {
+                    bytes[patchPosition] = (byte) (offset >>> 8);
+                    bytes[patchPosition + 1] = (byte) offset;
+                } else {
+                    bytes[patchPosition] = (byte) (offset >>> 24);
+                    bytes[patchPosition + 1] = (byte) (offset >>> 16);
+                    bytes[patchPosition + 2] = (byte) (offset >>> 8);
+                    bytes[patchPosition + 3] = (byte) offset;
+                }
+            }
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,936 @@
+package com.github.hcsp;
+
+import com.github.zxh.classpy.classfile.jvm.Opcode;
+
+import static com.github.hcsp.Bytecodes.*;
+
+/**
+ * 闭包编译器：把方法的每条指令编译成一个{@link Node}，指令的操作数、跳转目标和下一条指令的下标都在编译时
+ * 绑定到节点的final字段里，执行时不再查数组、不再switch。
+ * <p>
+ * 节点数组的下标和{@link DecodedCode}的指令下标一一对应，所以栈帧的pc在两种执行方式下含义相同。
+ * 常量和宿主绑定在编译时解析；客户类的字段和方法要在第一次执行时才解析，因为解析可能触发类的初始化。
+ */
+class ClosureCompiler {
+    /**
+     * 节点执行后调用或者返回了方法，栈顶的栈帧变了。这时节点自己负责设置好各个栈帧的pc
+     */
+    static final int FRAME_CHANGED = -1;
+
+    /**
+     * 编译好的一条指令
+     */
+    interface Node {
+        /**
+         * @return 下一条要执行的指令下标，或者{@link #FRAME_CHANGED}
+         */
+        int execute(StackFrame frame);
+    }
+
+    private final Resolver resolver;
+    private final VMOptions options;
+    private final VMStats stats;
+    private final GuestHeap heap;
+    private final ExceptionDispatcher exceptions;
+
+    ClosureCompiler(Resolver resolver, VMOptions options, VMStats stats, GuestHeap heap, ExceptionDispatcher exceptions) {
+        this.resolver = resolver;
+        this.options = options;
+        this.stats = stats;
+        this.heap = heap;
+        this.exceptions = exceptions;
+    }
+
+    Node[] compile(RuntimeMethod method) {
+        DecodedCode code = method.getCode();
+        Node[] nodes = new Node[code.length()];
+        for (int index = 0; index < nodes.length; index++) {
+            nodes[index] = compile(method, code, index);
+        }
+        return nodes;
+    }
+
+    private Node compile(RuntimeMethod method, DecodedCode code, int index) {
+        int opcode = code.opcodes[index];
+        int operand = code.operands[index];
+        int operand2 = code.operands2[index];
+        int next = index + 1;
+        switch (opcode) {
+            case NOP:
+                return frame -> next;
+            case ACONST_NULL:
+                return frame -> {
+                    frame.pushRef(0);
+                    return next;
+                };
+            case ICONST_M1:
+            case ICONST_0:
+            case ICONST_1:
+            case ICONST_2:
+            case ICONST_3:
+            case ICONST_4:
+            case ICONST_5:
+                return pushInt(opcode - ICONST_0, next);
+            case LCONST_0:
+            case LCONST_1:
+                return pushLong(opcode - LCONST_0, next);
+            case FCONST_0:
+            case FCONST_1:
+            case FCONST_2:
+                return pushInt(Float.floatToRawIntBits(opcode - FCONST_0), next);
+            case DCONST_0:
+            case DCONST_1:
+                return pushLong(Double.doubleToRawLongBits(opcode - DCONST_0), next);
+            case BIPUSH:
+            case SIPUSH:
+                return pushInt(operand, next);
+            case LDC:
+            case LDC2_W: {
+                Object value = resolver.resolveConstant(method.getRuntimeClass(), operand);
+                if (value instanceof Integer) {
+                    return pushInt((Integer) value, next);
+                } else if (value instanceof Float) {
+                    return pushInt(Float.floatToRawIntBits((Float) value), next);
+                } else if (value instanceof Long) {
+                    return pushLong((Long) value, next);
+                } else if (value instanceof Double) {
+                    return pushLong(Double.doubleToRawLongBits((Double) value), next);
+                }
+                return pushRef(heap.pin(value), next);
+            }
+            case ILOAD:
+            case FLOAD:
+                return frame -> {
+                    frame.pushInt(frame.getLocalInt(operand));
+                    return next;
+                };
+            case LLOAD:
+            case DLOAD:
+                return frame -> {
+                    frame.pushLong(frame.getLocalLong(operand));
+                    return next;
+                };
+            case ALOAD:
+                return frame -> {
+                    frame.pushRef(frame.getLocalRef(operand));
+                    return next;
+                };
+            case ISTORE:
+            case FSTORE:
+                return frame -> {
+                    frame.setLocalInt(operand, frame.popInt());
+                    return next;
+                };
+            case LSTORE:
+            case DSTORE:
+                return frame -> {
+                    frame.setLocalLong(operand, frame.popLong());
+                    return next;
+                };
+            case ASTORE:
+                return frame -> {
+                    frame.setLocalRef(operand, frame.popRef());
+                    return next;
+                };
+            case POP:
+                return frame -> {
+                    frame.pop();
+                    return next;
+                };
+            case POP2:
+                return frame -> {
+                    frame.pop2();
+                    return next;
+                };
+            case DUP:
+                return frame -> {
+                    frame.dup();
+                    return next;
+                };
+            case DUP_X1:
+                return frame -> {
+                    frame.dupX1();
+                    return next;
+                };
+            case DUP_X2:
+                return frame -> {
+                    frame.dupX2();
+                    return next;
+                };
+            case DUP2:
+                return frame -> {
+                    frame.dup2();
+                    return next;
+                };
+            case DUP2_X1:
+                return frame -> {
+                    frame.dup2X1();
+                    return next;
+                };
+            case DUP2_X2:
+                return frame -> {
+                    frame.dup2X2();
+                    return next;
+                };
+            case SWAP:
+                return frame -> {
+                    frame.swap();
+                    return next;
+                };
+            case IADD:
+                return frame -> {
+                    frame.pushInt(frame.popInt() + frame.popInt());
+                    return next;
+                };
+            case LADD:
+                return frame -> {
+                    frame.pushLong(frame.popLong() + frame.popLong());
+                    return next;
+                };
+            case FADD:
+                return frame -> {
+                    frame.pushFloat(frame.popFloat() + frame.popFloat());
+                    return next;
+                };
+            case DADD:
+                return frame -> {
+                    frame.pushDouble(frame.popDouble() + frame.popDouble());
+                    return next;
+                };
+            case ISUB:
+                return frame -> {
+                    int value2 = frame.popInt();
+                    frame.pushInt(frame.popInt() - value2);
+                    return next;
+                };
+            case LSUB:
+                return frame -> {
+                    long value2 = frame.popLong();
+                    frame.pushLong(frame.popLong() - value2);
+                    return next;
+                };
+            case FSUB:
+                return frame -> {
+                    float value2 = frame.popFloat();
+                    frame.pushFloat(frame.popFloat() - value2);
+                    return next;
+                };
+            case DSUB:
+                return frame -> {
+                    double value2 = frame.popDouble();
+                    frame.pushDouble(frame.popDouble() - value2);
+                    return next;
+                };
+            case IMUL:
+                return frame -> {
+                    frame.pushInt(frame.popInt() * frame.popInt());
+                    return next;
+                };
+            case LMUL:
+                return frame -> {
+                    frame.pushLong(frame.popLong() * frame.popLong());
+                    return next;
+                };
+            case FMUL:
+                return frame -> {
+                    frame.pushFloat(frame.popFloat() * frame.popFloat());
+                    return next;
+                };
+            case DMUL:
+                return frame -> {
+                    frame.pushDouble(frame.popDouble() * frame.popDouble());
+                    return next;
+                };
+            case IDIV:
+                return frame -> {
+                    int value2 = frame.popInt();
+                    frame.pushInt(frame.popInt() / value2);
+                    return next;
+                };
+            case LDIV:
+                return frame -> {
+                    long value2 = frame.popLong();
+                    frame.pushLong(frame.popLong() / value2);
+                    return next;
+                };
+            case FDIV:
+                return frame -> {
+                    float value2 = frame.popFloat();
+                    frame.pushFloat(frame.popFloat() / value2);
+                    return next;
+                };
+            case DDIV:
+                return frame -> {
+                    double value2 = frame.popDouble();
+                    frame.pushDouble(frame.popDouble() / value2);
+                    return next;
+                };
+            case IREM:
+                return frame -> {
+                    int value2 = frame.popInt();
+                    frame.pushInt(frame.popInt() % value2);
+                    return next;
+                };
+            case LREM:
+                return frame -> {
+                    long value2 = frame.popLong();
+                    frame.pushLong(frame.popLong() % value2);
+                    return next;
+                };
+            case FREM:
+                return frame -> {
+                    float value2 = frame.popFloat();
+                    frame.pushFloat(frame.popFloat() % value2);
+                    return next;
+                };
+            case DREM:
+                return frame -> {
+                    double value2 = frame.popDouble();
+                    frame.pushDouble(frame.popDouble() % value2);
+                    return next;
+                };
+            case INEG:
+                return frame -> {
+                    frame.pushInt(-frame.popInt());
+                    return next;
+                };
+            case LNEG:
+                return frame -> {
+                    frame.pushLong(-frame.popLong());
+                    return next;
+                };
+            case FNEG:
+                return frame -> {
+                    frame.pushFloat(-frame.popFloat());
+                    return next;
+                };
+            case DNEG:
+                return frame -> {
+                    frame.pushDouble(-frame.popDouble());
+                    return next;
+                };
+            case ISHL:
+                return frame -> {
+                    int value2 = frame.popInt();
+                    frame.pushInt(frame.popInt() << value2);
+                    return next;
+                };
+            case LSHL:
+                return frame -> {
+                    int value2 = frame.popInt();
+                    frame.pushLong(frame.popLong() << value2);
+                    return next;
+                };
+            case ISHR:
+                return frame -> {
+                    int value2 = frame.popInt();
+                    frame.pushInt(frame.popInt() >> value2);
+                    return next;
+                };
+            case LSHR:
+                return frame -> {
+                    int value2 = frame.popInt();
+                    frame.pushLong(frame.popLong() >> value2);
+                    return next;
+                };
+            case IUSHR:
+                return frame -> {
+                    int value2 = frame.popInt();
+                    frame.pushInt(frame.popInt() >>> value2);
+                    return next;
+                };
+            case LUSHR:
+                return frame -> {
+                    int value2 = frame.popInt();
+                    frame.pushLong(frame.popLong() >>> value2);
+                    return next;
+                };
+            case IAND:
+                return frame -> {
+                    frame.pushInt(frame.popInt() & frame.popInt());
+                    return next;
+                };
+            case LAND:
+                return frame -> {
+                    frame.pushLong(frame.popLong() & frame.popLong());
+                    return next;
+                };
+            case IOR:
+                return frame -> {
+                    frame.pushInt(frame.popInt() | frame.popInt());
+                    return next;
+                };
+            case LOR:
+                return frame -> {
+                    frame.pushLong(frame.popLong() | frame.popLong());
+                    return next;
+                };
+            case IXOR:
+                return frame -> {
+                    frame.pushInt(frame.popInt() ^ frame.popInt());
+                    return next;
+                };
+            case LXOR:
+                return frame -> {
+                    frame.pushLong(frame.popLong() ^ frame.popLong());
+                    return next;
+                };
+            case IINC:
+                return frame -> {
+                    frame.setLocalInt(operand, frame.getLocalInt(operand) + operand2);
+                    return next;
+                };
+            case I2L:
+                return frame -> {
+                    frame.pushLong(frame.popInt());
+                    return next;
+                };
+            case I2F:
+                return frame -> {
+                    frame.pushFloat(frame.popInt());
+                    return next;
+                };
+            case I2D:
+                return frame -> {
+                    frame.pushDouble(frame.popInt());
+                    return next;
+                };
+            case L2I:
+                return frame -> {
+                    frame.pushInt((int) frame.popLong());
+                    return next;
+                };
+            case L2F:
+                return frame -> {
+                    frame.pushFloat(frame.popLong());
+                    return next;
+                };
+            case L2D:
+                return frame -> {
+                    frame.pushDouble(frame.popLong());
+                    return next;
+                };
+            case F2I:
+                return frame -> {
+                    frame.pushInt((int) frame.popFloat());
+                    return next;
+                };
+            case F2L:
+                return frame -> {
+                    frame.pushLong((long) frame.popFloat());
+                    return next;
+                };
+            case F2D:
+                return frame -> {
+                    frame.pushDouble(frame.popFloat());
+                    return next;
+                };
+            case D2I:
+                return frame -> {
+                    frame.pushInt((int) frame.popDouble());
+                    return next;
+                };
+            case D2L:
+                return frame -> {
+                    frame.pushLong((long) frame.popDouble());
+                    return next;
+                };
+            case D2F:
+                return frame -> {
+                    frame.pushFloat((float) frame.popDouble());
+                    return next;
+                };
+            case I2B:
+                return frame -> {
+                    frame.pushInt((byte) frame.popInt());
+                    return next;
+                };
+            case I2C:
+                return frame -> {
+                    frame.pushInt((char) frame.popInt());
+                    return next;
+                };
+            case I2S:
+                return frame -> {
+                    frame.pushInt((short) frame.popInt());
+                    return next;
+                };
+            case LCMP:
+                return frame -> {
+                    long value2 = frame.popLong();
+                    frame.pushInt(Long.compare(frame.popLong(), value2));
+                    return next;
+                };
+            case FCMPL:
+            case FCMPG: {
+                int nanResult = opcode == FCMPG ? 1 : -1;
+                return frame -> {
+                    float value2 = frame.popFloat();
+                    float value1 = frame.popFloat();
+                    if (Float.isNaN(value1) || Float.isNaN(value2)) {
+                        frame.pushInt(nanResult);
+                    } else {
+                        frame.pushInt(value1 < value2 ? -1 : (value1 == value2 ? 0 : 1));
+                    }
+                    return next;
+                };
+            }
+            case DCMPL:
+            case DCMPG: {
+                int nanResult = opcode == DCMPG ? 1 : -1;
+                return frame -> {
+                    double value2 = frame.popDouble();
+                    double value1 = frame.popDouble();
+                    if (Double.isNaN(value1) || Double.isNaN(value2)) {
+                        frame.pushInt(nanResult);
+                    } else {
+                        frame.pushInt(value1 < value2 ? -1 : (value1 == value2 ? 0 : 1));
+                    }
+                    return next;
+                };
+            }
+            case IFEQ:
+                return frame -> frame.popInt() == 0 ? operand : next;
+            case IFNE:
+                return frame -> frame.popInt() != 0 ? operand : next;
+            case IFLT:
+                return frame -> frame.popInt() < 0 ? operand : next;
+            case IFGE:
+                return frame -> frame.popInt() >= 0 ? operand : next;
+            case IFGT:
+                return frame -> frame.popInt() > 0 ? operand : next;
+            case IFLE:
+                return frame -> frame.popInt() <= 0 ? operand : next;
+            case IF_ICMPEQ:
+                return frame -> {
+                    int value2 = frame.popInt();
+                    return frame.popInt() == value2 ? operand : next;
+                };
+            case IF_ICMPNE:
+                return frame -> {
+                    int value2 = frame.popInt();
+                    return frame.popInt() != value2 ? operand : next;
+                };
+            case IF_ICMPLT:
+                return frame -> {
+                    int value2 = frame.popInt();
+                    return frame.popInt() < value2 ? operand : next;
+                };
+            case IF_ICMPGE:
+                return frame -> {
+                    int value2 = frame.popInt();
+                    return frame.popInt() >= value2 ? operand : next;
+                };
+            case IF_ICMPGT:
+                return frame -> {
+                    int value2 = frame.popInt();
+                    return frame.popInt() > value2 ? operand : next;
+                };
+            case IF_ICMPLE:
+                return frame -> {
+                    int value2 = frame.popInt();
+                    return frame.popInt() <= value2 ? operand : next;
+                };
+            case IF_ACMPEQ:
+                return frame -> frame.popRef() == frame.popRef() ? operand : next;
+            case IF_ACMPNE:
+                return frame -> frame.popRef() != frame.popRef() ? operand : next;
+            case IFNULL:
+                return frame -> frame.popRef() == 0 ? operand : next;
+            case IFNONNULL:
+                return frame -> frame.popRef() != 0 ? operand : next;
+            case GOTO:
+                return frame -> operand;
+            case TABLESWITCH:
+            case LOOKUPSWITCH: {
+                DecodedCode.SwitchTable table = code.switchTables[operand];
+                return frame -> table.lookup(frame.popInt());
+            }
+            case GETSTATIC:
+            case PUTSTATIC: {
+                Resolver.MemberRef ref = Resolver.memberRef(method.getRuntimeClass(), operand);
+                HostBindings hostBindings = resolver.getHostBindings();
+                if (opcode == GETSTATIC && hostBindings.hasStaticField(ref.className, ref.name)) {
+                    return pushRef(heap.pin(hostBindings.getStaticField(ref.className, ref.name)), index + 1);
+                }
+                return new StaticFieldNode(ref, opcode == PUTSTATIC, index);
+            }
+            case INVOKESTATIC:
+            case INVOKESPECIAL:
+            case INVOKEVIRTUAL:
+            case INVOKEINTERFACE: {
+                Resolver.MemberRef ref = Resolver.memberRef(method.getRuntimeClass(), operand);
+                NativeHandler handler = resolver.getHostBindings().getMethod(ref.className, ref.name, ref.descriptor);
+                if (handler != null) {
+                    return frame -> {
+                        handler.invoke(frame);
+                        return next;
+                    };
+                }
+                if (opcode == INVOKESTATIC) {
+                    return new InvokeStaticNode(ref, index);
+                }
+                if (opcode == INVOKESPECIAL) {
+                    return new InvokeSpecialNode(ref, index);
+                }
+                return new InvokeVirtualNode(ref, method, index);
+            }
+            case QUICK_INVOKENATIVE: {
+                // 链接时已经绑定的内建方法，见Intrinsics
+                NativeHandler handler = (NativeHandler) code.resolved[index];
+                return frame -> {
+                    handler.invoke(frame);
+                    return next;
+                };
+            }
+            case NEW:
+                return new NewNode(operand, index);
+            case GETFIELD:
+            case PUTFIELD:
+                return new InstanceFieldNode(Resolver.memberRef(method.getRuntimeClass(), operand), opcode == PUTFIELD, index);
+            case IRETURN:
+            case FRETURN:
+                return frame -> {
+                    int returnValue = frame.popInt();
+                    frame.thread.popFrame().pushInt(returnValue);
+                    return FRAME_CHANGED;
+                };
+            case LRETURN:
+            case DRETURN:
+                return frame -> {
+                    long returnValue = frame.popLong();
+                    frame.thread.popFrame().pushLong(returnValue);
+                    return FRAME_CHANGED;
+                };
+            case ARETURN:
+                return frame -> {
+                    int returnValue = frame.popRef();
+                    frame.thread.popFrame().pushRef(returnValue);
+                    return FRAME_CHANGED;
+                };
+            case RETURN:
+                if (method.isClassInitializer()) {
+                    return frame -> {
+                        frame.getRuntimeClass().finishInitialization();
+                        frame.thread.popFrame();
+                        return FRAME_CHANGED;
+                    };
+                }
+                return frame -> {
+                    frame.thread.popFrame();
+                    return FRAME_CHANGED;
+                };
+            case ATHROW:
+                return frame -> {
+                    exceptions.throwException(frame, index, frame.popRef());
+                    return FRAME_CHANGED;
+                };
+            default:
+                return compileSuperinstruction(code, index);
+        }
+    }
+
+    /**
+     * 超级指令在编译后仍然是一个节点，后面被合并的指令的操作数在编译时就读出来
+     */
+    private Node compileSuperinstruction(DecodedCode code, int index) {
+        int opcode = code.opcodes[index];
+        int operand = code.operands[index];
+        int operand2 = code.operands2[index];
+        int nextOperand = index + 1 < code.length() ? code.operands[index + 1] : 0;
+        int nextNextOperand = index + 2 < code.length() ? code.operands[index + 2] : 0;
+        switch (opcode) {
+            case ILOAD_ILOAD_IF_ICMPGE:
+                return frame -> frame.getLocalInt(operand) >= frame.getLocalInt(nextOperand) ? nextNextOperand : index + 3;
+            case ILOAD_ILOAD_IF_ICMPGT:
+                return frame -> frame.getLocalInt(operand) > frame.getLocalInt(nextOperand) ? nextNextOperand : index + 3;
+            case ILOAD_ILOAD_IF_ICMPLT:
+                return frame -> frame.getLocalInt(operand) < frame.getLocalInt(nextOperand) ? nextNextOperand : index + 3;
+            case ILOAD_ILOAD_IF_ICMPLE:
+                return frame -> frame.getLocalInt(operand) <= frame.getLocalInt(nextOperand) ? nextNextOperand : index + 3;
+            case IINC_GOTO:
+                return frame -> {
+                    frame.setLocalInt(operand, frame.getLocalInt(operand) + operand2);
+                    return nextOperand;
+                };
+            case ILOAD_CONST_IADD:
+                return frame -> {
+                    frame.pushInt(frame.getLocalInt(operand) + nextOperand);
+                    return index + 3;
+                };
+            case ILOAD_CONST_ISUB:
+                return frame -> {
+                    frame.pushInt(frame.getLocalInt(operand) - nextOperand);
+                    return index + 3;
+                };
+            case ILOAD_IFEQ:
+                return frame -> frame.getLocalInt(operand) == 0 ? nextOperand : index + 2;
+            case ILOAD_IFNE:
+                return frame -> frame.getLocalInt(operand) != 0 ? nextOperand : index + 2;
+            case ILOAD_ILOAD_IADD:
+                return frame -> {
+                    frame.pushInt(frame.getLocalInt(operand) + frame.getLocalInt(nextOperand));
+                    return index + 3;
+                };
+            case ILOAD_ILOAD_IMUL:
+                return frame -> {
+                    frame.pushInt(frame.getLocalInt(operand) * frame.getLocalInt(nextOperand));
+                    return index + 3;
+                };
+            case ILOAD_IRETURN:
+                return frame -> {
+                    int returnValue = frame.getLocalInt(operand);
+                    frame.thread.popFrame().pushInt(returnValue);
+                    return FRAME_CHANGED;
+                };
+            case CONST_IRETURN:
+                return frame -> {
+                    frame.thread.popFrame().pushInt(operand);
+                    return FRAME_CHANGED;
+                };
+            default:
+                // 还不支持的指令编译成执行时才报错的节点，和解释器的行为一致
+                return frame -> {
+                    throw new IllegalStateException("Opcode " + Opcode.valueOf(opcode) + " not implemented yet!");
+                };
+        }
+    }
+
+    private static Node pushInt(int value, int next) {
+        return frame -> {
+            frame.pushInt(value);
+            return next;
+        };
+    }
+
+    private static Node pushLong(long value, int next) {
+        return frame -> {
+            frame.pushLong(value);
+            return next;
+        };
+    }
+
+    private static Node pushRef(int value, int next) {
+        return frame -> {
+            frame.pushRef(value);
+            return next;
+        };
+    }
+
+    /**
+     * 客户类的getstatic/putstatic，第一次执行时解析字段并初始化字段所在的类
+     */
+    private final class StaticFieldNode implements Node {
+        private final Resolver.MemberRef ref;
+        private final boolean put;
+        private final int index;
+        private RuntimeField field;
+
+        StaticFieldNode(Resolver.MemberRef ref, boolean put, int index) {
+            this.ref = ref;
+            this.put = put;
+            this.index = index;
+        }
+
+        @Override
+        public int execute(StackFrame frame) {
+            RuntimeField field = this.field;
+            if (field == null) {
+                field = resolver.resolveField(ref);
+                if (frame.thread.initializeClass(frame, index, field.getRuntimeClass()) != null) {
+                    return FRAME_CHANGED;
+                }
+                if (field.getRuntimeClass().isInitialized()) {
+                    this.field = field;
+                }
+            }
+            RuntimeClass runtimeClass = field.getRuntimeClass();
+            int slot = field.getSlot();
+            if (put) {
+                if (field.isReference()) {
+                    runtimeClass.staticRefs[slot] = frame.popRef();
+                } else if (field.isWide()) {
+                    runtimeClass.staticValues[slot] = frame.popLong();
+                } else {
+                    runtimeClass.staticValues[slot] = frame.popInt();
+                }
+            } else {
+                if (field.isReference()) {
+                    frame.pushRef(runtimeClass.staticRefs[slot]);
+                } else if (field.isWide()) {
+                    frame.pushLong(runtimeClass.staticValues[slot]);
+                } else {
+                    frame.pushInt((int) runtimeClass.staticValues[slot]);
+                }
+            }
+            return index + 1;
+        }
+    }
+
+    /**
+     * 客户类的invokestatic，第一次执行时解析目标方法并初始化它所在的类
+     */
+    private final class InvokeStaticNode implements Node {
+        private final Resolver.MemberRef ref;
+        private final int index;
+        private RuntimeMethod target;
+
+        InvokeStaticNode(Resolver.MemberRef ref, int index) {
+            this.ref = ref;
+            this.index = index;
+        }
+
+        @Override
+        public int execute(StackFrame frame) {
+            RuntimeMethod target = this.target;
+            if (target == null) {
+                target = resolver.resolveMethod(ref);
+                if (frame.thread.initializeClass(frame, index, target.getRuntimeClass()) != null) {
+                    return FRAME_CHANGED;
+                }
+                if (target.getRuntimeClass().isInitialized()) {
+                    this.target = target;
+                }
+            }
+            frame.pc = index + 1;
+            frame.thread.invoke(frame, target);
+            return FRAME_CHANGED;
+        }
+    }
+
+    /**
+     * 客户类的invokespecial，第一次执行时解析目标方法。构造器和私有方法不需要初始化类
+     */
+    private final class InvokeSpecialNode implements Node {
+        private final Resolver.MemberRef ref;
+        private final int index;
+        private RuntimeMethod target;
+
+        InvokeSpecialNode(Resolver.MemberRef ref, int index) {
+            this.ref = ref;
+            this.index = index;
+        }
+
+        @Override
+        public int execute(StackFrame frame) {
+            if (target == null) {
+                target = resolver.resolveMethod(ref);
+            }
+            frame.pc = index + 1;
+            frame.thread.invoke(frame, target);
+            return FRAME_CHANGED;
+        }
+    }
+
+    /**
+     * invokevirtual/invokeinterface，第一次执行时解析方法并创建调用点的内联缓存
+     */
+    private final class InvokeVirtualNode implements Node {
+        private final Resolver.MemberRef ref;
+        private final RuntimeMethod caller;
+        private final int index;
+        private InlineCache inlineCache;
+
+        InvokeVirtualNode(Resolver.MemberRef ref, RuntimeMethod caller, int index) {
+            this.ref = ref;
+            this.caller = caller;
+            this.index = index;
+        }
+
+        @Override
+        public int execute(StackFrame frame) {
+            if (inlineCache == null) {
+                inlineCache = caller.profile.newInlineCache(caller, index, resolver.resolveMethod(ref), options.getInlineCacheSize());
+                stats.registerInlineCache(inlineCache);
+            }
+            RuntimeMethod target = inlineCache.lookup(frame);
+            frame.pc = index + 1;
+            frame.thread.invoke(frame, target);
+            return FRAME_CHANGED;
+        }
+    }
+
+    /**
+     * new，第一次执行时解析并初始化类
+     */
+    private final class NewNode implements Node {
+        private final int cpIndex;
+        private final int index;
+        private RuntimeClass runtimeClass;
+
+        NewNode(int cpIndex, int index) {
+            this.cpIndex = cpIndex;
+            this.index = index;
+        }
+
+        @Override
+        public int execute(StackFrame frame) {
+            RuntimeClass runtimeClass = this.runtimeClass;
+            if (runtimeClass == null) {
+                runtimeClass = resolver.resolveClass(frame.getRuntimeClass(), cpIndex);
+                if (runtimeClass.isAbstract()) {
+                    throw new GuestException("java.lang.InstantiationError", runtimeClass.getName());
+                }
+                if (frame.thread.initializeClass(frame, index, runtimeClass) != null) {
+                    return FRAME_CHANGED;
+                }
+                if (runtimeClass.isInitialized()) {
+                    this.runtimeClass = runtimeClass;
+                }
+            }
+            frame.pushRef(heap.allocate(frame.thread, runtimeClass));
+            return index + 1;
+        }
+    }
+
+    /**
+     * getfield/putfield，第一次执行时解析字段
+     */
+    private final class InstanceFieldNode implements Node {
+        private final Resolver.MemberRef ref;
+        private final boolean put;
+        private final int index;
+        private RuntimeField field;
+
+        InstanceFieldNode(Resolver.MemberRef ref, boolean put, int index) {
+            this.ref = ref;
+            this.put = put;
+            this.index = index;
+        }
+
+        @Override
+        public int execute(StackFrame frame) {
+            if (field == null) {
+                field = resolver.resolveField(ref);
+            }
+            int offset = field.getOffset();
+            if (put) {
+                if (field.isReference()) {
+                    int value = frame.popRef();
+                    heap.storeRef(GuestHeap.nonNull(frame.popRef()), offset, value);
+                } else if (field.isWide()) {
+                    long value = frame.popLong();
+                    heap.putWide(GuestHeap.nonNull(frame.popRef()), offset, value);
+                } else if (field.isNarrow()) {
+                    int value = frame.popInt();
+                    heap.putNarrow(GuestHeap.nonNull(frame.popRef()), offset, field.getDescriptor().charAt(0), value);
+                } else {
+                    int value = frame.popInt();
+                    heap.putInt(GuestHeap.nonNull(frame.popRef()), offset, value);
+                }
+            } else {
+                int object = GuestHeap.nonNull(frame.popRef());
+                if (field.isReference()) {
+                    frame.pushRef(heap.loadRef(object, offset));
+                } else if (field.isWide()) {
+                    frame.pushLong(heap.getWide(object, offset));
+                } else if (field.isNarrow()) {
+                    frame.pushInt(heap.getNarrow(object, offset, field.getDescriptor().charAt(0)));
+                } else {
+                    frame.pushInt(heap.getInt(object, offset));
+                }
+            }
+            return index + 1;
+        }
+    }
+}
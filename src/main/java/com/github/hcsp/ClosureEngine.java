@@ -0,0 +1,54 @@
+package com.github.hcsp;
+
+/**
+ * 闭包执行引擎：方法第一次执行时用{@link ClosureCompiler}编译，之后直接执行编译好的节点。
+ * <p>
+ * 调用栈仍然是{@link GuestThread}中的栈帧，不占用宿主的调用栈，所以栈深度限制和解释器完全一样。
+ */
+class ClosureEngine {
+    private final ClosureCompiler compiler;
+    private final ExceptionDispatcher exceptions;
+
+    ClosureEngine(Resolver resolver, VMOptions options, VMStats stats, GuestHeap heap, ExceptionDispatcher exceptions) {
+        this.compiler = new ClosureCompiler(resolver, options, stats, heap, exceptions);
+        this.exceptions = exceptions;
+    }
+
+    /**
+     * 执行线程中的栈帧，直到栈空为止
+     */
+    void run(GuestThread thread) {
+        StackFrame frame = thread.getTopFrame();
+        ClosureCompiler.Node[] nodes = compiledCodeOf(frame.method);
+        while (true) {
+            // 调用节点在调用之前就改了pc，所以先记下正在执行的指令下标，异常要按它查找处理器
+            int index = frame.pc;
+            int next;
+            try {
+                next = nodes[index].execute(frame);
+            } catch (GuestException | ArithmeticException e) {
+                frame = exceptions.dispatch(frame, index, e);
+                nodes = compiledCodeOf(frame.method);
+                continue;
+            }
+            if (next != ClosureCompiler.FRAME_CHANGED) {
+                frame.pc = next;
+                continue;
+            }
+            frame = thread.getTopFrame();
+            if (frame == null) {
+                return;
+            }
+            nodes = compiledCodeOf(frame.method);
+        }
+    }
+
+    private ClosureCompiler.Node[] compiledCodeOf(RuntimeMethod method) {
+        ClosureCompiler.Node[] nodes = method.getClosureCode();
+        if (nodes == null) {
+            nodes = compiler.compile(method);
+            method.setClosureCode(nodes);
+        }
+        return nodes;
+    }
+}
@@ -0,0 +1,15 @@
+package com.github.hcsp;
+
+/**
+ * 被{@link HostCompiler}编译成宿主字节码的客户方法。
+ * <p>
+ * 编译生成的类由单独的类加载器定义，所以这个接口必须是public的。
+ */
+public interface CompiledMethod {
+    /**
+     * 执行方法。参数按照调用者操作数栈上的布局，从slots[base]开始存放。
+     *
+     * @return 槽格式的返回值：int/float按位、引用的int值放在低32位，没有返回值时为0
+     */
+    long invoke(long[] slots, int base);
+}
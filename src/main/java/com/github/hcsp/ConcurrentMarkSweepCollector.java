@@ -0,0 +1,498 @@
+package com.github.hcsp;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.github.hcsp.GuestHeap.GC_WORD;
+
+/**
+ * 并发标记-清除收集器，整个堆不分代，对象不移动。一轮收集分成：
+ * <ol>
+ * <li>初始标记（暂停）：已用空间超过{@link VMOptions#getInitiatingOccupancy()}时，在分配的慢路径上标记根，
+ * 记下这时的空闲块，打开SATB写屏障，启动一个宿主线程</li>
+ * <li>并发标记：标记线程从根出发遍历对象图，客户线程继续执行。写屏障把被覆盖的旧引用记到{@link SatbQueue}中，
+ * 标记线程也从它们出发，所以初始标记时活着的对象都会被标记。标记期间分配的对象都在初始标记时的空闲块中，
+ * 直接算作活的，标记线程不会去读它们</li>
+ * <li>重新标记（暂停）：标记线程做完之后，客户线程在下一次分配的慢路径上处理写屏障剩下的旧引用，关闭写屏障</li>
+ * <li>清除：之后每次分配找不到空闲块时清除一段堆，把连续的死对象和空闲空间清零、合并成一个空闲块。
+ * 清除完整个堆时释放宿主对象表中没有标记的表项</li>
+ * </ol>
+ * 两次暂停只处理根和写屏障记下的引用，和堆的大小无关。客户线程从空闲块中领TLAB。
+ * 清除完了还是放不下时，如果正在并发标记就等它做完；还是不够时在暂停中标记和清除整个堆。
+ * <p>
+ * 宿主对象表和堆一起标记：写屏障也记下被覆盖的宿主对象引用，标记开始之后登记的表项直接算作活的。
+ * 表太大时{@link GuestHeap#safepoint()}不暂停收集，而是让这个收集器推进一步：开始一轮、重新标记或者清除一段
+ */
+final class ConcurrentMarkSweepCollector implements GuestHeap.Collector {
+    /**
+     * 每次分配找不到空闲块时最多清除多少字节
+     */
+    private static final int SWEEP_SLICE = 64 << 10;
+    /**
+     * 比它小的空闲块不放进空闲链表，下一轮清除时再和相邻的死对象合并
+     */
+    private static final int MIN_CHUNK = GuestHeap.HEADER_SIZE;
+
+    private final GuestHeap heap;
+    private final ByteBuffer arena;
+    private final HostObjectTable hostObjects;
+    private final VMStats stats;
+    private final int tlabSize;
+    private final int initiatingUsed;
+    private final SatbQueue satbQueue = new SatbQueue();
+
+    /**
+     * 空闲链表：每个空闲块的地址和大小，块的开头是{@link GuestHeap#fill}写的头，其余都是0
+     */
+    private int[] chunkStarts = new int[64];
+    private int[] chunkSizes = new int[64];
+    private int chunkCount;
+    private int freeBytes;
+
+    /**
+     * 下一段要清除的地址，等于堆的结尾时这一轮已经清除完了。只有它之前的空闲块在空闲链表中
+     */
+    private int sweepPointer;
+    private long sweptLiveBytes;
+    private long sweptDeadBytes;
+    /**
+     * 正在进行的并发标记，没有时为null
+     */
+    private Marker marker;
+    /**
+     * 上一轮标记开始时的空闲块，标记期间分配的对象都在里面，清除完之前一直算作活的
+     */
+    private FreeChunks allocatedDuringMarking;
+
+    ConcurrentMarkSweepCollector(GuestHeap heap, VMOptions options, VMStats stats) {
+        this.heap = heap;
+        this.arena = heap.arena();
+        this.hostObjects = heap.hostObjects();
+        this.stats = stats;
+        int total = heap.spaceEnd - GuestHeap.HEAP_START;
+        this.tlabSize = Math.min(options.getTlabSize() & -8, total);
+        this.initiatingUsed = (int) ((long) total * options.getInitiatingOccupancy() / 100);
+        this.sweepPointer = heap.spaceEnd;
+        heap.satbQueue = satbQueue;
+        heap.fill(GuestHeap.HEAP_START, heap.spaceEnd);
+        addChunk(GuestHeap.HEAP_START, total);
+    }
+
+    @Override
+    public synchronized int allocate(GuestThread thread, int size) {
+        retireTlab(thread);
+        if (marker != null && marker.done) {
+            remark(System.nanoTime());
+        }
+        if (marker == null && sweepPointer == heap.spaceEnd && getUsed() > initiatingUsed) {
+            initialMark();
+        }
+        int address = allocateChunk(thread, size);
+        if (address == 0 && marker != null) {
+            // 标记赶不上分配：等标记线程做完，等待的时间也是暂停
+            long start = System.nanoTime();
+            marker.await();
+            remark(start);
+            address = allocateChunk(thread, size);
+        }
+        if (address == 0) {
+            heap.collect();
+            address = allocateChunk(thread, size);
+        }
+        return address;
+    }
+
+    /**
+     * 小对象领一个TLAB，比TLAB大的对象单独分配。空闲链表中没有合适的块时继续清除
+     *
+     * @return 分配到的地址，清除完了还是放不下时返回0
+     */
+    private int allocateChunk(GuestThread thread, int size) {
+        while (true) {
+            int address = size > tlabSize ? allocateLarge(size) : allocateTlab(thread, size);
+            if (address != 0 || sweepPointer == heap.spaceEnd) {
+                return address;
+            }
+            sweep(SWEEP_SLICE);
+        }
+    }
+
+    private int allocateTlab(GuestThread thread, int size) {
+        // 放不下这个对象的块留在空闲链表中，之后更小的对象还能用
+        int index = firstFit(size);
+        if (index < 0) {
+            return 0;
+        }
+        int address = chunkStarts[index];
+        int length = Math.min(tlabSize, chunkSizes[index]);
+        if (chunkSizes[index] - length < MIN_CHUNK) {
+            length = chunkSizes[index];
+        }
+        take(index, length);
+        thread.tlabTop = address + size;
+        thread.tlabEnd = address + length;
+        stats.recordTlabRefill();
+        return address;
+    }
+
+    private int allocateLarge(int size) {
+        int index = firstFit(size);
+        if (index < 0) {
+            return 0;
+        }
+        int address = chunkStarts[index];
+        take(index, size);
+        return address;
+    }
+
+    /**
+     * @return 从最近加入的块开始找，第一个放得下size字节的块的下标，没有时返回-1
+     */
+    private int firstFit(int size) {
+        for (int i = chunkCount - 1; i >= 0; i--) {
+            if (chunkSizes[i] >= size) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 从第index个空闲块的开头分出length字节，剩下的部分写上空闲空间的头，太小时不再留在空闲链表中
+     */
+    private void take(int index, int length) {
+        int start = chunkStarts[index];
+        int remaining = chunkSizes[index] - length;
+        freeBytes -= chunkSizes[index];
+        if (remaining > 0) {
+            heap.fill(start + length, start + length + remaining);
+        }
+        if (remaining >= MIN_CHUNK) {
+            chunkStarts[index] = start + length;
+            chunkSizes[index] = remaining;
+            freeBytes += remaining;
+        } else {
+            chunkCount--;
+            chunkStarts[index] = chunkStarts[chunkCount];
+            chunkSizes[index] = chunkSizes[chunkCount];
+        }
+    }
+
+    private void addChunk(int start, int size) {
+        if (chunkCount == chunkStarts.length) {
+            chunkStarts = Arrays.copyOf(chunkStarts, chunkCount * 2);
+            chunkSizes = Arrays.copyOf(chunkSizes, chunkCount * 2);
+        }
+        chunkStarts[chunkCount] = start;
+        chunkSizes[chunkCount] = size;
+        chunkCount++;
+        freeBytes += size;
+    }
+
+    private void retireTlab(GuestThread thread) {
+        if (thread.tlabTop < thread.tlabEnd) {
+            heap.fill(thread.tlabTop, thread.tlabEnd);
+        }
+        thread.tlabTop = 0;
+        thread.tlabEnd = 0;
+    }
+
+    @Override
+    public int getUsed() {
+        return heap.spaceEnd - GuestHeap.HEAP_START - freeBytes;
+    }
+
+    private void initialMark() {
+        long start = System.nanoTime();
+        for (GuestThread thread : heap.threads) {
+            retireTlab(thread);
+        }
+        marker = new Marker(new FreeChunks(Arrays.copyOf(chunkStarts, chunkCount), Arrays.copyOf(chunkSizes, chunkCount)));
+        for (int root : heap.rootReferences()) {
+            marker.mark(root);
+        }
+        hostObjects.startConcurrentMarking();
+        satbQueue.active = true;
+        marker.start();
+        stats.recordPause(System.nanoTime() - start);
+    }
+
+    /**
+     * 重新标记，之后从头开始清除。空闲链表中剩下的块也会被清除重新找到，所以先清空
+     */
+    private void remark(long start) {
+        marker.finish();
+        hostObjects.markAll(marker.hostRefs, marker.hostRefCount);
+        satbQueue.active = false;
+        allocatedDuringMarking = marker.freeChunks;
+        marker = null;
+        chunkCount = 0;
+        freeBytes = 0;
+        sweepPointer = GuestHeap.HEAP_START;
+        sweptLiveBytes = 0;
+        sweptDeadBytes = 0;
+        stats.recordPause(System.nanoTime() - start);
+    }
+
+    /**
+     * 从{@link #sweepPointer}开始清除大约budget字节：标记过的对象清掉标记，
+     * 连续的死对象和空闲空间合并成一个空闲块。清除完整个堆时这一轮并发收集结束
+     */
+    private void sweep(int budget) {
+        int end = heap.spaceEnd - sweepPointer > budget ? sweepPointer + budget : heap.spaceEnd;
+        int address = sweepPointer;
+        int freeStart = 0;
+        while (address < end) {
+            int size = heap.sizeAt(address);
+            if (heap.isFiller(address)) {
+                if (freeStart == 0) {
+                    freeStart = address;
+                }
+            } else if (isLive(address)) {
+                if (freeStart != 0) {
+                    addFree(freeStart, address);
+                    freeStart = 0;
+                }
+                arena.putInt(address + GC_WORD, 0);
+                sweptLiveBytes += size;
+            } else {
+                sweptDeadBytes += size;
+                if (freeStart == 0) {
+                    freeStart = address;
+                }
+            }
+            address += size;
+        }
+        if (freeStart != 0) {
+            addFree(freeStart, address);
+        }
+        sweepPointer = address;
+        if (sweepPointer == heap.spaceEnd && allocatedDuringMarking != null) {
+            allocatedDuringMarking = null;
+            heap.sweepHostObjects();
+            heap.updateHostObjectLimit();
+            stats.recordConcurrentCycle(sweptLiveBytes + sweptDeadBytes, sweptLiveBytes);
+        }
+    }
+
+    private boolean isLive(int address) {
+        return arena.getInt(address + GC_WORD) != 0
+                || allocatedDuringMarking != null && allocatedDuringMarking.contains(address);
+    }
+
+    private void addFree(int start, int end) {
+        heap.clear(start, end);
+        heap.fill(start, end);
+        if (end - start >= MIN_CHUNK) {
+            addChunk(start, end - start);
+        }
+    }
+
+    /**
+     * 宿主对象表太大时推进一轮并发收集：没有在收集时开始一轮，标记做完了就重新标记，正在清除就再清除一段。
+     * 表在清除完整个堆时释放
+     */
+    @Override
+    public synchronized boolean collectConcurrently() {
+        // 清除要遍历整个堆，TLAB中没有用的部分先写上空闲空间的头
+        for (GuestThread thread : heap.threads) {
+            retireTlab(thread);
+        }
+        if (marker != null) {
+            if (marker.done) {
+                remark(System.nanoTime());
+            }
+        } else if (sweepPointer < heap.spaceEnd) {
+            sweep(SWEEP_SLICE);
+        } else {
+            initialMark();
+        }
+        return true;
+    }
+
+    /**
+     * 标记赶不上分配时，在暂停中并行标记和清除整个堆：
+     * 先停掉正在进行的并发标记，清掉它留下的标记，再标记、清除，同时清除宿主对象表
+     */
+    @Override
+    public int collect() {
+        int used = getUsed();
+        for (GuestThread thread : heap.threads) {
+            retireTlab(thread);
+        }
+        stopMarking();
+        allocatedDuringMarking = null;
+        for (int address = GuestHeap.HEAP_START; address < heap.spaceEnd; address += heap.sizeAt(address)) {
+            if (!heap.isFiller(address)) {
+                arena.putInt(address + GC_WORD, 0);
+            }
+        }
+        hostObjects.clearMarks();
+        heap.markLive();
+        heap.sweepHostObjects();
+        stats.recordFullCollection();
+
+        chunkCount = 0;
+        freeBytes = 0;
+        sweepPointer = GuestHeap.HEAP_START;
+        sweep(heap.spaceEnd);
+        return used;
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        stopMarking();
+    }
+
+    private void stopMarking() {
+        if (marker != null) {
+            marker.cancelled = true;
+            marker.await();
+            satbQueue.drain();
+            satbQueue.active = false;
+            marker = null;
+        }
+    }
+
+    /**
+     * 初始标记时空闲块的地址范围，按地址排列
+     */
+    private static final class FreeChunks {
+        private final int[] starts;
+        private final int[] ends;
+
+        FreeChunks(int[] starts, int[] sizes) {
+            long[] chunks = new long[starts.length];
+            for (int i = 0; i < chunks.length; i++) {
+                chunks[i] = (long) starts[i] << 32 | sizes[i];
+            }
+            Arrays.sort(chunks);
+            this.starts = new int[chunks.length];
+            this.ends = new int[chunks.length];
+            for (int i = 0; i < chunks.length; i++) {
+                this.starts[i] = (int) (chunks[i] >>> 32);
+                this.ends[i] = this.starts[i] + (int) chunks[i];
+            }
+        }
+
+        boolean contains(int address) {
+            int index = Arrays.binarySearch(starts, address);
+            if (index < 0) {
+                index = -index - 2;
+            }
+            return index >= 0 && address < ends[index];
+        }
+    }
+
+    /**
+     * 并发标记线程。做完之后设置{@link #done}，剩下的工作由客户线程在重新标记时完成。
+     * 只有它写对象头的GC字，客户线程在它结束之后才读
+     */
+    private final class Marker extends Thread {
+        /**
+         * 初始标记时的空闲块，标记期间分配的对象都在里面
+         */
+        final FreeChunks freeChunks;
+        private int[] stack = new int[256];
+        private int stackSize;
+        /**
+         * 找到的宿主对象引用，重新标记时交给宿主对象表
+         */
+        int[] hostRefs = new int[64];
+        int hostRefCount;
+        volatile boolean done;
+        volatile boolean cancelled;
+
+        Marker(FreeChunks freeChunks) {
+            super("guest-concurrent-mark");
+            setDaemon(true);
+            this.freeChunks = freeChunks;
+        }
+
+        @Override
+        public void run() {
+            while (!cancelled) {
+                if (stackSize > 0) {
+                    scan(stack[--stackSize]);
+                    continue;
+                }
+                List<int[]> buffers = satbQueue.takeCompleted();
+                if (buffers.isEmpty()) {
+                    break;
+                }
+                markAll(buffers);
+            }
+            done = true;
+        }
+
+        /**
+         * 重新标记：在客户线程中等标记线程结束，再从写屏障剩下的旧引用出发标记完
+         */
+        void finish() {
+            await();
+            markAll(satbQueue.drain());
+            while (stackSize > 0) {
+                scan(stack[--stackSize]);
+            }
+        }
+
+        void await() {
+            boolean interrupted = false;
+            while (isAlive()) {
+                try {
+                    join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void markAll(List<int[]> buffers) {
+            for (int[] buffer : buffers) {
+                for (int address : buffer) {
+                    mark(address);
+                }
+            }
+        }
+
+        /**
+         * 标记期间新分配的对象不用标记，也不能读：客户线程写它的对象头时没有同步
+         *
+         * @param address 客户对象的地址，或者负的宿主对象引用
+         */
+        void mark(int address) {
+            if (address < 0) {
+                if (hostRefCount == hostRefs.length) {
+                    hostRefs = Arrays.copyOf(hostRefs, hostRefCount * 2);
+                }
+                hostRefs[hostRefCount++] = address;
+                return;
+            }
+            if (freeChunks.contains(address) || arena.getInt(address + GC_WORD) != 0) {
+                return;
+            }
+            arena.putInt(address + GC_WORD, MarkTask.MARKED);
+            if (stackSize == stack.length) {
+                stack = Arrays.copyOf(stack, stackSize * 2);
+            }
+            stack[stackSize++] = address;
+        }
+
+        /**
+         * 客户线程会同时改引用字段，读到的是旧值还是新值都可以：旧值被覆盖之前已经记在SATB队列里了，
+         * 新值要么是标记开始时就活着的对象，要么是新分配的对象。宿主对象的引用也一样
+         */
+        private void scan(int address) {
+            for (int offset : heap.classAt(address).getReferenceOffsets()) {
+                int value = arena.getInt(address + offset);
+                if (value != 0) {
+                    mark(value);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.github.hcsp;
+
+import java.nio.ByteBuffer;
+
+import static com.github.hcsp.GuestHeap.GC_WORD;
+
+/**
+ * 半区复制收集器（Cheney算法）：堆分成两个一样大的半区，只在from空间中分配。回收时把根引用的对象复制到to空间，
+ * 再从头扫描to空间，把扫描到的对象引用的对象也复制过去，扫描指针追上分配指针时所有活对象都复制完了。
+ * 对象复制过去之后，旧对象头的GC字保存新地址，之后再遇到它只需要改引用。最后两个半区互换。
+ * <p>
+ * 死对象不用逐个处理，最后把from空间清零就行了
+ */
+final class CopyingCollector implements GuestHeap.Collector {
+    private final GuestHeap heap;
+    private final ByteBuffer arena;
+    private final int semispaceSize;
+    /**
+     * 复制指针，to空间中下一个对象的地址
+     */
+    private int free;
+
+    CopyingCollector(GuestHeap heap) {
+        this.heap = heap;
+        this.arena = heap.arena();
+        this.semispaceSize = ((heap.spaceEnd - GuestHeap.HEAP_START) / 2) & -8;
+        heap.spaceEnd = GuestHeap.HEAP_START + semispaceSize;
+    }
+
+    @Override
+    public int allocate(GuestThread thread, int size) {
+        return heap.allocateInSpace(size);
+    }
+
+    @Override
+    public int getUsed() {
+        return heap.top - heap.spaceStart;
+    }
+
+    @Override
+    public int collect() {
+        int used = getUsed();
+        int fromStart = heap.spaceStart;
+        int fromTop = heap.top;
+        int toStart = fromStart == GuestHeap.HEAP_START ? GuestHeap.HEAP_START + semispaceSize : GuestHeap.HEAP_START;
+        free = toStart;
+
+        HostObjectTable hostObjects = heap.hostObjects();
+        heap.visitRoots(root -> {
+            if (root > 0) {
+                return copy(root);
+            }
+            hostObjects.mark(root);
+            return root;
+        });
+        for (int scan = toStart; scan < free; scan += heap.sizeAt(scan)) {
+            for (int offset : heap.classAt(scan).getReferenceOffsets()) {
+                int value = arena.getInt(scan + offset);
+                if (value > 0) {
+                    arena.putInt(scan + offset, copy(value));
+                } else if (value < 0) {
+                    hostObjects.mark(value);
+                }
+            }
+        }
+        heap.sweepHostObjects();
+
+        heap.clear(fromStart, fromTop);
+        heap.spaceStart = toStart;
+        heap.spaceEnd = toStart + semispaceSize;
+        heap.top = free;
+        return used;
+    }
+
+    /**
+     * @return 对象在to空间中的地址，第一次遇到时复制过去
+     */
+    private int copy(int address) {
+        int forwarded = arena.getInt(address + GC_WORD);
+        if (forwarded != 0) {
+            return forwarded;
+        }
+        int size = heap.sizeAt(address);
+        int newAddress = free;
+        heap.move(address, newAddress, size);
+        free += size;
+        arena.putInt(address + GC_WORD, newAddress);
+        return newAddress;
+    }
+}
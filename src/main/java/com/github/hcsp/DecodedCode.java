@@ -0,0 +1,344 @@
+package com.github.hcsp;
+
+import com.github.zxh.classpy.classfile.bytecode.Bipush;
+import com.github.zxh.classpy.classfile.bytecode.Branch;
+import com.github.zxh.classpy.classfile.bytecode.Iinc;
+import com.github.zxh.classpy.classfile.bytecode.Instruction;
+import com.github.zxh.classpy.classfile.bytecode.InstructionCp1;
+import com.github.zxh.classpy.classfile.bytecode.InstructionCp2;
+import com.github.zxh.classpy.classfile.bytecode.InstructionU1;
+import com.github.zxh.classpy.classfile.bytecode.InvokeInterface;
+import com.github.zxh.classpy.classfile.bytecode.LookupSwitch;
+import com.github.zxh.classpy.classfile.bytecode.Multianewarray;
+import com.github.zxh.classpy.classfile.bytecode.NewArray;
+import com.github.zxh.classpy.classfile.bytecode.Sipush;
+import com.github.zxh.classpy.classfile.bytecode.TableSwitch;
+import com.github.zxh.classpy.classfile.bytecode.Wide;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.github.hcsp.Bytecodes.*;
+
+/**
+ * 方法的可执行形式：在链接时把classfile中的指令列表解码一次，之后解释器只按下标访问这几个数组。
+ * <p>
+ * 数组的下标是指令下标（第几条指令），不是字节码偏移量。跳转目标在解码时就被翻译成了指令下标，
+ * 所以跳转只需要一次赋值。各条指令的操作数含义如下：
+ * <ul>
+ * <li>xload/xstore（包括xload_n这类短格式，解码后统一成xload）：局部变量下标</li>
+ * <li>bipush/sipush：常量值</li>
+ * <li>ldc/ldc_w（统一成ldc）、ldc2_w、字段和方法指令、new等：常量池下标</li>
+ * <li>跳转指令：目标指令下标</li>
+ * <li>tableswitch/lookupswitch：{@link #switchTables}的下标</li>
+ * <li>iinc：局部变量下标，增量放在{@link #operands2}中</li>
+ * <li>newarray：数组类型；multianewarray的维数放在{@link #operands2}中</li>
+ * </ul>
+ * 需要解析常量池的指令在第一次执行成功后会被{@link #quicken}原地改写成快速指令，
+ * 之后再执行就直接使用解析结果，不再访问常量池。常见的指令序列会在加载时被{@link Superinstructions}合并。
+ */
+class DecodedCode {
+    final int[] opcodes;
+    final int[] operands;
+    final int[] operands2;
+    /**
+     * 每条指令在原始字节码中的偏移量
+     */
+    final int[] pcs;
+    final SwitchTable[] switchTables;
+    /**
+     * 快速指令的解析结果，例如目标方法、字段或者常量，没有被改写的指令为null
+     */
+    final Object[] resolved;
+
+    private DecodedCode(int[] opcodes, int[] operands, int[] operands2, int[] pcs, SwitchTable[] switchTables) {
+        this.opcodes = opcodes;
+        this.operands = operands;
+        this.operands2 = operands2;
+        this.pcs = pcs;
+        this.switchTables = switchTables;
+        this.resolved = new Object[opcodes.length];
+    }
+
+    /**
+     * 把第index条指令改写成快速指令。先写解析结果再写操作码，快速指令执行时解析结果一定已经就绪
+     */
+    void quicken(int index, int quickOpcode, Object target) {
+        resolved[index] = target;
+        opcodes[index] = quickOpcode;
+    }
+
+    /**
+     * 把第index条指令改写成操作数就是结果的快速指令，例如把ldc改写成直接压入常量值
+     */
+    void quicken(int index, int quickOpcode, int operand, int operand2) {
+        operands[index] = operand;
+        operands2[index] = operand2;
+        opcodes[index] = quickOpcode;
+    }
+
+    int length() {
+        return opcodes.length;
+    }
+
+    /**
+     * @return 字节码偏移量pc对应的指令下标，不存在时返回-1
+     */
+    int indexOfPc(int pc) {
+        int index = Arrays.binarySearch(pcs, pc);
+        return index >= 0 ? index : -1;
+    }
+
+    static DecodedCode decode(List<Instruction> instructions) {
+        int[] pcs = new int[instructions.size()];
+        for (int i = 0; i < instructions.size(); i++) {
+            pcs[i] = instructions.get(i).getPc();
+        }
+        int[] pcToIndex = new int[pcs[pcs.length - 1] + 1];
+        Arrays.fill(pcToIndex, -1);
+        for (int i = 0; i < pcs.length; i++) {
+            pcToIndex[pcs[i]] = i;
+        }
+
+        List<SwitchTable> switchTables = new ArrayList<>();
+        int[] opcodes = new int[instructions.size()];
+        int[] operands = new int[instructions.size()];
+        int[] operands2 = new int[instructions.size()];
+        for (int i = 0; i < instructions.size(); i++) {
+            Instruction instruction = instructions.get(i);
+            int opcode = instruction.getOpcode().opcode;
+            int operand = 0;
+            int operand2 = 0;
+            switch (opcode) {
+                case ILOAD_0:
+                case ILOAD_1:
+                case ILOAD_2:
+                case ILOAD_3:
+                    operand = opcode - ILOAD_0;
+                    opcode = ILOAD;
+                    break;
+                case LLOAD_0:
+                case LLOAD_1:
+                case LLOAD_2:
+                case LLOAD_3:
+                    operand = opcode - LLOAD_0;
+                    opcode = LLOAD;
+                    break;
+                case FLOAD_0:
+                case FLOAD_1:
+                case FLOAD_2:
+                case FLOAD_3:
+                    operand = opcode - FLOAD_0;
+                    opcode = FLOAD;
+                    break;
+                case DLOAD_0:
+                case DLOAD_1:
+                case DLOAD_2:
+                case DLOAD_3:
+                    operand = opcode - DLOAD_0;
+                    opcode = DLOAD;
+                    break;
+                case ALOAD_0:
+                case ALOAD_1:
+                case ALOAD_2:
+                case ALOAD_3:
+                    operand = opcode - ALOAD_0;
+                    opcode = ALOAD;
+                    break;
+                case ISTORE_0:
+                case ISTORE_1:
+                case ISTORE_2:
+                case ISTORE_3:
+                    operand = opcode - ISTORE_0;
+                    opcode = ISTORE;
+                    break;
+                case LSTORE_0:
+                case LSTORE_1:
+                case LSTORE_2:
+                case LSTORE_3:
+                    operand = opcode - LSTORE_0;
+                    opcode = LSTORE;
+                    break;
+                case FSTORE_0:
+                case FSTORE_1:
+                case FSTORE_2:
+                case FSTORE_3:
+                    operand = opcode - FSTORE_0;
+                    opcode = FSTORE;
+                    break;
+                case DSTORE_0:
+                case DSTORE_1:
+                case DSTORE_2:
+                case DSTORE_3:
+                    operand = opcode - DSTORE_0;
+                    opcode = DSTORE;
+                    break;
+                case ASTORE_0:
+                case ASTORE_1:
+                case ASTORE_2:
+                case ASTORE_3:
+                    operand = opcode - ASTORE_0;
+                    opcode = ASTORE;
+                    break;
+                case ILOAD:
+                case LLOAD:
+                case FLOAD:
+                case DLOAD:
+                case ALOAD:
+                case ISTORE:
+                case LSTORE:
+                case FSTORE:
+                case DSTORE:
+                case ASTORE:
+                    operand = ((InstructionU1) instruction).getOperand();
+                    break;
+                case WIDE: {
+                    Wide wide = (Wide) instruction;
+                    opcode = wide.getModifiedOpcode().opcode;
+                    operand = wide.getIndex();
+                    operand2 = wide.getConst();
+                }
+                break;
+                case BIPUSH:
+                    operand = ((Bipush) instruction).getOperand();
+                    break;
+                case SIPUSH:
+                    operand = ((Sipush) instruction).getOperand();
+                    break;
+                case LDC:
+                    operand = ((InstructionCp1) instruction).getConstantIndex();
+                    break;
+                case LDC_W:
+                    operand = ((InstructionCp2) instruction).getConstantIndex();
+                    opcode = LDC;
+                    break;
+                case LDC2_W:
+                    operand = ((InstructionCp2) instruction).getConstantIndex();
+                    break;
+                case IINC:
+                    operand = ((Iinc) instruction).getIndex();
+                    operand2 = ((Iinc) instruction).getConst();
+                    break;
+                case IFEQ:
+                case IFNE:
+                case IFLT:
+                case IFGE:
+                case IFGT:
+                case IFLE:
+                case IF_ICMPEQ:
+                case IF_ICMPNE:
+                case IF_ICMPLT:
+                case IF_ICMPGE:
+                case IF_ICMPGT:
+                case IF_ICMPLE:
+                case IF_ACMPEQ:
+                case IF_ACMPNE:
+                case GOTO:
+                case IFNULL:
+                case IFNONNULL:
+                    operand = pcToIndex[((Branch) instruction).getTargetPc()];
+                    break;
+                case TABLESWITCH: {
+                    TableSwitch tableSwitch = (TableSwitch) instruction;
+                    operand = switchTables.size();
+                    switchTables.add(new SwitchTable(tableSwitch.getLow(), null,
+                            toIndices(pcToIndex, tableSwitch.getJumpTargetPcs()),
+                            pcToIndex[tableSwitch.getDefaultTargetPc()]));
+                }
+                break;
+                case LOOKUPSWITCH: {
+                    LookupSwitch lookupSwitch = (LookupSwitch) instruction;
+                    operand = switchTables.size();
+                    switchTables.add(new SwitchTable(0, lookupSwitch.getMatches(),
+                            toIndices(pcToIndex, lookupSwitch.getJumpTargetPcs()),
+                            pcToIndex[lookupSwitch.getDefaultTargetPc()]));
+                }
+                break;
+                case GETSTATIC:
+                case PUTSTATIC:
+                case GETFIELD:
+                case PUTFIELD:
+                    operand = ((InstructionCp2) instruction).getTargetFieldIndex();
+                    break;
+                case INVOKEVIRTUAL:
+                case INVOKESPECIAL:
+                case INVOKESTATIC:
+                    operand = ((InstructionCp2) instruction).getTargetMethodIndex();
+                    break;
+                case INVOKEINTERFACE:
+                    operand = ((InvokeInterface) instruction).getTargetMethodIndex();
+                    break;
+                case NEW:
+                case ANEWARRAY:
+                case CHECKCAST:
+                case INSTANCEOF:
+                    operand = ((InstructionCp2) instruction).getTargetClassIndex();
+                    break;
+                case NEWARRAY:
+                    operand = ((NewArray) instruction).getArrayType();
+                    break;
+                case MULTIANEWARRAY:
+                    operand = ((Multianewarray) instruction).getTargetClassIndex();
+                    operand2 = ((Multianewarray) instruction).getDimensions();
+                    break;
+                default:
+                    // 其他指令没有操作数，或者解释器还不支持，执行到时再报错
+                    break;
+            }
+            opcodes[i] = opcode;
+            operands[i] = operand;
+            operands2[i] = operand2;
+        }
+
+        return new DecodedCode(opcodes, operands, operands2, pcs, switchTables.toArray(new SwitchTable[0]));
+    }
+
+    private static int[] toIndices(int[] pcToIndex, int[] pcs) {
+        int[] indices = new int[pcs.length];
+        for (int i = 0; i < pcs.length; i++) {
+            indices[i] = pcToIndex[pcs[i]];
+        }
+        return indices;
+    }
+
+    /**
+     * tableswitch和lookupswitch的跳转表，目标都已经是指令下标
+     */
+    static class SwitchTable {
+        final int low;
+        /**
+         * lookupswitch的匹配值（有序），tableswitch时为null
+         */
+        final int[] matches;
+        final int[] targets;
+        final int defaultTarget;
+
+        SwitchTable(int low, int[] matches, int[] targets, int defaultTarget) {
+            this.low = low;
+            this.matches = matches;
+            this.targets = targets;
+            this.defaultTarget = defaultTarget;
+        }
+
+        int lookup(int key) {
+            return targetOf(caseIndex(key));
+        }
+
+        /**
+         * @return key匹配的是第几个分支，没有匹配时返回targets.length，表示default
+         */
+        int caseIndex(int key) {
+            if (matches == null) {
+                long offset = (long) key - low;
+                return offset >= 0 && offset < targets.length ? (int) offset : targets.length;
+            }
+            int index = Arrays.binarySearch(matches, key);
+            return index >= 0 ? index : targets.length;
+        }
+
+        int targetOf(int caseIndex) {
+            return caseIndex < targets.length ? targets[caseIndex] : defaultTarget;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.github.hcsp;
+
+public class ExceptionClass {
+    private static int finallyCount;
+    private int value;
+
+    public static void main(String[] args) {
+        int total = 0;
+        for (int i = 0; i < 100; i++) {
+            try {
+                total += check(i);
+            } catch (ValidationException e) {
+                total += e.code;
+            }
+        }
+        System.out.println(total);
+
+        try {
+            deep(5);
+        } catch (IllegalStateException e) {
+            System.out.println(e.getMessage());
+        }
+
+        try {
+            rethrow();
+        } catch (RuntimeException e) {
+            System.out.println(e.getMessage());
+            System.out.println(e.getCause().getMessage());
+        }
+
+        int zero = 0;
+        try {
+            System.out.println(10 / zero);
+        } catch (ArithmeticException e) {
+            System.out.println(e.getMessage());
+        }
+
+        ExceptionClass nothing = null;
+        try {
+            System.out.println(nothing.value);
+        } catch (NullPointerException e) {
+            System.out.println("npe");
+        }
+
+        System.out.println(withFinally());
+
+        try {
+            recurse(0);
+        } catch (StackOverflowError e) {
+            System.out.println("overflow");
+        }
+    }
+
+    private static int check(int i) {
+        if (i % 10 == 0) {
+            throw new ValidationException(i / 10);
+        }
+        return 1;
+    }
+
+    private static void deep(int n) {
+        if (n == 0) {
+            throw new IllegalStateException("bottom");
+        }
+        deep(n - 1);
+    }
+
+    private static void rethrow() {
+        try {
+            deep(2);
+        } catch (IllegalStateException e) {
+            throw new RuntimeException("wrapped", e);
+        }
+    }
+
+    private static int withFinally() {
+        int result = 0;
+        for (int i = 0; i < 3; i++) {
+            try {
+                if (i == 1) {
+                    throw new IllegalArgumentException("skip");
+                }
+                result += i;
+            } catch (IllegalArgumentException e) {
+                result += 100;
+            } finally {
+                finallyCount++;
+            }
+        }
+        return result * 10 + finallyCount;
+    }
+
+    private static int recurse(int n) {
+        return recurse(n + 1) + 1;
+    }
+
+    static class ValidationException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int code;
+
+        ValidationException(int code) {
+            super("invalid");
+            this.code = code;
+        }
+    }
+}
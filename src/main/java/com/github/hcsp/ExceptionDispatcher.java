@@ -0,0 +1,206 @@
+package com.github.hcsp;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 抛出客户异常：沿着{@link GuestThread}中的栈帧展开，直到找到能处理它的处理器。
+ * <p>
+ * 展开不借助宿主的异常。每个栈帧只按当前指令的下标查一次{@link ExceptionTable}，没有处理器的方法连这一步都不需要，
+ * 所以抛出的代价和实际展开的栈帧数成正比，不抛出时执行引擎没有任何额外的工作。
+ * <p>
+ * 虚拟机自己检查出来的错误（空指针、栈溢出、整数除以零等）以宿主异常的形式抛出，执行引擎在分派循环中捕获之后，
+ * 交给{@link #dispatch}转换成客户异常对象再展开。其中的隐式异常在同一条指令上抛出足够多次之后，
+ * 可以改为抛出预先分配的对象，见{@link VMOptions#setOmitStackTraceInFastThrow}
+ */
+final class ExceptionDispatcher {
+    /**
+     * 可以使用预先分配的对象的隐式异常。虚拟机还不支持数组和checkcast，所以只有这两种
+     */
+    private static final Set<String> FAST_THROW_EXCEPTIONS = new HashSet<>(Arrays.asList(
+            "java.lang.NullPointerException",
+            "java.lang.ArithmeticException"));
+
+    private final Resolver resolver;
+    private final VMOptions options;
+    private final VMStats stats;
+    private final GuestHeap heap;
+    /**
+     * 异常类名 -> 预先分配的异常对象的地址
+     */
+    private final Map<String, Integer> preallocated = new ConcurrentHashMap<>();
+    private volatile int messageOffset = -1;
+    private volatile int backtraceOffset = -1;
+
+    ExceptionDispatcher(Resolver resolver, VMOptions options, VMStats stats, GuestHeap heap) {
+        this.resolver = resolver;
+        this.options = options;
+        this.stats = stats;
+        this.heap = heap;
+        // 预先分配的异常在所有抛出点共用，一直活着
+        heap.addRoots(visitor -> preallocated.replaceAll((className, throwable) -> visitor.applyAsInt(throwable)));
+        HostBindings hostBindings = resolver.getHostBindings();
+        hostBindings.addInternalMethod(BootstrapClasses.THROWABLE, BootstrapClasses.CAPTURE_BACKTRACE, BootstrapClasses.BACKTRACE_DESCRIPTOR, frame -> {
+            int throwable = frame.popRef();
+            // 栈顶是fillInStackTrace，会被跳过，所以用哪个指令下标都可以
+            setBacktrace(throwable, Backtrace.capture(frame, frame.pc, heap.classAt(throwable)));
+        });
+        // 和客户的System.err写到同一个缓冲区
+        PrintStream err = (PrintStream) hostBindings.getStaticField("java/lang/System", "err");
+        hostBindings.addInternalMethod(BootstrapClasses.THROWABLE, BootstrapClasses.PRINT_BACKTRACE, BootstrapClasses.BACKTRACE_DESCRIPTOR,
+                frame -> printStackTrace(frame.popRef(), err));
+    }
+
+    /**
+     * athrow
+     *
+     * @param index     athrow的指令下标
+     * @param exception 操作数栈顶的异常对象，为null时抛出NullPointerException
+     * @return 处理器所在的栈帧，pc已经指向处理器
+     */
+    StackFrame throwException(StackFrame frame, int index, int exception) {
+        int throwable = exception == 0 ? implicitException(frame, index, "java.lang.NullPointerException", null) : exception;
+        return unwind(frame, index, throwable);
+    }
+
+    /**
+     * 把执行第index条指令时虚拟机抛出的错误转换成客户异常并抛出
+     *
+     * @param e {@link GuestException}，或者整数除以零时宿主抛出的{@link ArithmeticException}
+     * @return 处理器所在的栈帧，pc已经指向处理器
+     */
+    StackFrame dispatch(StackFrame frame, int index, RuntimeException e) {
+        int throwable;
+        if (e instanceof GuestException) {
+            throwable = implicitException(frame, index, ((GuestException) e).getGuestClassName(), ((GuestException) e).getGuestMessage());
+        } else if (e instanceof ArithmeticException) {
+            // 宿主的JIT编译了解释器之后，可能抛出预先分配的没有detailMessage的异常，所以不用宿主异常的消息
+            throwable = implicitException(frame, index, "java.lang.ArithmeticException", "/ by zero");
+        } else {
+            throw e;
+        }
+        return unwind(frame, index, throwable);
+    }
+
+    /**
+     * 创建虚拟机抛出的异常对象。打开了{@link VMOptions#isOmitStackTraceInFastThrow()}并且这条指令已经抛出过足够多次时，
+     * 返回预先分配的对象，不记录栈轨迹
+     *
+     * @return 异常对象的地址
+     */
+    private int implicitException(StackFrame frame, int index, String className, String message) {
+        if (options.isOmitStackTraceInFastThrow() && FAST_THROW_EXCEPTIONS.contains(className)
+                && frame.method.profile.recordImplicitException(index) > options.getFastThrowThreshold()) {
+            stats.recordFastThrow();
+            Integer throwable = preallocated.get(className);
+            if (throwable == null) {
+                // 分配可能触发收集，收集时要改写表中的地址，所以不能在computeIfAbsent中分配
+                throwable = newThrowable(frame.thread, className, null, Backtrace.EMPTY);
+                preallocated.put(className, throwable);
+            }
+            return throwable;
+        }
+        return newThrowable(frame.thread, className, message, Backtrace.capture(frame, index, null));
+    }
+
+    /**
+     * 从frame的第index条指令开始找处理器。找到时清空那个栈帧的操作数栈，压入异常对象并跳到处理器；
+     * 弹出调用者的栈帧之后，在调用者中按调用指令的下标继续找。
+     * &lt;clinit&gt;中没有被捕获的异常不再向调用者传播，和main中没有被捕获的异常一样从虚拟机中抛出
+     *
+     * @throws GuestException 没有处理器时
+     */
+    private StackFrame unwind(StackFrame frame, int index, int throwable) {
+        RuntimeClass thrownClass = heap.classAt(throwable);
+        int unwound = 0;
+        while (true) {
+            RuntimeMethod method = frame.method;
+            ExceptionTable exceptionTable = method.getExceptionTable();
+            int handler = exceptionTable == null ? -1 : exceptionTable.findHandler(index, thrownClass, resolver);
+            if (handler >= 0) {
+                stats.recordExceptionThrown(unwound);
+                frame.clearOperandStack();
+                frame.pushRef(throwable);
+                frame.pc = handler;
+                return frame;
+            }
+            if (method.isClassInitializer() || frame.depth == 0) {
+                stats.recordExceptionThrown(unwound);
+                throw uncaught(throwable, method);
+            }
+            frame = frame.thread.popFrame();
+            unwound++;
+            // 调用者的pc已经指向调用指令的下一条
+            index = frame.pc - 1;
+        }
+    }
+
+    private GuestException uncaught(int throwable, RuntimeMethod method) {
+        String className = heap.classAt(throwable).getName();
+        String message = (String) heap.getReference(throwable, messageOffset());
+        Backtrace backtrace = (Backtrace) heap.getReference(throwable, backtraceOffset());
+        if (method.isClassInitializer()) {
+            return new GuestException("java.lang.ExceptionInInitializerError", method.getRuntimeClass().getName() + ": " + className + (message == null ? "" : ": " + message), backtrace);
+        }
+        return new GuestException(className, message, backtrace);
+    }
+
+    /**
+     * Throwable.printStackTrace()，到这时才把栈轨迹换算成行号
+     */
+    private void printStackTrace(int throwable, PrintStream out) {
+        String className = heap.classAt(throwable).getName();
+        String message = (String) heap.getReference(throwable, messageOffset());
+        out.println(message == null ? className : className + ": " + message);
+        Backtrace backtrace = (Backtrace) heap.getReference(throwable, backtraceOffset());
+        if (backtrace != null) {
+            for (StackTraceElement element : backtrace.getStackTrace()) {
+                out.println("\tat " + element);
+            }
+        }
+    }
+
+    /**
+     * 创建一个异常对象。异常类都是{@link BootstrapClasses}生成的，没有&lt;clinit&gt;，不需要执行初始化。
+     * 消息和栈轨迹是宿主对象，分配之后才登记到宿主对象表中，分配触发的收集不会释放它们
+     *
+     * @return 异常对象的地址
+     */
+    private int newThrowable(GuestThread thread, String className, String message, Backtrace backtrace) {
+        RuntimeClass runtimeClass = resolver.getMetaspace().loadClass(className);
+        runtimeClass.beginInitialization();
+        int throwable = heap.allocate(thread, runtimeClass);
+        heap.putReference(throwable, messageOffset(), message);
+        setBacktrace(throwable, backtrace);
+        return throwable;
+    }
+
+    private void setBacktrace(int throwable, Backtrace backtrace) {
+        heap.putReference(throwable, backtraceOffset(), backtrace);
+        if (backtrace != Backtrace.EMPTY) {
+            stats.recordBacktraceCaptured();
+        }
+    }
+
+    private int messageOffset() {
+        if (messageOffset < 0) {
+            messageOffset = throwableField("detailMessage");
+        }
+        return messageOffset;
+    }
+
+    private int backtraceOffset() {
+        if (backtraceOffset < 0) {
+            backtraceOffset = throwableField(BootstrapClasses.BACKTRACE_FIELD);
+        }
+        return backtraceOffset;
+    }
+
+    private int throwableField(String name) {
+        return resolver.getMetaspace().loadClass(BootstrapClasses.THROWABLE).findField(name).getOffset();
+    }
+}
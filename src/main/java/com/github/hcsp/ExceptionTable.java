@@ -0,0 +1,104 @@
+package com.github.hcsp;
+
+import com.github.zxh.classpy.classfile.attribute.CodeAttribute;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 方法的异常处理器表，在链接时由classfile的exception_table生成，只有声明了处理器的方法才有。
+ * <p>
+ * 范围和处理器的位置都翻译成了指令下标，并且按指令下标建好了索引：{@link #handlersAt}的第i项是覆盖第i条指令的处理器，
+ * 顺序和exception_table中一致。抛出异常时只看这一项，不需要遍历整张表。
+ * catch_type引用的类第一次匹配时才加载，之后缓存在处理器上。
+ */
+final class ExceptionTable {
+    private static final Handler[] NO_HANDLERS = new Handler[0];
+
+    private final RuntimeClass referrer;
+    private final Handler[][] handlersAt;
+
+    private ExceptionTable(RuntimeClass referrer, Handler[][] handlersAt) {
+        this.referrer = referrer;
+        this.handlersAt = handlersAt;
+    }
+
+    /**
+     * @return 方法的处理器表，exception_table为空时返回null
+     */
+    static ExceptionTable build(RuntimeClass referrer, List<CodeAttribute.ExceptionTableEntry> entries, DecodedCode code) {
+        if (entries.isEmpty()) {
+            return null;
+        }
+        List<Handler> handlers = new ArrayList<>();
+        for (CodeAttribute.ExceptionTableEntry entry : entries) {
+            handlers.add(new Handler(indexOf(code, entry.getStartPc()), indexOf(code, entry.getEndPc()),
+                    code.indexOfPc(entry.getHandlerPc()), entry.getCatchType()));
+        }
+        Handler[][] handlersAt = new Handler[code.length()][];
+        for (int index = 0; index < handlersAt.length; index++) {
+            List<Handler> covering = new ArrayList<>();
+            for (Handler handler : handlers) {
+                if (handler.start <= index && index < handler.end) {
+                    covering.add(handler);
+                }
+            }
+            Handler[] array = covering.isEmpty() ? NO_HANDLERS : covering.toArray(NO_HANDLERS);
+            // 相邻的指令通常被同样的处理器覆盖，共用一个数组
+            handlersAt[index] = index > 0 && Arrays.equals(handlersAt[index - 1], array) ? handlersAt[index - 1] : array;
+        }
+        return new ExceptionTable(referrer, handlersAt);
+    }
+
+    /**
+     * end_pc可以等于字节码长度，这时没有对应的指令，下标就是指令条数
+     */
+    private static int indexOf(DecodedCode code, int pc) {
+        int index = code.indexOfPc(pc);
+        return index >= 0 ? index : code.length();
+    }
+
+    /**
+     * @param index       抛出异常的指令下标
+     * @param thrownClass 异常对象的类
+     * @return 处理器的指令下标，没有匹配的处理器时返回-1
+     */
+    int findHandler(int index, RuntimeClass thrownClass, Resolver resolver) {
+        for (Handler handler : handlersAt[index]) {
+            if (handler.catchTypeIndex == 0) {
+                return handler.target;
+            }
+            RuntimeClass catchType = handler.catchType;
+            if (catchType == null) {
+                catchType = resolver.resolveClass(referrer, handler.catchTypeIndex);
+                handler.catchType = catchType;
+            }
+            if (thrownClass.isSubclassOf(catchType)) {
+                return handler.target;
+            }
+        }
+        return -1;
+    }
+
+    private static final class Handler {
+        /**
+         * 覆盖的指令范围[start, end)
+         */
+        final int start;
+        final int end;
+        final int target;
+        /**
+         * catch_type在常量池中的下标，0表示捕获所有异常（finally）
+         */
+        final int catchTypeIndex;
+        RuntimeClass catchType;
+
+        Handler(int start, int end, int target, int catchTypeIndex) {
+            this.start = start;
+            this.end = end;
+            this.target = target;
+            this.catchTypeIndex = catchTypeIndex;
+        }
+    }
+}
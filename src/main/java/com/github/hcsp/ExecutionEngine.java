@@ -0,0 +1,17 @@
+package com.github.hcsp;
+
+/**
+ * 执行客户代码的方式
+ */
+public enum ExecutionEngine {
+    /**
+     * 解释器：每条指令都经过一次switch分派
+     */
+    INTERPRETER,
+    /**
+     * 闭包编译：方法第一次执行时被编译成一组预先绑定好操作数的Java对象，执行时直接调用它们
+     *
+     * @see ClosureCompiler
+     */
+    CLOSURE
+}
@@ -0,0 +1,73 @@
+package com.github.hcsp;
+
+public class FastThrowClass {
+    private int value;
+
+    public static void main(String[] args) {
+        int zero = 0;
+        int withoutMessage = 0;
+        for (int i = 0; i < 1000; i++) {
+            try {
+                withoutMessage += i / zero;
+            } catch (ArithmeticException e) {
+                if (e.getMessage() == null) {
+                    withoutMessage++;
+                }
+            }
+        }
+        System.out.println(withoutMessage);
+
+        FastThrowClass nothing = null;
+        int npes = 0;
+        for (int i = 0; i < 1000; i++) {
+            try {
+                npes += nothing.value;
+            } catch (NullPointerException e) {
+                npes++;
+            }
+        }
+        System.out.println(npes);
+
+        int signals = 0;
+        for (int i = 0; i < 1000; i++) {
+            try {
+                signal(i);
+            } catch (Signal e) {
+                signals += e.value;
+            }
+        }
+        System.out.println(signals);
+
+        try {
+            fail();
+        } catch (IllegalStateException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void signal(int i) {
+        throw new Signal(i % 3);
+    }
+
+    private static void fail() {
+        throw new IllegalStateException("failed");
+    }
+
+    /**
+     * 用异常做控制流时常见的写法：覆盖fillInStackTrace，不记录栈轨迹
+     */
+    static class Signal extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int value;
+
+        Signal(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+}
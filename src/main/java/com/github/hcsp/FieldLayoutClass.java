@@ -0,0 +1,60 @@
+package com.github.hcsp;
+
+public class FieldLayoutClass {
+    public static void main(String[] args) {
+        Derived derived = new Derived();
+        derived.b = (byte) 200;
+        derived.s = -1234;
+        derived.l = Long.MIN_VALUE;
+        derived.o = derived;
+        derived.z = true;
+        derived.c = 'Z';
+        derived.i = -7;
+        derived.f = 1.5f;
+        derived.d = -0.25;
+        derived.name = "derived";
+
+        System.out.println(derived.b);
+        System.out.println(derived.s);
+        System.out.println(derived.l);
+        System.out.println(derived.o == derived);
+        System.out.println(derived.z);
+        System.out.println(derived.c);
+        System.out.println(derived.i);
+        System.out.println(derived.f);
+        System.out.println(derived.d);
+        System.out.println(derived.name);
+
+        // 同一个long中相邻的字段互不影响
+        long sum = 0;
+        for (int n = 0; n < 5000; n++) {
+            derived.c++;
+            derived.z = !derived.z;
+            derived.i += n;
+            sum += derived.sum();
+        }
+        System.out.println(sum);
+        System.out.println((int) derived.c);
+        System.out.println(derived.b);
+    }
+
+    static class Base {
+        byte b;
+        long l;
+        Object o;
+        short s;
+    }
+
+    static class Derived extends Base {
+        boolean z;
+        int i;
+        char c;
+        double d;
+        String name;
+        float f;
+
+        int sum() {
+            return b + s + i + c + (z ? 1 : 0);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.github.hcsp;
+
+/**
+ * 条件表达式的两个分支在序列的中间汇合，跳转目标落在被合并成超级指令的序列的第二条指令上
+ */
+public class FusedBranchClass {
+    public static void main(String[] args) {
+        int total = 0;
+        for (int i = 0; i < 10; i++) {
+            total += plusOne(i % 2 == 0, i, 100);
+            if (lessThan(i % 3 == 0, i, 100, 5)) {
+                total += 10;
+            }
+            total += choose(i % 4 == 0, i, -i);
+        }
+        System.out.println(total);
+    }
+
+    /**
+     * iload b; iconst_1; iadd被合并，goto跳到其中的iconst_1
+     */
+    private static int plusOne(boolean flag, int a, int b) {
+        return (flag ? a : b) + 1;
+    }
+
+    /**
+     * iload b; iload c; if_icmpge被合并，goto跳到其中的第二个iload；
+     * iconst_0; ireturn被合并，goto跳到其中的ireturn
+     */
+    private static boolean lessThan(boolean flag, int a, int b, int c) {
+        return (flag ? a : b) < c;
+    }
+
+    /**
+     * iload b; ireturn被合并，goto跳到其中的ireturn
+     */
+    private static int choose(boolean flag, int a, int b) {
+        return flag ? a : b;
+    }
+}
@@ -0,0 +1,36 @@
+package com.github.hcsp;
+
+/**
+ * 回收{@link GuestHeap}的方式。前三种都是stop-the-world的：分配失败时暂停客户线程，回收完再继续；
+ * 并发标记-清除只在标记的开始和结束时短暂地暂停
+ */
+public enum GarbageCollector {
+    /**
+     * 复制：堆分成两个半区，只在其中一个里分配，回收时把活对象复制到另一个。
+     * 耗时只和活对象有关，适合大部分对象很快就死掉的程序，代价是只能用一半的堆
+     *
+     * @see CopyingCollector
+     */
+    COPYING,
+    /**
+     * 标记-整理：标记活对象，再把它们滑动到堆的开头。整个堆都可以用，对象的相对顺序不变，
+     * 但每次都要扫描整个堆，适合活对象多、存活时间长的程序
+     *
+     * @see MarkCompactCollector
+     */
+    MARK_COMPACT,
+    /**
+     * 分代：新对象在年轻代的eden中分配，年轻代用复制回收，活过几次的对象晋升到老年代；
+     * 老年代放不下时整理整个堆。大部分对象都很快死掉时，每次只需要处理很少的活对象
+     *
+     * @see GenerationalCollector
+     */
+    GENERATIONAL,
+    /**
+     * 并发标记-清除：对象不移动，标记在一个宿主线程中和客户线程同时进行，之后分配时逐段清除。
+     * 暂停时间只和根的数量以及标记期间被覆盖的引用数有关，不随堆的大小增长，代价是空闲空间会有碎片
+     *
+     * @see ConcurrentMarkSweepCollector
+     */
+    CONCURRENT_MARK_SWEEP
+}
@@ -0,0 +1,86 @@
+package com.github.hcsp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 并行垃圾收集中的一个任务，在{@link GuestHeap#runGcTasks}的工作线程中执行。
+ * <p>
+ * 任务先做{@link #prepare()}中的初始工作，例如处理一段根或者一段卡，找到的对象压到任务自己的栈里，
+ * 再逐个{@link #process}，处理时可能压入更多对象。栈中的对象超过{@link #SPLIT_THRESHOLD}个时，
+ * 把栈底的一半分给一个新任务fork出去，空闲的工作线程会把它偷走
+ */
+abstract class GcTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    static final int SPLIT_THRESHOLD = 64;
+
+    private int[] stack;
+    private int size;
+    private List<GcTask> forked;
+
+    GcTask() {
+        this(new int[16], 0);
+    }
+
+    GcTask(int[] stack, int size) {
+        this.stack = stack;
+        this.size = size;
+    }
+
+    final void push(int address) {
+        if (size == stack.length) {
+            stack = Arrays.copyOf(stack, size * 2);
+        }
+        stack[size++] = address;
+    }
+
+    @Override
+    protected final void compute() {
+        prepare();
+        while (size > 0) {
+            if (size > SPLIT_THRESHOLD) {
+                split();
+            }
+            process(stack[--size]);
+        }
+        if (forked != null) {
+            for (int i = forked.size() - 1; i >= 0; i--) {
+                forked.get(i).join();
+            }
+        }
+    }
+
+    /**
+     * 栈底的对象是最早找到的，它们引出的对象图通常更大，分出去更值得偷
+     */
+    private void split() {
+        int half = size / 2;
+        GcTask task = newTask(Arrays.copyOf(stack, Math.max(half, 16)), half);
+        System.arraycopy(stack, half, stack, 0, size - half);
+        size -= half;
+        if (forked == null) {
+            forked = new ArrayList<>();
+        }
+        forked.add(task);
+        task.fork();
+    }
+
+    /**
+     * 任务开始时的工作，默认什么也不做
+     */
+    void prepare() {
+    }
+
+    /**
+     * 处理栈中的一个对象
+     */
+    abstract void process(int address);
+
+    /**
+     * @return 接着处理stack中前size个对象的新任务
+     */
+    abstract GcTask newTask(int[] stack, int size);
+}
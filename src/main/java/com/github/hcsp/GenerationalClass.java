@@ -0,0 +1,48 @@
+package com.github.hcsp;
+
+public class GenerationalClass {
+    public static void main(String[] args) {
+        // 一直活着的链表，很快就会晋升到老年代
+        Slot head = null;
+        for (int i = 0; i < 256; i++) {
+            Slot slot = new Slot();
+            slot.next = head;
+            head = slot;
+        }
+
+        // 大量马上就死掉的临时对象，每16个中有一个被老年代中的链表节点引用
+        Slot slot = head;
+        long garbage = 0;
+        for (int i = 0; i < 100000; i++) {
+            Value temp = new Value(i);
+            garbage += temp.value;
+            if (i % 16 == 0) {
+                slot.value = new Value(i);
+                slot = slot.next == null ? head : slot.next;
+            }
+        }
+
+        long sum = 0;
+        int count = 0;
+        for (Slot s = head; s != null; s = s.next) {
+            sum += s.value.value;
+            count++;
+        }
+        System.out.println(garbage);
+        System.out.println(count);
+        System.out.println(sum);
+    }
+
+    static class Slot {
+        Slot next;
+        Value value;
+    }
+
+    static class Value {
+        long value;
+
+        Value(long value) {
+            this.value = value;
+        }
+    }
+}
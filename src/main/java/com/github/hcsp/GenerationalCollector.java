@@ -0,0 +1,538 @@
+package com.github.hcsp;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.github.hcsp.GuestHeap.CARD_SHIFT;
+import static com.github.hcsp.GuestHeap.CLEAN;
+import static com.github.hcsp.GuestHeap.DIRTY;
+import static com.github.hcsp.GuestHeap.GC_WORD;
+
+/**
+ * 分代收集器。堆从低到高依次是：
+ * <pre>
+ * eden | survivor | survivor | 老年代
+ * </pre>
+ * 新对象在eden中分配：每个客户线程从eden中领一块TLAB，在里面移动指针，只有换TLAB时才需要同步。
+ * <p>
+ * eden满了时做年轻代收集：把eden和from survivor中的活对象复制到to survivor，年龄加一；
+ * 年龄超过{@link VMOptions#getMaxTenuringThreshold()}或者to survivor放不下的对象晋升到老年代。
+ * 根除了栈帧和静态字段，还有老年代中指向年轻代的引用，它们都在写屏障标记的脏卡里，所以只扫描脏卡中的老对象。
+ * 写屏障标记的是对象头所在的卡，所以扫描一张卡就是扫描从这张卡开始的所有对象，{@link #firstObjectInCard}记录第一个对象在哪里。
+ * <p>
+ * 复制由多个工作线程并行完成：根和卡分成若干段，每个任务复制自己那一段引用的对象，再扫描复制出来的对象。
+ * 工作线程用{@link GuestHeap#claim}认领要复制的对象，在to survivor和老年代中用CAS移动指针分配，所以每个对象只复制一次。
+ * <p>
+ * 老年代剩下的空间放不下整个年轻代时，年轻代收集可能晋升失败，这时改为整理整个堆：
+ * 标记所有活对象，老对象滑动到老年代的开头，年轻代的活对象全部晋升到它们后面，老年代放不下的留在eden的开头。
+ * <p>
+ * 年轻代收集不扫描老对象，老对象引用的宿主对象靠写屏障和晋升时记下的老年代标记留在宿主对象表中，
+ * 直到整理整个堆时才重新计算。年轻代收集之后表仍然太大时，说明死掉的老对象引用着很多宿主对象，接着整理整个堆
+ */
+final class GenerationalCollector implements GuestHeap.Collector {
+    private static final int CARD_SIZE = 1 << CARD_SHIFT;
+
+    private final GuestHeap heap;
+    private final ByteBuffer arena;
+    private final HostObjectTable hostObjects;
+    private final VMStats stats;
+    private final int tenuringThreshold;
+    private final int tlabSize;
+
+    private final int edenStart;
+    private final int edenEnd;
+    private int edenTop;
+    private final int survivorSize;
+    private int fromStart;
+    private int fromTop;
+    private int toStart;
+    private final int oldStart;
+    private final int oldEnd;
+    private int oldTop;
+    /**
+     * 每张卡中第一个对象的地址，没有对象从这张卡开始时为0
+     */
+    private final int[] firstObjectInCard;
+
+    /**
+     * 年轻代收集时to survivor和老年代中下一个对象的地址，工作线程用CAS分配
+     */
+    private final AtomicInteger survivorTop = new AtomicInteger();
+    private final AtomicInteger promotionTop = new AtomicInteger();
+    private final AtomicInteger promoted = new AtomicInteger();
+
+    GenerationalCollector(GuestHeap heap, VMOptions options, VMStats stats) {
+        this.heap = heap;
+        this.arena = heap.arena();
+        this.hostObjects = heap.hostObjects();
+        this.stats = stats;
+        this.tenuringThreshold = Math.min(options.getMaxTenuringThreshold(), GuestHeap.MAX_AGE);
+
+        int total = heap.spaceEnd - GuestHeap.HEAP_START;
+        int youngSize = (total / (options.getNewRatio() + 1)) & -8;
+        this.survivorSize = (youngSize / (options.getSurvivorRatio() + 2)) & -8;
+        this.edenStart = GuestHeap.HEAP_START;
+        this.edenEnd = edenStart + youngSize - 2 * survivorSize;
+        this.edenTop = edenStart;
+        this.fromStart = edenEnd;
+        this.fromTop = fromStart;
+        this.toStart = fromStart + survivorSize;
+        this.oldStart = toStart + survivorSize;
+        this.oldEnd = heap.spaceEnd;
+        this.oldTop = oldStart;
+        this.tlabSize = Math.min(options.getTlabSize() & -8, edenEnd - edenStart);
+
+        int cardCount = (oldEnd - oldStart + CARD_SIZE - 1) >>> CARD_SHIFT;
+        this.firstObjectInCard = new int[cardCount];
+        heap.cards = new byte[cardCount];
+        heap.cardBase = oldStart;
+    }
+
+    @Override
+    public synchronized int allocate(GuestThread thread, int size) {
+        retireTlab(thread);
+        if (size > edenEnd - edenTop) {
+            heap.collect();
+        }
+        if (size > edenEnd - edenTop) {
+            // 比eden还大的对象，或者整理之后eden中留下了老年代放不下的对象
+            return allocateOld(size);
+        }
+        int address = edenTop;
+        if (size > tlabSize) {
+            edenTop += size;
+            return address;
+        }
+        int length = Math.min(tlabSize, edenEnd - edenTop);
+        edenTop += length;
+        thread.tlabTop = address + size;
+        thread.tlabEnd = address + length;
+        stats.recordTlabRefill();
+        return address;
+    }
+
+    private int allocateOld(int size) {
+        if (size > oldEnd - oldTop) {
+            return 0;
+        }
+        int address = oldTop;
+        oldTop += size;
+        recordObjectStart(address);
+        return address;
+    }
+
+    /**
+     * TLAB没有用完的部分填成空闲空间，eden仍然可以逐个对象地遍历
+     */
+    private void retireTlab(GuestThread thread) {
+        if (thread.tlabTop < thread.tlabEnd) {
+            heap.fill(thread.tlabTop, thread.tlabEnd);
+        }
+        thread.tlabTop = 0;
+        thread.tlabEnd = 0;
+    }
+
+    @Override
+    public int getUsed() {
+        return (edenTop - edenStart) + (fromTop - fromStart) + (oldTop - oldStart);
+    }
+
+    @Override
+    public int collect() {
+        for (GuestThread thread : heap.threads) {
+            retireTlab(thread);
+        }
+        int youngUsed = (edenTop - edenStart) + (fromTop - fromStart);
+        // 最坏情况下年轻代的对象全部晋升，老年代放不下时直接整理整个堆
+        if (youngUsed <= oldEnd - oldTop) {
+            collectYoung();
+            heap.sweepHostObjects();
+            if (!heap.isHostObjectTableFull()) {
+                return youngUsed;
+            }
+        }
+        int used = getUsed();
+        collectFull();
+        heap.sweepHostObjects();
+        return used;
+    }
+
+    private void collectYoung() {
+        survivorTop.set(toStart);
+        promotionTop.set(oldTop);
+        promoted.set(0);
+        int oldScan = oldTop;
+        List<EvacuationTask> tasks = new ArrayList<>();
+        int[] roots = heap.rootReferences();
+        for (int from = 0, chunk = heap.chunkSize(roots.length); from < roots.length; from += chunk) {
+            tasks.add(new RootEvacuationTask(roots, from, Math.min(from + chunk, roots.length)));
+        }
+        List<CardScanTask> cardTasks = new ArrayList<>();
+        int cardCount = cards(oldScan);
+        for (int from = 0, chunk = heap.chunkSize(cardCount); from < cardCount; from += chunk) {
+            cardTasks.add(new CardScanTask(from, Math.min(from + chunk, cardCount), oldScan));
+        }
+        tasks.addAll(cardTasks);
+        heap.runGcTasks(tasks);
+
+        oldTop = promotionTop.get();
+        int dirtyCards = 0;
+        for (CardScanTask task : cardTasks) {
+            dirtyCards += task.dirtyCards;
+        }
+        // 刚晋升的对象已经扫描过了，这里只记录它们从哪张卡开始，还引用着年轻代的对象所在的卡是脏的，
+        // 它们引用的宿主对象记上老年代标记
+        for (int address = oldScan; address < oldTop; address += heap.sizeAt(address)) {
+            recordObjectStart(address);
+            if (scanOldReferences(address)) {
+                heap.cards[cardOf(address)] = DIRTY;
+            }
+        }
+
+        heap.updateRoots(address -> inEden(address) || inFrom(address) ? arena.getInt(address + GC_WORD) : address);
+        heap.clearGcBits(edenStart, edenTop);
+        heap.clearGcBits(fromStart, fromTop);
+        heap.clear(edenStart, edenTop);
+        heap.clear(fromStart, fromTop);
+        edenTop = edenStart;
+        int oldFrom = fromStart;
+        fromStart = toStart;
+        fromTop = survivorTop.get();
+        toStart = oldFrom;
+        stats.recordMinorCollection(promoted.get(), dirtyCards);
+    }
+
+    /**
+     * @return 老年代中limit之前的对象占了几张卡
+     */
+    private int cards(int limit) {
+        return (limit - oldStart + CARD_SIZE - 1) >>> CARD_SHIFT;
+    }
+
+    /**
+     * 把对象中指向eden和from survivor的引用改成复制之后的地址，复制出来的对象压到task的栈里，引用的宿主对象被标记
+     *
+     * @return 对象是否还引用着年轻代
+     */
+    private boolean scanYoungReferences(GcTask task, int address) {
+        boolean young = false;
+        for (int offset : heap.classAt(address).getReferenceOffsets()) {
+            int value = arena.getInt(address + offset);
+            if (value > 0 && value < oldStart) {
+                value = copy(task, value);
+                arena.putInt(address + offset, value);
+                young |= value < oldStart;
+            } else if (value < 0) {
+                hostObjects.mark(value);
+            }
+        }
+        return young;
+    }
+
+    /**
+     * 认领了对象的工作线程复制它，再把新地址写到旧对象的GC字里；同时找到这个对象的其他线程等它写完
+     *
+     * @return 对象复制之后的地址。不在eden和from survivor中的对象不动
+     */
+    private int copy(GcTask task, int address) {
+        if (!inEden(address) && !inFrom(address)) {
+            return address;
+        }
+        if (heap.claim(address)) {
+            int size = heap.sizeAt(address);
+            int age = heap.ageAt(address) + 1;
+            int newAddress = age <= tenuringThreshold ? bump(survivorTop, toStart + survivorSize, size) : 0;
+            if (newAddress != 0) {
+                heap.move(address, newAddress, size);
+                heap.setAge(newAddress, age);
+            } else {
+                // 收集前检查过老年代能放下整个年轻代，这里一定成功
+                newAddress = bump(promotionTop, oldEnd, size);
+                heap.move(address, newAddress, size);
+                promoted.addAndGet(size);
+            }
+            arena.putInt(address + GC_WORD, newAddress);
+            heap.publishForwarding(address);
+            task.push(newAddress);
+            return newAddress;
+        }
+        return heap.awaitForwarding(address);
+    }
+
+    /**
+     * @return 在top到end之间分配的size字节的地址，放不下时返回0
+     */
+    private static int bump(AtomicInteger top, int end, int size) {
+        while (true) {
+            int address = top.get();
+            if (size > end - address) {
+                return 0;
+            }
+            if (top.compareAndSet(address, address + size)) {
+                return address;
+            }
+        }
+    }
+
+    /**
+     * 扫描复制出来的对象
+     */
+    private class EvacuationTask extends GcTask {
+        private static final long serialVersionUID = 1L;
+
+        EvacuationTask() {
+        }
+
+        EvacuationTask(int[] stack, int size) {
+            super(stack, size);
+        }
+
+        @Override
+        void process(int address) {
+            scanYoungReferences(this, address);
+        }
+
+        @Override
+        GcTask newTask(int[] stack, int size) {
+            return new EvacuationTask(stack, size);
+        }
+    }
+
+    /**
+     * 复制roots中[from, to)这一段根引用的对象
+     */
+    private final class RootEvacuationTask extends EvacuationTask {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] roots;
+        private final int from;
+        private final int to;
+
+        RootEvacuationTask(int[] roots, int from, int to) {
+            this.roots = roots;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        void prepare() {
+            for (int i = from; i < to; i++) {
+                copy(this, roots[i]);
+            }
+        }
+    }
+
+    /**
+     * 扫描[from, to)这几张卡中的脏卡，只包括收集开始前就在老年代中的对象，也就是limit之前的对象。
+     * 扫描之后还引用着年轻代的对象所在的卡仍然是脏的。每个老对象只属于对象头所在的那张卡，所以不会有两个任务同时改它
+     */
+    private final class CardScanTask extends EvacuationTask {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final int limit;
+        int dirtyCards;
+
+        CardScanTask(int from, int to, int limit) {
+            this.from = from;
+            this.to = to;
+            this.limit = limit;
+        }
+
+        @Override
+        void prepare() {
+            byte[] cards = heap.cards;
+            for (int card = from; card < to; card++) {
+                if (cards[card] == CLEAN) {
+                    continue;
+                }
+                dirtyCards++;
+                cards[card] = CLEAN;
+                int cardEnd = Math.min(oldStart + ((card + 1) << CARD_SHIFT), limit);
+                int address = firstObjectInCard[card];
+                if (address == 0) {
+                    continue;
+                }
+                for (; address < cardEnd; address += heap.sizeAt(address)) {
+                    if (scanYoungReferences(this, address)) {
+                        cards[card] = DIRTY;
+                    }
+                }
+            }
+        }
+    }
+
+    private void collectFull() {
+        stats.recordFullCollection();
+        hostObjects.clearOldMarks();
+        heap.markLive();
+
+        // 新地址：老对象从老年代开头排起，年轻代的对象接在后面，放不下的从eden开头排起
+        int oldFree = forward(oldStart, oldTop, oldStart);
+        int edenFree = edenStart;
+        for (int address : youngObjects()) {
+            int size = heap.sizeAt(address);
+            if (size <= oldEnd - oldFree) {
+                arena.putInt(address + GC_WORD, oldFree);
+                oldFree += size;
+            } else if (size <= edenEnd - edenFree) {
+                arena.putInt(address + GC_WORD, edenFree);
+                edenFree += size;
+            } else {
+                // 整个堆都放不下活对象，什么也不移动，分配会失败
+                unmark();
+                return;
+            }
+        }
+
+        updateReferences(oldStart, oldTop);
+        updateReferences(edenStart, edenTop);
+        updateReferences(fromStart, fromTop);
+        heap.updateRoots(address -> arena.getInt(address + GC_WORD));
+
+        // 老对象先滑动到位，年轻代的对象再搬到它们后面，不会覆盖还没有搬的对象
+        move(oldStart, oldTop);
+        move(edenStart, edenTop);
+        move(fromStart, fromTop);
+        heap.clear(oldFree, oldTop);
+        heap.clear(edenFree, edenTop);
+        heap.clear(fromStart, fromTop);
+        oldTop = oldFree;
+        edenTop = edenFree;
+        fromTop = fromStart;
+        rebuildCards();
+    }
+
+    /**
+     * 给[start, end)中的活对象按顺序分配从dest开始的新地址
+     *
+     * @return 最后一个活对象之后的地址
+     */
+    private int forward(int start, int end, int dest) {
+        for (int address = start; address < end; address += heap.sizeAt(address)) {
+            if (!heap.isFiller(address) && arena.getInt(address + GC_WORD) != 0) {
+                arena.putInt(address + GC_WORD, dest);
+                dest += heap.sizeAt(address);
+            }
+        }
+        return dest;
+    }
+
+    /**
+     * @return eden和from survivor中被标记的对象，按地址排列
+     */
+    private int[] youngObjects() {
+        int[] objects = new int[16];
+        int count = 0;
+        for (int[] space : new int[][]{{edenStart, edenTop}, {fromStart, fromTop}}) {
+            for (int address = space[0]; address < space[1]; address += heap.sizeAt(address)) {
+                if (!heap.isFiller(address) && arena.getInt(address + GC_WORD) != 0) {
+                    if (count == objects.length) {
+                        objects = Arrays.copyOf(objects, count * 2);
+                    }
+                    objects[count++] = address;
+                }
+            }
+        }
+        return Arrays.copyOf(objects, count);
+    }
+
+    /**
+     * 整理失败：清掉标记，重新记下老对象引用的宿主对象
+     */
+    private void unmark() {
+        for (int[] space : new int[][]{{oldStart, oldTop}, {edenStart, edenTop}, {fromStart, fromTop}}) {
+            for (int address = space[0]; address < space[1]; address += heap.sizeAt(address)) {
+                if (!heap.isFiller(address)) {
+                    arena.putInt(address + GC_WORD, 0);
+                }
+            }
+        }
+        rebuildCards();
+    }
+
+    private void updateReferences(int start, int end) {
+        for (int address = start; address < end; address += heap.sizeAt(address)) {
+            if (heap.isFiller(address) || arena.getInt(address + GC_WORD) == 0) {
+                continue;
+            }
+            for (int offset : heap.classAt(address).getReferenceOffsets()) {
+                int value = arena.getInt(address + offset);
+                if (value > 0) {
+                    arena.putInt(address + offset, arena.getInt(value + GC_WORD));
+                }
+            }
+        }
+    }
+
+    private void move(int start, int end) {
+        int address = start;
+        while (address < end) {
+            int size = heap.sizeAt(address);
+            if (!heap.isFiller(address)) {
+                int newAddress = arena.getInt(address + GC_WORD);
+                if (newAddress != 0) {
+                    heap.move(address, newAddress, size);
+                    arena.putInt(newAddress + GC_WORD, 0);
+                }
+            }
+            address += size;
+        }
+    }
+
+    /**
+     * 整理之后重建老年代的卡表：记录每张卡中的第一个对象；eden中留下了对象时，引用着它们的老对象所在的卡是脏的。
+     * 同时重新记下老对象引用的宿主对象
+     */
+    private void rebuildCards() {
+        Arrays.fill(firstObjectInCard, 0);
+        Arrays.fill(heap.cards, CLEAN);
+        for (int address = oldStart; address < oldTop; address += heap.sizeAt(address)) {
+            recordObjectStart(address);
+            if (scanOldReferences(address) && edenTop > edenStart) {
+                heap.cards[cardOf(address)] = DIRTY;
+            }
+        }
+    }
+
+    /**
+     * 给老对象引用的宿主对象记上老年代标记
+     *
+     * @return 对象是否引用着年轻代
+     */
+    private boolean scanOldReferences(int address) {
+        boolean young = false;
+        for (int offset : heap.classAt(address).getReferenceOffsets()) {
+            int value = arena.getInt(address + offset);
+            if (value > 0 && value < oldStart) {
+                young = true;
+            } else if (value < 0) {
+                hostObjects.markOld(value);
+            }
+        }
+        return young;
+    }
+
+    private void recordObjectStart(int address) {
+        int card = cardOf(address);
+        if (firstObjectInCard[card] == 0) {
+            firstObjectInCard[card] = address;
+        }
+    }
+
+    private int cardOf(int address) {
+        return (address - oldStart) >>> CARD_SHIFT;
+    }
+
+    private boolean inEden(int address) {
+        return address >= edenStart && address < edenEnd;
+    }
+
+    private boolean inFrom(int address) {
+        return address >= fromStart && address < fromStart + survivorSize;
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.hcsp;
+
+/**
+ * 客户程序中没有被捕获的异常，会从{@link MiniJVM#start()}中抛出
+ */
+public class GuestException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final String guestClassName;
+    private final String guestMessage;
+    private final Backtrace backtrace;
+
+    public GuestException(String guestClassName, String message) {
+        this(guestClassName, message, null);
+    }
+
+    GuestException(String guestClassName, String message, Backtrace backtrace) {
+        super(guestClassName + (message == null ? "" : ": " + message));
+        this.guestClassName = guestClassName;
+        this.guestMessage = message;
+        this.backtrace = backtrace;
+    }
+
+    /**
+     * 把宿主代码（内建方法、编译的代码）抛出的异常转换成同名的客户异常
+     */
+    static GuestException fromHost(RuntimeException e) {
+        if (e instanceof GuestException) {
+            return (GuestException) e;
+        }
+        String message = e.getMessage();
+        if (message == null && e instanceof ArithmeticException) {
+            // 宿主的JIT编译了这段代码之后，整数除以零可能抛出预先分配的没有detailMessage的异常
+            message = "/ by zero";
+        }
+        return new GuestException(e.getClass().getName(), message);
+    }
+
+    /**
+     * @return 客户异常的类名，例如java.lang.StackOverflowError
+     */
+    public String getGuestClassName() {
+        return guestClassName;
+    }
+
+    /**
+     * @return 客户异常的detailMessage，可能为null
+     */
+    public String getGuestMessage() {
+        return guestMessage;
+    }
+
+    /**
+     * @return 客户异常的栈轨迹，栈顶在前；异常还没有在客户代码中抛出，或者是预先分配的异常时为空
+     */
+    public StackTraceElement[] getGuestStackTrace() {
+        return backtrace == null ? new StackTraceElement[0] : backtrace.getStackTrace();
+    }
+}
@@ -0,0 +1,733 @@
+package com.github.hcsp;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * 客户堆：所有客户对象都放在一块堆外的{@link ByteBuffer}中，大小由{@link VMOptions#setHeapSize}限定，
+ * 对象的字段不占宿主的堆。
+ * <p>
+ * 分配只是移动指针：分代收集时客户线程先在自己的TLAB（线程本地分配缓冲区）中分配，不需要同步，
+ * TLAB用完了才由收集器分配新的；空间用完时由{@link VMOptions#getGarbageCollector()}选择的收集器回收，
+ * 回收之后还是放不下才抛出客户的OutOfMemoryError。对象的地址是它在缓冲区中的偏移，地址0表示null。对象的布局是：
+ * <pre>
+ * +0  类编号，见{@link RuntimeClass#getId()}；负数表示这是一段没有用的空间，见{@link #fill}
+ * +4  低25位是identity hash，之上4位是对象活过的垃圾收集次数（年龄）
+ * +8  保留，总是0
+ * +12 垃圾收集时的标记和转发地址，平时是0
+ * +16 实例字段，布局见{@link RuntimeClass#getInstanceSize()}
+ * </pre>
+ * 引用是一个int：正数是对象的地址，0是null，负数是{@link HostObjectTable}中宿主对象（例如字符串常量）的下标。
+ * 栈帧的槽、类的静态字段和对象的引用字段中存的都是它，所以==比较引用就是比较int，客户对象在宿主的堆中不占任何对象。
+ * 宿主代码需要把引用当成宿主对象使用时用{@link #decode}转换，得到的{@link GuestObject}只是临时的视图。
+ * <p>
+ * 写引用字段时有一个写屏障：对象在老年代中时，把它的对象头所在的卡标记为脏，
+ * 年轻代收集时只需要扫描脏卡中的老对象，就能找到所有从老年代指向年轻代的引用。
+ * 并发标记时写之前还有一个SATB屏障，见{@link SatbQueue}。
+ * <p>
+ * 垃圾收集的根是用{@link #attachThread}和{@link #addRoots}登记的栈帧和预先分配的异常，以及所有类的静态字段。
+ * 对象移动时收集器直接改写根和字段中的地址。编译的代码和闭包引擎不在执行中途收集，
+ * 所以宿主局部变量中不会有需要改写的地址：它们不分配对象，闭包引擎分配时引用都在栈帧里。
+ * 收集时找到的宿主对象被标记，收集之后宿主对象表释放没有标记的表项。
+ * 宿主对象表超过上一次收集后大小的两倍时，客户线程在下一个{@link #safepoint()}主动收集，
+ * 解释器在循环回边和分配的慢路径上检查，编译的代码和闭包引擎只在分配时检查。
+ * <p>
+ * 收集仍然暂停所有客户线程，但标记和年轻代的复制由{@link VMOptions#getGcThreads()}个工作线程并行完成，见{@link GcTask}。
+ * 堆是{@link ByteBuffer}，不能对对象头做CAS，所以工作线程在一张位图中认领对象，见{@link #claim}
+ */
+public final class GuestHeap {
+    static final int HEADER_SIZE = 16;
+    static final int REFERENCE_SIZE = 4;
+    static final int CLASS_ID = 0;
+    static final int IDENTITY_HASH = 4;
+    static final int GC_WORD = 12;
+    /**
+     * 地址0表示null，所以堆从8开始
+     */
+    static final int HEAP_START = 8;
+    static final int HASH_MASK = (1 << 25) - 1;
+    static final int AGE_SHIFT = 25;
+    static final int MAX_AGE = 15;
+    /**
+     * 每张卡512字节
+     */
+    static final int CARD_SHIFT = 9;
+    static final byte CLEAN = 0;
+    static final byte DIRTY = 1;
+    /**
+     * 认领位图中每个对象的两位：已经被一个工作线程认领；认领的线程已经把转发地址写到了GC字中
+     */
+    private static final int CLAIMED = 1;
+    private static final int FORWARDED = 2;
+    /**
+     * 宿主对象表至少到这么大才主动收集
+     */
+    private static final int MIN_HOST_OBJECT_LIMIT = 1024;
+
+    private final ByteBuffer arena;
+    private final Metaspace metaspace;
+    private final VMStats stats;
+    private final Collector collector;
+    private final List<Roots> roots = new ArrayList<>();
+    private final int gcThreads;
+    /**
+     * 第一次收集时才创建，虚拟机结束时关闭
+     */
+    private ForkJoinPool gcWorkers;
+    final List<GuestThread> threads = new ArrayList<>();
+    /**
+     * 复制和标记-整理收集时的分配空间，收集器可以改变它；分代收集时是整个堆
+     */
+    int spaceStart = HEAP_START;
+    int spaceEnd;
+    /**
+     * 下一个对象的地址。堆顶之上的内存都是0
+     */
+    int top = HEAP_START;
+    private final HostObjectTable hostObjects;
+    /**
+     * 宿主对象表超过这个大小时在安全点上收集
+     */
+    private int hostObjectLimit = MIN_HOST_OBJECT_LIMIT;
+    /**
+     * 认领位图：对象的开头至少相隔16字节，每16字节占两位，每个int管256字节。收集之外总是0
+     */
+    private final AtomicIntegerArray gcBits;
+    private int hashSeed = 0x9E3779B9;
+    /**
+     * 老年代的卡表，只有分代收集时才有。cardBase是老年代的起始地址，没有老年代时比任何地址都大，写屏障什么也不做
+     */
+    byte[] cards = new byte[0];
+    int cardBase = Integer.MAX_VALUE;
+    /**
+     * 并发标记时SATB写屏障记下的旧引用，只有并发标记-清除收集时才有
+     */
+    SatbQueue satbQueue;
+
+    GuestHeap(VMOptions options, Metaspace metaspace, VMStats stats) {
+        this.arena = allocateArena(options).order(ByteOrder.nativeOrder());
+        this.metaspace = metaspace;
+        this.hostObjects = metaspace.getHostObjects();
+        this.stats = stats;
+        this.spaceEnd = arena.capacity() & -8;
+        this.gcBits = new AtomicIntegerArray((arena.capacity() >>> 8) + 1);
+        this.gcThreads = Math.max(1, options.getGcThreads());
+        this.collector = newCollector(options);
+    }
+
+    private Collector newCollector(VMOptions options) {
+        switch (options.getGarbageCollector()) {
+            case COPYING:
+                return new CopyingCollector(this);
+            case MARK_COMPACT:
+                return new MarkCompactCollector(this);
+            case CONCURRENT_MARK_SWEEP:
+                return new ConcurrentMarkSweepCollector(this, options, stats);
+            default:
+                return new GenerationalCollector(this, options, stats);
+        }
+    }
+
+    /**
+     * 没有指定文件时使用直接缓冲区，否则映射文件，客户堆的内容可以在虚拟机之外查看
+     */
+    private static ByteBuffer allocateArena(VMOptions options) {
+        if (options.getHeapFile() == null) {
+            return ByteBuffer.allocateDirect(options.getHeapSize());
+        }
+        try (FileChannel channel = FileChannel.open(options.getHeapFile(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, options.getHeapSize());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 垃圾收集的一组根，例如一个客户线程的所有栈帧
+     */
+    interface Roots {
+        /**
+         * 把每个不是null的引用交给visitor，再把visitor返回的新引用写回去
+         */
+        void visitRoots(IntUnaryOperator visitor);
+    }
+
+    /**
+     * 收集算法，见{@link GarbageCollector}
+     */
+    interface Collector {
+        /**
+         * 线程的TLAB放不下size字节时调用，空间不够时先回收
+         *
+         * @return 分配到的地址，回收之后还是放不下时返回0
+         */
+        int allocate(GuestThread thread, int size);
+
+        /**
+         * 回收，完成后没有分配出去的内存都是0，根和活对象中的引用都指向新的地址。
+         * 回收时标记找到的宿主对象，最后调用{@link GuestHeap#sweepHostObjects()}释放其余的
+         *
+         * @return 被回收的空间在回收前用了多少字节
+         */
+        int collect();
+
+        /**
+         * @return 已经分配出去的字节数，包括TLAB中还没有用的部分
+         */
+        int getUsed();
+
+        /**
+         * 宿主对象表太大时在安全点上调用：能在后台收集的收集器推进一轮并发收集，表在这一轮结束时清除
+         *
+         * @return 是否由收集器处理，返回false时堆马上暂停客户线程收集一次
+         */
+        default boolean collectConcurrently() {
+            return false;
+        }
+
+        /**
+         * 虚拟机结束时调用，停止收集器自己的后台线程
+         */
+        default void shutdown() {
+        }
+    }
+
+    void addRoots(Roots roots) {
+        this.roots.add(roots);
+    }
+
+    /**
+     * 登记一个客户线程：它的栈帧是根，它的TLAB由收集器管理
+     */
+    void attachThread(GuestThread thread) {
+        threads.add(thread);
+        addRoots(thread);
+    }
+
+    /**
+     * new：分配一个字段都是0的对象。先在线程的TLAB中移动指针，放不下时再交给收集器。
+     * 分配可能触发收集，调用者之前读出来的地址都会失效
+     *
+     * @return 对象的地址
+     * @throws GuestException 回收之后还是放不下时抛出客户的OutOfMemoryError
+     */
+    int allocate(GuestThread thread, RuntimeClass runtimeClass) {
+        int size = runtimeClass.getInstanceSize();
+        int address = thread.tlabTop;
+        if (size <= thread.tlabEnd - address) {
+            thread.tlabTop = address + size;
+        } else {
+            safepoint();
+            address = collector.allocate(thread, size);
+            if (address == 0) {
+                throw new GuestException("java.lang.OutOfMemoryError", "Java heap space");
+            }
+        }
+        arena.putInt(address + CLASS_ID, runtimeClass.getId());
+        arena.putInt(address + IDENTITY_HASH, nextHash());
+        stats.recordAllocation(size);
+        return address;
+    }
+
+    /**
+     * 暂停客户线程做一次垃圾收集，只能在客户线程中、不在执行编译的代码时调用
+     */
+    void collect() {
+        long start = System.nanoTime();
+        int before = collector.getUsed();
+        int collected = collector.collect();
+        updateHostObjectLimit();
+        stats.recordCollection(System.nanoTime() - start, collected, collected - (before - collector.getUsed()));
+    }
+
+    /**
+     * 客户线程可以收集的位置：宿主对象表太大时收集一次。客户代码不分配对象时表也可能一直增长，
+     * 例如在循环中把数字转换成字符串，所以解释器在循环回边上也检查
+     */
+    void safepoint() {
+        if (isHostObjectTableFull() && !collector.collectConcurrently()) {
+            collect();
+        }
+    }
+
+    /**
+     * 按收集之后剩下的表项数调整下一次收集的阈值
+     */
+    void updateHostObjectLimit() {
+        hostObjectLimit = Math.max(MIN_HOST_OBJECT_LIMIT, hostObjects.size() * 2);
+    }
+
+    boolean isHostObjectTableFull() {
+        return hostObjects.size() > hostObjectLimit;
+    }
+
+    /**
+     * 收集器标记完所有活对象之后调用：释放没有被标记的宿主对象
+     */
+    void sweepHostObjects() {
+        hostObjects.sweep();
+    }
+
+    /**
+     * 不使用TLAB的收集器的分配：在当前空间的堆顶分配，空间不够时先回收一次
+     *
+     * @return 分配到的地址，回收之后还是放不下时返回0
+     */
+    int allocateInSpace(int size) {
+        if (size > spaceEnd - top) {
+            collect();
+            if (size > spaceEnd - top) {
+                return 0;
+            }
+        }
+        int address = top;
+        top = address + size;
+        return address;
+    }
+
+    /**
+     * xorshift，不需要和地址有关，对象移动之后也不变
+     */
+    private int nextHash() {
+        int x = hashSeed;
+        x ^= x << 13;
+        x ^= x >>> 17;
+        x ^= x << 5;
+        hashSeed = x;
+        return x & HASH_MASK;
+    }
+
+    /**
+     * 把所有根交给visitor并写回它返回的引用：登记的根和所有类的静态字段
+     */
+    void visitRoots(IntUnaryOperator visitor) {
+        for (Roots root : roots) {
+            root.visitRoots(visitor);
+        }
+        metaspace.forEachClass(runtimeClass -> {
+            int[] staticRefs = runtimeClass.staticRefs;
+            if (staticRefs != null) {
+                for (int i = 0; i < staticRefs.length; i++) {
+                    if (staticRefs[i] != 0) {
+                        staticRefs[i] = visitor.applyAsInt(staticRefs[i]);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 标记根中的宿主对象
+     *
+     * @return 根中客户对象的地址，一个对象可能出现多次
+     */
+    int[] rootReferences() {
+        IntStream.Builder result = IntStream.builder();
+        visitRoots(value -> {
+            if (value < 0) {
+                hostObjects.mark(value);
+            } else {
+                result.add(value);
+            }
+            return value;
+        });
+        return result.build().toArray();
+    }
+
+    /**
+     * 把根中客户对象的地址改成mapping返回的新地址
+     */
+    void updateRoots(IntUnaryOperator mapping) {
+        visitRoots(value -> value > 0 ? mapping.applyAsInt(value) : value);
+    }
+
+    /**
+     * 并行标记所有活对象：对象头的GC字是{@link MarkTask#MARKED}，收集器用完之后要把它清零。
+     * 活对象引用的宿主对象也被标记
+     */
+    void markLive() {
+        int[] roots = rootReferences();
+        int chunk = chunkSize(roots.length);
+        List<MarkTask> tasks = new ArrayList<>();
+        for (int from = 0; from < roots.length; from += chunk) {
+            tasks.add(new MarkTask(this, roots, from, Math.min(from + chunk, roots.length)));
+        }
+        runGcTasks(tasks);
+        clearGcBits(HEAP_START, spaceEnd);
+    }
+
+    /**
+     * 把count个根或者卡分给多个任务时每个任务分多少个：任务数是工作线程数的几倍，先做完的线程可以去偷别的任务
+     */
+    int chunkSize(int count) {
+        return Math.max(64, (count + gcThreads * 4 - 1) / (gcThreads * 4));
+    }
+
+    /**
+     * 在垃圾收集的工作线程中执行tasks，都完成之后才返回。任务中写入堆的内容在返回之后对调用者可见
+     */
+    void runGcTasks(List<? extends GcTask> tasks) {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        if (gcWorkers == null) {
+            gcWorkers = new ForkJoinPool(gcThreads);
+        }
+        gcWorkers.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+    }
+
+    /**
+     * 虚拟机结束：关闭垃圾收集的工作线程
+     */
+    void shutdownGcWorkers() {
+        collector.shutdown();
+        if (gcWorkers != null) {
+            gcWorkers.shutdown();
+            gcWorkers = null;
+        }
+    }
+
+    /**
+     * 并行收集时工作线程认领address处的对象，几个线程同时找到同一个对象时只有一个能认领成功
+     *
+     * @return 是否由这个线程认领
+     */
+    boolean claim(int address) {
+        int index = address >>> 8;
+        int bit = CLAIMED << ((address >>> 3) & 30);
+        while (true) {
+            int bits = gcBits.get(index);
+            if ((bits & bit) != 0) {
+                return false;
+            }
+            if (gcBits.compareAndSet(index, bits, bits | bit)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 认领对象的线程把复制之后的地址写到旧对象的GC字之后调用，等待它的线程这时才能读
+     */
+    void publishForwarding(int address) {
+        int index = address >>> 8;
+        int bit = FORWARDED << ((address >>> 3) & 30);
+        while (true) {
+            int bits = gcBits.get(index);
+            if (gcBits.compareAndSet(index, bits, bits | bit)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 另一个线程认领了address处的对象：等它复制完
+     *
+     * @return 复制之后的地址
+     */
+    int awaitForwarding(int address) {
+        int index = address >>> 8;
+        int bit = FORWARDED << ((address >>> 3) & 30);
+        while ((gcBits.get(index) & bit) == 0) {
+            Thread.yield();
+        }
+        return arena.getInt(address + GC_WORD);
+    }
+
+    /**
+     * 收集结束时清掉[from, to)中对象的认领位。按int清除，两头相邻的对象的位也会被清掉，所以只能在所有任务完成之后调用
+     */
+    void clearGcBits(int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        for (int index = from >>> 8, last = (to - 1) >>> 8; index <= last; index++) {
+            gcBits.set(index, 0);
+        }
+    }
+
+    /**
+     * @return address处对象的大小，或者一段没有用的空间的大小
+     */
+    int sizeAt(int address) {
+        int classId = arena.getInt(address + CLASS_ID);
+        return classId < 0 ? -classId : metaspace.getClassById(classId).getInstanceSize();
+    }
+
+    boolean isFiller(int address) {
+        return arena.getInt(address + CLASS_ID) < 0;
+    }
+
+    /**
+     * 把[from, to)标记成一段没有用的空间，例如TLAB没有用完的部分，这样堆仍然可以从头到尾逐个对象地遍历
+     */
+    void fill(int from, int to) {
+        arena.putInt(from + CLASS_ID, from - to);
+    }
+
+    int ageAt(int address) {
+        return arena.getInt(address + IDENTITY_HASH) >>> AGE_SHIFT;
+    }
+
+    void setAge(int address, int age) {
+        int hash = arena.getInt(address + IDENTITY_HASH) & HASH_MASK;
+        arena.putInt(address + IDENTITY_HASH, hash | Math.min(age, MAX_AGE) << AGE_SHIFT);
+    }
+
+    /**
+     * 把对象从from复制到to，两块内存重叠时to必须小于from。对象大小和地址都是8的倍数
+     */
+    void move(int from, int to, int size) {
+        for (int i = 0; i < size; i += 8) {
+            arena.putLong(to + i, arena.getLong(from + i));
+        }
+    }
+
+    /**
+     * 把[from, to)清零，保持堆顶之上都是0
+     */
+    void clear(int from, int to) {
+        for (int address = from; address < to; address += 8) {
+            arena.putLong(address, 0);
+        }
+    }
+
+    /**
+     * 访问对象成员之前的空指针检查
+     *
+     * @return ref本身
+     * @throws GuestException 客户的NullPointerException
+     */
+    public static int nonNull(int ref) {
+        if (ref == 0) {
+            throw new GuestException("java.lang.NullPointerException", null);
+        }
+        return ref;
+    }
+
+    // 下面是按偏移读写实例字段，不检查null
+
+    long getWide(int address, int offset) {
+        return arena.getLong(address + offset);
+    }
+
+    void putWide(int address, int offset, long value) {
+        arena.putLong(address + offset, value);
+    }
+
+    /**
+     * int和float字段，float是它的位模式
+     */
+    int getInt(int address, int offset) {
+        return arena.getInt(address + offset);
+    }
+
+    void putInt(int address, int offset, int value) {
+        arena.putInt(address + offset, value);
+    }
+
+    /**
+     * byte、boolean、short和char字段，按类型做符号扩展或者零扩展
+     */
+    int getNarrow(int address, int offset, int type) {
+        switch (type) {
+            case 'S':
+                return arena.getShort(address + offset);
+            case 'C':
+                return arena.getChar(address + offset);
+            default:
+                return arena.get(address + offset);
+        }
+    }
+
+    /**
+     * 和putfield一样，值被截断成字段的宽度，boolean只保留最低位
+     */
+    void putNarrow(int address, int offset, int type, int value) {
+        switch (type) {
+            case 'S':
+            case 'C':
+                arena.putShort(address + offset, (short) value);
+                break;
+            case 'Z':
+                arena.put(address + offset, (byte) (value & 1));
+                break;
+            default:
+                arena.put(address + offset, (byte) value);
+        }
+    }
+
+    int loadRef(int address, int offset) {
+        return arena.getInt(address + offset);
+    }
+
+    /**
+     * putfield的引用字段。写之前的SATB屏障在并发标记时记下旧值，写之后的卡表屏障标记老对象所在的卡，
+     * 老对象引用的宿主对象在年轻代收集时不会被释放
+     */
+    void storeRef(int address, int offset, int value) {
+        SatbQueue satb = satbQueue;
+        if (satb != null && satb.active) {
+            int previous = arena.getInt(address + offset);
+            if (previous != 0) {
+                satb.enqueue(previous);
+            }
+        }
+        arena.putInt(address + offset, value);
+        if (address >= cardBase) {
+            cards[(address - cardBase) >>> CARD_SHIFT] = DIRTY;
+            if (value < 0) {
+                hostObjects.markOld(value);
+            }
+        }
+    }
+
+    // 下面的公开方法供HostCompiler生成的宿主代码使用，它们在另一个类加载器中，只能访问公开的成员
+
+    /**
+     * getfield：基本类型的字段，返回槽格式的long
+     *
+     * @param type 字段描述符的第一个字符，编译的代码中是常量
+     */
+    public long getValue(int ref, int offset, int type) {
+        int address = nonNull(ref);
+        switch (type) {
+            case 'J':
+            case 'D':
+                return getWide(address, offset);
+            case 'I':
+            case 'F':
+                return getInt(address, offset);
+            default:
+                return getNarrow(address, offset, type);
+        }
+    }
+
+    /**
+     * getfield：引用类型的字段
+     */
+    public int getRef(int ref, int offset) {
+        return loadRef(nonNull(ref), offset);
+    }
+
+    /**
+     * putfield：基本类型的字段，value是槽格式的long
+     */
+    public void putValue(int ref, int offset, int type, long value) {
+        int address = nonNull(ref);
+        switch (type) {
+            case 'J':
+            case 'D':
+                putWide(address, offset, value);
+                break;
+            case 'I':
+            case 'F':
+                putInt(address, offset, (int) value);
+                break;
+            default:
+                putNarrow(address, offset, type, (int) value);
+        }
+    }
+
+    /**
+     * putfield：引用类型的字段
+     */
+    public void putRef(int ref, int offset, int value) {
+        storeRef(nonNull(ref), offset, value);
+    }
+
+    /**
+     * @return 引用对应的宿主对象：客户对象是一个临时的{@link GuestObject}视图，null是null
+     */
+    public Object decode(int ref) {
+        if (ref > 0) {
+            return new GuestObject(classAt(ref), this, ref);
+        }
+        return ref == 0 ? null : hostObjects.get(ref);
+    }
+
+    /**
+     * @return 宿主对象对应的引用，第一次遇到的宿主对象登记到宿主对象表中
+     */
+    public int encode(Object value) {
+        if (value instanceof GuestObject) {
+            return ((GuestObject) value).address;
+        }
+        return hostObjects.encode(value);
+    }
+
+    /**
+     * @return 宿主对象对应的引用，它一直留在宿主对象表中，例如快速指令和编译的代码中的字符串常量
+     */
+    int pin(Object value) {
+        return hostObjects.pin(value);
+    }
+
+    /**
+     * 读出address处对象中offset处的引用字段
+     */
+    Object getReference(int address, int offset) {
+        return decode(loadRef(address, offset));
+    }
+
+    void putReference(int address, int offset, Object value) {
+        storeRef(address, offset, encode(value));
+    }
+
+    HostObjectTable hostObjects() {
+        return hostObjects;
+    }
+
+    /**
+     * @return address处对象的类，从对象头中的类编号查出来
+     */
+    RuntimeClass classAt(int address) {
+        return metaspace.getClassById(arena.getInt(address + CLASS_ID));
+    }
+
+    int identityHash(int address) {
+        return arena.getInt(address + IDENTITY_HASH) & HASH_MASK;
+    }
+
+    ByteBuffer arena() {
+        return arena;
+    }
+
+    /**
+     * @return 客户堆的总字节数
+     */
+    public int getCapacity() {
+        return arena.capacity();
+    }
+
+    /**
+     * @return 已经分配出去的字节数，包括线程的TLAB中还没有用完的部分
+     */
+    public int getUsed() {
+        return collector.getUsed();
+    }
+
+    /**
+     * @return 宿主对象表中的宿主对象个数，包括固定的字符串常量
+     */
+    public int getHostObjectCount() {
+        return hostObjects.size();
+    }
+}
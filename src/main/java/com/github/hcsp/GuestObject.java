@@ -0,0 +1,43 @@
+package com.github.hcsp;
+
+/**
+ * 客户对象在宿主代码中的视图。对象本身在{@link GuestHeap}中，address是它的地址；
+ * 实例字段按所属类链接时算好的布局存放，{@link RuntimeField#getOffset()}是字段相对对象地址的字节偏移。
+ * <p>
+ * 栈帧和对象的引用字段中保存的是地址，不是这个视图。只有需要把客户对象当成宿主对象使用时，
+ * 例如native方法的参数，{@link GuestHeap#decode}才临时创建一个视图，它不登记在任何地方，
+ * 下一次垃圾收集移动对象之后就失效了，不能保存下来。同一个对象的两个视图按地址相等
+ */
+public final class GuestObject {
+    final RuntimeClass runtimeClass;
+    final GuestHeap heap;
+    final int address;
+
+    GuestObject(RuntimeClass runtimeClass, GuestHeap heap, int address) {
+        this.runtimeClass = runtimeClass;
+        this.heap = heap;
+        this.address = address;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof GuestObject)) {
+            return false;
+        }
+        GuestObject that = (GuestObject) o;
+        return address == that.address && heap == that.heap;
+    }
+
+    @Override
+    public int hashCode() {
+        return heap.identityHash(address);
+    }
+
+    @Override
+    public String toString() {
+        return runtimeClass.getName() + "@" + Integer.toHexString(hashCode());
+    }
+}
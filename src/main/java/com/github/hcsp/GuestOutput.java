@@ -0,0 +1,163 @@
+package com.github.hcsp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * 客户的标准输出/标准错误：先写到固定大小的缓冲区，缓冲区满了、客户调用flush或者虚拟机退出时，
+ * 才一次性写到{@link WritableByteChannel}。
+ * <p>
+ * 整数直接在缓冲区中格式化成十进制数字，ASCII字符直接写成字节，都不创建中间的String。
+ * 只在一个客户线程中使用，没有同步
+ */
+final class GuestOutput extends OutputStream {
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(Charset.defaultCharset());
+    private static final byte[] LONG_MIN_VALUE = Long.toString(Long.MIN_VALUE).getBytes(Charset.defaultCharset());
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final VMStats stats;
+    /**
+     * 从低位到高位格式化数字用的临时空间，long最多19位
+     */
+    private final byte[] digits = new byte[19];
+
+    GuestOutput(WritableByteChannel channel, int bufferSize, VMStats stats) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(Math.max(bufferSize, LONG_MIN_VALUE.length));
+        this.stats = stats;
+    }
+
+    @Override
+    public void write(int b) {
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        if (len > buffer.remaining()) {
+            flush();
+            if (len > buffer.capacity()) {
+                // 比缓冲区还大的数据不复制，直接写出去
+                writeFully(ByteBuffer.wrap(b, off, len));
+                return;
+            }
+        }
+        buffer.put(b, off, len);
+    }
+
+    void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            write(LONG_MIN_VALUE, 0, LONG_MIN_VALUE.length);
+            return;
+        }
+        if (buffer.remaining() < LONG_MIN_VALUE.length) {
+            flush();
+        }
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        while (count > 0) {
+            buffer.put(digits[--count]);
+        }
+    }
+
+    void writeChar(char c) {
+        if (c < 0x80) {
+            write(c);
+        } else {
+            writeChars(String.valueOf(c));
+        }
+    }
+
+    void writeChars(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                // 非ASCII字符交给宿主的字符集编码，和宿主的System.out输出的字节相同
+                byte[] bytes = s.substring(i).getBytes(Charset.defaultCharset());
+                write(bytes, 0, bytes.length);
+                return;
+            }
+            write(c);
+        }
+    }
+
+    void newLine() {
+        write(LINE_SEPARATOR, 0, LINE_SEPARATOR.length);
+    }
+
+    /**
+     * 把缓冲区中的内容写到通道
+     */
+    @Override
+    public void flush() {
+        buffer.flip();
+        if (buffer.hasRemaining()) {
+            writeFully(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer data) {
+        stats.recordOutputBatch(data.remaining());
+        try {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 把输出收集到内存中的通道，见{@link VMOptions#setCaptureOutput}
+     */
+    static final class Capture implements WritableByteChannel {
+        private ByteBuffer captured = ByteBuffer.allocate(1024);
+
+        @Override
+        public int write(ByteBuffer src) {
+            int length = src.remaining();
+            if (length > captured.remaining()) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(captured.capacity() * 2, captured.position() + length));
+                captured.flip();
+                larger.put(captured);
+                captured = larger;
+            }
+            captured.put(src);
+            return length;
+        }
+
+        /**
+         * @return 到目前为止收集到的所有字节，只读
+         */
+        ByteBuffer getCaptured() {
+            ByteBuffer result = captured.duplicate();
+            result.flip();
+            return result.asReadOnlyBuffer();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.github.hcsp;
+
+import java.io.PrintStream;
+
+/**
+ * 客户看到的System.out/System.err。
+ * <p>
+ * 继承{@link PrintStream}，所以{@link HostBindings}中的println绑定和编译代码中直接调用的PrintStream方法都不用改，
+ * 只是覆盖了常用的print/println：不加锁、不自动flush，基本类型直接格式化到{@link GuestOutput}的缓冲区中。
+ * float和double的格式化规则比较复杂，仍然借助宿主的String.valueOf
+ */
+final class GuestPrintStream extends PrintStream {
+    private final GuestOutput output;
+
+    GuestPrintStream(GuestOutput output) {
+        super(output, false);
+        this.output = output;
+    }
+
+    @Override
+    public void print(boolean b) {
+        output.writeChars(b ? "true" : "false");
+    }
+
+    @Override
+    public void print(char c) {
+        output.writeChar(c);
+    }
+
+    @Override
+    public void print(int i) {
+        output.writeLong(i);
+    }
+
+    @Override
+    public void print(long l) {
+        output.writeLong(l);
+    }
+
+    @Override
+    public void print(float f) {
+        output.writeChars(String.valueOf(f));
+    }
+
+    @Override
+    public void print(double d) {
+        output.writeChars(String.valueOf(d));
+    }
+
+    @Override
+    public void print(char[] s) {
+        for (char c : s) {
+            output.writeChar(c);
+        }
+    }
+
+    @Override
+    public void print(String s) {
+        output.writeChars(s == null ? "null" : s);
+    }
+
+    @Override
+    public void print(Object obj) {
+        print(String.valueOf(obj));
+    }
+
+    @Override
+    public void println() {
+        output.newLine();
+    }
+
+    @Override
+    public void println(boolean x) {
+        print(x);
+        output.newLine();
+    }
+
+    @Override
+    public void println(char x) {
+        print(x);
+        output.newLine();
+    }
+
+    @Override
+    public void println(int x) {
+        print(x);
+        output.newLine();
+    }
+
+    @Override
+    public void println(long x) {
+        print(x);
+        output.newLine();
+    }
+
+    @Override
+    public void println(float x) {
+        print(x);
+        output.newLine();
+    }
+
+    @Override
+    public void println(double x) {
+        print(x);
+        output.newLine();
+    }
+
+    @Override
+    public void println(char[] x) {
+        print(x);
+        output.newLine();
+    }
+
+    @Override
+    public void println(String x) {
+        print(x);
+        output.newLine();
+    }
+
+    @Override
+    public void println(Object x) {
+        print(x);
+        output.newLine();
+    }
+
+    @Override
+    public void write(int b) {
+        output.write(b);
+    }
+
+    @Override
+    public void write(byte[] buf, int off, int len) {
+        output.write(buf, off, len);
+    }
+
+    @Override
+    public void flush() {
+        output.flush();
+    }
+
+    @Override
+    public void close() {
+        output.flush();
+    }
+}
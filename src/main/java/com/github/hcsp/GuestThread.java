@@ -0,0 +1,227 @@
+package com.github.hcsp;
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * 一个客户线程的执行状态。
+ * <p>
+ * 所有栈帧共用一块预先分配好的槽数组，按调用顺序像移动指针一样切分出来。调用方法时，
+ * 调用者操作数栈顶的参数直接成为被调用者的局部变量（两个栈帧有重叠），不需要复制。
+ * 栈帧对象按深度缓存复用，所以稳定运行时方法调用不会分配任何对象。
+ * <p>
+ * 线程中标记为引用的槽是垃圾收集的根，见{@link #visitRoots}
+ */
+class GuestThread implements GuestHeap.Roots {
+    final GuestHeap heap;
+    final long[] slots;
+    /**
+     * 每个槽是不是引用，见{@link StackFrame}
+     */
+    final boolean[] refTags;
+    private final StackFrame[] frames;
+    /**
+     * native方法不能回调客户代码，同一时刻最多只有一个native调用，所以复用同一个对象
+     */
+    private final NativeCall nativeCall;
+    /**
+     * 当前栈顶栈帧的深度，没有栈帧时为-1
+     */
+    private int depth = -1;
+    /**
+     * 线程本地分配缓冲区（TLAB）中下一个对象的地址和缓冲区的结尾，只有这个线程在其中分配，不需要同步。
+     * 没有TLAB时都是0，由{@link GuestHeap.Collector}分配和回收
+     */
+    int tlabTop;
+    int tlabEnd;
+
+    GuestThread(VMOptions options, GuestHeap heap) {
+        this.heap = heap;
+        this.slots = new long[options.getStackSlots()];
+        this.refTags = new boolean[options.getStackSlots()];
+        this.frames = new StackFrame[options.getMaxStackDepth()];
+        this.nativeCall = new NativeCall(slots, heap);
+    }
+
+    /**
+     * 压入一个不从调用者接收参数的栈帧，例如main方法的栈帧
+     */
+    StackFrame pushFrame(RuntimeMethod method) {
+        int base = depth < 0 ? 0 : frames[depth].sp;
+        return pushFrame(method, base);
+    }
+
+    /**
+     * 调用方法：调用者操作数栈顶的参数成为被调用者的前几个局部变量。
+     * native方法不压栈帧，直接执行完并把返回值压到调用者的操作数栈上，返回的仍然是调用者
+     */
+    StackFrame invoke(StackFrame caller, RuntimeMethod method) {
+        if (method.isNative()) {
+            invokeNative(caller, method);
+            return caller;
+        }
+        caller.sp -= method.getArgSlotCount();
+        return pushFrame(method, caller.sp);
+    }
+
+    private StackFrame pushFrame(RuntimeMethod method, int base) {
+        int newDepth = depth + 1;
+        if (newDepth >= frames.length || base + method.getMaxLocals() + method.getMaxStack() > slots.length) {
+            throw new GuestException("java.lang.StackOverflowError", "Stack depth " + newDepth + " exceeded when calling " + method);
+        }
+        StackFrame frame = frames[newDepth];
+        if (frame == null) {
+            frame = new StackFrame(this, newDepth);
+            frames[newDepth] = frame;
+        }
+        frame.reset(method, base);
+        method.profile.invocationCount++;
+        depth = newDepth;
+        return frame;
+    }
+
+    /**
+     * 调用已经被编译成宿主代码的方法：参数直接从调用者的操作数栈上读取，返回值压回调用者的操作数栈
+     */
+    void invokeCompiled(StackFrame caller, RuntimeMethod method) {
+        int base = caller.sp - method.getArgSlotCount();
+        long result;
+        method.profile.invocationCount++;
+        try {
+            result = method.compiledCode.invoke(slots, base);
+        } catch (StackOverflowError e) {
+            throw new GuestException("java.lang.StackOverflowError", "Stack overflow in compiled code of " + method);
+        } catch (RuntimeException e) {
+            // 编译的代码中整数除以零，或者直接调用内建方法的宿主实现，抛出的是宿主异常
+            throw GuestException.fromHost(e);
+        }
+        caller.drop(method.getArgSlotCount());
+        pushResult(caller, method, result);
+    }
+
+    private void invokeNative(StackFrame caller, RuntimeMethod method) {
+        NativeRegistry.Signature signature = method.nativeSignature;
+        if (signature == null) {
+            throw new GuestException("java.lang.UnsatisfiedLinkError", method.toString());
+        }
+        int base = caller.sp - method.getArgSlotCount();
+        nativeCall.reset(signature, method.isStatic() ? base : base + 1);
+        method.profile.invocationCount++;
+        try {
+            signature.method.invoke(nativeCall);
+        } catch (RuntimeException e) {
+            throw GuestException.fromHost(e);
+        }
+        caller.drop(method.getArgSlotCount());
+        pushResult(caller, method, nativeCall.result);
+    }
+
+    /**
+     * 在循环中途把解释执行的frame切换到OSR编译的代码：编译的代码从frame的局部变量中读出状态继续执行到方法返回，
+     * 然后弹出frame，把返回值压到调用者的操作数栈上
+     *
+     * @return 新的栈顶栈帧，如果已经没有栈帧了就返回null
+     */
+    StackFrame enterOsr(StackFrame frame, CompiledMethod code) {
+        RuntimeMethod method = frame.method;
+        int base = frame.base;
+        long result;
+        try {
+            result = code.invoke(slots, base);
+        } catch (StackOverflowError e) {
+            throw new GuestException("java.lang.StackOverflowError", "Stack overflow in compiled code of " + method);
+        } catch (RuntimeException e) {
+            // 编译的代码中整数除以零，或者直接调用内建方法的宿主实现，抛出的是宿主异常
+            throw GuestException.fromHost(e);
+        }
+        StackFrame caller = popFrame();
+        if (caller != null) {
+            pushResult(caller, method, result);
+        }
+        return caller;
+    }
+
+    /**
+     * @param result 槽格式的返回值，引用在低32位
+     */
+    private static void pushResult(StackFrame caller, RuntimeMethod method, long result) {
+        switch (method.getDescriptor().getReturnType().getDescriptor().charAt(0)) {
+            case 'V':
+                break;
+            case 'J':
+            case 'D':
+                caller.pushLong(result);
+                break;
+            case 'L':
+            case '[':
+                caller.pushRef((int) result);
+                break;
+            default:
+                caller.pushInt((int) result);
+        }
+    }
+
+    /**
+     * 保证类已经初始化。需要执行&lt;clinit&gt;时把它的栈帧压到栈顶，并让frame的第index条指令在&lt;clinit&gt;返回之后重新执行。
+     * 父类总是先于子类初始化：父类的&lt;clinit&gt;返回后指令重新执行，再轮到子类
+     *
+     * @return &lt;clinit&gt;的栈帧，不需要执行时返回null
+     */
+    StackFrame initializeClass(StackFrame frame, int index, RuntimeClass runtimeClass) {
+        if (runtimeClass.isInitialized()) {
+            return null;
+        }
+        if (runtimeClass.getSuperClass() != null) {
+            StackFrame superClinitFrame = initializeClass(frame, index, runtimeClass.getSuperClass());
+            if (superClinitFrame != null) {
+                return superClinitFrame;
+            }
+        }
+        if (!runtimeClass.beginInitialization()) {
+            return null;
+        }
+        frame.pc = index;
+        return pushFrame(runtimeClass.getClassInitializer());
+    }
+
+    /**
+     * 弹出栈顶的栈帧
+     *
+     * @return 新的栈顶栈帧，如果已经没有栈帧了就返回null
+     */
+    StackFrame popFrame() {
+        frames[depth].clear();
+        depth--;
+        return depth < 0 ? null : frames[depth];
+    }
+
+    /**
+     * @param depth 栈帧的深度，0是栈底
+     */
+    StackFrame getFrame(int depth) {
+        return frames[depth];
+    }
+
+    StackFrame getTopFrame() {
+        return depth < 0 ? null : frames[depth];
+    }
+
+    int getDepth() {
+        return depth + 1;
+    }
+
+    /**
+     * 所有栈帧的局部变量和操作数栈在槽数组中是连续的一段，到栈顶栈帧的sp为止，其中标记为引用的槽是根。
+     * 之上的槽是已经弹出的值，收集时清掉它们的标记，它们引用的对象可能被回收
+     */
+    @Override
+    public void visitRoots(IntUnaryOperator visitor) {
+        int top = depth < 0 ? 0 : frames[depth].sp;
+        for (int i = 0; i < top; i++) {
+            if (refTags[i] && slots[i] != 0) {
+                slots[i] = visitor.applyAsInt((int) slots[i]);
+            }
+        }
+        Arrays.fill(refTags, top, refTags.length, false);
+    }
+}
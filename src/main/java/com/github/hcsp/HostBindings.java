@@ -0,0 +1,117 @@
+package com.github.hcsp;
+
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * 客户代码可以直接使用的宿主JVM的静态字段和方法，例如System.out和PrintStream.println。
+ * <p>
+ * 键的格式是"类名.成员名"（字段）或者"类名.方法名描述符"（方法），类名使用classfile中的内部形式，例如java/lang/System
+ */
+class HostBindings {
+    private final Map<String, Supplier<Object>> staticFields = new HashMap<>();
+    private final Map<String, NativeHandler> methods = new HashMap<>();
+    /**
+     * 没有对应宿主方法的绑定，由虚拟机自己实现，例如记录客户异常的栈轨迹。它们需要客户栈帧，编译的代码不能调用
+     */
+    private final Set<String> internalMethods = new HashSet<>();
+
+    /**
+     * @param out 客户看到的System.out
+     * @param err 客户看到的System.err
+     */
+    HostBindings(PrintStream out, PrintStream err) {
+        staticFields.put("java/lang/System.out", () -> out);
+        staticFields.put("java/lang/System.err", () -> err);
+
+        // 客户类的构造器最终都会调用Object的构造器，它什么也不做
+        methods.put("java/lang/Object.<init>()V", StackFrame::pop);
+
+        methods.put("java/io/PrintStream.println()V", frame -> ((PrintStream) frame.popObject()).println());
+        NativeHandler printlnInt = frame -> {
+            int param = frame.popInt();
+            ((PrintStream) frame.popObject()).println(param);
+        };
+        methods.put("java/io/PrintStream.println(I)V", printlnInt);
+        methods.put("java/io/PrintStream.println(S)V", printlnInt);
+        methods.put("java/io/PrintStream.println(B)V", printlnInt);
+        methods.put("java/io/PrintStream.println(Z)V", frame -> {
+            boolean param = frame.popInt() != 0;
+            ((PrintStream) frame.popObject()).println(param);
+        });
+        methods.put("java/io/PrintStream.println(C)V", frame -> {
+            char param = (char) frame.popInt();
+            ((PrintStream) frame.popObject()).println(param);
+        });
+        methods.put("java/io/PrintStream.println(J)V", frame -> {
+            long param = frame.popLong();
+            ((PrintStream) frame.popObject()).println(param);
+        });
+        methods.put("java/io/PrintStream.println(F)V", frame -> {
+            float param = frame.popFloat();
+            ((PrintStream) frame.popObject()).println(param);
+        });
+        methods.put("java/io/PrintStream.println(D)V", frame -> {
+            double param = frame.popDouble();
+            ((PrintStream) frame.popObject()).println(param);
+        });
+        NativeHandler printlnObject = frame -> {
+            Object param = frame.popObject();
+            ((PrintStream) frame.popObject()).println(param);
+        };
+        methods.put("java/io/PrintStream.println(Ljava/lang/String;)V", printlnObject);
+        methods.put("java/io/PrintStream.println(Ljava/lang/Object;)V", printlnObject);
+        NativeHandler printObject = frame -> {
+            Object param = frame.popObject();
+            ((PrintStream) frame.popObject()).print(param);
+        };
+        methods.put("java/io/PrintStream.print(Ljava/lang/String;)V", printObject);
+        methods.put("java/io/PrintStream.print(Ljava/lang/Object;)V", printObject);
+        methods.put("java/io/PrintStream.print(I)V", frame -> {
+            int param = frame.popInt();
+            ((PrintStream) frame.popObject()).print(param);
+        });
+        methods.put("java/io/PrintStream.print(J)V", frame -> {
+            long param = frame.popLong();
+            ((PrintStream) frame.popObject()).print(param);
+        });
+        methods.put("java/io/PrintStream.print(C)V", frame -> {
+            char param = (char) frame.popInt();
+            ((PrintStream) frame.popObject()).print(param);
+        });
+        // 客户的输出是缓冲的，只有显式flush和虚拟机退出时才写出去
+        methods.put("java/io/PrintStream.flush()V", frame -> ((PrintStream) frame.popObject()).flush());
+    }
+
+    /**
+     * 登记一个由虚拟机实现的方法，只能在解释器和闭包执行引擎中调用
+     */
+    void addInternalMethod(String className, String methodName, String descriptor, NativeHandler handler) {
+        methods.put(className + "." + methodName + descriptor, handler);
+        internalMethods.add(className + "." + methodName + descriptor);
+    }
+
+    boolean isInternalMethod(String className, String methodName, String descriptor) {
+        return internalMethods.contains(className + "." + methodName + descriptor);
+    }
+
+    boolean hasStaticField(String className, String fieldName) {
+        return staticFields.containsKey(className + "." + fieldName);
+    }
+
+    Object getStaticField(String className, String fieldName) {
+        return staticFields.get(className + "." + fieldName).get();
+    }
+
+    /**
+     * @return 宿主方法的实现，没有绑定时返回null。{@link Intrinsics}中的内建方法对所有虚拟机都有绑定
+     */
+    NativeHandler getMethod(String className, String methodName, String descriptor) {
+        NativeHandler handler = methods.get(className + "." + methodName + descriptor);
+        return handler != null ? handler : Intrinsics.get(className, methodName, descriptor);
+    }
+}
@@ -0,0 +1,1034 @@
+package com.github.hcsp;
+
+import com.github.zxh.classpy.classfile.descriptor.MethodDescriptor;
+import com.github.zxh.classpy.classfile.descriptor.TypeDescriptor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.github.hcsp.Bytecodes.*;
+
+/**
+ * 热点方法编译器：把调用次数或者循环回边次数超过阈值的客户方法翻译成宿主JVM的字节码，定义成一个宿主类，
+ * 之后的调用直接执行这个类，再由宿主JIT编译成机器码。
+ * <p>
+ * 客户字节码和宿主字节码是同一套指令集，局部变量和操作数栈的布局也一样，所以大部分指令可以原样翻译。
+ * 每个方法生成一个类，其中：
+ * <ul>
+ * <li>静态方法m：翻译后的方法体，参数和返回值的类型与客户方法相同，引用类型和栈帧的槽一样是int引用（见{@link GuestHeap}），
+ * 实例方法的接收者是第一个参数</li>
+ * <li>{@link CompiledMethod#invoke}：从调用者的槽数组中取出参数调用m，把返回值转换成槽的格式</li>
+ * <li>静态字段sN：方法访问的客户类静态存储数组和客户堆，定义类之后再赋值</li>
+ * <li>静态方法hN：调用宿主方法的适配方法，把int引用参数解码成宿主方法声明的类型</li>
+ * </ul>
+ * 方法调用的其他客户方法会先被编译，然后直接调用它们的m；字节码不超过{@link VMOptions#getMaxInlineSize()}的方法
+ * 直接内联到调用点，每个调用点的决定记录在{@link VMStats#getInliningDecisions()}中。
+ * invokevirtual通过{@link Metaspace}的类层次分析找到唯一的实现，同样直接调用或内联，这个假设登记为依赖，
+ * 之后加载的类推翻它时编译代码被丢弃。遇到还不支持的指令，例如创建对象、有多个实现的虚方法调用，
+ * 就放弃编译，这个方法以后一直解释执行。
+ * <p>
+ * 一直在循环里不返回的方法（例如main）等不到下一次调用，这时用OSR编译：生成的静态方法osr不是从头开始，
+ * 而是先从解释器栈帧的局部变量中读出状态，再跳到循环头继续执行，直到方法返回。
+ */
+class HostCompiler {
+    static final int NOT_COMPILED = 0;
+    static final int COMPILING = 1;
+    static final int COMPILED = 2;
+    static final int NOT_COMPILABLE = 3;
+
+    private static final String COMPILED_PACKAGE = "com/github/hcsp/compiled/";
+    private static final String BODY_METHOD = "m";
+    private static final String OSR_METHOD = "osr";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String GUEST_HEAP = "com/github/hcsp/GuestHeap";
+    /**
+     * 递归调用最多内联几层，和被编译的方法本身加起来，同一个方法在内联链上最多出现这么多次
+     */
+    private static final int MAX_RECURSIVE_INLINE_LEVEL = 1;
+
+    private final VMOptions options;
+    private final Resolver resolver;
+    private final Metaspace metaspace;
+    private final GuestHeap heap;
+    private final VMStats stats;
+    private final CodeCacheClassLoader classLoader = new CodeCacheClassLoader();
+    private long codeCacheUsed;
+    private int nextClassId;
+
+    HostCompiler(VMOptions options, Resolver resolver, GuestHeap heap, VMStats stats) {
+        this.options = options;
+        this.resolver = resolver;
+        this.metaspace = resolver.getMetaspace();
+        this.heap = heap;
+        this.stats = stats;
+    }
+
+    /**
+     * 解释器每次调用method之前调用，方法的调用次数或者循环回边次数达到阈值时编译
+     *
+     * @return 方法是否已经有编译好的代码
+     */
+    boolean onInvocation(RuntimeMethod method) {
+        if (method.compileState != NOT_COMPILED) {
+            return method.compiledCode != null;
+        }
+        MethodProfile profile = method.profile;
+        if (profile.invocationCount < options.getCompileThreshold() && profile.backedgeCount < options.getBackedgeThreshold()) {
+            return false;
+        }
+        return compile(method) != null;
+    }
+
+    /**
+     * 编译方法，连同它调用的客户方法一起
+     *
+     * @return 编译好的代码，放弃编译时返回null
+     */
+    CompiledMethod compile(RuntimeMethod method) {
+        if (method.compileState != NOT_COMPILED) {
+            return method.compiledCode;
+        }
+        method.compileState = COMPILING;
+        try {
+            Translation translation = new Translation(method, classNameOf(method, ""), -1);
+            CompiledMethod compiledMethod = define(translation, false);
+            // 先安装再登记依赖：登记时会重新检查假设，这之间加载的类不会被漏掉
+            method.compiledCode = compiledMethod;
+            method.compileState = COMPILED;
+            if (!metaspace.registerDependencies(method, translation.assumptions, translation.callees)) {
+                method.compiledCode = null;
+                throw new Bailout("class hierarchy changed during compilation");
+            }
+            return compiledMethod;
+        } catch (Bailout | LinkageError e) {
+            // LinkageError说明生成的类没有通过宿主的校验，同样退回解释执行
+            stats.recordCompilationBailout();
+            method.compileState = NOT_COMPILABLE;
+            return null;
+        }
+    }
+
+    /**
+     * OSR编译：生成从第entryIndex条指令（循环头）开始执行的代码。循环头处的操作数栈必须是空的
+     *
+     * @return 编译好的代码，放弃编译时返回null，之后这个方法不再尝试OSR
+     */
+    CompiledMethod compileOsr(RuntimeMethod method, int entryIndex) {
+        if (method.osrDisabled) {
+            return null;
+        }
+        if (method.osrCode == null) {
+            method.osrCode = new HashMap<>();
+        }
+        CompiledMethod compiledMethod = method.osrCode.get(entryIndex);
+        if (compiledMethod != null) {
+            return compiledMethod;
+        }
+        try {
+            Translation translation = new Translation(method, classNameOf(method, "$osr" + entryIndex), entryIndex);
+            compiledMethod = define(translation, true);
+            method.osrCode.put(entryIndex, compiledMethod);
+            if (!metaspace.registerDependencies(method, translation.assumptions, translation.callees)) {
+                method.osrCode.remove(entryIndex);
+                throw new Bailout("class hierarchy changed during compilation");
+            }
+            return compiledMethod;
+        } catch (Bailout | LinkageError e) {
+            stats.recordCompilationBailout();
+            method.osrDisabled = true;
+            return null;
+        }
+    }
+
+    private String classNameOf(RuntimeMethod method, String suffix) {
+        return COMPILED_PACKAGE + method.getRuntimeClass().getName().replace('.', '_')
+                + "$" + method.getName() + suffix + "$" + nextClassId++;
+    }
+
+    private CompiledMethod define(Translation translation, boolean osr) {
+        byte[] bytes = translation.translate();
+        if (codeCacheUsed + bytes.length > options.getCodeCacheSize()) {
+            throw new Bailout("code cache is full");
+        }
+        try {
+            Class<?> compiledClass = classLoader.define(translation.className.replace('/', '.'), bytes);
+            for (Map.Entry<Object, String> entry : translation.staticValues.entrySet()) {
+                compiledClass.getField(entry.getValue()).set(null, entry.getKey());
+            }
+            CompiledMethod compiledMethod = (CompiledMethod) compiledClass.getDeclaredConstructor().newInstance();
+            codeCacheUsed += bytes.length;
+            stats.recordDevirtualizedCalls(translation.devirtualizedCalls);
+            stats.recordInliningDecisions(translation.inliningDecisions);
+            if (osr) {
+                stats.recordOsrCompilation(bytes.length);
+            } else {
+                stats.recordCompilation(bytes.length);
+            }
+            return compiledMethod;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 宿主方法描述符：基本类型不变，引用类型是int引用，实例方法的接收者是第一个参数。数组还不支持
+     */
+    private static String hostDescriptor(RuntimeMethod method) {
+        return hostDescriptor(method.getDescriptor(), method.isStatic() ? "" : "I");
+    }
+
+    /**
+     * @param receiver 放在参数最前面的接收者类型，没有时为空字符串
+     */
+    private static String hostDescriptor(MethodDescriptor descriptor, String receiver) {
+        StringBuilder result = new StringBuilder("(").append(receiver);
+        for (TypeDescriptor paramType : descriptor.getParamTypes()) {
+            result.append(hostType(paramType.getDescriptor()));
+        }
+        return result.append(')').append(hostType(descriptor.getReturnType().getDescriptor())).toString();
+    }
+
+    private static String hostType(String descriptor) {
+        switch (descriptor.charAt(0)) {
+            case 'L':
+                return "I";
+            case '[':
+                throw new Bailout("array type " + descriptor);
+            default:
+                return descriptor;
+        }
+    }
+
+    /**
+     * 把一个客户方法翻译成一个宿主类
+     */
+    private class Translation {
+        private final RuntimeMethod method;
+        private final String className;
+        private final ClassFileWriter writer;
+        /**
+         * 方法访问的客户类静态存储数组和客户堆 -> 生成类中保存它的静态字段名
+         */
+        private final Map<Object, String> staticValues = new LinkedHashMap<>();
+        /**
+         * 调用的宿主方法 -> 适配方法名
+         */
+        private final Map<String, String> hostAdapters = new HashMap<>();
+        /**
+         * 按类层次分析直接调用的虚方法 -> 它唯一的实现
+         */
+        private final Map<RuntimeMethod, RuntimeMethod> assumptions = new LinkedHashMap<>();
+        /**
+         * 直接调用了编译代码的其他方法
+         */
+        private final Set<RuntimeMethod> callees = new LinkedHashSet<>();
+        /**
+         * 翻译putstatic/putfield时用来暂存值的局部变量，在客户方法的局部变量之后，占两个槽
+         */
+        private final int scratchLocal;
+        /**
+         * OSR入口的指令下标，普通编译时为-1
+         */
+        private final int osrEntry;
+        /**
+         * 下一个内联方法的局部变量和标签从哪里开始分配
+         */
+        private int nextLocal;
+        private int nextLabel;
+        /**
+         * 内联的方法额外需要的操作数栈深度
+         */
+        private int inlinedStack;
+        private int devirtualizedCalls;
+        private final List<InliningDecision> inliningDecisions = new ArrayList<>();
+
+        Translation(RuntimeMethod method, String className, int osrEntry) {
+            this.method = method;
+            this.className = className;
+            this.osrEntry = osrEntry;
+            this.writer = new ClassFileWriter(className, OBJECT);
+            this.scratchLocal = method.getMaxLocals();
+        }
+
+        byte[] translate() {
+            if (method.getCode() == null || method.isNative() || method.isClassInitializer()) {
+                throw new Bailout("not a method with code");
+            }
+            if (method.getExceptionTable() != null) {
+                // 异常只在解释器的栈帧上展开，编译的代码里没有处理器，也就不能有try/catch
+                throw new Bailout("exception handlers");
+            }
+            String descriptor = osrEntry < 0
+                    ? hostDescriptor(method)
+                    : "([JI)" + hostType(method.getDescriptor().getReturnType().getDescriptor());
+            writer.addInterface("com/github/hcsp/CompiledMethod");
+            writer.addMethod(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_STATIC, osrEntry < 0 ? BODY_METHOD : OSR_METHOD,
+                    descriptor, translateBody());
+            writer.addMethod(ClassFileWriter.ACC_PUBLIC, "invoke", "([JI)J", bridge(descriptor));
+            writer.addMethod(ClassFileWriter.ACC_PUBLIC, "<init>", "()V", constructor());
+            for (Map.Entry<Object, String> entry : staticValues.entrySet()) {
+                Object value = entry.getKey();
+                writer.addField(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_STATIC, entry.getValue(),
+                        value instanceof long[] ? "[J" : value instanceof int[] ? "[I" : "L" + GUEST_HEAP + ";");
+            }
+            return writer.toByteArray();
+        }
+
+        private ClassFileWriter.CodeBuilder constructor() {
+            ClassFileWriter.CodeBuilder code = new ClassFileWriter.CodeBuilder(writer.getConstantPool());
+            code.op(ALOAD_0);
+            code.method(INVOKESPECIAL, OBJECT, "<init>", "()V");
+            code.op(RETURN);
+            code.setMaxs(1, 1);
+            return code;
+        }
+
+        /**
+         * invoke(long[] slots, int base)：局部变量1是slots，2是base。OSR编译时直接把这两个参数交给osr
+         */
+        private ClassFileWriter.CodeBuilder bridge(String descriptor) {
+            ClassFileWriter.CodeBuilder code = new ClassFileWriter.CodeBuilder(writer.getConstantPool());
+            if (osrEntry >= 0) {
+                code.op(ALOAD_1);
+                code.op(ILOAD_2);
+                code.method(INVOKESTATIC, className, OSR_METHOD, descriptor);
+            } else {
+                loadArguments(code);
+                code.method(INVOKESTATIC, className, BODY_METHOD, descriptor);
+            }
+            char returnType = method.getDescriptor().getReturnType().getDescriptor().charAt(0);
+            if (returnType == 'V') {
+                code.op(LCONST_0);
+            } else {
+                toSlot(code, returnType);
+            }
+            code.op(LRETURN);
+            code.setMaxs(method.getArgSlotCount() + 6, 3);
+            return code;
+        }
+
+        /**
+         * 从调用者的槽数组中取出参数（实例方法先是接收者），按类型压到宿主的操作数栈上
+         */
+        private void loadArguments(ClassFileWriter.CodeBuilder code) {
+            int slot = 0;
+            if (!method.isStatic()) {
+                code.op(ALOAD_1);
+                code.op(ILOAD_2);
+                code.op(LALOAD);
+                code.op(L2I);
+                slot++;
+            }
+            for (TypeDescriptor paramType : method.getDescriptor().getParamTypes()) {
+                code.op(ALOAD_1);
+                code.op(ILOAD_2);
+                code.intConstant(slot);
+                code.op(IADD);
+                code.op(LALOAD);
+                fromSlot(code, paramType.getDescriptor().charAt(0));
+                slot += RuntimeMethod.slotSizeOf(paramType);
+            }
+        }
+
+        /**
+         * 槽中的long转换成type类型的值，引用是int
+         */
+        private void fromSlot(ClassFileWriter.CodeBuilder code, char type) {
+            switch (type) {
+                case 'J':
+                    break;
+                case 'D':
+                    code.method(INVOKESTATIC, "java/lang/Double", "longBitsToDouble", "(J)D");
+                    break;
+                case 'F':
+                    code.op(L2I);
+                    code.method(INVOKESTATIC, "java/lang/Float", "intBitsToFloat", "(I)F");
+                    break;
+                default:
+                    code.op(L2I);
+            }
+        }
+
+        /**
+         * type类型的值转换成存入槽中的long
+         */
+        private void toSlot(ClassFileWriter.CodeBuilder code, char type) {
+            switch (type) {
+                case 'J':
+                    break;
+                case 'D':
+                    code.method(INVOKESTATIC, "java/lang/Double", "doubleToRawLongBits", "(D)J");
+                    break;
+                case 'F':
+                    code.method(INVOKESTATIC, "java/lang/Float", "floatToRawIntBits", "(F)I");
+                    code.op(I2L);
+                    break;
+                default:
+                    code.op(I2L);
+            }
+        }
+
+        private ClassFileWriter.CodeBuilder translateBody() {
+            // 重新解码一遍原始指令，不受超级指令合并和快速指令改写的影响
+            Scope root = new Scope(method, DecodedCode.decode(method.getMethodInfo().getCode()), null, 0, 0, -1);
+            ClassFileWriter.CodeBuilder code = new ClassFileWriter.CodeBuilder(writer.getConstantPool());
+            nextLocal = scratchLocal + 2;
+            nextLabel = root.decoded.length();
+            if (osrEntry >= 0) {
+                nextLocal = osrPrologue(code, root.decoded);
+            } else if (!method.isStatic()) {
+                // 从其他编译代码直接调用时接收者可能是null
+                nullCheck(code, 0);
+            }
+            translateScope(code, root);
+            if (code.position() > 0xffff) {
+                throw new Bailout("method too large");
+            }
+            code.setMaxs(method.getMaxStack() + 4 + inlinedStack, nextLocal);
+            return code;
+        }
+
+        private void translateScope(ClassFileWriter.CodeBuilder code, Scope scope) {
+            for (int index = 0; index < scope.decoded.length(); index++) {
+                code.placeLabel(scope.labelBase + index);
+                translate(code, scope, index);
+            }
+        }
+
+        private void nullCheck(ClassFileWriter.CodeBuilder code, int local) {
+            code.local(ILOAD, local);
+            code.method(INVOKESTATIC, GUEST_HEAP, "nonNull", "(I)I");
+            code.op(POP);
+        }
+
+        /**
+         * osr(long[] slots, int base)的开头：把两个参数挪到客户局部变量和临时变量之后，
+         * 然后把解释器栈帧中的局部变量逐个读到对应的宿主局部变量中，最后跳到循环头
+         *
+         * @return 需要的宿主局部变量数
+         */
+        private int osrPrologue(ClassFileWriter.CodeBuilder code, DecodedCode decoded) {
+            int slotsLocal = Math.max(scratchLocal + 2, 2);
+            code.op(ALOAD_0);
+            code.local(ASTORE, slotsLocal);
+            code.op(ILOAD_1);
+            code.local(ISTORE, slotsLocal + 1);
+
+            char[] types = localTypesAt(decoded, method, osrEntry);
+            for (int local = 0; local < types.length; local++) {
+                char type = types[local];
+                if (type == 0) {
+                    continue;
+                }
+                code.local(ALOAD, slotsLocal);
+                code.local(ILOAD, slotsLocal + 1);
+                code.intConstant(local);
+                code.op(IADD);
+                code.op(LALOAD);
+                fromSlot(code, type);
+                code.local(storeOpcodeOf(type), local);
+            }
+            code.branch(GOTO, osrEntry);
+            return slotsLocal + 2;
+        }
+
+        private void translate(ClassFileWriter.CodeBuilder code, Scope scope, int index) {
+            DecodedCode decoded = scope.decoded;
+            RuntimeClass referrer = scope.method.getRuntimeClass();
+            int opcode = decoded.opcodes[index];
+            int operand = decoded.operands[index];
+            if (opcode >= IRETURN && opcode <= RETURN && scope.returnLabel >= 0) {
+                // 内联的方法返回时，返回值已经在操作数栈上，直接跳到调用点之后
+                code.branch(GOTO, scope.returnLabel);
+                return;
+            }
+            if (opcode == ACONST_NULL || opcode == ARETURN) {
+                // 引用是int，null是0
+                code.op(opcode == ACONST_NULL ? ICONST_0 : IRETURN);
+                return;
+            }
+            if (isCopiedAsIs(opcode)) {
+                code.op(opcode);
+                return;
+            }
+            switch (opcode) {
+                case BIPUSH:
+                case SIPUSH:
+                    code.intConstant(operand);
+                    break;
+                case LDC:
+                case LDC2_W: {
+                    Object value = resolver.resolveConstant(referrer, operand);
+                    if (value instanceof String) {
+                        code.intConstant(heap.pin(value));
+                    } else {
+                        code.ldc(value);
+                    }
+                }
+                break;
+                case ILOAD:
+                case LLOAD:
+                case FLOAD:
+                case DLOAD:
+                case ISTORE:
+                case LSTORE:
+                case FSTORE:
+                case DSTORE:
+                    code.local(opcode, scope.localBase + operand);
+                    break;
+                case ALOAD:
+                    code.local(ILOAD, scope.localBase + operand);
+                    break;
+                case ASTORE:
+                    code.local(ISTORE, scope.localBase + operand);
+                    break;
+                case IINC:
+                    code.iinc(scope.localBase + operand, decoded.operands2[index]);
+                    break;
+                case IFEQ:
+                case IFNE:
+                case IFLT:
+                case IFGE:
+                case IFGT:
+                case IFLE:
+                case IF_ICMPEQ:
+                case IF_ICMPNE:
+                case IF_ICMPLT:
+                case IF_ICMPGE:
+                case IF_ICMPGT:
+                case IF_ICMPLE:
+                case GOTO:
+                    code.branch(opcode, scope.labelBase + operand);
+                    break;
+                case IF_ACMPEQ:
+                case IF_ACMPNE:
+                    code.branch(opcode == IF_ACMPEQ ? IF_ICMPEQ : IF_ICMPNE, scope.labelBase + operand);
+                    break;
+                case IFNULL:
+                case IFNONNULL:
+                    code.branch(opcode == IFNULL ? IFEQ : IFNE, scope.labelBase + operand);
+                    break;
+                case TABLESWITCH:
+                case LOOKUPSWITCH: {
+                    DecodedCode.SwitchTable table = decoded.switchTables[operand];
+                    int[] labels = new int[table.targets.length];
+                    for (int i = 0; i < labels.length; i++) {
+                        labels[i] = scope.labelBase + table.targets[i];
+                    }
+                    if (table.matches == null) {
+                        code.tableSwitch(table.low, labels, scope.labelBase + table.defaultTarget);
+                    } else {
+                        code.lookupSwitch(table.matches, labels, scope.labelBase + table.defaultTarget);
+                    }
+                }
+                break;
+                case GETSTATIC:
+                case PUTSTATIC: {
+                    Resolver.MemberRef ref = Resolver.memberRef(referrer, operand);
+                    if (resolver.getHostBindings().hasStaticField(ref.className, ref.name)) {
+                        translateHostStaticField(code, opcode, ref);
+                    } else {
+                        translateStaticField(code, opcode, resolveField(ref));
+                    }
+                }
+                break;
+                case GETFIELD:
+                case PUTFIELD:
+                    translateInstanceField(code, opcode, resolveField(Resolver.memberRef(referrer, operand)));
+                    break;
+                case INVOKESTATIC:
+                case INVOKEVIRTUAL: {
+                    Resolver.MemberRef ref = Resolver.memberRef(referrer, operand);
+                    if (resolver.getHostBindings().getMethod(ref.className, ref.name, ref.descriptor) != null) {
+                        if (resolver.getHostBindings().isInternalMethod(ref.className, ref.name, ref.descriptor)) {
+                            throw new Bailout("internal method " + ref);
+                        }
+                        String adapter = hostAdapters.computeIfAbsent(ref.className + "." + ref.name + ref.descriptor,
+                                key -> hostAdapter(ref, opcode == INVOKEVIRTUAL));
+                        code.method(INVOKESTATIC, className, adapter, hostAdapterDescriptor(ref, opcode == INVOKEVIRTUAL));
+                    } else if (opcode == INVOKESTATIC) {
+                        translateInvoke(code, scope, index, resolveMethod(ref));
+                    } else {
+                        translateInvoke(code, scope, index, devirtualize(resolveMethod(ref)));
+                    }
+                }
+                break;
+                case INVOKESPECIAL: {
+                    // 私有方法和super.m()：目标在解析时就确定了。构造器要配合new，还不支持
+                    Resolver.MemberRef ref = Resolver.memberRef(referrer, operand);
+                    if ("java/lang/Object".equals(ref.className) && "<init>".equals(ref.name)) {
+                        // 构造器最后调用的Object()什么也不做，直接丢掉接收者，这样构造器本身可以被编译
+                        code.op(POP);
+                        break;
+                    }
+                    if (resolver.getHostBindings().getMethod(ref.className, ref.name, ref.descriptor) != null) {
+                        throw new Bailout("host method " + ref);
+                    }
+                    RuntimeMethod target = resolveMethod(ref);
+                    if ("<init>".equals(target.getName())) {
+                        throw new Bailout("constructor call " + target);
+                    }
+                    translateInvoke(code, scope, index, target);
+                }
+                break;
+                default:
+                    throw new Bailout("opcode " + opcode);
+            }
+        }
+
+        private RuntimeField resolveField(Resolver.MemberRef ref) {
+            RuntimeField field;
+            try {
+                field = resolver.resolveField(ref);
+            } catch (GuestException e) {
+                throw new Bailout(e.getMessage());
+            }
+            // 编译的代码不检查类的初始化状态，所以只能访问已经初始化好的类
+            if (!field.getRuntimeClass().isInitialized()) {
+                throw new Bailout("uninitialized class " + field.getRuntimeClass());
+            }
+            return field;
+        }
+
+        private RuntimeMethod resolveMethod(Resolver.MemberRef ref) {
+            RuntimeMethod target;
+            try {
+                target = resolver.resolveMethod(ref);
+            } catch (GuestException e) {
+                throw new Bailout(e.getMessage());
+            }
+            if (!target.getRuntimeClass().isInitialized()) {
+                throw new Bailout("uninitialized class " + target.getRuntimeClass());
+            }
+            return target;
+        }
+
+        /**
+         * 用类层次分析确定invokevirtual的目标：已加载的类中只有一个实现时直接调用它，并把这个假设记为依赖
+         */
+        private RuntimeMethod devirtualize(RuntimeMethod resolved) {
+            if (!resolved.isOverridable()) {
+                return resolved;
+            }
+            RuntimeMethod target = metaspace.findUniqueImplementation(resolved);
+            if (target == null) {
+                throw new Bailout("polymorphic call " + resolved);
+            }
+            if (!target.getRuntimeClass().isInitialized()) {
+                throw new Bailout("uninitialized class " + target.getRuntimeClass());
+            }
+            assumptions.put(resolved, target);
+            devirtualizedCalls++;
+            return target;
+        }
+
+        private void translateStaticField(ClassFileWriter.CodeBuilder code, int opcode, RuntimeField field) {
+            RuntimeClass runtimeClass = field.getRuntimeClass();
+            char type = field.getDescriptor().charAt(0);
+            boolean reference = field.isReference();
+            Object array = reference ? runtimeClass.staticRefs : runtimeClass.staticValues;
+            String arrayField = staticValues.computeIfAbsent(array, key -> "s" + staticValues.size());
+            String arrayDescriptor = reference ? "[I" : "[J";
+
+            if (opcode == GETSTATIC) {
+                code.field(GETSTATIC, className, arrayField, arrayDescriptor);
+                code.intConstant(field.getSlot());
+                if (reference) {
+                    code.op(IALOAD);
+                } else {
+                    code.op(LALOAD);
+                    fromSlot(code, type);
+                }
+                return;
+            }
+            // 值已经在栈顶，先存到临时局部变量里，把数组和下标压到它下面
+            int storeOpcode = storeOpcodeOf(reference ? 'L' : type);
+            code.local(storeOpcode, scratchLocal);
+            code.field(GETSTATIC, className, arrayField, arrayDescriptor);
+            code.intConstant(field.getSlot());
+            code.local(storeOpcode - (ISTORE - ILOAD), scratchLocal);
+            if (reference) {
+                code.op(IASTORE);
+            } else {
+                toSlot(code, type);
+                code.op(LASTORE);
+            }
+        }
+
+        /**
+         * 实例字段通过{@link GuestHeap}的公开方法按偏移读写，它们同时做空指针检查。
+         * 基本类型字段的类型作为常量传进去，宿主JIT内联之后按类型分支会被消掉
+         */
+        private void translateInstanceField(ClassFileWriter.CodeBuilder code, int opcode, RuntimeField field) {
+            char type = field.getDescriptor().charAt(0);
+            boolean reference = field.isReference();
+            if (opcode == GETFIELD) {
+                loadHeap(code);
+                code.op(SWAP);
+                code.intConstant(field.getOffset());
+                if (reference) {
+                    code.method(INVOKEVIRTUAL, GUEST_HEAP, "getRef", "(II)I");
+                } else {
+                    code.intConstant(type);
+                    code.method(INVOKEVIRTUAL, GUEST_HEAP, "getValue", "(III)J");
+                    fromSlot(code, type);
+                }
+                return;
+            }
+            // 和putstatic一样，先把值暂存起来，把堆和偏移压到它下面
+            int storeOpcode = storeOpcodeOf(reference ? 'L' : type);
+            code.local(storeOpcode, scratchLocal);
+            loadHeap(code);
+            code.op(SWAP);
+            code.intConstant(field.getOffset());
+            if (!reference) {
+                code.intConstant(type);
+            }
+            code.local(storeOpcode - (ISTORE - ILOAD), scratchLocal);
+            if (reference) {
+                code.method(INVOKEVIRTUAL, GUEST_HEAP, "putRef", "(III)V");
+            } else {
+                toSlot(code, type);
+                code.method(INVOKEVIRTUAL, GUEST_HEAP, "putValue", "(IIIJ)V");
+            }
+        }
+
+        private void loadHeap(ClassFileWriter.CodeBuilder code) {
+            String heapField = staticValues.computeIfAbsent(heap, key -> "s" + staticValues.size());
+            code.field(GETSTATIC, className, heapField, "L" + GUEST_HEAP + ";");
+        }
+
+        /**
+         * 宿主的静态字段（例如System.out）：绑定的值固定在宿主对象表中，引用直接编译成常量。客户代码不能修改它们
+         */
+        private void translateHostStaticField(ClassFileWriter.CodeBuilder code, int opcode, Resolver.MemberRef ref) {
+            if (opcode == PUTSTATIC) {
+                throw new Bailout("host field " + ref);
+            }
+            code.intConstant(heap.pin(resolver.getHostBindings().getStaticField(ref.className, ref.name)));
+        }
+
+        /**
+         * 适配方法的参数和返回值都按{@link #hostType}擦除，实例方法的接收者是第一个参数
+         */
+        private String hostAdapterDescriptor(Resolver.MemberRef ref, boolean virtual) {
+            return hostDescriptor(new MethodDescriptor(ref.descriptor), virtual ? "I" : "");
+        }
+
+        /**
+         * 生成调用宿主方法的适配方法：编译的代码中引用都是int，这里解码成宿主方法声明的类型后再调用，
+         * 返回的宿主对象再编码成int引用
+         *
+         * @return 适配方法名
+         */
+        private String hostAdapter(Resolver.MemberRef ref, boolean virtual) {
+            String adapterName = "h" + hostAdapters.size();
+            MethodDescriptor descriptor = new MethodDescriptor(ref.descriptor);
+            String adapterDescriptor = hostAdapterDescriptor(ref, virtual);
+            ClassFileWriter.CodeBuilder code = new ClassFileWriter.CodeBuilder(writer.getConstantPool());
+            int local = 0;
+            if (virtual) {
+                decode(code, local++, ref.className);
+            }
+            for (TypeDescriptor paramType : descriptor.getParamTypes()) {
+                String type = paramType.getDescriptor();
+                if (type.charAt(0) == 'L') {
+                    decode(code, local, type.substring(1, type.length() - 1));
+                } else {
+                    code.local(storeOpcodeOf(type.charAt(0)) - (ISTORE - ILOAD), local);
+                }
+                local += RuntimeMethod.slotSizeOf(paramType);
+            }
+            code.method(virtual ? INVOKEVIRTUAL : INVOKESTATIC, ref.className, ref.name, ref.descriptor);
+            char returnType = descriptor.getReturnType().getDescriptor().charAt(0);
+            if (returnType == 'L') {
+                loadHeap(code);
+                code.op(SWAP);
+                code.method(INVOKEVIRTUAL, GUEST_HEAP, "encode", "(L" + OBJECT + ";)I");
+            }
+            code.op(returnType == 'V' ? RETURN : storeOpcodeOf(returnType) - ISTORE + IRETURN);
+            code.setMaxs(local + 2, local);
+            writer.addMethod(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_STATIC, adapterName, adapterDescriptor, code);
+            return adapterName;
+        }
+
+        /**
+         * 把局部变量中的int引用解码成宿主对象，转换成className类型压到栈上
+         */
+        private void decode(ClassFileWriter.CodeBuilder code, int local, String className) {
+            loadHeap(code);
+            code.local(ILOAD, local);
+            code.method(INVOKEVIRTUAL, GUEST_HEAP, "decode", "(I)L" + OBJECT + ";");
+            code.type(CHECKCAST, className);
+        }
+
+        /**
+         * 调用确定了目标的客户方法：小方法内联，其他的先编译再直接调用它的m
+         */
+        private void translateInvoke(ClassFileWriter.CodeBuilder code, Scope scope, int index, RuntimeMethod target) {
+            String rejection = inliningRejection(scope, target);
+            inliningDecisions.add(new InliningDecision(method, scope.method, scope.decoded.pcs[index], target, scope.depth,
+                    rejection == null, rejection == null ? target.getCodeLength() + " bytes" : rejection));
+            if (rejection == null) {
+                inline(code, scope, target);
+                return;
+            }
+            String targetClassName;
+            if (target == method && osrEntry < 0) {
+                targetClassName = className;
+            } else {
+                if (target.compileState == COMPILING) {
+                    // 互相递归的方法：被调用者还没有生成完，先不支持
+                    throw new Bailout("recursive compilation of " + target);
+                }
+                if (compile(target) == null) {
+                    throw new Bailout("callee not compilable: " + target);
+                }
+                callees.add(target);
+                targetClassName = target.compiledCode.getClass().getName().replace('.', '/');
+            }
+            code.method(INVOKESTATIC, targetClassName, BODY_METHOD, hostDescriptor(target));
+        }
+
+        /**
+         * @return 不能内联的原因，可以内联时返回null
+         */
+        private String inliningRejection(Scope scope, RuntimeMethod target) {
+            if (target.getCode() == null) {
+                return "no bytecode";
+            }
+            if (target.getExceptionTable() != null) {
+                return "exception handlers";
+            }
+            if (target.getCodeLength() > options.getMaxInlineSize()) {
+                return "too large: " + target.getCodeLength() + " > " + options.getMaxInlineSize() + " bytes";
+            }
+            if (scope.depth >= options.getMaxInlineDepth()) {
+                return "inlining too deep: " + scope.depth;
+            }
+            int recursion = 0;
+            for (Scope s = scope; s != null; s = s.parent) {
+                if (s.method == target) {
+                    recursion++;
+                }
+            }
+            if (recursion > MAX_RECURSIVE_INLINE_LEVEL) {
+                return "recursive inlining too deep: " + recursion;
+            }
+            return null;
+        }
+
+        /**
+         * 把被调用方法的指令翻译到调用点：参数从操作数栈存到为它新分配的局部变量中，返回指令变成跳到调用点之后
+         */
+        private void inline(ClassFileWriter.CodeBuilder code, Scope scope, RuntimeMethod target) {
+            DecodedCode decoded = DecodedCode.decode(target.getMethodInfo().getCode());
+            Scope inlined = new Scope(target, decoded, scope, nextLocal, nextLabel, nextLabel + decoded.length());
+            nextLocal += target.getMaxLocals();
+            nextLabel += decoded.length() + 1;
+            inlinedStack += target.getMaxStack();
+
+            // 最后一个参数在栈顶，所以倒着存
+            List<TypeDescriptor> paramTypes = target.getDescriptor().getParamTypes();
+            int[] paramLocals = new int[paramTypes.size()];
+            int local = target.isStatic() ? 0 : 1;
+            for (int i = 0; i < paramTypes.size(); i++) {
+                paramLocals[i] = local;
+                local += RuntimeMethod.slotSizeOf(paramTypes.get(i));
+            }
+            for (int i = paramTypes.size() - 1; i >= 0; i--) {
+                code.local(storeOpcodeOf(paramTypes.get(i).getDescriptor().charAt(0)), inlined.localBase + paramLocals[i]);
+            }
+            if (!target.isStatic()) {
+                code.local(ISTORE, inlined.localBase);
+                nullCheck(code, inlined.localBase);
+            }
+            translateScope(code, inlined);
+            code.placeLabel(inlined.returnLabel);
+        }
+    }
+
+    /**
+     * 正在翻译的一段客户代码：被编译的方法本身，或者内联进来的方法。
+     * 内联的方法的局部变量下标和跳转标签都加上各自的偏移量，和外层的不会冲突
+     */
+    private static class Scope {
+        final RuntimeMethod method;
+        final DecodedCode decoded;
+        final Scope parent;
+        final int depth;
+        final int localBase;
+        final int labelBase;
+        /**
+         * 返回指令要跳到的标签，最外层的方法为-1，返回指令原样翻译
+         */
+        final int returnLabel;
+
+        Scope(RuntimeMethod method, DecodedCode decoded, Scope parent, int localBase, int labelBase, int returnLabel) {
+            this.method = method;
+            this.decoded = decoded;
+            this.parent = parent;
+            this.depth = parent == null ? 0 : parent.depth + 1;
+            this.localBase = localBase;
+            this.labelBase = labelBase;
+            this.returnLabel = returnLabel;
+        }
+    }
+
+    /**
+     * @param type 描述符的第一个字符，引用类型是'L'，和int一样存放
+     */
+    private static int storeOpcodeOf(char type) {
+        switch (type) {
+            case 'J':
+                return LSTORE;
+            case 'F':
+                return FSTORE;
+            case 'D':
+                return DSTORE;
+            default:
+                return ISTORE;
+        }
+    }
+
+    /**
+     * 计算执行到第entryIndex条指令时每个局部变量的类型：从方法参数开始沿所有控制流路径传播xstore指令写入的类型，
+     * 不同路径类型不同的局部变量在这里不可用
+     *
+     * @return 每个局部变量的类型：'I'、'J'、'F'、'D'、'L'，没有值或者不可用时是0
+     */
+    static char[] localTypesAt(DecodedCode decoded, RuntimeMethod method, int entryIndex) {
+        char[][] states = new char[decoded.length()][];
+        char[] initial = new char[method.getMaxLocals()];
+        int local = 0;
+        if (!method.isStatic()) {
+            initial[local++] = 'L';
+        }
+        for (TypeDescriptor paramType : method.getDescriptor().getParamTypes()) {
+            char type = paramType.getDescriptor().charAt(0);
+            initial[local] = type == 'L' || type == '[' ? 'L' : storeOpcodeOf(type) == ISTORE ? 'I' : type;
+            local += RuntimeMethod.slotSizeOf(paramType);
+        }
+        states[0] = initial;
+        Deque<Integer> worklist = new ArrayDeque<>();
+        worklist.push(0);
+        while (!worklist.isEmpty()) {
+            int index = worklist.pop();
+            char[] state = states[index].clone();
+            int opcode = decoded.opcodes[index];
+            int operand = decoded.operands[index];
+            char stored = storedType(opcode);
+            if (stored != 0) {
+                state[operand] = stored;
+                if (stored == 'J' || stored == 'D') {
+                    state[operand + 1] = 0;
+                }
+                if (operand > 0 && (state[operand - 1] == 'J' || state[operand - 1] == 'D')) {
+                    state[operand - 1] = 0;
+                }
+            }
+            for (int successor : successorsOf(decoded, index)) {
+                char[] target = states[successor];
+                if (target == null) {
+                    states[successor] = state.clone();
+                    worklist.push(successor);
+                    continue;
+                }
+                boolean changed = false;
+                for (int i = 0; i < target.length; i++) {
+                    if (target[i] != 0 && target[i] != state[i]) {
+                        target[i] = 0;
+                        changed = true;
+                    }
+                }
+                if (changed) {
+                    worklist.push(successor);
+                }
+            }
+        }
+        if (states[entryIndex] == null) {
+            throw new Bailout("unreachable osr entry " + entryIndex);
+        }
+        return states[entryIndex];
+    }
+
+    private static char storedType(int opcode) {
+        switch (opcode) {
+            case ISTORE:
+                return 'I';
+            case LSTORE:
+                return 'J';
+            case FSTORE:
+                return 'F';
+            case DSTORE:
+                return 'D';
+            case ASTORE:
+                return 'L';
+            default:
+                return 0;
+        }
+    }
+
+    private static int[] successorsOf(DecodedCode decoded, int index) {
+        int opcode = decoded.opcodes[index];
+        int operand = decoded.operands[index];
+        if (opcode == GOTO) {
+            return new int[]{operand};
+        }
+        if ((opcode >= IFEQ && opcode <= IF_ACMPNE) || opcode == IFNULL || opcode == IFNONNULL) {
+            return new int[]{index + 1, operand};
+        }
+        if (opcode == TABLESWITCH || opcode == LOOKUPSWITCH) {
+            DecodedCode.SwitchTable table = decoded.switchTables[operand];
+            int[] successors = Arrays.copyOf(table.targets, table.targets.length + 1);
+            successors[table.targets.length] = table.defaultTarget;
+            return successors;
+        }
+        if ((opcode >= IRETURN && opcode <= RETURN) || opcode == ATHROW || index + 1 >= decoded.length()) {
+            return new int[0];
+        }
+        return new int[]{index + 1};
+    }
+
+    /**
+     * 不带操作数、在宿主上语义完全相同的指令：常量、栈操作、算术、类型转换、比较和返回。数组读写还不支持
+     */
+    private static boolean isCopiedAsIs(int opcode) {
+        return (opcode >= NOP && opcode <= DCONST_1)
+                || (opcode >= POP && opcode <= LXOR)
+                || (opcode >= I2L && opcode <= DCMPG)
+                || (opcode >= IRETURN && opcode <= RETURN);
+    }
+
+    /**
+     * 放弃编译
+     */
+    private static class Bailout extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Bailout(String reason) {
+            super(reason, null, false, false);
+        }
+    }
+
+    /**
+     * 代码缓存：定义编译生成的宿主类。所有生成的类由同一个类加载器定义，所以它们之间可以直接调用
+     */
+    private static class CodeCacheClassLoader extends ClassLoader {
+        CodeCacheClassLoader() {
+            super(CompiledMethod.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.github.hcsp;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * 客户代码能引用的宿主对象，例如字符串常量、System.out和内建方法返回的字符串。
+ * <p>
+ * 它们不在{@link GuestHeap}里，栈帧的槽和对象的引用字段中存的是负的表下标：第i项是-(i + 1)。
+ * 同一个宿主对象只登记一次，所以仍然可以用==比较引用。表项的下标不变，释放之后下标可以给新的宿主对象使用。
+ * <p>
+ * 常量池中的字符串常量和宿主的静态字段在解析时{@link #pin 固定}在表中，一直不释放，所以编译的代码和快速指令可以直接使用它们的下标。
+ * 其余的表项在每次垃圾收集时清除：收集器扫描根和活对象时{@link #mark 标记}遇到的表项，之后{@link #sweep}释放没有标记的表项。
+ * 年轻代收集不扫描老对象，所以老对象引用的表项另外记一个{@link #markOld 老年代标记}，直到整理整个堆时才重新计算。
+ * 并发标记时客户线程一直在登记新的表项，它们不在标记开始时的快照中，{@link #startConcurrentMarking()}之后登记的表项直接算作标记过的。
+ * <p>
+ * 客户线程和加载类的线程（登记静态字段的字符串常量）都可能登记表项，所以登记和清除要加锁；
+ * 读表项不加锁，读到的下标总是在这之前登记的。收集时多个工作线程可以同时标记，标记只是写入同一个值
+ */
+final class HostObjectTable {
+    private Object[] objects = new Object[64];
+    private byte[] marks = new byte[64];
+    private byte[] oldMarks = new byte[64];
+    private boolean[] pinned = new boolean[64];
+    private final Map<Object, Integer> indices = new IdentityHashMap<>();
+    /**
+     * 用过的最大下标加一，释放的下标在freeIndices中
+     */
+    private int length;
+    private int[] freeIndices = new int[16];
+    private int freeCount;
+    /**
+     * 新登记的表项是否直接标记，从并发标记开始到下一次清除
+     */
+    private boolean allocateMarked;
+    /**
+     * 表中的宿主对象个数，客户线程在安全点上不加锁读它
+     */
+    private volatile int size;
+
+    /**
+     * @return 宿主对象的引用，0表示null
+     */
+    synchronized int encode(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        Integer index = indices.get(value);
+        if (index == null) {
+            index = add(value);
+        }
+        return -index - 1;
+    }
+
+    /**
+     * 登记一个一直不释放的宿主对象，例如字符串常量
+     */
+    synchronized int pin(Object value) {
+        int ref = encode(value);
+        pinned[-ref - 1] = true;
+        return ref;
+    }
+
+    private int add(Object value) {
+        int index;
+        if (freeCount > 0) {
+            index = freeIndices[--freeCount];
+        } else {
+            if (length == objects.length) {
+                objects = Arrays.copyOf(objects, length * 2);
+                marks = Arrays.copyOf(marks, length * 2);
+                oldMarks = Arrays.copyOf(oldMarks, length * 2);
+                pinned = Arrays.copyOf(pinned, length * 2);
+            }
+            index = length++;
+        }
+        objects[index] = value;
+        marks[index] = allocateMarked ? (byte) 1 : 0;
+        indices.put(value, index);
+        size++;
+        return index;
+    }
+
+    /**
+     * @param ref 负的表下标
+     */
+    Object get(int ref) {
+        return objects[-ref - 1];
+    }
+
+    /**
+     * 收集时找到了对这个表项的引用
+     */
+    void mark(int ref) {
+        marks[-ref - 1] = 1;
+    }
+
+    /**
+     * 并发标记线程找到的表项，由客户线程在重新标记时一起标记：标记线程直接写标记可能和登记新表项时的扩容冲突
+     */
+    synchronized void markAll(int[] refs, int count) {
+        for (int i = 0; i < count; i++) {
+            marks[-refs[i] - 1] = 1;
+        }
+    }
+
+    /**
+     * 并发标记开始：之后登记的表项直接算作标记过的，直到下一次{@link #sweep}
+     */
+    synchronized void startConcurrentMarking() {
+        allocateMarked = true;
+    }
+
+    /**
+     * 清掉没有做完的并发标记留下的标记
+     */
+    synchronized void clearMarks() {
+        Arrays.fill(marks, 0, length, (byte) 0);
+        allocateMarked = false;
+    }
+
+    /**
+     * 老对象引用着这个表项，年轻代收集不释放它
+     */
+    void markOld(int ref) {
+        oldMarks[-ref - 1] = 1;
+    }
+
+    /**
+     * 整理整个堆之前清掉老年代标记，收集器之后按整理的结果重新标记
+     */
+    synchronized void clearOldMarks() {
+        Arrays.fill(oldMarks, 0, length, (byte) 0);
+    }
+
+    /**
+     * 释放这次收集没有标记的表项，清掉标记
+     *
+     * @return 释放的表项数
+     */
+    synchronized int sweep() {
+        int freed = 0;
+        for (int index = 0; index < length; index++) {
+            if (marks[index] == 0 && oldMarks[index] == 0 && !pinned[index] && objects[index] != null) {
+                indices.remove(objects[index]);
+                objects[index] = null;
+                if (freeCount == freeIndices.length) {
+                    freeIndices = Arrays.copyOf(freeIndices, freeCount * 2);
+                }
+                freeIndices[freeCount++] = index;
+                freed++;
+            }
+            marks[index] = 0;
+        }
+        allocateMarked = false;
+        size -= freed;
+        return freed;
+    }
+
+    /**
+     * @return 表中的宿主对象个数，包括固定的
+     */
+    int size() {
+        return size;
+    }
+}
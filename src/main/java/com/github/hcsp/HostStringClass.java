@@ -0,0 +1,28 @@
+package com.github.hcsp;
+
+public class HostStringClass {
+    private static Label kept;
+
+    public static void main(String[] args) {
+        kept = new Label();
+        int digits = 0;
+        for (int i = 0; i < 20000; i++) {
+            // 每个短命的对象都引用一个新的宿主字符串，对象被回收之后字符串也应该从宿主对象表中释放
+            Label label = new Label();
+            label.text = Integer.toString(i);
+            label.value = i;
+            digits += label.text.length();
+            if (i % 1000 == 0) {
+                // 活得久的对象引用的字符串不能被释放，分代收集时它已经在老年代
+                kept.text = label.text;
+            }
+        }
+        System.out.println(digits);
+        System.out.println(kept.text);
+    }
+
+    static class Label {
+        String text;
+        long value;
+    }
+}
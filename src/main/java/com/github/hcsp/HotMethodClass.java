@@ -0,0 +1,57 @@
+package com.github.hcsp;
+
+public class HotMethodClass {
+    private static int calls;
+    private static double scale = 1.5;
+
+    public static void main(String[] args) {
+        System.out.println(fib(25));
+        System.out.println(calls);
+        long steps = 0;
+        for (int i = 1; i <= 3000; i++) {
+            steps += collatz(i);
+        }
+        System.out.println(steps);
+        int digits = 0;
+        for (int i = 0; i < 3000; i++) {
+            digits = digits * 7 + digit(i);
+        }
+        System.out.println(digits);
+        double total = 0;
+        for (int i = 0; i < 3000; i++) {
+            total += scaled(i);
+        }
+        System.out.println(total);
+    }
+
+    private static int fib(int n) {
+        calls++;
+        return n < 2 ? n : fib(n - 1) + fib(n - 2);
+    }
+
+    private static int collatz(long n) {
+        int steps = 0;
+        while (n != 1) {
+            n = n % 2 == 0 ? n / 2 : 3 * n + 1;
+            steps++;
+        }
+        return steps;
+    }
+
+    private static int digit(int i) {
+        switch (i % 5) {
+            case 0:
+                return 9;
+            case 1:
+                return 1;
+            case 2:
+                return 2;
+            default:
+                return i % 1000 == 999 ? 4 : 3;
+        }
+    }
+
+    private static double scaled(int i) {
+        return i * scale + 0.25f;
+    }
+}
@@ -0,0 +1,128 @@
+package com.github.hcsp;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * invokevirtual/invokeinterface调用点的内联缓存。
+ * <p>
+ * 缓存记住最近见过的几个接收者类和对应的目标方法，同一个类再次出现时直接命中。未命中时通过接收者类的
+ * vtable或者itable找到目标方法（见{@link RuntimeClass#selectMethod}）。
+ * 调用点上出现的类超过容量之后，缓存变成megamorphic状态，不再比较缓存的类，直接查表分派。
+ * 每个调用点只属于一个方法的一份代码，只会被执行它的客户线程访问，所以计数器不需要同步。
+ */
+public class InlineCache {
+    private final String site;
+    private final RuntimeMethod resolved;
+    private final int argSlotCount;
+    private final RuntimeClass[] receiverClasses;
+    private final RuntimeMethod[] targets;
+    /**
+     * 每个缓存的接收者类出现的次数，就是调用点的接收者类型记录
+     */
+    private final long[] receiverCounts;
+    private int size;
+    private boolean megamorphic;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param caller   调用点所在的方法
+     * @param index    调用点的指令下标
+     * @param resolved 解析时找到的方法，未命中时按它的vtable或itable下标分派
+     * @param capacity 最多缓存几个接收者类
+     */
+    InlineCache(RuntimeMethod caller, int index, RuntimeMethod resolved, int capacity) {
+        this.site = caller + "@" + caller.getCode().pcs[index];
+        this.resolved = resolved;
+        this.argSlotCount = resolved.getArgSlotCount();
+        this.receiverClasses = new RuntimeClass[capacity];
+        this.targets = new RuntimeMethod[capacity];
+        this.receiverCounts = new long[capacity];
+    }
+
+    /**
+     * 找到接收者实际要调用的方法。接收者在调用者操作数栈上所有参数的下面
+     */
+    RuntimeMethod lookup(StackFrame frame) {
+        RuntimeClass receiverClass = frame.thread.heap.classAt(GuestHeap.nonNull(frame.peekRef(argSlotCount - 1)));
+        if (!megamorphic) {
+            for (int i = 0; i < size; i++) {
+                if (receiverClasses[i] == receiverClass) {
+                    hits++;
+                    receiverCounts[i]++;
+                    return targets[i];
+                }
+            }
+        }
+        misses++;
+        RuntimeMethod target = receiverClass.selectMethod(resolved);
+        if (target.isAbstract()) {
+            throw new GuestException("java.lang.AbstractMethodError", receiverClass.getName() + "." + target.getName() + target.getDescriptor().getDescriptor());
+        }
+        if (megamorphic) {
+            return target;
+        }
+        if (size < receiverClasses.length) {
+            receiverClasses[size] = receiverClass;
+            targets[size] = target;
+            receiverCounts[size] = 1;
+            size++;
+        } else {
+            megamorphic = true;
+        }
+        return target;
+    }
+
+    /**
+     * @return 调用点的描述：方法和字节码偏移量，例如com.github.hcsp.Foo.bar()V@12
+     */
+    public String getSite() {
+        return site;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return 缓存中记录的接收者类的个数
+     */
+    public int getReceiverClassCount() {
+        return size;
+    }
+
+    /**
+     * @return 缓存的接收者类和它们出现的次数，按第一次出现的顺序。megamorphic之后新出现的类不在其中
+     */
+    public Map<RuntimeClass, Long> getReceiverTypes() {
+        Map<RuntimeClass, Long> result = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            result.put(receiverClasses[i], receiverCounts[i]);
+        }
+        return result;
+    }
+
+    /**
+     * @return 是否只见过一个接收者类
+     */
+    public boolean isMonomorphic() {
+        return size == 1 && !megamorphic;
+    }
+
+    /**
+     * @return 见过的接收者类是否超过了缓存的容量
+     */
+    public boolean isMegamorphic() {
+        return megamorphic;
+    }
+
+    @Override
+    public String toString() {
+        return site + " classes=" + size + (megamorphic ? " (megamorphic)" : "") + " hits=" + hits + " misses=" + misses;
+    }
+}
@@ -0,0 +1,54 @@
+package com.github.hcsp;
+
+public class InliningClass {
+    private int value;
+
+    public static void main(String[] args) {
+        InliningClass holder = new InliningClass();
+        long total = 0;
+        for (int i = 0; i < 2000; i++) {
+            total += compute(holder, i);
+        }
+        System.out.println(total);
+
+        int depths = 0;
+        for (int i = 0; i < 200; i++) {
+            depths += depth(i % 10);
+        }
+        System.out.println(depths);
+    }
+
+    private static long compute(InliningClass holder, int i) {
+        holder.setValue(square(i));
+        return holder.getValue() + holder.twice(i) + checksum(i);
+    }
+
+    private static int square(int i) {
+        return i * i;
+    }
+
+    int getValue() {
+        return value;
+    }
+
+    void setValue(int value) {
+        this.value = value;
+    }
+
+    private int twice(int i) {
+        return i * 2;
+    }
+
+    private static int checksum(int i) {
+        int result = i;
+        result = result * 31 + (i >>> 1);
+        result = result * 31 + (i >>> 2);
+        result = result * 31 + (i >>> 3);
+        result = result * 31 + (i >>> 4);
+        return result ^ result >>> 16;
+    }
+
+    private static int depth(int n) {
+        return n == 0 ? 0 : 1 + depth(n - 1);
+    }
+}
@@ -0,0 +1,73 @@
+package com.github.hcsp;
+
+/**
+ * {@link HostCompiler}在一个调用点上是否内联的决定，用来调整内联的字节码大小预算和深度限制。
+ * 只记录成功安装的编译代码中的调用点
+ */
+public class InliningDecision {
+    private final RuntimeMethod compiledMethod;
+    private final RuntimeMethod caller;
+    private final int pc;
+    private final RuntimeMethod callee;
+    private final int depth;
+    private final boolean inlined;
+    private final String reason;
+
+    InliningDecision(RuntimeMethod compiledMethod, RuntimeMethod caller, int pc, RuntimeMethod callee, int depth, boolean inlined, String reason) {
+        this.compiledMethod = compiledMethod;
+        this.caller = caller;
+        this.pc = pc;
+        this.callee = callee;
+        this.depth = depth;
+        this.inlined = inlined;
+        this.reason = reason;
+    }
+
+    /**
+     * @return 被编译的方法，调用点可能在内联进来的方法中
+     */
+    public RuntimeMethod getCompiledMethod() {
+        return compiledMethod;
+    }
+
+    /**
+     * @return 调用点所在的方法
+     */
+    public RuntimeMethod getCaller() {
+        return caller;
+    }
+
+    /**
+     * @return 调用点在caller中的字节码偏移量
+     */
+    public int getPc() {
+        return pc;
+    }
+
+    public RuntimeMethod getCallee() {
+        return callee;
+    }
+
+    /**
+     * @return 调用点所在的内联层数，被编译的方法本身是0
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    public boolean isInlined() {
+        return inlined;
+    }
+
+    /**
+     * @return 决定的原因，例如被调用方法的大小或者超过了哪个限制
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    @Override
+    public String toString() {
+        return compiledMethod + ": " + caller + "@" + pc + " -> " + callee + (inlined ? " inlined" : " not inlined") + " (" + reason + ")";
+    }
+}
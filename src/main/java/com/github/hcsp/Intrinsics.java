@@ -0,0 +1,123 @@
+package com.github.hcsp;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * JDK方法的内建实现：客户代码调用Math、Integer、String、System中的这些方法时，直接执行宿主JDK中的同名方法。
+ * <p>
+ * 和{@link HostBindings}不同，这些方法没有状态，和具体的虚拟机无关，所以在链接时就可以绑定：
+ * {@link #bind}把方法中调用内建方法的指令直接改写成执行宿主实现的快速指令，执行时不需要再按名字查找。
+ * {@link HostCompiler}编译时直接调用宿主方法。
+ * <p>
+ * 键的格式和{@link HostBindings}相同："类名.方法名描述符"，类名使用内部形式
+ */
+final class Intrinsics {
+    private static final Map<String, NativeHandler> INTRINSICS = new HashMap<>();
+
+    static {
+        register("java/lang/Math.abs(I)I", frame -> frame.pushInt(Math.abs(frame.popInt())));
+        register("java/lang/Math.abs(J)J", frame -> frame.pushLong(Math.abs(frame.popLong())));
+        register("java/lang/Math.abs(F)F", frame -> frame.pushFloat(Math.abs(frame.popFloat())));
+        register("java/lang/Math.abs(D)D", frame -> frame.pushDouble(Math.abs(frame.popDouble())));
+        register("java/lang/Math.max(II)I", frame -> frame.pushInt(Math.max(frame.popInt(), frame.popInt())));
+        register("java/lang/Math.max(JJ)J", frame -> frame.pushLong(Math.max(frame.popLong(), frame.popLong())));
+        register("java/lang/Math.max(FF)F", frame -> frame.pushFloat(Math.max(frame.popFloat(), frame.popFloat())));
+        register("java/lang/Math.max(DD)D", frame -> frame.pushDouble(Math.max(frame.popDouble(), frame.popDouble())));
+        register("java/lang/Math.min(II)I", frame -> frame.pushInt(Math.min(frame.popInt(), frame.popInt())));
+        register("java/lang/Math.min(JJ)J", frame -> frame.pushLong(Math.min(frame.popLong(), frame.popLong())));
+        register("java/lang/Math.min(FF)F", frame -> frame.pushFloat(Math.min(frame.popFloat(), frame.popFloat())));
+        register("java/lang/Math.min(DD)D", frame -> frame.pushDouble(Math.min(frame.popDouble(), frame.popDouble())));
+        register("java/lang/Math.sqrt(D)D", frame -> frame.pushDouble(Math.sqrt(frame.popDouble())));
+        register("java/lang/Math.sin(D)D", frame -> frame.pushDouble(Math.sin(frame.popDouble())));
+        register("java/lang/Math.cos(D)D", frame -> frame.pushDouble(Math.cos(frame.popDouble())));
+        register("java/lang/Math.log(D)D", frame -> frame.pushDouble(Math.log(frame.popDouble())));
+        register("java/lang/Math.exp(D)D", frame -> frame.pushDouble(Math.exp(frame.popDouble())));
+        register("java/lang/Math.floor(D)D", frame -> frame.pushDouble(Math.floor(frame.popDouble())));
+        register("java/lang/Math.ceil(D)D", frame -> frame.pushDouble(Math.ceil(frame.popDouble())));
+        register("java/lang/Math.round(D)J", frame -> frame.pushLong(Math.round(frame.popDouble())));
+        register("java/lang/Math.round(F)I", frame -> frame.pushInt(Math.round(frame.popFloat())));
+        register("java/lang/Math.pow(DD)D", frame -> {
+            double b = frame.popDouble();
+            frame.pushDouble(Math.pow(frame.popDouble(), b));
+        });
+        register("java/lang/Math.floorMod(II)I", frame -> {
+            int y = frame.popInt();
+            frame.pushInt(Math.floorMod(frame.popInt(), y));
+        });
+
+        register("java/lang/Integer.parseInt(Ljava/lang/String;)I", frame -> frame.pushInt(Integer.parseInt((String) frame.popObject())));
+        register("java/lang/Integer.toString(I)Ljava/lang/String;", frame -> frame.pushObject(Integer.toString(frame.popInt())));
+        register("java/lang/Integer.bitCount(I)I", frame -> frame.pushInt(Integer.bitCount(frame.popInt())));
+        register("java/lang/Long.parseLong(Ljava/lang/String;)J", frame -> frame.pushLong(Long.parseLong((String) frame.popObject())));
+        register("java/lang/Long.toString(J)Ljava/lang/String;", frame -> frame.pushObject(Long.toString(frame.popLong())));
+
+        register("java/lang/String.length()I", frame -> frame.pushInt(receiver(frame.popObject()).length()));
+        register("java/lang/String.charAt(I)C", frame -> {
+            int index = frame.popInt();
+            frame.pushInt(receiver(frame.popObject()).charAt(index));
+        });
+        register("java/lang/String.equals(Ljava/lang/Object;)Z", frame -> {
+            Object other = frame.popObject();
+            frame.pushInt(receiver(frame.popObject()).equals(other) ? 1 : 0);
+        });
+        register("java/lang/String.hashCode()I", frame -> frame.pushInt(receiver(frame.popObject()).hashCode()));
+
+        register("java/lang/System.arraycopy(Ljava/lang/Object;ILjava/lang/Object;II)V", frame -> {
+            int length = frame.popInt();
+            int destPos = frame.popInt();
+            Object dest = frame.popObject();
+            int srcPos = frame.popInt();
+            System.arraycopy(frame.popObject(), srcPos, dest, destPos, length);
+        });
+        register("java/lang/System.nanoTime()J", frame -> frame.pushLong(System.nanoTime()));
+        register("java/lang/System.currentTimeMillis()J", frame -> frame.pushLong(System.currentTimeMillis()));
+    }
+
+    private Intrinsics() {
+    }
+
+    /**
+     * 宿主实现抛出的异常（例如parseInt的NumberFormatException）变成同名的客户异常
+     */
+    private static void register(String key, NativeHandler handler) {
+        INTRINSICS.put(key, frame -> {
+            try {
+                handler.invoke(frame);
+            } catch (RuntimeException e) {
+                throw GuestException.fromHost(e);
+            }
+        });
+    }
+
+    private static String receiver(Object ref) {
+        if (ref == null) {
+            throw new GuestException("java.lang.NullPointerException", null);
+        }
+        return (String) ref;
+    }
+
+    /**
+     * @return 内建方法的实现，不是内建方法时返回null
+     */
+    static NativeHandler get(String className, String methodName, String descriptor) {
+        return INTRINSICS.get(className + "." + methodName + descriptor);
+    }
+
+    /**
+     * 链接时把调用内建方法的指令改写成{@link Bytecodes#QUICK_INVOKENATIVE}
+     */
+    static void bind(RuntimeClass referrer, DecodedCode code) {
+        for (int index = 0; index < code.length(); index++) {
+            int opcode = code.opcodes[index];
+            if (opcode != Bytecodes.INVOKESTATIC && opcode != Bytecodes.INVOKEVIRTUAL) {
+                continue;
+            }
+            Resolver.MemberRef ref = Resolver.memberRef(referrer, code.operands[index]);
+            NativeHandler handler = get(ref.className, ref.name, ref.descriptor);
+            if (handler != null) {
+                code.quicken(index, Bytecodes.QUICK_INVOKENATIVE, handler);
+            }
+        }
+    }
+}
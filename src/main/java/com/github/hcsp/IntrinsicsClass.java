@@ -0,0 +1,54 @@
+package com.github.hcsp;
+
+public class IntrinsicsClass {
+    public static void main(String[] args) {
+        System.out.println(Math.max(3, 7));
+        System.out.println(Math.abs(-5));
+        System.out.println(Math.sqrt(16.0));
+        System.out.println(Math.pow(2.0, 10.0));
+
+        String hello = "hello";
+        System.out.println(hello.length());
+        System.out.println(hello.charAt(1));
+        System.out.println(Integer.parseInt("123") + 1);
+        System.out.println(Integer.toString(42));
+
+        try {
+            Integer.parseInt("abc");
+        } catch (NumberFormatException e) {
+            System.out.println(e.getMessage());
+        }
+
+        long start = System.nanoTime();
+        int digits = 0;
+        for (int i = 0; i < 10000; i++) {
+            digits += digitSum(i);
+        }
+        System.out.println(digits);
+
+        int parsed = 0;
+        for (int i = 0; i < 2000; i++) {
+            parsed += parse(Integer.toString(i));
+        }
+        System.out.println(parsed);
+        try {
+            parse("x");
+        } catch (NumberFormatException e) {
+            System.out.println("bad number");
+        }
+        System.out.println(System.nanoTime() >= start);
+    }
+
+    private static int digitSum(int n) {
+        String s = Integer.toString(n);
+        int sum = 0;
+        for (int i = 0; i < s.length(); i++) {
+            sum += s.charAt(i) - '0';
+        }
+        return sum;
+    }
+
+    private static int parse(String s) {
+        return Integer.parseInt(s);
+    }
+}
@@ -0,0 +1,24 @@
+package com.github.hcsp;
+
+public class LoopClass {
+    public static void main(String[] args) {
+        System.out.println(sum(100000));
+        System.out.println(mean(100));
+    }
+
+    private static long sum(int n) {
+        long result = 0;
+        for (int i = 0; i < n; i++) {
+            result += i;
+        }
+        return result;
+    }
+
+    private static double mean(int n) {
+        double total = 0;
+        for (int i = 1; i <= n; i++) {
+            total += i;
+        }
+        return total / n;
+    }
+}
@@ -0,0 +1,76 @@
+package com.github.hcsp;
+
+import java.nio.ByteBuffer;
+
+import static com.github.hcsp.GuestHeap.GC_WORD;
+
+/**
+ * 标记-整理收集器（LISP2算法），使用整个堆：
+ * <ol>
+ * <li>标记：从根出发并行遍历所有活对象，见{@link GuestHeap#markLive()}</li>
+ * <li>计算新地址：从低到高扫描堆，每个活对象的新地址是它之前所有活对象大小的和，写到GC字中</li>
+ * <li>更新引用：把根和活对象的引用字段改成被引用对象的新地址</li>
+ * <li>移动：从低到高把活对象滑动到新地址</li>
+ * </ol>
+ * 新地址总是不大于旧地址，所以从低到高移动时不会覆盖还没有处理的对象
+ */
+final class MarkCompactCollector implements GuestHeap.Collector {
+    private final GuestHeap heap;
+    private final ByteBuffer arena;
+
+    MarkCompactCollector(GuestHeap heap) {
+        this.heap = heap;
+        this.arena = heap.arena();
+    }
+
+    @Override
+    public int allocate(GuestThread thread, int size) {
+        return heap.allocateInSpace(size);
+    }
+
+    @Override
+    public int getUsed() {
+        return heap.top - heap.spaceStart;
+    }
+
+    @Override
+    public int collect() {
+        int used = getUsed();
+        heap.markLive();
+
+        int free = heap.spaceStart;
+        for (int address = heap.spaceStart; address < heap.top; address += heap.sizeAt(address)) {
+            if (arena.getInt(address + GC_WORD) == MarkTask.MARKED) {
+                arena.putInt(address + GC_WORD, free);
+                free += heap.sizeAt(address);
+            }
+        }
+
+        for (int address = heap.spaceStart; address < heap.top; address += heap.sizeAt(address)) {
+            if (arena.getInt(address + GC_WORD) != 0) {
+                for (int offset : heap.classAt(address).getReferenceOffsets()) {
+                    int value = arena.getInt(address + offset);
+                    if (value > 0) {
+                        arena.putInt(address + offset, arena.getInt(value + GC_WORD));
+                    }
+                }
+            }
+        }
+        heap.updateRoots(address -> arena.getInt(address + GC_WORD));
+        heap.sweepHostObjects();
+
+        int address = heap.spaceStart;
+        while (address < heap.top) {
+            int size = heap.sizeAt(address);
+            int newAddress = arena.getInt(address + GC_WORD);
+            if (newAddress != 0) {
+                heap.move(address, newAddress, size);
+                arena.putInt(newAddress + GC_WORD, 0);
+            }
+            address += size;
+        }
+        heap.clear(free, heap.top);
+        heap.top = free;
+        return used;
+    }
+}
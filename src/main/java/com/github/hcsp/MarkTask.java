@@ -0,0 +1,72 @@
+package com.github.hcsp;
+
+import java.nio.ByteBuffer;
+
+import static com.github.hcsp.GuestHeap.GC_WORD;
+
+/**
+ * 并行标记：roots中[from, to)这一段根出发能到达的对象都被标记，对象头的GC字是{@link #MARKED}，
+ * 它们引用的宿主对象也被标记。几个工作线程可能同时找到同一个对象，用{@link GuestHeap#claim}决定由谁标记和扫描它
+ */
+final class MarkTask extends GcTask {
+    private static final long serialVersionUID = 1L;
+
+    static final int MARKED = 1;
+
+    private final GuestHeap heap;
+    private final ByteBuffer arena;
+    private final HostObjectTable hostObjects;
+    private final int[] roots;
+    private final int from;
+    private final int to;
+
+    MarkTask(GuestHeap heap, int[] roots, int from, int to) {
+        this.heap = heap;
+        this.arena = heap.arena();
+        this.hostObjects = heap.hostObjects();
+        this.roots = roots;
+        this.from = from;
+        this.to = to;
+    }
+
+    private MarkTask(GuestHeap heap, int[] stack, int size) {
+        super(stack, size);
+        this.heap = heap;
+        this.arena = heap.arena();
+        this.hostObjects = heap.hostObjects();
+        this.roots = null;
+        this.from = 0;
+        this.to = 0;
+    }
+
+    @Override
+    void prepare() {
+        for (int i = from; i < to; i++) {
+            mark(roots[i]);
+        }
+    }
+
+    @Override
+    void process(int address) {
+        for (int offset : heap.classAt(address).getReferenceOffsets()) {
+            int value = arena.getInt(address + offset);
+            if (value > 0) {
+                mark(value);
+            } else if (value < 0) {
+                hostObjects.mark(value);
+            }
+        }
+    }
+
+    private void mark(int address) {
+        if (heap.claim(address)) {
+            arena.putInt(address + GC_WORD, MARKED);
+            push(address);
+        }
+    }
+
+    @Override
+    GcTask newTask(int[] stack, int size) {
+        return new MarkTask(heap, stack, size);
+    }
+}
@@ -0,0 +1,317 @@
+package com.github.hcsp;
+
+import com.github.zxh.classpy.classfile.ClassFile;
+import com.github.zxh.classpy.classfile.ClassFileParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * 元空间：保存虚拟机中所有已加载的类。
+ * <p>
+ * 每个类在一个虚拟机中只会被读取、解析、链接一次，之后的请求都直接命中缓存。可以被多个线程同时使用。
+ * <p>
+ * 元空间同时负责类层次分析：编译器可以问一个虚方法在已加载的类中是不是只有一个实现，据此直接调用甚至内联它，
+ * 并把这个假设登记为依赖。之后加载的类覆盖了这个方法时，依赖它的编译代码被丢弃，调用回到解释器。
+ * 编译的代码不会触发类加载，所以丢弃时这些代码不会正在当前线程的栈上执行。
+ */
+public class Metaspace {
+    private final String[] classPathEntries;
+    private final ConcurrentHashMap<String, FutureTask<RuntimeClass>> loadedClasses = new ConcurrentHashMap<>();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder loadTimeNanos = new LongAdder();
+    private final LongAdder deoptimizations = new LongAdder();
+    /**
+     * 保护子类列表和依赖关系，类层次的查询、登记依赖和新类加入类层次互斥
+     */
+    private final Object hierarchyLock = new Object();
+    private final NativeRegistry natives = new NativeRegistry();
+    /**
+     * 下标是{@link RuntimeClass#getId()}，只在它自己的锁内访问
+     */
+    private final List<RuntimeClass> classesById = new ArrayList<>();
+    /**
+     * classesById的副本，垃圾收集时每个对象都要按类编号找类，不加锁读它。
+     * 只在classesById的锁内替换成更长的数组，已经登记的元素不再改变
+     */
+    private volatile RuntimeClass[] classArray = new RuntimeClass[64];
+    private final HostObjectTable hostObjects = new HostObjectTable();
+
+    public Metaspace(String[] classPathEntries) {
+        this.classPathEntries = classPathEntries;
+    }
+
+    /**
+     * @return native方法的注册表，类加载时从这里找native方法的实现
+     */
+    public NativeRegistry getNatives() {
+        return natives;
+    }
+
+    /**
+     * @return 编号为id的类，见{@link RuntimeClass#getId()}
+     */
+    RuntimeClass getClassById(int id) {
+        return classArray[id];
+    }
+
+    /**
+     * @return 客户代码引用的宿主对象，例如字符串常量，见{@link HostObjectTable}
+     */
+    HostObjectTable getHostObjects() {
+        return hostObjects;
+    }
+
+    /**
+     * 按编号顺序访问所有已经定义的类，包括还在链接中的类
+     */
+    void forEachClass(Consumer<RuntimeClass> action) {
+        synchronized (classesById) {
+            classesById.forEach(action);
+        }
+    }
+
+    /**
+     * 获取一个类，如果还没有加载过就从classpath中加载它
+     *
+     * @param className 类名，二进制名（com.github.hcsp.SimpleClass）或者内部名（com/github/hcsp/SimpleClass）都可以
+     * @return 链接好的类
+     */
+    public RuntimeClass loadClass(String className) {
+        String binaryName = className.replace('/', '.');
+        FutureTask<RuntimeClass> task = loadedClasses.get(binaryName);
+        if (task == null) {
+            FutureTask<RuntimeClass> newTask = new FutureTask<>(() -> defineClass(binaryName));
+            task = loadedClasses.putIfAbsent(binaryName, newTask);
+            if (task == null) {
+                // 只有成功放进表里的那个线程真正去加载，其他线程等待它的结果
+                missCount.increment();
+                task = newTask;
+                task.run();
+            } else {
+                hitCount.increment();
+            }
+        } else {
+            hitCount.increment();
+        }
+        return getLoadResult(binaryName, task);
+    }
+
+    private RuntimeClass getLoadResult(String binaryName, FutureTask<RuntimeClass> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            // 加载失败的类不留在表里，下次重新尝试
+            loadedClasses.remove(binaryName, task);
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private RuntimeClass defineClass(String binaryName) {
+        long start = System.nanoTime();
+        try {
+            ClassFile classFile = Stream.of(classPathEntries)
+                    .map(entry -> tryLoad(entry, binaryName))
+                    .filter(Objects::nonNull)
+                    .findFirst()
+                    .orElseGet(() -> BootstrapClasses.define(binaryName));
+            if (classFile == null) {
+                throw new RuntimeException(new ClassNotFoundException(binaryName));
+            }
+            RuntimeClass runtimeClass = new RuntimeClass(binaryName, classFile);
+            synchronized (classesById) {
+                runtimeClass.id = classesById.size();
+                classesById.add(runtimeClass);
+                RuntimeClass[] array = classArray;
+                if (runtimeClass.id == array.length) {
+                    array = Arrays.copyOf(array, array.length * 2);
+                }
+                array[runtimeClass.id] = runtimeClass;
+                classArray = array;
+            }
+            runtimeClass.link(this);
+            natives.link(runtimeClass);
+            addToHierarchy(runtimeClass);
+            return runtimeClass;
+        } finally {
+            loadTimeNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 把链接好的类登记到父类的子类列表中，它覆盖的每个方法上的依赖都失效
+     */
+    private void addToHierarchy(RuntimeClass runtimeClass) {
+        RuntimeClass superClass = runtimeClass.getSuperClass();
+        if (superClass == null) {
+            return;
+        }
+        synchronized (hierarchyLock) {
+            superClass.subclasses.add(runtimeClass);
+            RuntimeMethod[] vtable = runtimeClass.getVtable();
+            for (int i = 0; i < superClass.getVtable().length; i++) {
+                if (vtable[i].getRuntimeClass() != runtimeClass) {
+                    continue;
+                }
+                // 被覆盖的可能是任何一个祖先中的同一个vtable项
+                for (RuntimeClass ancestor = superClass; ancestor != null; ancestor = ancestor.getSuperClass()) {
+                    if (i < ancestor.getVtable().length) {
+                        invalidateDependents(ancestor.getVtable()[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    private void invalidateDependents(RuntimeMethod method) {
+        List<RuntimeMethod> dependents = method.dependents;
+        if (dependents == null) {
+            return;
+        }
+        method.dependents = null;
+        for (RuntimeMethod dependent : dependents) {
+            if (dependent.discardCompiledCode()) {
+                deoptimizations.increment();
+                // 直接调用了被丢弃代码的方法也要丢弃
+                invalidateDependents(dependent);
+            }
+        }
+    }
+
+    /**
+     * 类层次分析：在已经加载的类中，method所在的类和它所有子类的vtable中对应的实现是否只有一个
+     *
+     * @param method 通过invokevirtual调用的虚方法
+     * @return 唯一的非抽象实现，有多个实现或者没有实现时返回null
+     */
+    RuntimeMethod findUniqueImplementation(RuntimeMethod method) {
+        if (method.vtableIndex < 0) {
+            return null;
+        }
+        synchronized (hierarchyLock) {
+            RuntimeMethod[] result = new RuntimeMethod[1];
+            return collectImplementations(method.getRuntimeClass(), method.vtableIndex, result) ? result[0] : null;
+        }
+    }
+
+    /**
+     * @return 是否没有遇到第二个实现
+     */
+    private static boolean collectImplementations(RuntimeClass runtimeClass, int vtableIndex, RuntimeMethod[] result) {
+        RuntimeMethod implementation = runtimeClass.getVtable()[vtableIndex];
+        if (!implementation.isAbstract()) {
+            if (result[0] == null) {
+                result[0] = implementation;
+            } else if (result[0] != implementation) {
+                return false;
+            }
+        }
+        for (RuntimeClass subclass : runtimeClass.subclasses) {
+            if (!collectImplementations(subclass, vtableIndex, result)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 安装编译代码之前登记它的依赖。编译期间类层次可能已经变了，所以先重新检查每个假设
+     *
+     * @param dependent    被编译的方法
+     * @param assumptions  假设只有一个实现的虚方法 -> 编译时找到的实现
+     * @param callees      编译代码直接调用的其他方法，它们的编译代码必须还有效
+     * @return 所有假设仍然成立并已登记时返回true，否则编译代码不能使用
+     */
+    boolean registerDependencies(RuntimeMethod dependent, Map<RuntimeMethod, RuntimeMethod> assumptions, Collection<RuntimeMethod> callees) {
+        synchronized (hierarchyLock) {
+            for (Map.Entry<RuntimeMethod, RuntimeMethod> assumption : assumptions.entrySet()) {
+                if (findUniqueImplementation(assumption.getKey()) != assumption.getValue()) {
+                    return false;
+                }
+            }
+            for (RuntimeMethod callee : callees) {
+                if (callee.compiledCode == null) {
+                    return false;
+                }
+            }
+            for (RuntimeMethod method : assumptions.keySet()) {
+                addDependent(method, dependent);
+            }
+            for (RuntimeMethod callee : callees) {
+                addDependent(callee, dependent);
+            }
+            return true;
+        }
+    }
+
+    private static void addDependent(RuntimeMethod method, RuntimeMethod dependent) {
+        if (method.dependents == null) {
+            method.dependents = new ArrayList<>();
+        }
+        if (!method.dependents.contains(dependent)) {
+            method.dependents.add(dependent);
+        }
+    }
+
+    private ClassFile tryLoad(String entry, String binaryName) {
+        try {
+            byte[] bytes = Files.readAllBytes(new File(entry, binaryName.replace('.', '/') + ".class").toPath());
+            return new ClassFileParser().parse(bytes);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return 请求的类已经在元空间中的次数
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * @return 请求的类需要从classpath加载的次数
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * @return 读取、解析、链接类一共花费的时间
+     */
+    public long getLoadTimeNanos() {
+        return loadTimeNanos.sum();
+    }
+
+    /**
+     * @return 因为新加载的类推翻了类层次假设而丢弃的编译代码数
+     */
+    public long getDeoptimizationCount() {
+        return deoptimizations.sum();
+    }
+
+    public int getLoadedClassCount() {
+        return loadedClasses.size();
+    }
+}
@@ -0,0 +1,177 @@
+package com.github.hcsp;
+
+/**
+ * 方法的运行数据：调用次数、循环回边次数、每个条件跳转的跳转/不跳转次数、每个switch各分支的次数，
+ * 以及虚方法调用点的接收者类型（就是调用点的{@link InlineCache}）。编译等优化根据它们做决策。
+ * <p>
+ * 计数器都是普通的数组元素自增，没有同步也不分配对象，所以可以一直开着。多个线程同时执行一个方法时计数可能会少算，
+ * 但这些数据只用来做决策，不需要精确。跳转和switch的计数由解释器收集，调用次数、接收者类型和隐式异常的次数在所有执行引擎中都会收集。
+ * <p>
+ * 内部按指令下标（见{@link DecodedCode}）记录，公开的查询方法使用字节码偏移量。
+ */
+public class MethodProfile {
+    private final DecodedCode code;
+    long invocationCount;
+    long backedgeCount;
+    private final long[] takenCounts;
+    private final long[] notTakenCounts;
+    /**
+     * 每个跳转表一个数组，按跳转表中分支的顺序计数，最后一个元素是default
+     */
+    private final long[][] switchCounts;
+    private final InlineCache[] inlineCaches;
+    /**
+     * 每条指令抛出隐式异常的次数，第一次抛出时才分配
+     */
+    private int[] implicitExceptionCounts;
+    /**
+     * 每条指令被解释器分派的次数，只在打开{@link VMOptions#setCountInstructions}时收集，第一次计数时才分配
+     */
+    private long[] executionCounts;
+
+    MethodProfile(DecodedCode code) {
+        this.code = code;
+        int length = code == null ? 0 : code.length();
+        this.takenCounts = new long[length];
+        this.notTakenCounts = new long[length];
+        this.inlineCaches = new InlineCache[length];
+        this.switchCounts = new long[code == null ? 0 : code.switchTables.length][];
+        for (int i = 0; i < switchCounts.length; i++) {
+            switchCounts[i] = new long[code.switchTables[i].targets.length + 1];
+        }
+    }
+
+    /**
+     * 记录第index条条件跳转指令的结果，向回的跳转同时算作一次循环回边
+     *
+     * @return 下一条要执行的指令下标
+     */
+    int branch(int index, boolean taken, int target) {
+        if (taken) {
+            takenCounts[index]++;
+            if (target < index) {
+                backedgeCount++;
+            }
+            return target;
+        }
+        notTakenCounts[index]++;
+        return index + 1;
+    }
+
+    /**
+     * 记录switch的结果
+     *
+     * @param tableIndex 跳转表在{@link DecodedCode#switchTables}中的下标
+     * @return 下一条要执行的指令下标
+     */
+    int switchTo(int tableIndex, int key) {
+        DecodedCode.SwitchTable table = code.switchTables[tableIndex];
+        int caseIndex = table.caseIndex(key);
+        switchCounts[tableIndex][caseIndex]++;
+        return table.targetOf(caseIndex);
+    }
+
+    /**
+     * 为第index条指令创建内联缓存，它同时也是这个调用点的接收者类型记录
+     */
+    InlineCache newInlineCache(RuntimeMethod caller, int index, RuntimeMethod resolved, int capacity) {
+        InlineCache inlineCache = new InlineCache(caller, index, resolved, capacity);
+        inlineCaches[index] = inlineCache;
+        return inlineCache;
+    }
+
+    /**
+     * 记录第index条指令抛出了一次隐式异常
+     *
+     * @return 这条指令一共抛出过的次数
+     */
+    int recordImplicitException(int index) {
+        if (implicitExceptionCounts == null) {
+            implicitExceptionCounts = new int[code.length()];
+        }
+        return ++implicitExceptionCounts[index];
+    }
+
+    /**
+     * 记录解释器分派了一次第index条指令，超级指令只在序列的第一条指令上计一次
+     */
+    void countExecution(int index) {
+        if (executionCounts == null) {
+            executionCounts = new long[code.length()];
+        }
+        executionCounts[index]++;
+    }
+
+    /**
+     * @return 每条指令被分派的次数，按指令下标；还没有计过数时返回null
+     */
+    long[] getExecutionCounts() {
+        return executionCounts;
+    }
+
+    /**
+     * @return 方法被调用（压栈或者进入编译好的代码）的次数
+     */
+    public long getInvocationCount() {
+        return invocationCount;
+    }
+
+    /**
+     * @return 向回跳转的次数，也就是循环执行的轮数
+     */
+    public long getBackedgeCount() {
+        return backedgeCount;
+    }
+
+    /**
+     * @param pc 条件跳转指令的字节码偏移量
+     */
+    public long getTakenCount(int pc) {
+        return takenCounts[indexOf(pc)];
+    }
+
+    /**
+     * @param pc 条件跳转指令的字节码偏移量
+     */
+    public long getNotTakenCount(int pc) {
+        return notTakenCounts[indexOf(pc)];
+    }
+
+    /**
+     * @param pc 条件跳转指令的字节码偏移量
+     * @return 跳转的比例，还没有执行过时返回-1
+     */
+    public double getTakenProbability(int pc) {
+        int index = indexOf(pc);
+        long total = takenCounts[index] + notTakenCounts[index];
+        return total == 0 ? -1 : (double) takenCounts[index] / total;
+    }
+
+    /**
+     * @param pc tableswitch/lookupswitch指令的字节码偏移量
+     * @return 各分支执行的次数，按跳转表中分支的顺序（tableswitch从low开始，lookupswitch按匹配值从小到大），最后一个元素是default
+     */
+    public long[] getSwitchCounts(int pc) {
+        int index = indexOf(pc);
+        if (code.opcodes[index] != Bytecodes.TABLESWITCH && code.opcodes[index] != Bytecodes.LOOKUPSWITCH) {
+            throw new IllegalArgumentException("No switch at pc " + pc);
+        }
+        return switchCounts[code.operands[index]].clone();
+    }
+
+    /**
+     * @param pc invokevirtual/invokeinterface指令的字节码偏移量
+     * @return 调用点的接收者类型记录，调用点还没有执行过时返回null
+     */
+    public InlineCache getReceiverTypeProfile(int pc) {
+        return inlineCaches[indexOf(pc)];
+    }
+
+    private int indexOf(int pc) {
+        int index = code == null ? -1 : code.indexOfPc(pc);
+        if (index < 0) {
+            throw new IllegalArgumentException("No instruction at pc " + pc);
+        }
+        return index;
+    }
+}
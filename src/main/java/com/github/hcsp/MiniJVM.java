@@ -1,30 +1,30 @@
 package com.github.hcsp;
 
-import com.github.zxh.classpy.classfile.ClassFile;
-import com.github.zxh.classpy.classfile.ClassFileParser;
-import com.github.zxh.classpy.classfile.MethodInfo;
-import com.github.zxh.classpy.classfile.bytecode.Bipush;
-import com.github.zxh.classpy.classfile.bytecode.Instruction;
-import com.github.zxh.classpy.classfile.bytecode.InstructionCp2;
-import com.github.zxh.classpy.classfile.constant.ConstantClassInfo;
-import com.github.zxh.classpy.classfile.constant.ConstantFieldrefInfo;
-import com.github.zxh.classpy.classfile.constant.ConstantMethodrefInfo;
-import com.github.zxh.classpy.classfile.constant.ConstantNameAndTypeInfo;
-import com.github.zxh.classpy.classfile.constant.ConstantPool;
+import com.github.zxh.classpy.classfile.jvm.Opcode;
 
 import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.util.Objects;
-import java.util.Stack;
-import java.util.stream.Stream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+import static com.github.hcsp.Bytecodes.*;
 
 /**
  * 这是一个用来学习的JVM
  */
 public class MiniJVM {
     private String mainClass;
-    private String[] classPathEntries;
+    private Metaspace metaspace;
+    private VMOptions options;
+    private Resolver resolver;
+    private VMStats stats = new VMStats();
+    private HostCompiler hostCompiler;
+    private GuestHeap heap;
+    private ExceptionDispatcher exceptions;
+    private PrintStream stdout;
+    private PrintStream stderr;
+    private GuestOutput.Capture capturedOutput;
 
     public static void main(String[] args) {
         new MiniJVM("target/classes", "com.github.hcsp.SimpleClass").start();
@@ -36,184 +36,884 @@ public class MiniJVM {
      * @param classPath 启动时的classpath，使用{@link java.io.File#pathSeparator}的分隔符，我们支持文件夹
      */
     public MiniJVM(String classPath, String mainClass) {
-        this.mainClass = mainClass;
-        this.classPathEntries = classPath.split(File.pathSeparator);
+        this(classPath, mainClass, new VMOptions());
     }
 
-    /**
-     * 启动并运行该虚拟机
-     */
-    public void start() {
-        ClassFile mainClassFile = loadClassFromClassPath(mainClass);
-
-        MethodInfo methodInfo = mainClassFile.getMethod("main").get(0);
-
-        Stack<StackFrame> methodStack = new Stack<>();
-
-        Object[] localVariablesForMainStackFrame = new Object[methodInfo.getMaxStack()];
-        localVariablesForMainStackFrame[0] = null;
-
-        methodStack.push(new StackFrame(localVariablesForMainStackFrame, methodInfo, mainClassFile));
-
-        PCRegister pcRegister = new PCRegister(methodStack);
-
-        while (true) {
-            Instruction instruction = pcRegister.getNextInstruction();
-            if (instruction == null) {
-                break;
-            }
-            switch (instruction.getOpcode()) {
-                case getstatic: {
-                    int fieldIndex = InstructionCp2.class.cast(instruction).getTargetFieldIndex();
-                    ConstantPool constantPool = pcRegister.getTopFrameClassConstantPool();
-                    ConstantFieldrefInfo fieldrefInfo = constantPool.getFieldrefInfo(fieldIndex);
-                    ConstantClassInfo classInfo = fieldrefInfo.getClassInfo(constantPool);
-                    ConstantNameAndTypeInfo nameAndTypeInfo = fieldrefInfo.getFieldNameAndTypeInfo(constantPool);
-
-                    String className = constantPool.getUtf8String(classInfo.getNameIndex());
-                    String fieldName = nameAndTypeInfo.getName(constantPool);
-
-                    if ("java/lang/System".equals(className) && "out".equals(fieldName)) {
-                        Object field = System.out;
-                        pcRegister.getTopFrame().pushObjectToOperandStack(field);
-                    } else {
-                        throw new IllegalStateException("Not implemented yet!");
-                    }
-                }
-                break;
-                case invokestatic: {
-                    String className = getClassNameFromInvokeInstruction(instruction, pcRegister.getTopFrameClassConstantPool());
-                    String methodName = getMethodNameFromInvokeInstruction(instruction, pcRegister.getTopFrameClassConstantPool());
-                    ClassFile classFile = loadClassFromClassPath(className);
-                    MethodInfo targetMethodInfo = classFile.getMethod(methodName).get(0);
-
-                    Object[] localVariables = new Object[targetMethodInfo.getMaxLocals()];
-
-                    // TODO 应该分析方法的参数，从操作数栈上弹出对应数量的参数放在新栈帧的局部变量表中
-                    StackFrame newFrame = new StackFrame(localVariables, targetMethodInfo, classFile);
-                    methodStack.push(newFrame);
-                }
-                break;
-                case bipush: {
-                    Bipush bipush = (Bipush) instruction;
-                    pcRegister.getTopFrame().pushObjectToOperandStack(bipush.getOperand());
-                }
-                break;
-                case ireturn: {
-                    Object returnValue = pcRegister.getTopFrame().popFromOperandStack();
-                    pcRegister.popFrameFromMethodStack();
-                    pcRegister.getTopFrame().pushObjectToOperandStack(returnValue);
-                }
-                break;
-                case invokevirtual: {
-                    String className = getClassNameFromInvokeInstruction(instruction, pcRegister.getTopFrameClassConstantPool());
-                    String methodName = getMethodNameFromInvokeInstruction(instruction, pcRegister.getTopFrameClassConstantPool());
-                    if ("java/io/PrintStream".equals(className) && "println".equals(methodName)) {
-                        Object param = pcRegister.getTopFrame().popFromOperandStack();
-                        Object thisObject = pcRegister.getTopFrame().popFromOperandStack();
-                        System.out.println(param);
-                    } else {
-                        throw new IllegalStateException("Not implemented yet!");
-                    }
-                }
-                break;
-                case _return:
-                    pcRegister.popFrameFromMethodStack();
-                    break;
-                default:
-                    throw new IllegalStateException("Opcode " + instruction + " not implemented yet!");
-            }
+    public MiniJVM(String classPath, String mainClass, VMOptions options) {
+        this.mainClass = mainClass;
+        this.metaspace = new Metaspace(classPath.split(File.pathSeparator));
+        this.options = options;
+        WritableByteChannel stdoutChannel = options.getStdout() != null ? options.getStdout() : Channels.newChannel(System.out);
+        if (options.isCaptureOutput()) {
+            capturedOutput = new GuestOutput.Capture();
+            stdoutChannel = capturedOutput;
         }
+        WritableByteChannel stderrChannel = options.getStderr() != null ? options.getStderr() : Channels.newChannel(System.err);
+        this.stdout = new GuestPrintStream(new GuestOutput(stdoutChannel, options.getOutputBufferSize(), stats));
+        this.stderr = new GuestPrintStream(new GuestOutput(stderrChannel, options.getOutputBufferSize(), stats));
+        this.resolver = new Resolver(metaspace, new HostBindings(stdout, stderr));
+        this.heap = new GuestHeap(options, metaspace, stats);
+        this.hostCompiler = new HostCompiler(options, resolver, heap, stats);
+        this.exceptions = new ExceptionDispatcher(resolver, options, stats, heap);
     }
 
-    private String getClassNameFromInvokeInstruction(Instruction instruction, ConstantPool constantPool) {
-        int methodIndex = InstructionCp2.class.cast(instruction).getTargetMethodIndex();
-        ConstantMethodrefInfo methodrefInfo = constantPool.getMethodrefInfo(methodIndex);
-        ConstantClassInfo classInfo = methodrefInfo.getClassInfo(constantPool);
-        return constantPool.getUtf8String(classInfo.getNameIndex());
+    public Metaspace getMetaspace() {
+        return metaspace;
     }
 
-    private String getMethodNameFromInvokeInstruction(Instruction instruction, ConstantPool constantPool) {
-        int methodIndex = InstructionCp2.class.cast(instruction).getTargetMethodIndex();
-        ConstantMethodrefInfo methodrefInfo = constantPool.getMethodrefInfo(methodIndex);
-        ConstantClassInfo classInfo = methodrefInfo.getClassInfo(constantPool);
-        return methodrefInfo.getMethodNameAndType(constantPool).getName(constantPool);
+    /**
+     * @return native方法的注册表，客户类中native方法的实现要在{@link #start()}之前注册
+     */
+    public NativeRegistry getNatives() {
+        return metaspace.getNatives();
     }
 
-    private ClassFile loadClassFromClassPath(String fqcn) {
-        return Stream.of(classPathEntries)
-                .map(entry -> tryLoad(entry, fqcn))
-                .filter(Objects::nonNull)
-                .findFirst()
-                .orElseThrow(() -> new RuntimeException(new ClassNotFoundException(fqcn)));
+    /**
+     * @return 打开{@link VMOptions#setCaptureOutput}时客户写到标准输出的所有字节，只读；没有打开时返回null
+     */
+    public ByteBuffer getCapturedOutput() {
+        return capturedOutput == null ? null : capturedOutput.getCaptured();
     }
 
-    private ClassFile tryLoad(String entry, String fqcn) {
-        try {
-            byte[] bytes = Files.readAllBytes(new File(entry, fqcn.replace('.', '/') + ".class").toPath());
-            return new ClassFileParser().parse(bytes);
-        } catch (IOException e) {
-            return null;
-        }
+    /**
+     * @return 客户堆，所有客户对象都分配在这里
+     */
+    public GuestHeap getHeap() {
+        return heap;
     }
 
-    static class PCRegister {
-        Stack<StackFrame> methodStack;
+    public VMStats getStats() {
+        return stats;
+    }
 
-        public PCRegister(Stack<StackFrame> methodStack) {
-            this.methodStack = methodStack;
-        }
+    /**
+     * 启动并运行该虚拟机
+     */
+    public void start() {
+        RuntimeClass mainRuntimeClass = metaspace.loadClass(mainClass);
 
-        public StackFrame getTopFrame() {
-            return methodStack.peek();
-        }
+        RuntimeMethod mainMethod = mainRuntimeClass.getMethod("main", "([Ljava/lang/String;)V");
 
-        public ConstantPool getTopFrameClassConstantPool() {
-            return getTopFrame().getClassFile().getConstantPool();
+        GuestThread thread = new GuestThread(options, heap);
+        heap.attachThread(thread);
+
+        StackFrame mainFrame = thread.pushFrame(mainMethod);
+        mainFrame.setLocalRef(0, 0);
+        // 父类的<clinit>压在子类的上面，所以先执行
+        for (RuntimeClass runtimeClass = mainRuntimeClass; runtimeClass != null; runtimeClass = runtimeClass.getSuperClass()) {
+            if (runtimeClass.beginInitialization()) {
+                thread.pushFrame(runtimeClass.getClassInitializer());
+            }
         }
 
-        public Instruction getNextInstruction() {
-            if (methodStack.isEmpty()) {
-                return null;
+        try {
+            if (options.getExecutionEngine() == ExecutionEngine.CLOSURE) {
+                new ClosureEngine(resolver, options, stats, heap, exceptions).run(thread);
             } else {
-                StackFrame frameAtTop = methodStack.peek();
-                return frameAtTop.getNextInstruction();
+                interpret(thread);
             }
+        } finally {
+            // 客户没有flush的输出在退出时写出去，包括抛出了没有被捕获的异常时
+            stdout.flush();
+            stderr.flush();
+            heap.shutdownGcWorkers();
         }
+    }
 
-        public void popFrameFromMethodStack() {
-            methodStack.pop();
+    /**
+     * 解释执行，直到线程的栈空为止
+     */
+    private void interpret(GuestThread thread) {
+        // 超级指令省掉的分派次数，在局部变量里累加，结束时再写到统计数据中
+        long savedDispatches = 0;
+        long osrThreshold = options.getOsrThreshold();
+        boolean countInstructions = options.isCountInstructions();
+        StackFrame frame = thread.getTopFrame();
+        // 客户异常没有被捕获时也要把已经累加的次数写出去
+        try {
+            while (frame != null) {
+                DecodedCode code = frame.code;
+                int index = frame.pc++;
+                int opcode = code.opcodes[index];
+                int operand = code.operands[index];
+                if (countInstructions) {
+                    frame.method.profile.countExecution(index);
+                }
+                // 虚拟机检查出来的错误在这里变成客户异常，try块本身不产生任何执行开销
+                try {
+                    switch (opcode) {
+                        case NOP:
+                            break;
+                        case ACONST_NULL:
+                            frame.pushRef(0);
+                            break;
+                        case ICONST_M1:
+                        case ICONST_0:
+                        case ICONST_1:
+                        case ICONST_2:
+                        case ICONST_3:
+                        case ICONST_4:
+                        case ICONST_5:
+                            frame.pushInt(opcode - ICONST_0);
+                            break;
+                        case LCONST_0:
+                        case LCONST_1:
+                            frame.pushLong(opcode - LCONST_0);
+                            break;
+                        case FCONST_0:
+                        case FCONST_1:
+                        case FCONST_2:
+                            frame.pushFloat(opcode - FCONST_0);
+                            break;
+                        case DCONST_0:
+                        case DCONST_1:
+                            frame.pushDouble(opcode - DCONST_0);
+                            break;
+                        case BIPUSH:
+                        case SIPUSH:
+                            frame.pushInt(operand);
+                            break;
+                        case LDC:
+                        case LDC2_W:
+                            pushConstant(frame, index, opcode, operand);
+                            break;
+                        case QUICK_LDC:
+                            frame.pushInt(operand);
+                            break;
+                        case QUICK_LDC2:
+                            frame.pushLong(((long) operand << 32) | (code.operands2[index] & 0xffffffffL));
+                            break;
+                        case QUICK_ACONST:
+                            frame.pushRef(operand);
+                            break;
+                        case ILOAD:
+                        case FLOAD:
+                            frame.pushInt(frame.getLocalInt(operand));
+                            break;
+                        case LLOAD:
+                        case DLOAD:
+                            frame.pushLong(frame.getLocalLong(operand));
+                            break;
+                        case ALOAD:
+                            frame.pushRef(frame.getLocalRef(operand));
+                            break;
+                        case ISTORE:
+                        case FSTORE:
+                            frame.setLocalInt(operand, frame.popInt());
+                            break;
+                        case LSTORE:
+                        case DSTORE:
+                            frame.setLocalLong(operand, frame.popLong());
+                            break;
+                        case ASTORE:
+                            frame.setLocalRef(operand, frame.popRef());
+                            break;
+                        case POP:
+                            frame.pop();
+                            break;
+                        case POP2:
+                            frame.pop2();
+                            break;
+                        case DUP:
+                            frame.dup();
+                            break;
+                        case DUP_X1:
+                            frame.dupX1();
+                            break;
+                        case DUP_X2:
+                            frame.dupX2();
+                            break;
+                        case DUP2:
+                            frame.dup2();
+                            break;
+                        case DUP2_X1:
+                            frame.dup2X1();
+                            break;
+                        case DUP2_X2:
+                            frame.dup2X2();
+                            break;
+                        case SWAP:
+                            frame.swap();
+                            break;
+                        case IADD:
+                            frame.pushInt(frame.popInt() + frame.popInt());
+                            break;
+                        case LADD:
+                            frame.pushLong(frame.popLong() + frame.popLong());
+                            break;
+                        case FADD:
+                            frame.pushFloat(frame.popFloat() + frame.popFloat());
+                            break;
+                        case DADD:
+                            frame.pushDouble(frame.popDouble() + frame.popDouble());
+                            break;
+                        case ISUB: {
+                            int value2 = frame.popInt();
+                            frame.pushInt(frame.popInt() - value2);
+                        }
+                        break;
+                        case LSUB: {
+                            long value2 = frame.popLong();
+                            frame.pushLong(frame.popLong() - value2);
+                        }
+                        break;
+                        case FSUB: {
+                            float value2 = frame.popFloat();
+                            frame.pushFloat(frame.popFloat() - value2);
+                        }
+                        break;
+                        case DSUB: {
+                            double value2 = frame.popDouble();
+                            frame.pushDouble(frame.popDouble() - value2);
+                        }
+                        break;
+                        case IMUL:
+                            frame.pushInt(frame.popInt() * frame.popInt());
+                            break;
+                        case LMUL:
+                            frame.pushLong(frame.popLong() * frame.popLong());
+                            break;
+                        case FMUL:
+                            frame.pushFloat(frame.popFloat() * frame.popFloat());
+                            break;
+                        case DMUL:
+                            frame.pushDouble(frame.popDouble() * frame.popDouble());
+                            break;
+                        case IDIV: {
+                            int value2 = frame.popInt();
+                            frame.pushInt(frame.popInt() / value2);
+                        }
+                        break;
+                        case LDIV: {
+                            long value2 = frame.popLong();
+                            frame.pushLong(frame.popLong() / value2);
+                        }
+                        break;
+                        case FDIV: {
+                            float value2 = frame.popFloat();
+                            frame.pushFloat(frame.popFloat() / value2);
+                        }
+                        break;
+                        case DDIV: {
+                            double value2 = frame.popDouble();
+                            frame.pushDouble(frame.popDouble() / value2);
+                        }
+                        break;
+                        case IREM: {
+                            int value2 = frame.popInt();
+                            frame.pushInt(frame.popInt() % value2);
+                        }
+                        break;
+                        case LREM: {
+                            long value2 = frame.popLong();
+                            frame.pushLong(frame.popLong() % value2);
+                        }
+                        break;
+                        case FREM: {
+                            float value2 = frame.popFloat();
+                            frame.pushFloat(frame.popFloat() % value2);
+                        }
+                        break;
+                        case DREM: {
+                            double value2 = frame.popDouble();
+                            frame.pushDouble(frame.popDouble() % value2);
+                        }
+                        break;
+                        case INEG:
+                            frame.pushInt(-frame.popInt());
+                            break;
+                        case LNEG:
+                            frame.pushLong(-frame.popLong());
+                            break;
+                        case FNEG:
+                            frame.pushFloat(-frame.popFloat());
+                            break;
+                        case DNEG:
+                            frame.pushDouble(-frame.popDouble());
+                            break;
+                        case ISHL: {
+                            int value2 = frame.popInt();
+                            frame.pushInt(frame.popInt() << value2);
+                        }
+                        break;
+                        case LSHL: {
+                            int value2 = frame.popInt();
+                            frame.pushLong(frame.popLong() << value2);
+                        }
+                        break;
+                        case ISHR: {
+                            int value2 = frame.popInt();
+                            frame.pushInt(frame.popInt() >> value2);
+                        }
+                        break;
+                        case LSHR: {
+                            int value2 = frame.popInt();
+                            frame.pushLong(frame.popLong() >> value2);
+                        }
+                        break;
+                        case IUSHR: {
+                            int value2 = frame.popInt();
+                            frame.pushInt(frame.popInt() >>> value2);
+                        }
+                        break;
+                        case LUSHR: {
+                            int value2 = frame.popInt();
+                            frame.pushLong(frame.popLong() >>> value2);
+                        }
+                        break;
+                        case IAND:
+                            frame.pushInt(frame.popInt() & frame.popInt());
+                            break;
+                        case LAND:
+                            frame.pushLong(frame.popLong() & frame.popLong());
+                            break;
+                        case IOR:
+                            frame.pushInt(frame.popInt() | frame.popInt());
+                            break;
+                        case LOR:
+                            frame.pushLong(frame.popLong() | frame.popLong());
+                            break;
+                        case IXOR:
+                            frame.pushInt(frame.popInt() ^ frame.popInt());
+                            break;
+                        case LXOR:
+                            frame.pushLong(frame.popLong() ^ frame.popLong());
+                            break;
+                        case IINC: {
+                            frame.setLocalInt(operand, frame.getLocalInt(operand) + code.operands2[index]);
+                        }
+                        break;
+                        case I2L:
+                            frame.pushLong(frame.popInt());
+                            break;
+                        case I2F:
+                            frame.pushFloat(frame.popInt());
+                            break;
+                        case I2D:
+                            frame.pushDouble(frame.popInt());
+                            break;
+                        case L2I:
+                            frame.pushInt((int) frame.popLong());
+                            break;
+                        case L2F:
+                            frame.pushFloat(frame.popLong());
+                            break;
+                        case L2D:
+                            frame.pushDouble(frame.popLong());
+                            break;
+                        case F2I:
+                            frame.pushInt((int) frame.popFloat());
+                            break;
+                        case F2L:
+                            frame.pushLong((long) frame.popFloat());
+                            break;
+                        case F2D:
+                            frame.pushDouble(frame.popFloat());
+                            break;
+                        case D2I:
+                            frame.pushInt((int) frame.popDouble());
+                            break;
+                        case D2L:
+                            frame.pushLong((long) frame.popDouble());
+                            break;
+                        case D2F:
+                            frame.pushFloat((float) frame.popDouble());
+                            break;
+                        case I2B:
+                            frame.pushInt((byte) frame.popInt());
+                            break;
+                        case I2C:
+                            frame.pushInt((char) frame.popInt());
+                            break;
+                        case I2S:
+                            frame.pushInt((short) frame.popInt());
+                            break;
+                        case LCMP: {
+                            long value2 = frame.popLong();
+                            frame.pushInt(Long.compare(frame.popLong(), value2));
+                        }
+                        break;
+                        case FCMPL:
+                        case FCMPG: {
+                            float value2 = frame.popFloat();
+                            float value1 = frame.popFloat();
+                            if (Float.isNaN(value1) || Float.isNaN(value2)) {
+                                frame.pushInt(opcode == FCMPG ? 1 : -1);
+                            } else {
+                                frame.pushInt(value1 < value2 ? -1 : (value1 == value2 ? 0 : 1));
+                            }
+                        }
+                        break;
+                        case DCMPL:
+                        case DCMPG: {
+                            double value2 = frame.popDouble();
+                            double value1 = frame.popDouble();
+                            if (Double.isNaN(value1) || Double.isNaN(value2)) {
+                                frame.pushInt(opcode == DCMPG ? 1 : -1);
+                            } else {
+                                frame.pushInt(value1 < value2 ? -1 : (value1 == value2 ? 0 : 1));
+                            }
+                        }
+                        break;
+                        case IFEQ:
+                            frame.pc = frame.method.profile.branch(index, frame.popInt() == 0, operand);
+                            break;
+                        case IFNE:
+                            frame.pc = frame.method.profile.branch(index, frame.popInt() != 0, operand);
+                            break;
+                        case IFLT:
+                            frame.pc = frame.method.profile.branch(index, frame.popInt() < 0, operand);
+                            break;
+                        case IFGE:
+                            frame.pc = frame.method.profile.branch(index, frame.popInt() >= 0, operand);
+                            break;
+                        case IFGT:
+                            frame.pc = frame.method.profile.branch(index, frame.popInt() > 0, operand);
+                            break;
+                        case IFLE:
+                            frame.pc = frame.method.profile.branch(index, frame.popInt() <= 0, operand);
+                            break;
+                        case IF_ICMPEQ: {
+                            int value2 = frame.popInt();
+                            frame.pc = frame.method.profile.branch(index, frame.popInt() == value2, operand);
+                        }
+                        break;
+                        case IF_ICMPNE: {
+                            int value2 = frame.popInt();
+                            frame.pc = frame.method.profile.branch(index, frame.popInt() != value2, operand);
+                        }
+                        break;
+                        case IF_ICMPLT: {
+                            int value2 = frame.popInt();
+                            frame.pc = frame.method.profile.branch(index, frame.popInt() < value2, operand);
+                        }
+                        break;
+                        case IF_ICMPGE: {
+                            int value2 = frame.popInt();
+                            frame.pc = frame.method.profile.branch(index, frame.popInt() >= value2, operand);
+                        }
+                        break;
+                        case IF_ICMPGT: {
+                            int value2 = frame.popInt();
+                            frame.pc = frame.method.profile.branch(index, frame.popInt() > value2, operand);
+                        }
+                        break;
+                        case IF_ICMPLE: {
+                            int value2 = frame.popInt();
+                            frame.pc = frame.method.profile.branch(index, frame.popInt() <= value2, operand);
+                        }
+                        break;
+                        case IF_ACMPEQ:
+                            frame.pc = frame.method.profile.branch(index, frame.popRef() == frame.popRef(), operand);
+                            break;
+                        case IF_ACMPNE:
+                            frame.pc = frame.method.profile.branch(index, frame.popRef() != frame.popRef(), operand);
+                            break;
+                        case IFNULL:
+                            frame.pc = frame.method.profile.branch(index, frame.popRef() == 0, operand);
+                            break;
+                        case IFNONNULL:
+                            frame.pc = frame.method.profile.branch(index, frame.popRef() != 0, operand);
+                            break;
+                        case GOTO:
+                            frame.pc = operand;
+                            if (operand < index) {
+                                heap.safepoint();
+                                if (++frame.method.profile.backedgeCount >= osrThreshold) {
+                                    frame = onStackReplace(thread, frame);
+                                }
+                            }
+                            break;
+                        case TABLESWITCH:
+                        case LOOKUPSWITCH:
+                            frame.pc = frame.method.profile.switchTo(operand, frame.popInt());
+                            break;
+                        case GETSTATIC:
+                        case PUTSTATIC: {
+                            Resolver.MemberRef ref = Resolver.memberRef(frame.getRuntimeClass(), operand);
+                            HostBindings hostBindings = resolver.getHostBindings();
+                            if (opcode == GETSTATIC && hostBindings.hasStaticField(ref.className, ref.name)) {
+                                int value = heap.pin(hostBindings.getStaticField(ref.className, ref.name));
+                                quicken(code, index, opcode, QUICK_ACONST, value, 0);
+                                frame.pushRef(value);
+                                break;
+                            }
+                            RuntimeField field = resolver.resolveField(ref);
+                            StackFrame clinitFrame = thread.initializeClass(frame, index, field.getRuntimeClass());
+                            if (clinitFrame != null) {
+                                frame = clinitFrame;
+                                break;
+                            }
+                            int quickOpcode;
+                            if (opcode == GETSTATIC) {
+                                quickOpcode = field.isReference() ? QUICK_GETSTATIC_REF : field.isWide() ? QUICK_GETSTATIC_WIDE : QUICK_GETSTATIC;
+                            } else {
+                                quickOpcode = field.isReference() ? QUICK_PUTSTATIC_REF : field.isWide() ? QUICK_PUTSTATIC_WIDE : QUICK_PUTSTATIC;
+                            }
+                            if (field.getRuntimeClass().isInitialized()) {
+                                quicken(code, index, quickOpcode, field);
+                            }
+                            accessStaticField(frame, quickOpcode, field);
+                        }
+                        break;
+                        case QUICK_GETSTATIC: {
+                            RuntimeField field = (RuntimeField) code.resolved[index];
+                            frame.pushInt((int) field.getRuntimeClass().staticValues[field.getSlot()]);
+                        }
+                        break;
+                        case QUICK_GETSTATIC_WIDE: {
+                            RuntimeField field = (RuntimeField) code.resolved[index];
+                            frame.pushLong(field.getRuntimeClass().staticValues[field.getSlot()]);
+                        }
+                        break;
+                        case QUICK_GETSTATIC_REF: {
+                            RuntimeField field = (RuntimeField) code.resolved[index];
+                            frame.pushRef(field.getRuntimeClass().staticRefs[field.getSlot()]);
+                        }
+                        break;
+                        case QUICK_PUTSTATIC: {
+                            RuntimeField field = (RuntimeField) code.resolved[index];
+                            field.getRuntimeClass().staticValues[field.getSlot()] = frame.popInt();
+                        }
+                        break;
+                        case QUICK_PUTSTATIC_WIDE: {
+                            RuntimeField field = (RuntimeField) code.resolved[index];
+                            field.getRuntimeClass().staticValues[field.getSlot()] = frame.popLong();
+                        }
+                        break;
+                        case QUICK_PUTSTATIC_REF: {
+                            RuntimeField field = (RuntimeField) code.resolved[index];
+                            field.getRuntimeClass().staticRefs[field.getSlot()] = frame.popRef();
+                        }
+                        break;
+                        case INVOKESTATIC: {
+                            Resolver.MemberRef ref = Resolver.memberRef(frame.getRuntimeClass(), operand);
+                            NativeHandler handler = resolver.getHostBindings().getMethod(ref.className, ref.name, ref.descriptor);
+                            if (handler != null) {
+                                quicken(code, index, QUICK_INVOKENATIVE, handler);
+                                handler.invoke(frame);
+                                break;
+                            }
+                            RuntimeMethod targetMethod = resolver.resolveMethod(ref);
+                            StackFrame clinitFrame = thread.initializeClass(frame, index, targetMethod.getRuntimeClass());
+                            if (clinitFrame != null) {
+                                frame = clinitFrame;
+                                break;
+                            }
+                            if (targetMethod.getRuntimeClass().isInitialized()) {
+                                quicken(code, index, QUICK_INVOKESTATIC, targetMethod);
+                            }
+                            frame = thread.invoke(frame, targetMethod);
+                        }
+                        break;
+                        case QUICK_INVOKESTATIC:
+                            frame = invoke(thread, frame, (RuntimeMethod) code.resolved[index]);
+                            break;
+                        case QUICK_INVOKENATIVE:
+                            ((NativeHandler) code.resolved[index]).invoke(frame);
+                            break;
+                        case INVOKESPECIAL: {
+                            Resolver.MemberRef ref = Resolver.memberRef(frame.getRuntimeClass(), operand);
+                            NativeHandler handler = resolver.getHostBindings().getMethod(ref.className, ref.name, ref.descriptor);
+                            if (handler != null) {
+                                quicken(code, index, QUICK_INVOKENATIVE, handler);
+                                handler.invoke(frame);
+                                break;
+                            }
+                            RuntimeMethod targetMethod = resolver.resolveMethod(ref);
+                            quicken(code, index, QUICK_INVOKESPECIAL, targetMethod);
+                            frame = thread.invoke(frame, targetMethod);
+                        }
+                        break;
+                        case QUICK_INVOKESPECIAL:
+                            frame = invoke(thread, frame, (RuntimeMethod) code.resolved[index]);
+                            break;
+                        case INVOKEVIRTUAL:
+                        case INVOKEINTERFACE: {
+                            Resolver.MemberRef ref = Resolver.memberRef(frame.getRuntimeClass(), operand);
+                            NativeHandler handler = resolver.getHostBindings().getMethod(ref.className, ref.name, ref.descriptor);
+                            if (handler != null) {
+                                quicken(code, index, QUICK_INVOKENATIVE, handler);
+                                handler.invoke(frame);
+                                break;
+                            }
+                            quicken(code, index, QUICK_INVOKEVIRTUAL, newInlineCache(frame.method, index, resolver.resolveMethod(ref)));
+                            // 改写之后重新执行，由内联缓存找到目标方法
+                            frame.pc = index;
+                        }
+                        break;
+                        case QUICK_INVOKEVIRTUAL:
+                            frame = invoke(thread, frame, ((InlineCache) code.resolved[index]).lookup(frame));
+                            break;
+                        case NEW: {
+                            RuntimeClass runtimeClass = resolver.resolveClass(frame.getRuntimeClass(), operand);
+                            if (runtimeClass.isAbstract()) {
+                                throw new GuestException("java.lang.InstantiationError", runtimeClass.getName());
+                            }
+                            StackFrame clinitFrame = thread.initializeClass(frame, index, runtimeClass);
+                            if (clinitFrame != null) {
+                                frame = clinitFrame;
+                                break;
+                            }
+                            if (runtimeClass.isInitialized()) {
+                                quicken(code, index, QUICK_NEW, runtimeClass);
+                            }
+                            frame.pushRef(heap.allocate(thread, runtimeClass));
+                        }
+                        break;
+                        case QUICK_NEW:
+                            frame.pushRef(heap.allocate(thread, (RuntimeClass) code.resolved[index]));
+                            break;
+                        case GETFIELD:
+                        case PUTFIELD: {
+                            RuntimeField field = resolver.resolveField(Resolver.memberRef(frame.getRuntimeClass(), operand));
+                            int quickOpcode;
+                            if (opcode == GETFIELD) {
+                                quickOpcode = field.isReference() ? QUICK_GETFIELD_REF : field.isWide() ? QUICK_GETFIELD_WIDE
+                                        : field.isNarrow() ? QUICK_GETFIELD_NARROW : QUICK_GETFIELD;
+                            } else {
+                                quickOpcode = field.isReference() ? QUICK_PUTFIELD_REF : field.isWide() ? QUICK_PUTFIELD_WIDE
+                                        : field.isNarrow() ? QUICK_PUTFIELD_NARROW : QUICK_PUTFIELD;
+                            }
+                            // 实例字段不需要初始化类，操作数直接改写成字段在对象中的偏移和类型，然后重新执行
+                            quicken(code, index, opcode, quickOpcode, field.getOffset(), field.getDescriptor().charAt(0));
+                            frame.pc = index;
+                        }
+                        break;
+                        case QUICK_GETFIELD:
+                            frame.pushInt(heap.getInt(GuestHeap.nonNull(frame.popRef()), operand));
+                            break;
+                        case QUICK_GETFIELD_WIDE:
+                            frame.pushLong(heap.getWide(GuestHeap.nonNull(frame.popRef()), operand));
+                            break;
+                        case QUICK_GETFIELD_REF:
+                            frame.pushRef(heap.loadRef(GuestHeap.nonNull(frame.popRef()), operand));
+                            break;
+                        case QUICK_GETFIELD_NARROW:
+                            frame.pushInt(heap.getNarrow(GuestHeap.nonNull(frame.popRef()), operand, code.operands2[index]));
+                            break;
+                        case QUICK_PUTFIELD: {
+                            int value = frame.popInt();
+                            heap.putInt(GuestHeap.nonNull(frame.popRef()), operand, value);
+                        }
+                        break;
+                        case QUICK_PUTFIELD_WIDE: {
+                            long value = frame.popLong();
+                            heap.putWide(GuestHeap.nonNull(frame.popRef()), operand, value);
+                        }
+                        break;
+                        case QUICK_PUTFIELD_REF: {
+                            int value = frame.popRef();
+                            heap.storeRef(GuestHeap.nonNull(frame.popRef()), operand, value);
+                        }
+                        break;
+                        case QUICK_PUTFIELD_NARROW: {
+                            int value = frame.popInt();
+                            heap.putNarrow(GuestHeap.nonNull(frame.popRef()), operand, code.operands2[index], value);
+                        }
+                        break;
+                        case IRETURN:
+                        case FRETURN: {
+                            int returnValue = frame.popInt();
+                            frame = thread.popFrame();
+                            frame.pushInt(returnValue);
+                        }
+                        break;
+                        case LRETURN:
+                        case DRETURN: {
+                            long returnValue = frame.popLong();
+                            frame = thread.popFrame();
+                            frame.pushLong(returnValue);
+                        }
+                        break;
+                        case ARETURN: {
+                            int returnValue = frame.popRef();
+                            frame = thread.popFrame();
+                            frame.pushRef(returnValue);
+                        }
+                        break;
+                        case RETURN:
+                            if (frame.method.isClassInitializer()) {
+                                frame.getRuntimeClass().finishInitialization();
+                            }
+                            frame = thread.popFrame();
+                            break;
+                        case ATHROW:
+                            frame = exceptions.throwException(frame, index, frame.popRef());
+                            break;
+                        case ILOAD_ILOAD_IF_ICMPGE:
+                            frame.pc = frame.method.profile.branch(index + 2, frame.getLocalInt(operand) >= frame.getLocalInt(code.operands[index + 1]), code.operands[index + 2]);
+                            savedDispatches += 2;
+                            break;
+                        case ILOAD_ILOAD_IF_ICMPGT:
+                            frame.pc = frame.method.profile.branch(index + 2, frame.getLocalInt(operand) > frame.getLocalInt(code.operands[index + 1]), code.operands[index + 2]);
+                            savedDispatches += 2;
+                            break;
+                        case ILOAD_ILOAD_IF_ICMPLT:
+                            frame.pc = frame.method.profile.branch(index + 2, frame.getLocalInt(operand) < frame.getLocalInt(code.operands[index + 1]), code.operands[index + 2]);
+                            savedDispatches += 2;
+                            break;
+                        case ILOAD_ILOAD_IF_ICMPLE:
+                            frame.pc = frame.method.profile.branch(index + 2, frame.getLocalInt(operand) <= frame.getLocalInt(code.operands[index + 1]), code.operands[index + 2]);
+                            savedDispatches += 2;
+                            break;
+                        case IINC_GOTO:
+                            frame.setLocalInt(operand, frame.getLocalInt(operand) + code.operands2[index]);
+                            frame.pc = code.operands[index + 1];
+                            savedDispatches += 1;
+                            if (code.operands[index + 1] < index) {
+                                heap.safepoint();
+                                if (++frame.method.profile.backedgeCount >= osrThreshold) {
+                                    frame = onStackReplace(thread, frame);
+                                }
+                            }
+                            break;
+                        case ILOAD_CONST_IADD:
+                            frame.pushInt(frame.getLocalInt(operand) + code.operands[index + 1]);
+                            frame.pc = index + 3;
+                            savedDispatches += 2;
+                            break;
+                        case ILOAD_CONST_ISUB:
+                            frame.pushInt(frame.getLocalInt(operand) - code.operands[index + 1]);
+                            frame.pc = index + 3;
+                            savedDispatches += 2;
+                            break;
+                        case ILOAD_IFEQ:
+                            frame.pc = frame.method.profile.branch(index + 1, frame.getLocalInt(operand) == 0, code.operands[index + 1]);
+                            savedDispatches += 1;
+                            break;
+                        case ILOAD_IFNE:
+                            frame.pc = frame.method.profile.branch(index + 1, frame.getLocalInt(operand) != 0, code.operands[index + 1]);
+                            savedDispatches += 1;
+                            break;
+                        case ILOAD_ILOAD_IADD:
+                            frame.pushInt(frame.getLocalInt(operand) + frame.getLocalInt(code.operands[index + 1]));
+                            frame.pc = index + 3;
+                            savedDispatches += 2;
+                            break;
+                        case ILOAD_ILOAD_IMUL:
+                            frame.pushInt(frame.getLocalInt(operand) * frame.getLocalInt(code.operands[index + 1]));
+                            frame.pc = index + 3;
+                            savedDispatches += 2;
+                            break;
+                        case ILOAD_IRETURN: {
+                            int returnValue = frame.getLocalInt(operand);
+                            frame = thread.popFrame();
+                            frame.pushInt(returnValue);
+                            savedDispatches += 1;
+                        }
+                        break;
+                        case CONST_IRETURN:
+                            frame = thread.popFrame();
+                            frame.pushInt(operand);
+                            savedDispatches += 1;
+                            break;
+                        default:
+                            throw new IllegalStateException("Opcode " + Opcode.valueOf(opcode) + " not implemented yet!");
+                    }
+                } catch (GuestException | ArithmeticException e) {
+                    frame = exceptions.dispatch(frame, index, e);
+                }
+            }
+        } finally {
+            stats.recordSavedDispatches(savedDispatches);
         }
     }
 
-    static class StackFrame {
-        Object[] localVariables;
-        Stack<Object> operandStack = new Stack<>();
-        MethodInfo methodInfo;
-        ClassFile classFile;
-
-        int currentInstructionIndex;
-
-        public Instruction getNextInstruction() {
-            return methodInfo.getCode().get(currentInstructionIndex++);
+    /**
+     * 调用已经确定了目标的客户方法，有编译好的代码时直接执行它
+     *
+     * @return 接下来要解释执行的栈帧
+     */
+    private StackFrame invoke(GuestThread thread, StackFrame frame, RuntimeMethod targetMethod) {
+        if (hostCompiler.onInvocation(targetMethod)) {
+            thread.invokeCompiled(frame, targetMethod);
+            return frame;
         }
+        return thread.invoke(frame, targetMethod);
+    }
 
-        public ClassFile getClassFile() {
-            return classFile;
+    /**
+     * 循环回边次数达到阈值时，把正在循环的frame切换到OSR编译的代码，从frame.pc（循环头）开始继续执行。
+     * 只在操作数栈为空时切换，不能编译时frame继续解释执行
+     *
+     * @return 接下来要解释执行的栈帧
+     */
+    private StackFrame onStackReplace(GuestThread thread, StackFrame frame) {
+        RuntimeMethod method = frame.method;
+        if (method.osrDisabled || frame.sp != frame.base + method.getMaxLocals()) {
+            return frame;
         }
+        CompiledMethod osrCode = hostCompiler.compileOsr(method, frame.pc);
+        return osrCode == null ? frame : thread.enterOsr(frame, osrCode);
+    }
 
-        public StackFrame(Object[] localVariables, MethodInfo methodInfo, ClassFile classFile) {
-            this.localVariables = localVariables;
-            this.methodInfo = methodInfo;
-            this.classFile = classFile;
+    /**
+     * 压入ldc/ldc2_w引用的常量，并把指令改写成直接使用常量值的快速指令
+     */
+    private void pushConstant(StackFrame frame, int index, int opcode, int cpIndex) {
+        Object value = resolver.resolveConstant(frame.getRuntimeClass(), cpIndex);
+        if (value instanceof Integer) {
+            quicken(frame.code, index, opcode, QUICK_LDC, (Integer) value, 0);
+            frame.pushInt((Integer) value);
+        } else if (value instanceof Float) {
+            int bits = Float.floatToRawIntBits((Float) value);
+            quicken(frame.code, index, opcode, QUICK_LDC, bits, 0);
+            frame.pushInt(bits);
+        } else if (value instanceof Long || value instanceof Double) {
+            long bits = value instanceof Long ? (Long) value : Double.doubleToRawLongBits((Double) value);
+            quicken(frame.code, index, opcode, QUICK_LDC2, (int) (bits >>> 32), (int) bits);
+            frame.pushLong(bits);
+        } else {
+            int ref = heap.pin(value);
+            quicken(frame.code, index, opcode, QUICK_ACONST, ref, 0);
+            frame.pushRef(ref);
         }
+    }
 
-        public void pushObjectToOperandStack(Object object) {
-            operandStack.push(object);
+    /**
+     * 在慢路径上按快速指令的语义访问一次静态字段，类还在初始化的时候指令不会被改写，只能走这里
+     */
+    private void accessStaticField(StackFrame frame, int quickOpcode, RuntimeField field) {
+        RuntimeClass runtimeClass = field.getRuntimeClass();
+        int slot = field.getSlot();
+        switch (quickOpcode) {
+            case QUICK_GETSTATIC:
+                frame.pushInt((int) runtimeClass.staticValues[slot]);
+                break;
+            case QUICK_GETSTATIC_WIDE:
+                frame.pushLong(runtimeClass.staticValues[slot]);
+                break;
+            case QUICK_GETSTATIC_REF:
+                frame.pushRef(runtimeClass.staticRefs[slot]);
+                break;
+            case QUICK_PUTSTATIC:
+                runtimeClass.staticValues[slot] = frame.popInt();
+                break;
+            case QUICK_PUTSTATIC_WIDE:
+                runtimeClass.staticValues[slot] = frame.popLong();
+                break;
+            default:
+                runtimeClass.staticRefs[slot] = frame.popRef();
         }
+    }
 
-        public Object popFromOperandStack() {
-            return operandStack.pop();
-        }
+    /**
+     * 为invokevirtual/invokeinterface调用点创建内联缓存，并登记到统计数据中
+     */
+    private InlineCache newInlineCache(RuntimeMethod caller, int index, RuntimeMethod resolved) {
+        InlineCache inlineCache = caller.profile.newInlineCache(caller, index, resolved, options.getInlineCacheSize());
+        stats.registerInlineCache(inlineCache);
+        return inlineCache;
+    }
+
+    private void quicken(DecodedCode code, int index, int quickOpcode, Object target) {
+        stats.recordQuickening(code.opcodes[index]);
+        code.quicken(index, quickOpcode, target);
+    }
+
+    private void quicken(DecodedCode code, int index, int opcode, int quickOpcode, int operand, int operand2) {
+        stats.recordQuickening(opcode);
+        code.quicken(index, quickOpcode, operand, operand2);
     }
 }
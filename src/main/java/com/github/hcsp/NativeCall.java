@@ -0,0 +1,93 @@
+package com.github.hcsp;
+
+/**
+ * 一次native方法调用：参数就是调用者操作数栈上的槽，按注册时解析好的偏移直接读取，不复制也不装箱。
+ * <p>
+ * 每个客户线程只有一个实例，每次调用时重置，所以不能在{@link NativeMethod#invoke}返回之后继续使用
+ */
+public final class NativeCall {
+    private final long[] slots;
+    private final GuestHeap heap;
+    private NativeRegistry.Signature signature;
+    /**
+     * 第一个声明的参数所在的槽，实例方法的this在它前面一个槽
+     */
+    private int argBase;
+    /**
+     * 槽格式的返回值，引用在低32位
+     */
+    long result;
+
+    NativeCall(long[] slots, GuestHeap heap) {
+        this.slots = slots;
+        this.heap = heap;
+    }
+
+    void reset(NativeRegistry.Signature signature, int argBase) {
+        this.signature = signature;
+        this.argBase = argBase;
+        this.result = 0;
+    }
+
+    /**
+     * @return 实例方法的this，客户对象是临时的{@link GuestObject}视图，只在这次调用中有效
+     */
+    public Object getThis() {
+        return heap.decode((int) slots[argBase - 1]);
+    }
+
+    public int getInt(int arg) {
+        return (int) slots[slotOf(arg)];
+    }
+
+    public boolean getBoolean(int arg) {
+        return getInt(arg) != 0;
+    }
+
+    public long getLong(int arg) {
+        return slots[slotOf(arg)];
+    }
+
+    public float getFloat(int arg) {
+        return Float.intBitsToFloat(getInt(arg));
+    }
+
+    public double getDouble(int arg) {
+        return Double.longBitsToDouble(getLong(arg));
+    }
+
+    /**
+     * @return 引用参数，客户对象是临时的{@link GuestObject}视图，只在这次调用中有效
+     */
+    public Object getObject(int arg) {
+        return heap.decode((int) slots[slotOf(arg)]);
+    }
+
+    public void returnInt(int value) {
+        result = value;
+    }
+
+    public void returnBoolean(boolean value) {
+        result = value ? 1 : 0;
+    }
+
+    public void returnLong(long value) {
+        result = value;
+    }
+
+    public void returnFloat(float value) {
+        result = Float.floatToRawIntBits(value);
+    }
+
+    public void returnDouble(double value) {
+        result = Double.doubleToRawLongBits(value);
+    }
+
+    public void returnObject(Object value) {
+        result = heap.encode(value);
+    }
+
+    private int slotOf(int arg) {
+        return argBase + signature.argOffsets[arg];
+    }
+}
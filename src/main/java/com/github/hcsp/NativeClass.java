@@ -0,0 +1,39 @@
+package com.github.hcsp;
+
+public class NativeClass {
+    public static void main(String[] args) {
+        System.out.println(add(20, 22));
+        System.out.println(scale(1L << 40, 0.5));
+        System.out.println(new NativeClass().offset(23));
+        System.out.println(greeting());
+
+        long total = 0;
+        for (int i = 0; i < 10000; i++) {
+            total += add(i, 1);
+        }
+        System.out.println(total);
+
+        try {
+            checkPositive(-1);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        }
+        try {
+            missing();
+        } catch (UnsatisfiedLinkError e) {
+            System.out.println("unsatisfied");
+        }
+    }
+
+    private static native int add(int a, int b);
+
+    private static native double scale(long value, double factor);
+
+    private native int offset(int delta);
+
+    private static native String greeting();
+
+    private static native void checkPositive(int value);
+
+    private static native void missing();
+}
@@ -0,0 +1,8 @@
+package com.github.hcsp;
+
+/**
+ * 由宿主JVM实现的方法。参数在栈帧的操作数栈上，实现负责把它们弹出，并把返回值（如果有）压回去
+ */
+interface NativeHandler {
+    void invoke(StackFrame frame);
+}
@@ -0,0 +1,12 @@
+package com.github.hcsp;
+
+/**
+ * 客户类中native方法的宿主实现，通过{@link NativeRegistry}注册。
+ * <p>
+ * 参数从{@link NativeCall}中按声明的下标读出，都是没有装箱的原始值；返回值也写到{@link NativeCall}中。
+ * 实现抛出的{@link GuestException}原样在客户代码中抛出，其他宿主异常转换成同名的客户异常
+ */
+@FunctionalInterface
+public interface NativeMethod {
+    void invoke(NativeCall call);
+}
@@ -0,0 +1,89 @@
+package com.github.hcsp;
+
+import com.github.zxh.classpy.classfile.descriptor.MethodDescriptor;
+import com.github.zxh.classpy.classfile.descriptor.TypeDescriptor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * native方法的注册表，每个{@link Metaspace}一个。
+ * <p>
+ * 注册时就把描述符解析成每个参数在操作数栈上的偏移；类加载时每个native方法查一次表，
+ * 找到的实现直接挂在{@link RuntimeMethod}上，之后的调用不再查表。
+ * 所以实现要在类加载之前（一般是{@link MiniJVM#start()}之前）注册，没有实现的native方法被调用时抛出UnsatisfiedLinkError
+ */
+public class NativeRegistry {
+    private final Map<String, Signature> natives = new ConcurrentHashMap<>();
+
+    /**
+     * 注册一个native方法的实现
+     *
+     * @param className  类名，二进制名（com.github.hcsp.NativeClass）或者内部名都可以
+     * @param methodName 方法名
+     * @param descriptor 方法描述符，例如(IJ)D
+     */
+    public NativeRegistry register(String className, String methodName, String descriptor, NativeMethod method) {
+        natives.put(key(className.replace('/', '.'), methodName, descriptor), new Signature(new MethodDescriptor(descriptor), method));
+        return this;
+    }
+
+    /**
+     * 一次注册一个类的所有native方法，用于启动时批量加载标准库的实现
+     *
+     * @param methods 键是方法名加描述符，例如add(II)I
+     */
+    public NativeRegistry registerAll(String className, Map<String, NativeMethod> methods) {
+        String binaryName = className.replace('/', '.');
+        for (Map.Entry<String, NativeMethod> entry : methods.entrySet()) {
+            String nameAndDescriptor = entry.getKey();
+            int descriptorStart = nameAndDescriptor.indexOf('(');
+            if (descriptorStart <= 0) {
+                throw new IllegalArgumentException("Expected name(descriptor), got " + nameAndDescriptor);
+            }
+            natives.put(binaryName + "." + nameAndDescriptor,
+                    new Signature(new MethodDescriptor(nameAndDescriptor.substring(descriptorStart)), entry.getValue()));
+        }
+        return this;
+    }
+
+    /**
+     * 给刚加载的类中的native方法找到实现
+     */
+    void link(RuntimeClass runtimeClass) {
+        if (natives.isEmpty()) {
+            return;
+        }
+        for (RuntimeMethod method : runtimeClass.getMethods()) {
+            if (method.isNative()) {
+                method.nativeSignature = natives.get(key(runtimeClass.getName(), method.getName(), method.getDescriptor().getDescriptor()));
+            }
+        }
+    }
+
+    private static String key(String binaryName, String methodName, String descriptor) {
+        return binaryName + "." + methodName + descriptor;
+    }
+
+    /**
+     * 解析好的native方法签名和它的实现
+     */
+    static final class Signature {
+        final NativeMethod method;
+        /**
+         * 每个声明的参数相对第一个参数的槽偏移，long和double占两个槽
+         */
+        final int[] argOffsets;
+
+        Signature(MethodDescriptor descriptor, NativeMethod method) {
+            this.method = method;
+            this.argOffsets = new int[descriptor.getParamTypes().size()];
+            int offset = 0;
+            for (int i = 0; i < argOffsets.length; i++) {
+                TypeDescriptor paramType = descriptor.getParamTypes().get(i);
+                argOffsets[i] = offset;
+                offset += RuntimeMethod.slotSizeOf(paramType);
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.github.hcsp;
+
+import com.github.zxh.classpy.classfile.jvm.Opcode;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+
+import static com.github.hcsp.Bytecodes.*;
+
+/**
+ * 根据解释器收集的每条指令的执行次数（见{@link VMOptions#setCountInstructions}），统计相邻的几条指令顺序执行的次数，
+ * 用来挑选{@link Superinstructions}的合并规则。
+ * <p>
+ * 统计的是合并和快速化之前的指令，写法和合并规则一致：xload_n写成xload，iconst_m1~iconst_5、bipush、sipush写成CONST。
+ * 一段序列执行的次数取序列中每两条相邻指令顺序执行的次数的最小值：条件跳转顺序执行的次数是它不跳转的次数，
+ * goto、return、athrow和switch之后不会顺序执行，其余指令执行之后都顺序执行下一条。
+ */
+public final class OpcodeSequences {
+    private OpcodeSequences() {
+    }
+
+    /**
+     * @param length 序列的长度，至少是2
+     * @return 所有已经加载的类中长度为length的指令序列和它们执行的次数，序列写成"ILOAD, ILOAD, IF_ICMPGE"这样的形式
+     */
+    public static Map<String, Long> count(Metaspace metaspace, int length) {
+        Map<String, Long> result = new HashMap<>();
+        metaspace.forEachClass(runtimeClass -> {
+            for (RuntimeMethod method : runtimeClass.getMethods()) {
+                long[] executions = method.profile.getExecutionCounts();
+                if (executions != null) {
+                    count(method, executions, length, result);
+                }
+            }
+        });
+        return result;
+    }
+
+    private static void count(RuntimeMethod method, long[] executions, int length, Map<String, Long> result) {
+        // 超级指令只在序列的第一条指令上计数，序列中后面的指令也执行了同样多次
+        long[] counts = executions.clone();
+        for (int index = 0; index < counts.length; index++) {
+            int sequenceLength = Superinstructions.sequenceLength(method.getCode().opcodes[index]);
+            for (int i = 1; i < sequenceLength; i++) {
+                counts[index + i] += executions[index];
+            }
+        }
+        DecodedCode code = DecodedCode.decode(method.getMethodInfo().getCode());
+        long[] fallThroughCounts = new long[counts.length];
+        for (int index = 0; index < counts.length; index++) {
+            fallThroughCounts[index] = fallThroughCount(method.profile, code, index, counts[index]);
+        }
+        for (int index = 0; index + length <= counts.length; index++) {
+            long count = Long.MAX_VALUE;
+            StringJoiner sequence = new StringJoiner(", ");
+            for (int i = 0; i < length; i++) {
+                sequence.add(nameOf(code.opcodes[index + i]));
+                if (i < length - 1) {
+                    count = Math.min(count, fallThroughCounts[index + i]);
+                }
+            }
+            if (count > 0) {
+                result.merge(sequence.toString(), count, Long::sum);
+            }
+        }
+    }
+
+    /**
+     * @return 第index条指令执行之后接着执行第index + 1条指令的次数
+     */
+    private static long fallThroughCount(MethodProfile profile, DecodedCode code, int index, long executions) {
+        int opcode = code.opcodes[index];
+        if ((opcode >= IFEQ && opcode <= IF_ACMPNE) || opcode == IFNULL || opcode == IFNONNULL) {
+            return profile.getNotTakenCount(code.pcs[index]);
+        }
+        // goto、jsr、ret、switch和各种return
+        if ((opcode >= GOTO && opcode <= RETURN) || opcode == ATHROW || opcode == GOTO_W || opcode == JSR_W) {
+            return 0;
+        }
+        return executions;
+    }
+
+    private static String nameOf(int opcode) {
+        if (Superinstructions.isIntConstant(opcode)) {
+            return "CONST";
+        }
+        // 和Java关键字同名的指令在枚举中以下划线开头，例如_new、_return
+        String name = Opcode.valueOf(opcode).name();
+        return (name.startsWith("_") ? name.substring(1) : name).toUpperCase();
+    }
+}
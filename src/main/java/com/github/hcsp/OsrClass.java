@@ -0,0 +1,30 @@
+package com.github.hcsp;
+
+public class OsrClass {
+    private static int checkpoints;
+
+    public static void main(String[] args) {
+        String label = "done";
+        long hash = 17;
+        double total = 0.5;
+        float ratio = 1;
+        for (int i = 0; i < 1000000; i++) {
+            hash = hash * 31 + mix(i);
+            total += i % 7 * 0.5;
+            ratio = ratio * 1.000001f;
+            if (i % 250000 == 0) {
+                checkpoints++;
+                System.out.println(i);
+            }
+        }
+        System.out.println(hash);
+        System.out.println(total);
+        System.out.println(ratio);
+        System.out.println(checkpoints);
+        System.out.println(label);
+    }
+
+    private static int mix(int i) {
+        return (i ^ i >>> 3) & 0xff;
+    }
+}
@@ -0,0 +1,21 @@
+package com.github.hcsp;
+
+public class OutputClass {
+    public static void main(String[] args) {
+        System.out.println(Integer.MIN_VALUE);
+        System.out.println(Long.MIN_VALUE);
+        System.out.println(-42L);
+        System.out.println('x');
+        System.out.println(true);
+        System.out.println(0.1);
+        System.out.println("héllo");
+        System.out.print("sum=");
+        System.out.println(1 + 2);
+        System.out.flush();
+
+        for (int i = 0; i < 1000; i++) {
+            System.out.println(i);
+        }
+        System.err.println("done");
+    }
+}
@@ -0,0 +1,29 @@
+package com.github.hcsp;
+
+public class RefResultClass {
+    public static void main(String[] args) {
+        String even = "even";
+        String odd = "odd";
+        int nulls = 0;
+        int odds = 0;
+        for (int i = 0; i < 4000; i++) {
+            String picked = pick(i, even, odd);
+            if (picked == null || second(even, picked) == null) {
+                nulls++;
+            } else if (picked == odd) {
+                odds++;
+            }
+        }
+        System.out.println(nulls);
+        System.out.println(odds);
+        System.out.println(second(even, odd));
+    }
+
+    private static String pick(int i, String even, String odd) {
+        return i % 2 == 0 ? even : odd;
+    }
+
+    private static String second(String first, String second) {
+        return second;
+    }
+}
@@ -0,0 +1,120 @@
+package com.github.hcsp;
+
+import com.github.zxh.classpy.classfile.constant.ConstantClassInfo;
+import com.github.zxh.classpy.classfile.constant.ConstantDoubleInfo;
+import com.github.zxh.classpy.classfile.constant.ConstantFieldrefInfo;
+import com.github.zxh.classpy.classfile.constant.ConstantFloatInfo;
+import com.github.zxh.classpy.classfile.constant.ConstantInfo;
+import com.github.zxh.classpy.classfile.constant.ConstantIntegerInfo;
+import com.github.zxh.classpy.classfile.constant.ConstantLongInfo;
+import com.github.zxh.classpy.classfile.constant.ConstantNameAndTypeInfo;
+import com.github.zxh.classpy.classfile.constant.ConstantPool;
+import com.github.zxh.classpy.classfile.constant.ConstantStringInfo;
+
+/**
+ * 把指令中的常量池符号引用解析成运行时结构。解析的开销比较大，解释器只在指令第一次执行时调用，
+ * 之后就用快速指令记住解析结果。
+ */
+class Resolver {
+    private final Metaspace metaspace;
+    private final HostBindings hostBindings;
+
+    Resolver(Metaspace metaspace, HostBindings hostBindings) {
+        this.metaspace = metaspace;
+        this.hostBindings = hostBindings;
+    }
+
+    Metaspace getMetaspace() {
+        return metaspace;
+    }
+
+    HostBindings getHostBindings() {
+        return hostBindings;
+    }
+
+    /**
+     * 读出referrer的常量池中第index项字段或方法引用
+     */
+    static MemberRef memberRef(RuntimeClass referrer, int index) {
+        ConstantPool constantPool = referrer.getClassFile().getConstantPool();
+        ConstantFieldrefInfo refInfo = (ConstantFieldrefInfo) constantPool.getConstantInfo(index);
+        ConstantNameAndTypeInfo nameAndTypeInfo = refInfo.getFieldNameAndTypeInfo(constantPool);
+        return new MemberRef(constantPool.getUtf8String(refInfo.getClassInfo(constantPool).getNameIndex()),
+                nameAndTypeInfo.getName(constantPool),
+                nameAndTypeInfo.getType(constantPool));
+    }
+
+    /**
+     * 解析ldc/ldc2_w引用的常量
+     *
+     * @return Integer、Float、Long、Double或者String
+     */
+    Object resolveConstant(RuntimeClass referrer, int index) {
+        ConstantPool constantPool = referrer.getClassFile().getConstantPool();
+        ConstantInfo constantInfo = constantPool.getConstantInfo(index);
+        if (constantInfo instanceof ConstantIntegerInfo) {
+            return ((ConstantIntegerInfo) constantInfo).getValue();
+        } else if (constantInfo instanceof ConstantFloatInfo) {
+            return ((ConstantFloatInfo) constantInfo).getValue();
+        } else if (constantInfo instanceof ConstantLongInfo) {
+            return ((ConstantLongInfo) constantInfo).getValue();
+        } else if (constantInfo instanceof ConstantDoubleInfo) {
+            return ((ConstantDoubleInfo) constantInfo).getValue();
+        } else if (constantInfo instanceof ConstantStringInfo) {
+            return ((ConstantStringInfo) constantInfo).getString(constantPool);
+        } else {
+            throw new IllegalStateException("Constant " + constantInfo + " not implemented yet!");
+        }
+    }
+
+    /**
+     * 解析new引用的类
+     */
+    RuntimeClass resolveClass(RuntimeClass referrer, int index) {
+        ConstantPool constantPool = referrer.getClassFile().getConstantPool();
+        ConstantClassInfo classInfo = (ConstantClassInfo) constantPool.getConstantInfo(index);
+        return metaspace.loadClass(constantPool.getUtf8String(classInfo.getNameIndex()));
+    }
+
+    /**
+     * 在引用的类和它的父类、接口中查找方法
+     */
+    RuntimeMethod resolveMethod(MemberRef ref) {
+        RuntimeMethod method = metaspace.loadClass(ref.className).findMethod(ref.name, ref.descriptor);
+        if (method == null) {
+            throw new GuestException("java.lang.NoSuchMethodError", ref.toString());
+        }
+        return method;
+    }
+
+    RuntimeField resolveField(MemberRef ref) {
+        RuntimeField field = metaspace.loadClass(ref.className).findField(ref.name);
+        if (field == null || !field.getDescriptor().equals(ref.descriptor)) {
+            throw new GuestException("java.lang.NoSuchFieldError", ref.toString());
+        }
+        return field;
+    }
+
+    /**
+     * 常量池中的字段或方法引用
+     */
+    static class MemberRef {
+        /**
+         * 内部形式的类名，例如java/lang/System
+         */
+        final String className;
+        final String name;
+        final String descriptor;
+
+        MemberRef(String className, String name, String descriptor) {
+            this.className = className;
+            this.name = name;
+            this.descriptor = descriptor;
+        }
+
+        @Override
+        public String toString() {
+            return className + "." + name + ":" + descriptor;
+        }
+    }
+}
@@ -0,0 +1,482 @@
+package com.github.hcsp;
+
+import com.github.zxh.classpy.classfile.ClassFile;
+import com.github.zxh.classpy.classfile.FieldInfo;
+import com.github.zxh.classpy.classfile.MethodInfo;
+import com.github.zxh.classpy.classfile.constant.ConstantDoubleInfo;
+import com.github.zxh.classpy.classfile.constant.ConstantFloatInfo;
+import com.github.zxh.classpy.classfile.constant.ConstantInfo;
+import com.github.zxh.classpy.classfile.constant.ConstantIntegerInfo;
+import com.github.zxh.classpy.classfile.constant.ConstantLongInfo;
+import com.github.zxh.classpy.classfile.constant.ConstantPool;
+import com.github.zxh.classpy.classfile.constant.ConstantStringInfo;
+import com.github.zxh.classpy.classfile.jvm.AccessFlags;
+import com.github.zxh.classpy.common.FilePart;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 链接之后的类，保存在{@link Metaspace}中，每个虚拟机中每个类只有一个实例
+ */
+public class RuntimeClass {
+    private static final int LINKED = 0;
+    private static final int INITIALIZING = 1;
+    private static final int INITIALIZED = 2;
+
+    private final String name;
+    private final ClassFile classFile;
+    private final List<RuntimeMethod> methods = new ArrayList<>();
+    /**
+     * 方法名+描述符 -> 方法，例如 "foo(I)I"
+     */
+    private final Map<String, RuntimeMethod> methodTable = new HashMap<>();
+    private final Map<String, RuntimeField> fieldTable = new HashMap<>();
+    private RuntimeMethod classInitializer;
+    /**
+     * 父类，父类是java.lang.Object时为null
+     */
+    private RuntimeClass superClass;
+    private final List<RuntimeClass> interfaces = new ArrayList<>();
+    /**
+     * 已经加载的直接子类，由{@link Metaspace}在链接完成后登记，只在它的类层次锁内访问
+     */
+    final List<RuntimeClass> subclasses = new ArrayList<>();
+    /**
+     * 最后一个实例字段之后的偏移，包括对象头和从父类继承的字段
+     */
+    private int instanceFieldsEnd;
+    private int[] referenceOffsets;
+    /**
+     * 由{@link Metaspace}在类定义时分配
+     */
+    int id;
+    /**
+     * 虚方法表：先是从父类继承的方法，子类覆盖的方法占用父类方法的下标，新声明的方法排在后面
+     */
+    private RuntimeMethod[] vtable = new RuntimeMethod[0];
+    /**
+     * 直接或间接实现的所有接口，以及每个接口对应的itable：itables[i][j]是itableInterfaces[i]的第j个方法在本类中的实现
+     */
+    private RuntimeClass[] itableInterfaces = new RuntimeClass[0];
+    private RuntimeMethod[][] itables = new RuntimeMethod[0][];
+    /**
+     * 接口声明的需要分派的方法，下标是方法的{@link RuntimeMethod#itableIndex}。不是接口时为空
+     */
+    private RuntimeMethod[] interfaceMethods = new RuntimeMethod[0];
+
+    /**
+     * 静态字段的值，下标是{@link RuntimeField#getSlot()}。基本类型放在staticValues里，
+     * 引用放在staticRefs里，和对象的引用字段一样是{@link GuestHeap}中的地址或者宿主对象表的负下标
+     */
+    long[] staticValues;
+    int[] staticRefs;
+
+    private volatile int initState = LINKED;
+    private Thread initThread;
+
+    RuntimeClass(String name, ClassFile classFile) {
+        this.name = name;
+        this.classFile = classFile;
+    }
+
+    /**
+     * 链接：把classfile中的字段和方法解析成运行时结构，只在加载时做一次。父类和接口会先被加载
+     */
+    void link(Metaspace metaspace) {
+        String superClassName = classFile.getSuperClassName();
+        if (superClassName != null && !"java/lang/Object".equals(superClassName)) {
+            superClass = metaspace.loadClass(superClassName);
+        }
+        for (String interfaceName : classFile.getInterfaceNames()) {
+            interfaces.add(metaspace.loadClass(interfaceName));
+        }
+
+        int staticCount = 0;
+        List<RuntimeField> instanceFields = new ArrayList<>();
+        for (FilePart part : classFile.getFields().getParts()) {
+            RuntimeField field = new RuntimeField(this, (FieldInfo) part);
+            if (field.isStatic()) {
+                field.setSlot(staticCount++);
+            } else {
+                instanceFields.add(field);
+            }
+            fieldTable.put(field.getName(), field);
+        }
+        layoutInstanceFields(instanceFields);
+        staticValues = new long[staticCount];
+        staticRefs = new int[staticCount];
+        for (RuntimeField field : fieldTable.values()) {
+            if (field.isStatic() && field.getConstantValueIndex() != 0) {
+                initConstantValue(metaspace, field);
+            }
+        }
+
+        for (FilePart part : classFile.getMethods().getParts()) {
+            RuntimeMethod method = new RuntimeMethod(this, (MethodInfo) part);
+            methods.add(method);
+            methodTable.put(method.getName() + method.getDescriptor().getDescriptor(), method);
+            if (method.isClassInitializer()) {
+                classInitializer = method;
+            }
+        }
+        if (isInterface()) {
+            buildInterfaceMethods();
+        } else {
+            buildVtable();
+            buildItables();
+        }
+    }
+
+    private void buildInterfaceMethods() {
+        List<RuntimeMethod> result = new ArrayList<>();
+        for (RuntimeMethod method : methods) {
+            if (method.isOverridable()) {
+                method.itableIndex = result.size();
+                result.add(method);
+            }
+        }
+        interfaceMethods = result.toArray(new RuntimeMethod[0]);
+    }
+
+    private void buildVtable() {
+        List<RuntimeMethod> table = new ArrayList<>();
+        if (superClass != null) {
+            table.addAll(Arrays.asList(superClass.vtable));
+        }
+        for (RuntimeMethod method : methods) {
+            if (!method.isOverridable()) {
+                continue;
+            }
+            int index = indexOfSignature(table, method);
+            if (index < 0) {
+                index = table.size();
+                table.add(method);
+            } else {
+                table.set(index, method);
+            }
+            method.vtableIndex = index;
+        }
+        vtable = table.toArray(new RuntimeMethod[0]);
+    }
+
+    private static int indexOfSignature(List<RuntimeMethod> table, RuntimeMethod method) {
+        for (int i = 0; i < table.size(); i++) {
+            RuntimeMethod candidate = table.get(i);
+            if (candidate.getName().equals(method.getName())
+                    && candidate.getDescriptor().getDescriptor().equals(method.getDescriptor().getDescriptor())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void buildItables() {
+        Set<RuntimeClass> allInterfaces = new LinkedHashSet<>();
+        for (RuntimeClass c = this; c != null; c = c.superClass) {
+            for (RuntimeClass anInterface : c.interfaces) {
+                collectInterfaces(anInterface, allInterfaces);
+            }
+        }
+        itableInterfaces = allInterfaces.toArray(new RuntimeClass[0]);
+        itables = new RuntimeMethod[itableInterfaces.length][];
+        for (int i = 0; i < itableInterfaces.length; i++) {
+            RuntimeMethod[] declared = itableInterfaces[i].interfaceMethods;
+            RuntimeMethod[] itable = new RuntimeMethod[declared.length];
+            for (int j = 0; j < declared.length; j++) {
+                itable[j] = findImplementation(declared[j]);
+            }
+            itables[i] = itable;
+        }
+    }
+
+    private static void collectInterfaces(RuntimeClass anInterface, Set<RuntimeClass> result) {
+        if (result.add(anInterface)) {
+            for (RuntimeClass superInterface : anInterface.interfaces) {
+                collectInterfaces(superInterface, result);
+            }
+        }
+    }
+
+    /**
+     * 接口方法在本类中的实现：类继承链上的方法优先，其次是接口的默认方法，都没有时就是接口方法本身（抽象的）
+     */
+    private RuntimeMethod findImplementation(RuntimeMethod interfaceMethod) {
+        int index = indexOfSignature(Arrays.asList(vtable), interfaceMethod);
+        if (index >= 0) {
+            return vtable[index];
+        }
+        RuntimeMethod method = findMethod(interfaceMethod.getName(), interfaceMethod.getDescriptor().getDescriptor());
+        return method == null ? interfaceMethod : method;
+    }
+
+    private void initConstantValue(Metaspace metaspace, RuntimeField field) {
+        ConstantPool constantPool = classFile.getConstantPool();
+        ConstantInfo constantInfo = constantPool.getConstantInfo(field.getConstantValueIndex());
+        if (constantInfo instanceof ConstantIntegerInfo) {
+            staticValues[field.getSlot()] = ((ConstantIntegerInfo) constantInfo).getValue();
+        } else if (constantInfo instanceof ConstantFloatInfo) {
+            staticValues[field.getSlot()] = Float.floatToRawIntBits(((ConstantFloatInfo) constantInfo).getValue());
+        } else if (constantInfo instanceof ConstantLongInfo) {
+            staticValues[field.getSlot()] = ((ConstantLongInfo) constantInfo).getValue();
+        } else if (constantInfo instanceof ConstantDoubleInfo) {
+            staticValues[field.getSlot()] = Double.doubleToRawLongBits(((ConstantDoubleInfo) constantInfo).getValue());
+        } else if (constantInfo instanceof ConstantStringInfo) {
+            staticRefs[field.getSlot()] = metaspace.getHostObjects().pin(((ConstantStringInfo) constantInfo).getString(constantPool));
+        }
+    }
+
+    /**
+     * @return 类的二进制名，例如com.github.hcsp.SimpleClass
+     */
+    public String getName() {
+        return name;
+    }
+
+    public ClassFile getClassFile() {
+        return classFile;
+    }
+
+    public List<RuntimeMethod> getMethods() {
+        return Collections.unmodifiableList(methods);
+    }
+
+    /**
+     * 按照名字和描述符查找本类中声明的方法
+     *
+     * @return 找到的方法，找不到时返回null
+     */
+    public RuntimeMethod getMethod(String methodName, String descriptor) {
+        return methodTable.get(methodName + descriptor);
+    }
+
+    /**
+     * 按照名字查找本类中声明的字段
+     *
+     * @return 找到的字段，找不到时返回null
+     */
+    public RuntimeField getField(String fieldName) {
+        return fieldTable.get(fieldName);
+    }
+
+    /**
+     * 按照名字和描述符查找方法，依次查找本类、父类，最后是接口中的默认方法
+     *
+     * @return 找到的方法，找不到时返回null
+     */
+    public RuntimeMethod findMethod(String methodName, String descriptor) {
+        for (RuntimeClass c = this; c != null; c = c.superClass) {
+            RuntimeMethod method = c.getMethod(methodName, descriptor);
+            if (method != null) {
+                return method;
+            }
+        }
+        for (RuntimeClass c = this; c != null; c = c.superClass) {
+            for (RuntimeClass anInterface : c.interfaces) {
+                RuntimeMethod method = anInterface.findMethod(methodName, descriptor);
+                if (method != null) {
+                    return method;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 按照名字查找字段，依次查找本类、接口和父类
+     *
+     * @return 找到的字段，找不到时返回null
+     */
+    public RuntimeField findField(String fieldName) {
+        RuntimeField field = getField(fieldName);
+        if (field != null) {
+            return field;
+        }
+        for (RuntimeClass anInterface : interfaces) {
+            field = anInterface.findField(fieldName);
+            if (field != null) {
+                return field;
+            }
+        }
+        return superClass == null ? null : superClass.findField(fieldName);
+    }
+
+    /**
+     * 虚分派：找到解析出来的方法在这个类的对象上实际要执行的实现。类方法查vtable，接口方法查itable，
+     * 不参与虚分派的方法就是它自己
+     *
+     * @return 实现，没有实现时返回抽象方法本身
+     */
+    RuntimeMethod selectMethod(RuntimeMethod resolved) {
+        if (resolved.itableIndex >= 0) {
+            return getItable(resolved.getRuntimeClass())[resolved.itableIndex];
+        }
+        if (resolved.vtableIndex >= 0) {
+            return vtable[resolved.vtableIndex];
+        }
+        return resolved;
+    }
+
+    /**
+     * @return 本类对接口anInterface的itable
+     * @throws GuestException 没有实现这个接口时抛出客户的IncompatibleClassChangeError
+     */
+    RuntimeMethod[] getItable(RuntimeClass anInterface) {
+        for (int i = 0; i < itableInterfaces.length; i++) {
+            if (itableInterfaces[i] == anInterface) {
+                return itables[i];
+            }
+        }
+        throw new GuestException("java.lang.IncompatibleClassChangeError", name + " does not implement " + anInterface.getName());
+    }
+
+    RuntimeMethod[] getVtable() {
+        return vtable;
+    }
+
+    /**
+     * @return 父类，父类是java.lang.Object时返回null
+     */
+    public RuntimeClass getSuperClass() {
+        return superClass;
+    }
+
+    public List<RuntimeClass> getInterfaces() {
+        return Collections.unmodifiableList(interfaces);
+    }
+
+    /**
+     * @return 是不是other本身或者它的子类
+     */
+    public boolean isSubclassOf(RuntimeClass other) {
+        for (RuntimeClass c = this; c != null; c = c.superClass) {
+            if (c == other) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isInterface() {
+        return (classFile.getAccessFlags() & AccessFlags.ACC_INTERFACE.flag) != 0;
+    }
+
+    public boolean isAbstract() {
+        return (classFile.getAccessFlags() & AccessFlags.ACC_ABSTRACT.flag) != 0;
+    }
+
+    /**
+     * 实例字段的布局，偏移从对象头之后开始。每个类的字段是一块：基本类型字段按宽度从大到小排列，
+     * 每个字段按自己的宽度对齐，所以4个short只占8个字节；引用字段是4字节的{@link GuestHeap}地址，排在这个类的基本类型字段之后。
+     * 本类的字段块接在父类的后面，父类的代码用同样的偏移访问子类对象
+     */
+    private void layoutInstanceFields(List<RuntimeField> instanceFields) {
+        int bytes = superClass == null ? GuestHeap.HEADER_SIZE : superClass.instanceFieldsEnd;
+        List<Integer> refOffsets = new ArrayList<>();
+        if (superClass != null) {
+            for (int offset : superClass.referenceOffsets) {
+                refOffsets.add(offset);
+            }
+        }
+        for (int size = 8; size >= 1; size /= 2) {
+            for (RuntimeField field : instanceFields) {
+                if (!field.isReference() && field.getSize() == size) {
+                    bytes = (bytes + size - 1) & -size;
+                    field.setOffset(bytes);
+                    bytes += size;
+                }
+            }
+        }
+        for (RuntimeField field : instanceFields) {
+            if (field.isReference()) {
+                bytes = (bytes + GuestHeap.REFERENCE_SIZE - 1) & -GuestHeap.REFERENCE_SIZE;
+                field.setOffset(bytes);
+                refOffsets.add(bytes);
+                bytes += GuestHeap.REFERENCE_SIZE;
+            }
+        }
+        instanceFieldsEnd = bytes;
+        referenceOffsets = refOffsets.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * @return 一个对象在{@link GuestHeap}中占多少字节，包括对象头，按8字节对齐
+     */
+    public int getInstanceSize() {
+        return (instanceFieldsEnd + 7) & -8;
+    }
+
+    /**
+     * @return 对象中所有引用字段的偏移，包括从父类继承的，垃圾收集时用来找到对象引用的其他对象
+     */
+    int[] getReferenceOffsets() {
+        return referenceOffsets;
+    }
+
+    /**
+     * @return 在{@link Metaspace}中的编号，对象头中记录的就是它
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return 静态初始化方法&lt;clinit&gt;，没有时返回null
+     */
+    public RuntimeMethod getClassInitializer() {
+        return classInitializer;
+    }
+
+    public boolean isInitialized() {
+        return initState == INITIALIZED;
+    }
+
+    /**
+     * 开始初始化这个类。如果另一个线程正在初始化它，就等待那个线程完成。
+     *
+     * @return 当前线程是否需要执行&lt;clinit&gt;。返回false时类要么已经初始化完成，要么正在被当前线程初始化
+     */
+    synchronized boolean beginInitialization() {
+        while (true) {
+            if (initState == INITIALIZED) {
+                return false;
+            }
+            if (initState == INITIALIZING) {
+                if (initThread == Thread.currentThread()) {
+                    return false;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                }
+                continue;
+            }
+            if (classInitializer == null) {
+                initState = INITIALIZED;
+                return false;
+            }
+            initState = INITIALIZING;
+            initThread = Thread.currentThread();
+            return true;
+        }
+    }
+
+    synchronized void finishInitialization() {
+        initState = INITIALIZED;
+        initThread = null;
+        notifyAll();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,116 @@
+package com.github.hcsp;
+
+import com.github.zxh.classpy.classfile.FieldInfo;
+import com.github.zxh.classpy.classfile.jvm.AccessFlags;
+
+/**
+ * 链接之后的字段。静态字段的值保存在所属类的静态存储中，{@link #getSlot()}是它在其中的位置；
+ * 实例字段在对象中的位置是{@link #getOffset()}，由所属类链接时的字段布局决定，见{@link GuestObject}
+ */
+public class RuntimeField {
+    private final RuntimeClass runtimeClass;
+    private final String name;
+    private final String descriptor;
+    private final int accessFlags;
+    private final int constantValueIndex;
+    private int slot = -1;
+    private int offset = -1;
+
+    RuntimeField(RuntimeClass runtimeClass, FieldInfo fieldInfo) {
+        this.runtimeClass = runtimeClass;
+        this.name = fieldInfo.getDesc();
+        this.descriptor = fieldInfo.getDescriptor(runtimeClass.getClassFile().getConstantPool());
+        this.accessFlags = fieldInfo.getAccessFlags();
+        this.constantValueIndex = fieldInfo.getConstantValueIndex();
+    }
+
+    public RuntimeClass getRuntimeClass() {
+        return runtimeClass;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescriptor() {
+        return descriptor;
+    }
+
+    public boolean isStatic() {
+        return (accessFlags & AccessFlags.ACC_STATIC.flag) != 0;
+    }
+
+    /**
+     * @return 字段的值是否是引用（对象或数组）
+     */
+    public boolean isReference() {
+        char type = descriptor.charAt(0);
+        return type == 'L' || type == '[';
+    }
+
+    /**
+     * @return 字段的值是否是long或者double
+     */
+    public boolean isWide() {
+        char type = descriptor.charAt(0);
+        return type == 'J' || type == 'D';
+    }
+
+    /**
+     * @return 基本类型的值占多少字节，引用返回0
+     */
+    public int getSize() {
+        switch (descriptor.charAt(0)) {
+            case 'J':
+            case 'D':
+                return 8;
+            case 'I':
+            case 'F':
+                return 4;
+            case 'S':
+            case 'C':
+                return 2;
+            case 'B':
+            case 'Z':
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @return 字段的值是否是byte、boolean、short或者char，它们在对象中不到4个字节
+     */
+    public boolean isNarrow() {
+        int size = getSize();
+        return size == 1 || size == 2;
+    }
+
+    int getConstantValueIndex() {
+        return constantValueIndex;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    void setSlot(int slot) {
+        this.slot = slot;
+    }
+
+    /**
+     * @return 实例字段在对象中的位置：相对对象地址的字节偏移，引用字段占{@link GuestHeap#REFERENCE_SIZE}字节，存放int引用
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    void setOffset(int offset) {
+        this.offset = offset;
+    }
+
+    @Override
+    public String toString() {
+        return runtimeClass.getName() + "." + name + ":" + descriptor;
+    }
+}
@@ -0,0 +1,220 @@
+package com.github.hcsp;
+
+import com.github.zxh.classpy.classfile.MethodInfo;
+import com.github.zxh.classpy.classfile.descriptor.MethodDescriptor;
+import com.github.zxh.classpy.classfile.descriptor.PrimitiveTypeDescriptor;
+import com.github.zxh.classpy.classfile.descriptor.TypeDescriptor;
+import com.github.zxh.classpy.classfile.jvm.AccessFlags;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 链接之后的方法，缓存了执行时需要反复用到的信息，避免每次调用都去遍历classfile结构
+ */
+public class RuntimeMethod {
+    private final RuntimeClass runtimeClass;
+    private final MethodInfo methodInfo;
+    private final String name;
+    private final MethodDescriptor descriptor;
+    private final int accessFlags;
+    private final int maxStack;
+    private final int maxLocals;
+    private final int codeLength;
+    private final int argSlotCount;
+    private final DecodedCode code;
+    private final ExceptionTable exceptionTable;
+    /**
+     * 闭包执行引擎编译出来的代码，第一次执行时才编译
+     */
+    private ClosureCompiler.Node[] closureCode;
+
+    /**
+     * 在类的vtable中的下标，不参与虚分派的方法（静态方法、私有方法、构造器和接口方法）为-1
+     */
+    int vtableIndex = -1;
+    /**
+     * 接口方法在所属接口的itable中的下标，不是接口方法时为-1
+     */
+    int itableIndex = -1;
+
+    /**
+     * 运行数据，{@link HostCompiler}根据其中的调用次数和循环回边次数判断方法是不是热点
+     */
+    final MethodProfile profile;
+    /**
+     * 编译状态，取值见{@link HostCompiler}
+     */
+    int compileState;
+    /**
+     * 编译出来的宿主代码，没有编译时为null
+     */
+    CompiledMethod compiledCode;
+    /**
+     * native方法的宿主实现，类加载时由{@link NativeRegistry}挂上，没有注册实现时为null
+     */
+    NativeRegistry.Signature nativeSignature;
+    /**
+     * OSR编译出来的代码，键是循环头的指令下标，没有OSR编译过时为null
+     */
+    Map<Integer, CompiledMethod> osrCode;
+    /**
+     * OSR编译失败过，之后不再尝试
+     */
+    boolean osrDisabled;
+    /**
+     * 依赖这个方法的编译代码所属的方法：它们假设这个方法没有被覆盖（类层次分析），或者直接调用了这个方法的编译代码。
+     * 只在{@link Metaspace}的类层次锁内访问
+     */
+    List<RuntimeMethod> dependents;
+
+    RuntimeMethod(RuntimeClass runtimeClass, MethodInfo methodInfo) {
+        this.runtimeClass = runtimeClass;
+        this.methodInfo = methodInfo;
+        this.name = methodInfo.getDesc();
+        this.descriptor = methodInfo.getMethodDescriptor(runtimeClass.getClassFile().getConstantPool());
+        this.accessFlags = methodInfo.getAccessFlags();
+        // native和abstract方法没有Code属性
+        boolean hasCode = methodInfo.hasCode();
+        this.maxStack = hasCode ? methodInfo.getMaxStack() : 0;
+        this.maxLocals = hasCode ? methodInfo.getMaxLocals() : 0;
+        this.codeLength = hasCode ? methodInfo.getCodeLength() : 0;
+        this.argSlotCount = countArgSlots(descriptor, isStatic());
+        this.code = hasCode ? Superinstructions.fuse(DecodedCode.decode(methodInfo.getCode())) : null;
+        this.exceptionTable = hasCode ? ExceptionTable.build(runtimeClass, methodInfo.getExceptionTable(), code) : null;
+        if (hasCode) {
+            Intrinsics.bind(runtimeClass, code);
+        }
+        this.profile = new MethodProfile(code);
+    }
+
+    private static int countArgSlots(MethodDescriptor descriptor, boolean isStatic) {
+        int count = isStatic ? 0 : 1;
+        for (TypeDescriptor paramType : descriptor.getParamTypes()) {
+            count += slotSizeOf(paramType);
+        }
+        return count;
+    }
+
+    /**
+     * long和double在局部变量表和操作数栈上都占两个槽
+     */
+    static int slotSizeOf(TypeDescriptor type) {
+        return type == PrimitiveTypeDescriptor.LONG || type == PrimitiveTypeDescriptor.DOUBLE ? 2 : 1;
+    }
+
+    public RuntimeClass getRuntimeClass() {
+        return runtimeClass;
+    }
+
+    public MethodInfo getMethodInfo() {
+        return methodInfo;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public MethodDescriptor getDescriptor() {
+        return descriptor;
+    }
+
+    public boolean isStatic() {
+        return (accessFlags & AccessFlags.ACC_STATIC.flag) != 0;
+    }
+
+    public boolean isPrivate() {
+        return (accessFlags & AccessFlags.ACC_PRIVATE.flag) != 0;
+    }
+
+    /**
+     * @return 是否可以被子类覆盖，也就是需要虚分派
+     */
+    public boolean isOverridable() {
+        return !isStatic() && !isPrivate() && !"<init>".equals(name) && !isClassInitializer();
+    }
+
+    public boolean isNative() {
+        return (accessFlags & AccessFlags.ACC_NATIVE.flag) != 0;
+    }
+
+    public boolean isAbstract() {
+        return (accessFlags & AccessFlags.ACC_ABSTRACT.flag) != 0;
+    }
+
+    /**
+     * @return 是否是类的静态初始化方法&lt;clinit&gt;
+     */
+    public boolean isClassInitializer() {
+        return "<clinit>".equals(name);
+    }
+
+    public int getMaxStack() {
+        return maxStack;
+    }
+
+    public int getMaxLocals() {
+        return maxLocals;
+    }
+
+    /**
+     * @return 字节码的字节数，native和abstract方法为0
+     */
+    public int getCodeLength() {
+        return codeLength;
+    }
+
+    /**
+     * @return 链接时解码好的指令，native和abstract方法返回null
+     */
+    DecodedCode getCode() {
+        return code;
+    }
+
+    /**
+     * @return 异常处理器表，没有声明处理器时返回null
+     */
+    ExceptionTable getExceptionTable() {
+        return exceptionTable;
+    }
+
+    /**
+     * 丢弃编译好的代码（包括OSR代码），之后的调用回到解释执行，调用次数仍然超过阈值时会按新的类层次重新编译
+     *
+     * @return 是否确实丢弃了代码
+     */
+    boolean discardCompiledCode() {
+        boolean discarded = osrCode != null && !osrCode.isEmpty();
+        osrCode = null;
+        if (compileState == HostCompiler.COMPILED) {
+            compiledCode = null;
+            compileState = HostCompiler.NOT_COMPILED;
+            discarded = true;
+        }
+        return discarded;
+    }
+
+    public MethodProfile getProfile() {
+        return profile;
+    }
+
+    ClosureCompiler.Node[] getClosureCode() {
+        return closureCode;
+    }
+
+    void setClosureCode(ClosureCompiler.Node[] closureCode) {
+        this.closureCode = closureCode;
+    }
+
+    /**
+     * @return 调用时需要从调用者操作数栈上弹出的槽数，包括this
+     */
+    public int getArgSlotCount() {
+        return argSlotCount;
+    }
+
+    @Override
+    public String toString() {
+        return runtimeClass.getName() + "." + name + descriptor.getDescriptor();
+    }
+}
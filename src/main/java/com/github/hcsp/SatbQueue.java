@@ -0,0 +1,61 @@
+package com.github.hcsp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * SATB（snapshot-at-the-beginning）写屏障记下的旧引用，包括宿主对象的引用。并发标记期间，{@link GuestHeap#storeRef}
+ * 在覆盖一个引用字段之前把它的旧值放到这里，标记线程从这些对象出发继续标记，
+ * 所以开始标记时活着的对象即使之后只剩下栈帧引用着它，也会被标记。
+ * <p>
+ * 写屏障先写到一个缓冲区中，不需要同步，缓冲区满了才加锁交给标记线程。
+ * 这个缓冲区只有一个，假定只有一个客户线程写引用字段：虚拟机目前只有一个客户线程，
+ * {@link GuestHeap}的分配也是这样假定的。有多个客户线程时缓冲区要放到各自的{@link GuestThread}中
+ */
+final class SatbQueue {
+    private static final int BUFFER_SIZE = 256;
+
+    /**
+     * 写屏障是否打开，只有客户线程读写：初始标记时打开，重新标记时关闭
+     */
+    boolean active;
+    private int[] buffer = new int[BUFFER_SIZE];
+    private int size;
+    private final List<int[]> completed = new ArrayList<>();
+
+    /**
+     * 只能在唯一的客户线程中调用
+     */
+    void enqueue(int address) {
+        buffer[size++] = address;
+        if (size == BUFFER_SIZE) {
+            synchronized (completed) {
+                completed.add(buffer);
+            }
+            buffer = new int[BUFFER_SIZE];
+            size = 0;
+        }
+    }
+
+    /**
+     * 标记线程：取走已经满了的缓冲区
+     */
+    List<int[]> takeCompleted() {
+        synchronized (completed) {
+            List<int[]> result = new ArrayList<>(completed);
+            completed.clear();
+            return result;
+        }
+    }
+
+    /**
+     * 重新标记时在客户线程中调用：取走所有缓冲区，包括还没满的那个
+     */
+    List<int[]> drain() {
+        List<int[]> result = takeCompleted();
+        result.add(Arrays.copyOf(buffer, size));
+        size = 0;
+        return result;
+    }
+}
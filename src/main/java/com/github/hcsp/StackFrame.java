@@ -0,0 +1,261 @@
+package com.github.hcsp;
+
+import java.util.Arrays;
+
+/**
+ * 栈帧。栈帧本身不持有存储，它只是{@link GuestThread}的槽数组上的一个窗口：
+ * [base, base + maxLocals)是局部变量，之后是操作数栈。
+ * <p>
+ * 所有值都不装箱，直接存放在{@link #slots}里：int/float按位存放，long/double占两个槽，值放在第一个槽中，
+ * 引用是{@link GuestHeap}中的int引用。平行的{@link #refTags}标出哪些槽是引用，垃圾收集时只扫描和改写这些槽。
+ * 写入基本类型的局部变量和弹出引用时清掉标记，栈顶之上的槽总是没有标记的。
+ * <p>
+ * 栈帧对象按调用深度复用，所以调用方法时不会分配新的对象。
+ */
+class StackFrame {
+    /**
+     * 栈帧所属的线程
+     */
+    final GuestThread thread;
+    final long[] slots;
+    final boolean[] refTags;
+    /**
+     * 在调用栈中的深度，main方法的栈帧是0
+     */
+    final int depth;
+    /**
+     * 局部变量0在槽数组中的位置
+     */
+    int base;
+    /**
+     * 下一个空闲的操作数栈槽，是槽数组中的绝对位置
+     */
+    int sp;
+
+    RuntimeMethod method;
+    DecodedCode code;
+    /**
+     * 下一条要执行的指令下标
+     */
+    int pc;
+
+    StackFrame(GuestThread thread, int depth) {
+        this.thread = thread;
+        this.slots = thread.slots;
+        this.refTags = thread.refTags;
+        this.depth = depth;
+    }
+
+    void reset(RuntimeMethod method, int base) {
+        this.method = method;
+        this.code = method.getCode();
+        this.base = base;
+        this.sp = base + method.getMaxLocals();
+        this.pc = 0;
+    }
+
+    /**
+     * 栈帧退出时清掉它占用的槽的引用标记，保证栈顶之上的槽总是没有标记
+     */
+    void clear() {
+        Arrays.fill(refTags, base, sp, false);
+    }
+
+    /**
+     * 清空操作数栈，异常跳到处理器之前使用。整个操作数栈区域都清掉，
+     * 因为调用失败时参数已经被弹出，但它们的引用标记还没有清
+     */
+    void clearOperandStack() {
+        int bottom = base + method.getMaxLocals();
+        Arrays.fill(refTags, bottom, bottom + method.getMaxStack(), false);
+        sp = bottom;
+    }
+
+    public RuntimeMethod getMethod() {
+        return method;
+    }
+
+    public RuntimeClass getRuntimeClass() {
+        return method.getRuntimeClass();
+    }
+
+    public void pushInt(int value) {
+        slots[sp++] = value;
+    }
+
+    public int popInt() {
+        return (int) slots[--sp];
+    }
+
+    public void pushFloat(float value) {
+        slots[sp++] = Float.floatToRawIntBits(value);
+    }
+
+    public float popFloat() {
+        return Float.intBitsToFloat((int) slots[--sp]);
+    }
+
+    public void pushLong(long value) {
+        slots[sp] = value;
+        sp += 2;
+    }
+
+    public long popLong() {
+        sp -= 2;
+        return slots[sp];
+    }
+
+    public void pushDouble(double value) {
+        slots[sp] = Double.doubleToRawLongBits(value);
+        sp += 2;
+    }
+
+    public double popDouble() {
+        sp -= 2;
+        return Double.longBitsToDouble(slots[sp]);
+    }
+
+    public void pushRef(int value) {
+        refTags[sp] = true;
+        slots[sp++] = value;
+    }
+
+    public int popRef() {
+        refTags[--sp] = false;
+        return (int) slots[sp];
+    }
+
+    public int peekRef(int depth) {
+        return (int) slots[sp - 1 - depth];
+    }
+
+    /**
+     * 宿主实现的方法使用：把引用转换成宿主对象弹出，客户对象是临时的{@link GuestObject}视图
+     */
+    public Object popObject() {
+        return thread.heap.decode(popRef());
+    }
+
+    /**
+     * 宿主实现的方法使用：压入宿主对象，第一次遇到的宿主对象登记到宿主对象表中
+     */
+    public void pushObject(Object value) {
+        pushRef(thread.heap.encode(value));
+    }
+
+    public int getLocalInt(int index) {
+        return (int) slots[base + index];
+    }
+
+    public void setLocalInt(int index, int value) {
+        slots[base + index] = value;
+        refTags[base + index] = false;
+    }
+
+    public long getLocalLong(int index) {
+        return slots[base + index];
+    }
+
+    public void setLocalLong(int index, long value) {
+        slots[base + index] = value;
+        refTags[base + index] = false;
+        refTags[base + index + 1] = false;
+    }
+
+    public int getLocalRef(int index) {
+        return (int) slots[base + index];
+    }
+
+    public void setLocalRef(int index, int value) {
+        slots[base + index] = value;
+        refTags[base + index] = true;
+    }
+
+    /**
+     * 把第from个槽原样复制到第to个槽，用于dup/swap这类不关心类型的栈操作
+     */
+    void copySlot(int from, int to) {
+        slots[to] = slots[from];
+        refTags[to] = refTags[from];
+    }
+
+    public void pop() {
+        refTags[--sp] = false;
+    }
+
+    public void pop2() {
+        pop();
+        pop();
+    }
+
+    /**
+     * 一次弹出count个槽
+     */
+    void drop(int count) {
+        int newSp = sp - count;
+        Arrays.fill(refTags, newSp, sp, false);
+        sp = newSp;
+    }
+
+    // 下面是dup/swap系列指令，注释中栈顶在右边
+
+    // ..., v1 -> ..., v1, v1
+    public void dup() {
+        copySlot(sp - 1, sp);
+        sp++;
+    }
+
+    // ..., v2, v1 -> ..., v1, v2, v1
+    public void dupX1() {
+        copySlot(sp - 1, sp);
+        copySlot(sp - 2, sp - 1);
+        copySlot(sp, sp - 2);
+        sp++;
+    }
+
+    // ..., v3, v2, v1 -> ..., v1, v3, v2, v1
+    public void dupX2() {
+        copySlot(sp - 1, sp);
+        copySlot(sp - 2, sp - 1);
+        copySlot(sp - 3, sp - 2);
+        copySlot(sp, sp - 3);
+        sp++;
+    }
+
+    // ..., v2, v1 -> ..., v2, v1, v2, v1
+    public void dup2() {
+        copySlot(sp - 2, sp);
+        copySlot(sp - 1, sp + 1);
+        sp += 2;
+    }
+
+    // ..., v3, v2, v1 -> ..., v2, v1, v3, v2, v1
+    public void dup2X1() {
+        copySlot(sp - 1, sp + 1);
+        copySlot(sp - 2, sp);
+        copySlot(sp - 3, sp - 1);
+        copySlot(sp + 1, sp - 2);
+        copySlot(sp, sp - 3);
+        sp += 2;
+    }
+
+    // ..., v4, v3, v2, v1 -> ..., v2, v1, v4, v3, v2, v1
+    public void dup2X2() {
+        copySlot(sp - 1, sp + 1);
+        copySlot(sp - 2, sp);
+        copySlot(sp - 3, sp - 1);
+        copySlot(sp - 4, sp - 2);
+        copySlot(sp + 1, sp - 3);
+        copySlot(sp, sp - 4);
+        sp += 2;
+    }
+
+    // ..., v2, v1 -> ..., v1, v2
+    public void swap() {
+        long slot = slots[sp - 1];
+        boolean tag = refTags[sp - 1];
+        copySlot(sp - 2, sp - 1);
+        slots[sp - 2] = slot;
+        refTags[sp - 2] = tag;
+    }
+}
@@ -0,0 +1,28 @@
+package com.github.hcsp;
+
+public class StaticFieldClass {
+    private static final long SEED = 1234567890123L;
+    private static int counter;
+    private static long total = SEED;
+    private static double ratio;
+    private static String name = "static";
+
+    static {
+        ratio = 0.25;
+    }
+
+    public static void main(String[] args) {
+        for (int i = 0; i < 100; i++) {
+            increment(i);
+        }
+        System.out.println(counter);
+        System.out.println(total);
+        System.out.println(ratio * counter);
+        System.out.println(name);
+    }
+
+    private static void increment(int i) {
+        counter++;
+        total += i;
+    }
+}
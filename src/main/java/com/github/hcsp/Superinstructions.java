@@ -0,0 +1,103 @@
+package com.github.hcsp;
+
+import static com.github.hcsp.Bytecodes.*;
+
+/**
+ * 超级指令：把经常连续出现的几条指令合并成一条，一次分派就执行完整个序列。
+ * <p>
+ * 合并是原地进行的：只把序列中第一条指令的操作码改成超级指令，后面的指令原样保留。
+ * 超级指令执行时从后面几条指令的槽中读取操作数，执行完直接跳过它们。
+ * 所以跳转到序列中间的指令仍然会一条一条正常执行，不需要修改任何跳转目标。
+ */
+final class Superinstructions {
+    private Superinstructions() {
+    }
+
+    /**
+     * 模式中的占位符，匹配iconst_m1~iconst_5、bipush、sipush中的任意一条
+     */
+    private static final int CONST = -1;
+
+    /**
+     * 合并规则表，每行是一条超级指令和它替换的指令序列。
+     * <p>
+     * 规则是根据示例客户程序（LoopClass、RecursiveClass等）中指令序列的动态执行次数挑选的，
+     * 按次数从高到低排列，同一位置能匹配多条规则时前面的优先。次数由{@link OpcodeSequences}统计，
+     * 它输出的序列和这里的写法相同。每条超级指令在解释器和闭包编译器中都要有自己的实现，所以表是手工维护的。
+     */
+    private static final int[][] PATTERNS = {
+            // 循环条件，例如for (int i = 0; i < n; i++)
+            {ILOAD_ILOAD_IF_ICMPGE, ILOAD, ILOAD, IF_ICMPGE},
+            {ILOAD_ILOAD_IF_ICMPGT, ILOAD, ILOAD, IF_ICMPGT},
+            {ILOAD_ILOAD_IF_ICMPLT, ILOAD, ILOAD, IF_ICMPLT},
+            {ILOAD_ILOAD_IF_ICMPLE, ILOAD, ILOAD, IF_ICMPLE},
+            // 循环的回边：i++之后跳回循环条件
+            {IINC_GOTO, IINC, GOTO},
+            // 递归，例如factorial(n - 1)
+            {ILOAD_CONST_ISUB, ILOAD, CONST, ISUB},
+            {ILOAD_CONST_IADD, ILOAD, CONST, IADD},
+            {ILOAD_IFEQ, ILOAD, IFEQ},
+            {ILOAD_IFNE, ILOAD, IFNE},
+            {ILOAD_ILOAD_IMUL, ILOAD, ILOAD, IMUL},
+            {ILOAD_ILOAD_IADD, ILOAD, ILOAD, IADD},
+            {ILOAD_IRETURN, ILOAD, IRETURN},
+            {CONST_IRETURN, CONST, IRETURN},
+    };
+
+    /**
+     * 在加载时对方法的指令做一遍合并
+     *
+     * @return 传入的code，方便链式调用
+     */
+    static DecodedCode fuse(DecodedCode code) {
+        for (int index = 0; index < code.length(); index++) {
+            for (int[] pattern : PATTERNS) {
+                if (matches(code, index, pattern)) {
+                    fuse(code, index, pattern);
+                    break;
+                }
+            }
+        }
+        return code;
+    }
+
+    /**
+     * @return opcode是超级指令时返回它替换的指令条数，否则返回1
+     */
+    static int sequenceLength(int opcode) {
+        for (int[] pattern : PATTERNS) {
+            if (pattern[0] == opcode) {
+                return pattern.length - 1;
+            }
+        }
+        return 1;
+    }
+
+    private static boolean matches(DecodedCode code, int index, int[] pattern) {
+        if (index + pattern.length - 1 > code.length()) {
+            return false;
+        }
+        for (int i = 1; i < pattern.length; i++) {
+            int opcode = code.opcodes[index + i - 1];
+            if (pattern[i] == CONST ? !isIntConstant(opcode) : pattern[i] != opcode) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void fuse(DecodedCode code, int index, int[] pattern) {
+        for (int i = 1; i < pattern.length; i++) {
+            int opcode = code.opcodes[index + i - 1];
+            if (opcode >= ICONST_M1 && opcode <= ICONST_5) {
+                // iconst_n本来没有操作数，把常量值放进操作数里，超级指令就可以统一读取
+                code.operands[index + i - 1] = opcode - ICONST_0;
+            }
+        }
+        code.opcodes[index] = pattern[0];
+    }
+
+    static boolean isIntConstant(int opcode) {
+        return (opcode >= ICONST_M1 && opcode <= ICONST_5) || opcode == BIPUSH || opcode == SIPUSH;
+    }
+}
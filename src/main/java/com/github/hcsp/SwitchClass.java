@@ -0,0 +1,40 @@
+package com.github.hcsp;
+
+public class SwitchClass {
+    public static void main(String[] args) {
+        int result = 0;
+        for (int i = 0; i < 6; i++) {
+            result = result * 10 + dense(i);
+        }
+        System.out.println(result);
+        System.out.println(sparse(-1000) + sparse(7) + sparse(100000) + sparse(3));
+    }
+
+    private static int dense(int i) {
+        switch (i) {
+            case 1:
+                return 1;
+            case 2:
+                return 2;
+            case 3:
+                return 3;
+            case 4:
+                return 4;
+            default:
+                return 9;
+        }
+    }
+
+    private static int sparse(int i) {
+        switch (i) {
+            case -1000:
+                return 1;
+            case 7:
+                return 20;
+            case 100000:
+                return 300;
+            default:
+                return 4000;
+        }
+    }
+}
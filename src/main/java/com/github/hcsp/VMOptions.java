@@ -0,0 +1,347 @@
+package com.github.hcsp;
+
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+
+/**
+ * 虚拟机的可调参数，每个{@link MiniJVM}实例一份
+ */
+public class VMOptions {
+    private int stackSlots = 1 << 18;
+    private int maxStackDepth = 8192;
+    private ExecutionEngine executionEngine = ExecutionEngine.INTERPRETER;
+    private int compileThreshold = 1000;
+    private int backedgeThreshold = 10000;
+    private int osrThreshold = 60000;
+    private int codeCacheSize = 4 << 20;
+    private int inlineCacheSize = 4;
+    private int maxInlineSize = 35;
+    private int maxInlineDepth = 4;
+    private boolean omitStackTraceInFastThrow;
+    private int fastThrowThreshold = 100;
+    private int outputBufferSize = 8192;
+    private WritableByteChannel stdout;
+    private WritableByteChannel stderr;
+    private boolean captureOutput;
+    private int heapSize = 64 << 20;
+    private Path heapFile;
+    private GarbageCollector garbageCollector = GarbageCollector.GENERATIONAL;
+    private int newRatio = 2;
+    private int survivorRatio = 8;
+    private int maxTenuringThreshold = 15;
+    private int tlabSize = 16 << 10;
+    private int gcThreads = Runtime.getRuntime().availableProcessors();
+    private int initiatingOccupancy = 45;
+    private boolean countInstructions;
+
+    /**
+     * @return 每个客户线程的栈一共有多少个槽，局部变量和操作数栈都从这里分配
+     */
+    public int getStackSlots() {
+        return stackSlots;
+    }
+
+    public VMOptions setStackSlots(int stackSlots) {
+        this.stackSlots = stackSlots;
+        return this;
+    }
+
+    /**
+     * @return 调用栈的最大深度，超过时抛出客户的StackOverflowError
+     */
+    public int getMaxStackDepth() {
+        return maxStackDepth;
+    }
+
+    public VMOptions setMaxStackDepth(int maxStackDepth) {
+        this.maxStackDepth = maxStackDepth;
+        return this;
+    }
+
+    public ExecutionEngine getExecutionEngine() {
+        return executionEngine;
+    }
+
+    public VMOptions setExecutionEngine(ExecutionEngine executionEngine) {
+        this.executionEngine = executionEngine;
+        return this;
+    }
+
+    /**
+     * @return 解释执行的方法被调用多少次之后编译成宿主字节码
+     */
+    public int getCompileThreshold() {
+        return compileThreshold;
+    }
+
+    public VMOptions setCompileThreshold(int compileThreshold) {
+        this.compileThreshold = compileThreshold;
+        return this;
+    }
+
+    /**
+     * @return 方法中的循环回边执行多少次之后，在下次调用时编译成宿主字节码
+     */
+    public int getBackedgeThreshold() {
+        return backedgeThreshold;
+    }
+
+    public VMOptions setBackedgeThreshold(int backedgeThreshold) {
+        this.backedgeThreshold = backedgeThreshold;
+        return this;
+    }
+
+    /**
+     * @return 正在解释执行的方法中循环回边执行多少次之后，不等下次调用，直接在循环中切换到编译好的代码（OSR）
+     */
+    public int getOsrThreshold() {
+        return osrThreshold;
+    }
+
+    public VMOptions setOsrThreshold(int osrThreshold) {
+        this.osrThreshold = osrThreshold;
+        return this;
+    }
+
+    /**
+     * @return 编译生成的宿主类一共最多占多少字节，超过之后不再编译，为0时不编译任何方法
+     */
+    public int getCodeCacheSize() {
+        return codeCacheSize;
+    }
+
+    public VMOptions setCodeCacheSize(int codeCacheSize) {
+        this.codeCacheSize = codeCacheSize;
+        return this;
+    }
+
+    /**
+     * @return 每个虚方法调用点的内联缓存最多记住几个接收者类，超过之后调用点变成megamorphic
+     */
+    public int getInlineCacheSize() {
+        return inlineCacheSize;
+    }
+
+    public VMOptions setInlineCacheSize(int inlineCacheSize) {
+        this.inlineCacheSize = inlineCacheSize;
+        return this;
+    }
+
+    /**
+     * @return 编译时被调用方法的字节码不超过多少字节才内联到调用点，为0时不内联
+     */
+    public int getMaxInlineSize() {
+        return maxInlineSize;
+    }
+
+    public VMOptions setMaxInlineSize(int maxInlineSize) {
+        this.maxInlineSize = maxInlineSize;
+        return this;
+    }
+
+    /**
+     * @return 内联的最大嵌套层数，内联进来的方法中的调用点也可以继续内联
+     */
+    public int getMaxInlineDepth() {
+        return maxInlineDepth;
+    }
+
+    public VMOptions setMaxInlineDepth(int maxInlineDepth) {
+        this.maxInlineDepth = maxInlineDepth;
+        return this;
+    }
+
+    /**
+     * @return 隐式异常（空指针、除以零等）在同一条指令上抛出足够多次之后，是否改为抛出预先分配的异常对象。
+     * 预先分配的异常没有detailMessage和栈轨迹，所有抛出点共用
+     */
+    public boolean isOmitStackTraceInFastThrow() {
+        return omitStackTraceInFastThrow;
+    }
+
+    public VMOptions setOmitStackTraceInFastThrow(boolean omitStackTraceInFastThrow) {
+        this.omitStackTraceInFastThrow = omitStackTraceInFastThrow;
+        return this;
+    }
+
+    /**
+     * @return 一条指令抛出多少次隐式异常之后使用预先分配的异常对象
+     */
+    public int getFastThrowThreshold() {
+        return fastThrowThreshold;
+    }
+
+    public VMOptions setFastThrowThreshold(int fastThrowThreshold) {
+        this.fastThrowThreshold = fastThrowThreshold;
+        return this;
+    }
+
+    /**
+     * @return 客户的标准输出和标准错误各自的缓冲区字节数，缓冲区满了才写到通道
+     */
+    public int getOutputBufferSize() {
+        return outputBufferSize;
+    }
+
+    public VMOptions setOutputBufferSize(int outputBufferSize) {
+        this.outputBufferSize = outputBufferSize;
+        return this;
+    }
+
+    /**
+     * @return 客户的System.out写到的通道，为null时写到创建虚拟机时宿主的System.out
+     */
+    public WritableByteChannel getStdout() {
+        return stdout;
+    }
+
+    public VMOptions setStdout(WritableByteChannel stdout) {
+        this.stdout = stdout;
+        return this;
+    }
+
+    /**
+     * @return 客户的System.err写到的通道，为null时写到创建虚拟机时宿主的System.err
+     */
+    public WritableByteChannel getStderr() {
+        return stderr;
+    }
+
+    public VMOptions setStderr(WritableByteChannel stderr) {
+        this.stderr = stderr;
+        return this;
+    }
+
+    public boolean isCaptureOutput() {
+        return captureOutput;
+    }
+
+    /**
+     * 把客户的标准输出收集到内存中，运行结束后从{@link MiniJVM#getCapturedOutput()}读取，优先于{@link #setStdout}
+     */
+    public VMOptions setCaptureOutput(boolean captureOutput) {
+        this.captureOutput = captureOutput;
+        return this;
+    }
+
+    /**
+     * @return 客户堆的字节数，所有客户对象都从这里分配，用完时抛出客户的OutOfMemoryError
+     */
+    public int getHeapSize() {
+        return heapSize;
+    }
+
+    public VMOptions setHeapSize(int heapSize) {
+        this.heapSize = heapSize;
+        return this;
+    }
+
+    /**
+     * @return 映射成客户堆的文件，为null时客户堆是一块直接缓冲区
+     */
+    public Path getHeapFile() {
+        return heapFile;
+    }
+
+    public VMOptions setHeapFile(Path heapFile) {
+        this.heapFile = heapFile;
+        return this;
+    }
+
+    /**
+     * @return 客户堆满时使用的垃圾收集算法
+     */
+    public GarbageCollector getGarbageCollector() {
+        return garbageCollector;
+    }
+
+    public VMOptions setGarbageCollector(GarbageCollector garbageCollector) {
+        this.garbageCollector = garbageCollector;
+        return this;
+    }
+
+    /**
+     * @return 分代收集时老年代和年轻代的大小之比
+     */
+    public int getNewRatio() {
+        return newRatio;
+    }
+
+    public VMOptions setNewRatio(int newRatio) {
+        this.newRatio = newRatio;
+        return this;
+    }
+
+    /**
+     * @return 分代收集时eden和一个survivor空间的大小之比
+     */
+    public int getSurvivorRatio() {
+        return survivorRatio;
+    }
+
+    public VMOptions setSurvivorRatio(int survivorRatio) {
+        this.survivorRatio = survivorRatio;
+        return this;
+    }
+
+    /**
+     * @return 对象在年轻代中活过多少次收集之后晋升到老年代，最大是15。survivor空间放不下时会提前晋升
+     */
+    public int getMaxTenuringThreshold() {
+        return maxTenuringThreshold;
+    }
+
+    public VMOptions setMaxTenuringThreshold(int maxTenuringThreshold) {
+        this.maxTenuringThreshold = maxTenuringThreshold;
+        return this;
+    }
+
+    /**
+     * @return 每次从eden中分给一个客户线程的TLAB的字节数，比它大的对象直接在eden中分配
+     */
+    public int getTlabSize() {
+        return tlabSize;
+    }
+
+    public VMOptions setTlabSize(int tlabSize) {
+        this.tlabSize = tlabSize;
+        return this;
+    }
+
+    /**
+     * @return 垃圾收集的工作线程数，标记和年轻代的复制分给这些线程并行完成，默认是宿主的处理器数
+     */
+    public int getGcThreads() {
+        return gcThreads;
+    }
+
+    public VMOptions setGcThreads(int gcThreads) {
+        this.gcThreads = gcThreads;
+        return this;
+    }
+
+    /**
+     * @return 并发标记-清除收集时，已用空间超过堆的百分之多少就开始一轮并发标记
+     */
+    public int getInitiatingOccupancy() {
+        return initiatingOccupancy;
+    }
+
+    public VMOptions setInitiatingOccupancy(int initiatingOccupancy) {
+        this.initiatingOccupancy = initiatingOccupancy;
+        return this;
+    }
+
+    /**
+     * @return 解释器是否统计每条指令的执行次数，{@link OpcodeSequences}根据它找出适合合并成超级指令的指令序列。
+     * 每次分派多一次判断，所以默认关闭；编译执行的代码不统计
+     */
+    public boolean isCountInstructions() {
+        return countInstructions;
+    }
+
+    public VMOptions setCountInstructions(boolean countInstructions) {
+        this.countInstructions = countInstructions;
+        return this;
+    }
+}
@@ -0,0 +1,436 @@
+package com.github.hcsp;
+
+import com.github.zxh.classpy.classfile.jvm.Opcode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 虚拟机运行时的统计数据
+ */
+public class VMStats {
+    /**
+     * 暂停时间直方图中每个2的幂区间分成几个桶，百分位数的相对误差不超过1/8
+     */
+    private static final int PAUSE_SUB_BUCKET_BITS = 3;
+    private static final int PAUSE_SUB_BUCKETS = 1 << PAUSE_SUB_BUCKET_BITS;
+
+    private final LongAdder quickenedSites = new LongAdder();
+    private final AtomicLongArray quickenedSitesByOpcode = new AtomicLongArray(256);
+    private final LongAdder savedDispatches = new LongAdder();
+    private final LongAdder compiledMethods = new LongAdder();
+    private final LongAdder osrCompilations = new LongAdder();
+    private final LongAdder compilationBailouts = new LongAdder();
+    private final LongAdder devirtualizedCalls = new LongAdder();
+    private final LongAdder inlinedCalls = new LongAdder();
+    private final LongAdder codeCacheUsed = new LongAdder();
+    private final LongAdder exceptionsThrown = new LongAdder();
+    private final LongAdder framesUnwound = new LongAdder();
+    private final LongAdder backtracesCaptured = new LongAdder();
+    private final LongAdder fastThrows = new LongAdder();
+    private final LongAdder outputBatches = new LongAdder();
+    private final LongAdder allocatedObjects = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final LongAdder outputBytes = new LongAdder();
+    private final LongAdder collections = new LongAdder();
+    private final LongAdder gcPauseNanos = new LongAdder();
+    private final LongAccumulator maxGcPauseNanos = new LongAccumulator(Long::max, 0);
+    private final LongAdder bytesCollected = new LongAdder();
+    private final LongAdder bytesSurvived = new LongAdder();
+    private final LongAdder minorCollections = new LongAdder();
+    private final LongAdder fullCollections = new LongAdder();
+    private final LongAdder promotedBytes = new LongAdder();
+    private final LongAdder dirtyCardsScanned = new LongAdder();
+    private final LongAdder tlabRefills = new LongAdder();
+    private final LongAdder concurrentCycles = new LongAdder();
+    private final LongAdder gcPauses = new LongAdder();
+    private final AtomicLongArray gcPauseHistogram = new AtomicLongArray(64 * PAUSE_SUB_BUCKETS);
+    private final List<InlineCache> inlineCaches = Collections.synchronizedList(new ArrayList<>());
+    private final List<InliningDecision> inliningDecisions = Collections.synchronizedList(new ArrayList<>());
+
+    void recordQuickening(int originalOpcode) {
+        quickenedSites.increment();
+        quickenedSitesByOpcode.incrementAndGet(originalOpcode);
+    }
+
+    /**
+     * @return 被改写成快速指令的指令总数
+     */
+    public long getQuickenedSites() {
+        return quickenedSites.sum();
+    }
+
+    /**
+     * @return 原来是opcode的指令中被改写成快速指令的数量
+     */
+    public long getQuickenedSites(Opcode opcode) {
+        return quickenedSitesByOpcode.get(opcode.opcode);
+    }
+
+    void recordSavedDispatches(long count) {
+        savedDispatches.add(count);
+    }
+
+    /**
+     * @return 执行超级指令省掉的分派次数，即超级指令替换掉的、没有单独分派的指令条数
+     */
+    public long getSavedDispatches() {
+        return savedDispatches.sum();
+    }
+
+    void recordCompilation(int codeSize) {
+        compiledMethods.increment();
+        codeCacheUsed.add(codeSize);
+    }
+
+    void recordOsrCompilation(int codeSize) {
+        osrCompilations.increment();
+        codeCacheUsed.add(codeSize);
+    }
+
+    void recordCompilationBailout() {
+        compilationBailouts.increment();
+    }
+
+    /**
+     * @return 被编译成宿主字节码的方法数
+     */
+    public long getCompiledMethods() {
+        return compiledMethods.sum();
+    }
+
+    /**
+     * @return 为了在循环中途切换到宿主代码（OSR）而编译的次数
+     */
+    public long getOsrCompilations() {
+        return osrCompilations.sum();
+    }
+
+    /**
+     * @return 因为包含不支持的指令或者代码缓存已满而放弃编译的方法数
+     */
+    public long getCompilationBailouts() {
+        return compilationBailouts.sum();
+    }
+
+    /**
+     * @return 编译生成的宿主类一共占用的字节数
+     */
+    public long getCodeCacheUsed() {
+        return codeCacheUsed.sum();
+    }
+
+    void recordDevirtualizedCalls(int count) {
+        devirtualizedCalls.add(count);
+    }
+
+    void recordInliningDecisions(List<InliningDecision> decisions) {
+        inliningDecisions.addAll(decisions);
+        for (InliningDecision decision : decisions) {
+            if (decision.isInlined()) {
+                inlinedCalls.increment();
+            }
+        }
+    }
+
+    /**
+     * @return 编译时通过类层次分析直接调用的invokevirtual调用点数
+     */
+    public long getDevirtualizedCalls() {
+        return devirtualizedCalls.sum();
+    }
+
+    /**
+     * @return 编译时内联到调用点的方法调用数
+     */
+    public long getInlinedCalls() {
+        return inlinedCalls.sum();
+    }
+
+    /**
+     * @return 编译时在每个客户方法调用点上是否内联的决定，按编译的顺序排列
+     */
+    public List<InliningDecision> getInliningDecisions() {
+        synchronized (inliningDecisions) {
+            return new ArrayList<>(inliningDecisions);
+        }
+    }
+
+    void recordExceptionThrown(int unwoundFrames) {
+        exceptionsThrown.increment();
+        framesUnwound.add(unwoundFrames);
+    }
+
+    /**
+     * @return 抛出的客户异常数，包括虚拟机检查出来的错误
+     */
+    public long getExceptionsThrown() {
+        return exceptionsThrown.sum();
+    }
+
+    /**
+     * @return 寻找异常处理器时弹出的栈帧总数
+     */
+    public long getFramesUnwound() {
+        return framesUnwound.sum();
+    }
+
+    void recordBacktraceCaptured() {
+        backtracesCaptured.increment();
+    }
+
+    void recordFastThrow() {
+        fastThrows.increment();
+    }
+
+    /**
+     * @return 记录了栈轨迹的客户异常数
+     */
+    public long getBacktracesCaptured() {
+        return backtracesCaptured.sum();
+    }
+
+    /**
+     * @return 抛出预先分配的隐式异常的次数
+     */
+    public long getFastThrows() {
+        return fastThrows.sum();
+    }
+
+    void recordOutputBatch(int bytes) {
+        outputBatches.increment();
+        outputBytes.add(bytes);
+    }
+
+    /**
+     * @return 客户的标准输出和标准错误一共写了多少次通道
+     */
+    public long getOutputBatches() {
+        return outputBatches.sum();
+    }
+
+    /**
+     * @return 客户的标准输出和标准错误一共写出的字节数
+     */
+    public long getOutputBytes() {
+        return outputBytes.sum();
+    }
+
+    void recordAllocation(int bytes) {
+        allocatedObjects.increment();
+        allocatedBytes.add(bytes);
+    }
+
+    /**
+     * @return 在客户堆中分配的对象数
+     */
+    public long getAllocatedObjects() {
+        return allocatedObjects.sum();
+    }
+
+    /**
+     * @return 在客户堆中分配的字节数，包括对象头
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes.sum();
+    }
+
+    /**
+     * @param collectedBytes 被回收的空间在回收前用了多少字节
+     * @param survivedBytes  其中活下来的字节数
+     */
+    void recordCollection(long pauseNanos, long collectedBytes, long survivedBytes) {
+        recordPause(pauseNanos);
+        collections.increment();
+        bytesCollected.add(collectedBytes);
+        bytesSurvived.add(survivedBytes);
+    }
+
+    /**
+     * 一轮并发标记和清除完成，它的暂停已经分别记录过了
+     */
+    void recordConcurrentCycle(long collectedBytes, long survivedBytes) {
+        concurrentCycles.increment();
+        collections.increment();
+        bytesCollected.add(collectedBytes);
+        bytesSurvived.add(survivedBytes);
+    }
+
+    /**
+     * 一次暂停客户线程的垃圾收集工作，例如一次完整的收集，或者并发收集的初始标记和重新标记
+     */
+    void recordPause(long pauseNanos) {
+        gcPauseNanos.add(pauseNanos);
+        maxGcPauseNanos.accumulate(pauseNanos);
+        gcPauses.increment();
+        gcPauseHistogram.incrementAndGet(pauseBucket(Math.max(0, pauseNanos)));
+    }
+
+    /**
+     * 小于{@link #PAUSE_SUB_BUCKETS}的值各占一个桶，更大的值按最高位所在的2的幂区间分组，
+     * 每组再按最高位之后的{@link #PAUSE_SUB_BUCKET_BITS}位等分
+     */
+    private static int pauseBucket(long nanos) {
+        if (nanos < PAUSE_SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int shift = exponent - PAUSE_SUB_BUCKET_BITS;
+        return (shift + 1) * PAUSE_SUB_BUCKETS + (int) ((nanos >>> shift) & (PAUSE_SUB_BUCKETS - 1));
+    }
+
+    /**
+     * @return 落在第bucket个桶中的最大值
+     */
+    private static long pauseBucketUpperBound(int bucket) {
+        if (bucket < PAUSE_SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / PAUSE_SUB_BUCKETS - 1;
+        long lower = (long) (PAUSE_SUB_BUCKETS + bucket % PAUSE_SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    /**
+     * @return 客户堆的垃圾收集次数
+     */
+    public long getCollections() {
+        return collections.sum();
+    }
+
+    /**
+     * @return 垃圾收集暂停客户线程的总时间，纳秒
+     */
+    public long getGcPauseNanos() {
+        return gcPauseNanos.sum();
+    }
+
+    /**
+     * @return 垃圾收集暂停客户线程的次数，并发收集的一轮有多次暂停
+     */
+    public int getGcPauses() {
+        return gcPauses.intValue();
+    }
+
+    /**
+     * @param percentile 0到100
+     * @return 垃圾收集暂停时间的百分位数，纳秒：不超过它的暂停至少占percentile%，没有暂停过时为0。
+     * 暂停时间记录在对数分桶的直方图中，返回所在桶的上界，但不超过{@link #getMaxGcPauseNanos()}，
+     * 所以比实际的暂停时间最多大1/8，100%时正好是最长的暂停
+     */
+    public long getGcPausePercentile(double percentile) {
+        long[] counts = new long[gcPauseHistogram.length()];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = gcPauseHistogram.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, Math.min(total, (long) Math.ceil(percentile / 100 * total)));
+        long max = getMaxGcPauseNanos();
+        for (int i = 0; i < counts.length; i++) {
+            rank -= counts[i];
+            if (rank <= 0) {
+                return Math.min(pauseBucketUpperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return 最长的一次垃圾收集暂停，纳秒
+     */
+    public long getMaxGcPauseNanos() {
+        return maxGcPauseNanos.get();
+    }
+
+    /**
+     * @return 垃圾收集一共回收的字节数
+     */
+    public long getBytesReclaimed() {
+        return bytesCollected.sum() - bytesSurvived.sum();
+    }
+
+    /**
+     * @return 垃圾收集时存活下来的字节数占被回收的空间中已分配字节数的比例，没有收集过时为0
+     */
+    public double getSurvivorRate() {
+        long collected = bytesCollected.sum();
+        return collected == 0 ? 0 : (double) bytesSurvived.sum() / collected;
+    }
+
+    void recordMinorCollection(int promoted, int dirtyCards) {
+        minorCollections.increment();
+        promotedBytes.add(promoted);
+        dirtyCardsScanned.add(dirtyCards);
+    }
+
+    void recordFullCollection() {
+        fullCollections.increment();
+    }
+
+    void recordTlabRefill() {
+        tlabRefills.increment();
+    }
+
+    /**
+     * @return 并发标记-清除收集完成的轮数，不包括标记赶不上分配时暂停下做的完整收集
+     */
+    public long getConcurrentCycles() {
+        return concurrentCycles.sum();
+    }
+
+    /**
+     * @return 分代收集时只回收年轻代的次数
+     */
+    public long getMinorCollections() {
+        return minorCollections.sum();
+    }
+
+    /**
+     * @return 分代收集时整理整个堆的次数，并发标记-清除收集时在暂停中标记和清除整个堆的次数
+     */
+    public long getFullCollections() {
+        return fullCollections.sum();
+    }
+
+    /**
+     * @return 年轻代收集时晋升到老年代的字节数
+     */
+    public long getPromotedBytes() {
+        return promotedBytes.sum();
+    }
+
+    /**
+     * @return 年轻代收集时扫描的脏卡数
+     */
+    public long getDirtyCardsScanned() {
+        return dirtyCardsScanned.sum();
+    }
+
+    /**
+     * @return 客户线程从eden中领取新TLAB的次数
+     */
+    public long getTlabRefills() {
+        return tlabRefills.sum();
+    }
+
+    void registerInlineCache(InlineCache inlineCache) {
+        inlineCaches.add(inlineCache);
+    }
+
+    /**
+     * @return 所有已经执行过的invokevirtual/invokeinterface调用点的内联缓存
+     */
+    public List<InlineCache> getInlineCaches() {
+        synchronized (inlineCaches) {
+            return new ArrayList<>(inlineCaches);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.github.hcsp;
+
+public class VirtualDispatchClass {
+    public static void main(String[] args) {
+        Shape square = new Square(3);
+        int monomorphic = 0;
+        for (int i = 0; i < 1000; i++) {
+            monomorphic += square.area();
+        }
+        System.out.println(monomorphic);
+
+        int polymorphic = 0;
+        for (int i = 0; i < 300; i++) {
+            polymorphic += shapeOf(i % 3).scaled(2);
+        }
+        System.out.println(polymorphic);
+
+        int megamorphic = 0;
+        for (int i = 0; i < 600; i++) {
+            Shape shape = shapeOf(i % 6);
+            Sided sided = shape;
+            megamorphic += shape.area() + sided.angleSum();
+        }
+        System.out.println(megamorphic);
+        System.out.println(shapeOf(5).name);
+    }
+
+    private static Shape shapeOf(int kind) {
+        switch (kind) {
+            case 0:
+                return new Square(3);
+            case 1:
+                return new Rectangle(2, 3);
+            case 2:
+                return new Triangle(4, 5);
+            case 3:
+                return new Pentagon(10);
+            case 4:
+                return new Hexagon(10);
+            default:
+                return new Cube(2);
+        }
+    }
+
+    interface Sided {
+        int sides();
+
+        default int angleSum() {
+            return (sides() - 2) * 180;
+        }
+    }
+
+    abstract static class Shape implements Sided {
+        final String name;
+
+        Shape(String name) {
+            this.name = name;
+        }
+
+        abstract int area();
+
+        int scaled(int factor) {
+            return area() * factor;
+        }
+    }
+
+    static class Square extends Shape {
+        final int side;
+
+        Square(int side) {
+            this("square", side);
+        }
+
+        Square(String name, int side) {
+            super(name);
+            this.side = side;
+        }
+
+        @Override
+        int area() {
+            return side * side;
+        }
+
+        @Override
+        public int sides() {
+            return 4;
+        }
+    }
+
+    static class Cube extends Square {
+        Cube(int side) {
+            super("cube", side);
+        }
+
+        @Override
+        int area() {
+            return 6 * super.area();
+        }
+    }
+
+    static class Rectangle extends Shape {
+        final long width;
+        final long height;
+
+        Rectangle(long width, long height) {
+            super("rectangle");
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        int area() {
+            return (int) (width * height);
+        }
+
+        @Override
+        public int sides() {
+            return 4;
+        }
+    }
+
+    static class Triangle extends Shape {
+        final int base;
+        final int height;
+
+        Triangle(int base, int height) {
+            super("triangle");
+            this.base = base;
+            this.height = height;
+        }
+
+        @Override
+        int area() {
+            return base * height / 2;
+        }
+
+        @Override
+        public int sides() {
+            return 3;
+        }
+    }
+
+    static class Pentagon extends Shape {
+        final int side;
+
+        Pentagon(int side) {
+            super("pentagon");
+            this.side = side;
+        }
+
+        @Override
+        int area() {
+            return side * side * 172 / 100;
+        }
+
+        @Override
+        public int sides() {
+            return 5;
+        }
+    }
+
+    static class Hexagon extends Shape {
+        final int side;
+
+        Hexagon(int side) {
+            super("hexagon");
+            this.side = side;
+        }
+
+        @Override
+        int area() {
+            return side * side * 260 / 100;
+        }
+
+        @Override
+        public int sides() {
+            return 6;
+        }
+    }
+}
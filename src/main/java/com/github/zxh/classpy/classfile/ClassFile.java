@@ -1,6 +1,7 @@
 package com.github.zxh.classpy.classfile;
 
 import com.github.zxh.classpy.classfile.attribute.AttributeInfo;
+import com.github.zxh.classpy.classfile.attribute.SourceFileAttribute;
 import com.github.zxh.classpy.classfile.constant.ConstantPool;
 import com.github.zxh.classpy.classfile.datatype.Table;
 import com.github.zxh.classpy.classfile.datatype.U2;
@@ -58,6 +59,46 @@ public class ClassFile extends ClassFilePart {
         return (ConstantPool) super.get("constant_pool");
     }
 
+    public int getAccessFlags() {
+        return getUInt("access_flags");
+    }
+
+    /**
+     * Returns the internal name of the super class, or null for java/lang/Object.
+     */
+    public String getSuperClassName() {
+        int index = getUInt("super_class");
+        return index == 0 ? null : getClassName(index);
+    }
+
+    /**
+     * Returns the internal names of the direct super interfaces, in declaration order.
+     */
+    public List<String> getInterfaceNames() {
+        Table interfaces = (Table) getParts()
+                .stream()
+                .filter(part -> part instanceof Table && part.getName().equals("interfaces"))
+                .findFirst()
+                .orElseThrow(IllegalStateException::new);
+        return interfaces.getParts()
+                .stream()
+                .map(part -> getClassName(((U2CpIndex) part).getValue()))
+                .collect(Collectors.toList());
+    }
+
+    private String getClassName(int classInfoIndex) {
+        ConstantPool cp = getConstantPool();
+        return cp.getUtf8String(cp.getClassInfo(classInfoIndex).getNameIndex());
+    }
+
+    public Table getFields() {
+        return (Table) getParts()
+                .stream()
+                .filter(part -> part instanceof Table && part.getName().equals("fields"))
+                .findFirst()
+                .orElseThrow(IllegalStateException::new);
+    }
+
     public Table getMethods() {
         return (Table) getParts()
                 .stream()
@@ -66,6 +107,23 @@ public class ClassFile extends ClassFilePart {
                 .orElseThrow(IllegalStateException::new);
     }
 
+    /**
+     * Returns the file name from the SourceFile attribute, or null if there is none.
+     */
+    public String getSourceFile() {
+        Table attributes = (Table) getParts()
+                .stream()
+                .filter(part -> part instanceof Table && part.getName().equals("attributes"))
+                .findFirst()
+                .orElseThrow(IllegalStateException::new);
+        return attributes.getParts()
+                .stream()
+                .filter(part -> part instanceof SourceFileAttribute)
+                .findFirst()
+                .map(part -> getConstantPool().getUtf8String(((SourceFileAttribute) part).getSourceFileIndex()))
+                .orElse(null);
+    }
+
     public List<MethodInfo> getMethod(String methodName) {
         return (List) getMethods().getParts()
                 .stream()
@@ -1,7 +1,9 @@
 package com.github.zxh.classpy.classfile;
 
 import com.github.zxh.classpy.classfile.attribute.AttributeInfo;
+import com.github.zxh.classpy.classfile.attribute.ConstantValueAttribute;
 import com.github.zxh.classpy.classfile.constant.ConstantPool;
+import com.github.zxh.classpy.classfile.datatype.Table;
 import com.github.zxh.classpy.classfile.jvm.AccessFlagType;
 
 /*
@@ -31,5 +33,24 @@ public class FieldInfo extends ClassFilePart {
             setDesc(cp.getUtf8String(nameIndex));
         }
     }
+
+    public int getAccessFlags() {
+        return super.getUInt("access_flags");
+    }
+
+    public String getDescriptor(ConstantPool constantPool) {
+        return constantPool.getUtf8String(super.getUInt("descriptor_index"));
+    }
+
+    /**
+     * @return constant pool index of the ConstantValue attribute, or 0 if the field doesn't have one
+     */
+    public int getConstantValueIndex() {
+        return ((Table) super.get("attributes")).getParts().stream()
+                .filter(part -> part instanceof ConstantValueAttribute)
+                .map(part -> ((ConstantValueAttribute) part).getConstantValueIndex())
+                .findFirst()
+                .orElse(0);
+    }
     
 }
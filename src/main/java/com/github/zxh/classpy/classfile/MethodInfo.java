@@ -2,15 +2,18 @@ package com.github.zxh.classpy.classfile;
 
 import com.github.zxh.classpy.classfile.attribute.AttributeInfo;
 import com.github.zxh.classpy.classfile.attribute.CodeAttribute;
+import com.github.zxh.classpy.classfile.attribute.LineNumberTableAttribute;
 import com.github.zxh.classpy.classfile.bytecode.Instruction;
 import com.github.zxh.classpy.classfile.constant.ConstantPool;
 import com.github.zxh.classpy.classfile.datatype.Table;
 import com.github.zxh.classpy.classfile.datatype.U2;
 import com.github.zxh.classpy.classfile.datatype.U2CpIndex;
+import com.github.zxh.classpy.classfile.datatype.U4;
 import com.github.zxh.classpy.classfile.descriptor.MethodDescriptor;
 import com.github.zxh.classpy.classfile.jvm.AccessFlagType;
 
 import java.util.List;
+import java.util.stream.Collectors;
 
 /*
 method_info {
@@ -40,6 +43,14 @@ public class MethodInfo extends ClassFilePart {
         }
     }
 
+    public int getAccessFlags() {
+        return super.getUInt("access_flags");
+    }
+
+    public boolean hasCode() {
+        return getAttributes().getParts().stream().anyMatch(part -> part instanceof CodeAttribute);
+    }
+
     public int getMaxStack() {
         U2 maxStackU2 = (U2) getCodeAttribute()
                 .getParts()
@@ -60,6 +71,19 @@ public class MethodInfo extends ClassFilePart {
         return maxLocals.getValue();
     }
 
+    /**
+     * @return length of the bytecode in bytes
+     */
+    public int getCodeLength() {
+        U4 codeLength = (U4) getCodeAttribute()
+                .getParts()
+                .stream()
+                .filter(part -> part instanceof U4 && part.getName().equals("code_length"))
+                .findFirst()
+                .orElseThrow(IllegalStateException::new);
+        return codeLength.getValue();
+    }
+
     public Table getAttributes() {
         return (Table) getParts().stream().filter(part -> part instanceof Table && part.getName().equals("attributes")).findFirst().orElseThrow(IllegalArgumentException::new);
     }
@@ -78,6 +102,35 @@ public class MethodInfo extends ClassFilePart {
         return (List) code.getParts();
     }
 
+    public List<CodeAttribute.ExceptionTableEntry> getExceptionTable() {
+        Table exceptionTable = (Table) getCodeAttribute()
+                .getParts()
+                .stream()
+                .filter(part -> part instanceof Table && part.getName().equals("exception_table"))
+                .findFirst()
+                .orElseThrow(IllegalStateException::new);
+        return exceptionTable.getParts().stream()
+                .map(CodeAttribute.ExceptionTableEntry.class::cast)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the LineNumberTable attribute of the code, or null if the class was compiled without line numbers
+     */
+    public LineNumberTableAttribute getLineNumberTable() {
+        Table attributes = (Table) getCodeAttribute()
+                .getParts()
+                .stream()
+                .filter(part -> part instanceof Table && part.getName().equals("attributes"))
+                .findFirst()
+                .orElseThrow(IllegalStateException::new);
+        return (LineNumberTableAttribute) attributes.getParts()
+                .stream()
+                .filter(part -> part instanceof LineNumberTableAttribute)
+                .findFirst()
+                .orElse(null);
+    }
+
     public MethodDescriptor getMethodDescriptor(ConstantPool constantPool) {
         U2CpIndex descriptorIndex = (U2CpIndex) getParts()
                 .stream()
@@ -54,6 +54,28 @@ public class CodeAttribute extends AttributeInfo {
             u2cp("catch_type");
         }
 
+        public int getStartPc() {
+            return super.getUInt("start_pc");
+        }
+
+        /**
+         * @return end of the protected range, exclusive
+         */
+        public int getEndPc() {
+            return super.getUInt("end_pc");
+        }
+
+        public int getHandlerPc() {
+            return super.getUInt("handler_pc");
+        }
+
+        /**
+         * @return constant pool index of the caught class, 0 if the handler catches everything (finally)
+         */
+        public int getCatchType() {
+            return super.getUInt("catch_type");
+        }
+
     }
 
 
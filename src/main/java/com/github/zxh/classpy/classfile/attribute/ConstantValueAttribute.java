@@ -12,5 +12,9 @@ public class ConstantValueAttribute extends AttributeInfo {
     {
         u2cp("constant_value_index");
     }
+
+    public int getConstantValueIndex() {
+        return super.getUInt("constant_value_index");
+    }
     
 }
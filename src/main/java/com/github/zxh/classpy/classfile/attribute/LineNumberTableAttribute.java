@@ -2,6 +2,10 @@ package com.github.zxh.classpy.classfile.attribute;
 
 import com.github.zxh.classpy.classfile.ClassFilePart;
 import com.github.zxh.classpy.classfile.constant.ConstantPool;
+import com.github.zxh.classpy.classfile.datatype.Table;
+
+import java.util.List;
+import java.util.stream.Collectors;
 
 /*
 LineNumberTable_attribute {
@@ -20,6 +24,12 @@ public class LineNumberTableAttribute extends AttributeInfo {
         table("line_number_table", LineNumberTableEntry.class);
     }
 
+    public List<LineNumberTableEntry> getEntries() {
+        return ((Table) super.get("line_number_table")).getParts().stream()
+                .map(LineNumberTableEntry.class::cast)
+                .collect(Collectors.toList());
+    }
+
     
     public static class LineNumberTableEntry extends ClassFilePart {
 
@@ -36,6 +46,14 @@ public class LineNumberTableAttribute extends AttributeInfo {
             setDesc(Integer.toString(startPc));
         }
 
+        public int getStartPc() {
+            return super.getUInt("start_pc");
+        }
+
+        public int getLineNumber() {
+            return super.getUInt("line_number");
+        }
+
     }
     
 }
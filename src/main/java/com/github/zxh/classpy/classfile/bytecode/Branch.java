@@ -5,15 +5,21 @@ import com.github.zxh.classpy.classfile.jvm.Opcode;
 
 public class Branch extends Instruction {
 
+    private int offset;
+
     public Branch(Opcode opcode, int pc) {
         super(opcode, pc);
     }
     
     @Override
     protected void readOperands(ClassFileReader reader) {
-        short offset = reader.readShort();
+        offset = reader.readShort();
         int jmpTo = pc + offset;
         setDesc(getDesc() + " " + jmpTo);
     }
+
+    public int getTargetPc() {
+        return pc + offset;
+    }
     
 }
@@ -22,4 +22,8 @@ public class InstructionCp1 extends Instruction {
         setDesc(getDesc() + " " + super.get("operand").getDesc());
     }
 
+    public int getConstantIndex() {
+        return super.getUInt("operand");
+    }
+
 }
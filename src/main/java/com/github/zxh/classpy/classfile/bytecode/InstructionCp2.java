@@ -34,8 +34,28 @@ public class InstructionCp2 extends Instruction {
     }
 
     public int getTargetFieldIndex() {
-        if (getOpcode() != Opcode.getstatic) {
-            throw new IllegalStateException("Only getstatic instructions have target method index!");
+        if (getOpcode() != Opcode.getstatic
+                && getOpcode() != Opcode.putstatic
+                && getOpcode() != Opcode.getfield
+                && getOpcode() != Opcode.putfield) {
+            throw new IllegalStateException("Only get/put field instructions have target field index!");
+        }
+        return U2CpIndex.class.cast(getParts().get(1)).getValue();
+    }
+
+    public int getTargetClassIndex() {
+        if (getOpcode() != Opcode._new
+                && getOpcode() != Opcode.anewarray
+                && getOpcode() != Opcode.checkcast
+                && getOpcode() != Opcode._instanceof) {
+            throw new IllegalStateException("Only new/anewarray/checkcast/instanceof instructions have target class index!");
+        }
+        return U2CpIndex.class.cast(getParts().get(1)).getValue();
+    }
+
+    public int getConstantIndex() {
+        if (getOpcode() != Opcode.ldc_w && getOpcode() != Opcode.ldc2_w) {
+            throw new IllegalStateException("Only ldc_w/ldc2_w instructions have constant index!");
         }
         return U2CpIndex.class.cast(getParts().get(1)).getValue();
     }
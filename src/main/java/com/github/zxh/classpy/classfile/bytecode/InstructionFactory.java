@@ -47,6 +47,8 @@ public class InstructionFactory {
             case if_icmpge:
             case if_icmpgt:
             case if_icmple:
+            case if_acmpeq:
+            case if_acmpne:
             case _goto:
             case ifnull:
             case ifnonnull: return new Branch(opcode, pc);
@@ -22,4 +22,8 @@ public class InstructionU1 extends Instruction {
         setDesc(getDesc() + " " + super.get("operand").getDesc());
     }
 
+    public int getOperand() {
+        return super.getUInt("operand");
+    }
+
 }
@@ -19,8 +19,6 @@ match-offset pairs...
  */
 public class LookupSwitch extends Instruction {
 
-    //private final List<MatchOffset> matchOffsets = new ArrayList<>();
-    
     public LookupSwitch(Opcode opcode, int pc) {
         super(opcode, pc);
     }
@@ -42,6 +40,29 @@ public class LookupSwitch extends Instruction {
         add(defaultOffset);
     }
     
+    public int[] getMatches() {
+        int[] matches = new int[getParts().size() - 1];
+        for (int i = 0; i < matches.length; i++) {
+            matches[i] = ((MatchOffset) getParts().get(i)).match;
+        }
+        return matches;
+    }
+
+    /**
+     * @return jump target pcs, in the same order as {@link #getMatches()}
+     */
+    public int[] getJumpTargetPcs() {
+        int[] targets = new int[getParts().size() - 1];
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = pc + ((MatchOffset) getParts().get(i)).offset;
+        }
+        return targets;
+    }
+
+    public int getDefaultTargetPc() {
+        return pc + ((MatchOffset) getParts().get(getParts().size() - 1)).offset;
+    }
+
     private void skipPadding(ClassFileReader reader) {
         for (int i = 1; (pc + i) %4 != 0; i++) {
             reader.readByte();
@@ -21,6 +21,10 @@ public class NewArray extends Instruction {
         setDesc(getDesc() + " " + getArrayType(atype));
     }
     
+    public int getArrayType() {
+        return super.getUInt("atype");
+    }
+
     private static String getArrayType(int atype) {
         switch (atype) {
             case  4: return "boolean";
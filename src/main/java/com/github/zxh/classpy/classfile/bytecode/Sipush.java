@@ -5,14 +5,20 @@ import com.github.zxh.classpy.classfile.jvm.Opcode;
 
 public class Sipush extends Instruction {
 
+    private short operand;
+
     public Sipush(Opcode opcode, int pc) {
         super(opcode, pc);
     }
 
     @Override
     protected void readOperands(ClassFileReader reader) {
-        short operand = reader.readShort();
+        operand = reader.readShort();
         setDesc(getDesc() + " " + operand);
     }
+
+    public int getOperand() {
+        return operand;
+    }
     
 }
@@ -23,8 +23,9 @@ import com.github.zxh.classpy.classfile.jvm.Opcode;
  */
 public class TableSwitch extends Instruction {
 
-    //private final List<JumpOffset> jumpOffsets = new ArrayList<>();
-    
+    private int low;
+    private int high;
+
     public TableSwitch(Opcode opcode, int pc) {
         super(opcode, pc);
     }
@@ -35,8 +36,8 @@ public class TableSwitch extends Instruction {
         
         JumpOffset defaultOffset = readJumpOffset(reader, "default");
         
-        int low = reader.readInt();
-        int high = reader.readInt();
+        low = reader.readInt();
+        high = reader.readInt();
         
         // high - low + 1 signed 32-bit offsets
         for (int i = low; i <= high; i++) {
@@ -47,6 +48,29 @@ public class TableSwitch extends Instruction {
         add(defaultOffset);
     }
     
+    public int getLow() {
+        return low;
+    }
+
+    public int getHigh() {
+        return high;
+    }
+
+    /**
+     * @return jump target pcs for low..high, in order
+     */
+    public int[] getJumpTargetPcs() {
+        int[] targets = new int[high - low + 1];
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = pc + ((JumpOffset) getParts().get(i)).offset;
+        }
+        return targets;
+    }
+
+    public int getDefaultTargetPc() {
+        return pc + ((JumpOffset) getParts().get(getParts().size() - 1)).offset;
+    }
+
     private void skipPadding(ClassFileReader reader) {
         for (int i = 1; (pc + i) %4 != 0; i++) {
             reader.readByte();
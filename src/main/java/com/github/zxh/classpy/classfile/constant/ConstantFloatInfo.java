@@ -17,5 +17,9 @@ public class ConstantFloatInfo extends ConstantInfo {
         float f = Float.intBitsToFloat(super.getUInt("bytes"));
         return Float.toString(f);
     }
+
+    public float getValue() {
+        return Float.intBitsToFloat(super.getUInt("bytes"));
+    }
     
 }
@@ -116,6 +116,10 @@ public class ConstantPool extends ClassFilePart {
         return classOfT.cast(c);
     }
     
+    public ConstantInfo getConstantInfo(int index) {
+        return constants[index];
+    }
+
     public String getConstantDesc(int index) {
         ConstantInfo c = constants[index];
         return c.getDesc();
@@ -17,5 +17,9 @@ public class ConstantStringInfo extends ConstantInfo {
         int stringIndex = super.getUInt("string_index");
         return cp.getUtf8Info(stringIndex).loadDesc(cp);
     }
+
+    public String getString(ConstantPool cp) {
+        return cp.getUtf8String(super.getUInt("string_index"));
+    }
     
 }
@@ -0,0 +1,62 @@
+package com.github.hcsp;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+
+public class ClosureEngineTest {
+    private String classPath = new File("target/classes").getAbsolutePath();
+
+    @Test
+    public void sameOutputAsInterpreter() {
+        String[] mainClasses = {
+                "com.github.hcsp.SimpleClass",
+                "com.github.hcsp.BranchClass",
+                "com.github.hcsp.RecursiveClass",
+                "com.github.hcsp.LoopClass",
+                "com.github.hcsp.SwitchClass",
+                "com.github.hcsp.StaticFieldClass",
+                "com.github.hcsp.HotMethodClass",
+                "com.github.hcsp.VirtualDispatchClass",
+                "com.github.hcsp.OsrClass",
+                "com.github.hcsp.ChaClass",
+                "com.github.hcsp.InliningClass",
+                "com.github.hcsp.ExceptionClass",
+                "com.github.hcsp.FastThrowClass",
+                "com.github.hcsp.IntrinsicsClass",
+                "com.github.hcsp.OutputClass",
+                "com.github.hcsp.FieldLayoutClass",
+                "com.github.hcsp.BinaryTreesClass",
+                "com.github.hcsp.GenerationalClass",
+                "com.github.hcsp.FusedBranchClass",
+        };
+        for (String mainClass : mainClasses) {
+            String expected = run(mainClass, ExecutionEngine.INTERPRETER);
+            Assertions.assertFalse(expected.isEmpty());
+            Assertions.assertEquals(expected, run(mainClass, ExecutionEngine.CLOSURE), mainClass);
+        }
+    }
+
+    @Test
+    public void stackOverflowTest() {
+        VMOptions options = new VMOptions().setMaxStackDepth(4).setExecutionEngine(ExecutionEngine.CLOSURE);
+        MiniJVM vm = new MiniJVM(classPath, "com.github.hcsp.RecursiveClass", options);
+        GuestException e = Assertions.assertThrows(GuestException.class, vm::start);
+        Assertions.assertEquals("java.lang.StackOverflowError", e.getGuestClassName());
+    }
+
+    private String run(String mainClass, ExecutionEngine engine) {
+        PrintStream originalOut = System.out;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(output, true));
+        try {
+            new MiniJVM(classPath, mainClass, new VMOptions().setExecutionEngine(engine)).start();
+        } finally {
+            System.setOut(originalOut);
+        }
+        return output.toString();
+    }
+}
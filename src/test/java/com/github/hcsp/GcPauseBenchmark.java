@@ -0,0 +1,56 @@
+package com.github.hcsp;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * 对比不同的垃圾收集工作线程数下的暂停时间。
+ * <p>
+ * 运行{@link BinaryTreesClass}：年轻代收集复制活着的树，老年代放不下时整理整个堆；标记-整理收集器每次都标记整个堆。
+ * 工作线程数从1翻倍到宿主处理器数的两倍，超过处理器数之后暂停时间不应该再下降。
+ * 每种线程数先预热{@link #WARMUP_ROUNDS}次，让宿主编译好收集器的代码，再运行{@link #ROUNDS}次，输出各次结果的中位数。
+ * <p>
+ * 运行：mvn test-compile，然后以test classpath运行本类的main方法
+ */
+public class GcPauseBenchmark {
+    private static final int HEAP_SIZE = 1 << 20;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ROUNDS = 7;
+
+    public static void main(String[] args) {
+        String classPath = new File("target/classes").getAbsolutePath();
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (GarbageCollector collector : new GarbageCollector[]{GarbageCollector.GENERATIONAL, GarbageCollector.MARK_COMPACT}) {
+            for (int gcThreads = 1; gcThreads <= processors * 2; gcThreads *= 2) {
+                measure(classPath, collector, gcThreads);
+            }
+        }
+    }
+
+    private static void measure(String classPath, GarbageCollector collector, int gcThreads) {
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            run(classPath, collector, gcThreads);
+        }
+        long[] collections = new long[ROUNDS];
+        double[] meanPauses = new double[ROUNDS];
+        double[] maxPauses = new double[ROUNDS];
+        for (int round = 0; round < ROUNDS; round++) {
+            VMStats stats = run(classPath, collector, gcThreads);
+            collections[round] = stats.getCollections();
+            meanPauses[round] = stats.getGcPauseNanos() / 1000.0 / stats.getCollections();
+            maxPauses[round] = stats.getMaxGcPauseNanos() / 1000.0;
+        }
+        Arrays.sort(collections);
+        Arrays.sort(meanPauses);
+        Arrays.sort(maxPauses);
+        System.out.printf("%-12s %2d threads: %4d collections, %8.1f us/pause, %8.1f us max pause (median of %d runs)%n",
+                collector, gcThreads, collections[ROUNDS / 2], meanPauses[ROUNDS / 2], maxPauses[ROUNDS / 2], ROUNDS);
+    }
+
+    private static VMStats run(String classPath, GarbageCollector collector, int gcThreads) {
+        MiniJVM vm = new MiniJVM(classPath, "com.github.hcsp.BinaryTreesClass", new VMOptions()
+                .setHeapSize(HEAP_SIZE).setGarbageCollector(collector).setGcThreads(gcThreads).setCaptureOutput(true));
+        vm.start();
+        return vm.getStats();
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.hcsp;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * 客户对象在堆外，栈帧的槽和引用字段中保存的是int地址，客户对象不再需要宿主对象。
+ * 这里运行{@link BinaryTreesClass}，对比不同的客户堆大小下宿主分配的字节数和宿主垃圾收集的次数和时间：
+ * 宿主的负担应该和客户堆的大小、客户收集的次数无关，宿主对象表中只剩下字符串常量这样的宿主对象。
+ * <p>
+ * 运行：mvn test-compile，然后以test classpath运行本类的main方法，最好用较小的-Xmx让宿主收集更频繁
+ */
+public class HostGcPressureBenchmark {
+    private static final int[] HEAP_SIZES = {256 << 10, 1 << 20, 4 << 20, 16 << 20};
+    private static final int ROUNDS = 3;
+    private static final int RUNS = 20;
+
+    public static void main(String[] args) {
+        String classPath = new File("target/classes").getAbsolutePath();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int heapSize : HEAP_SIZES) {
+                measure(classPath, heapSize);
+            }
+        }
+    }
+
+    private static void measure(String classPath, int heapSize) {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        System.gc();
+        long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        long[] gcBefore = hostCollections();
+        long guestCollections = 0;
+        int hostObjects = 0;
+        for (int i = 0; i < RUNS; i++) {
+            MiniJVM vm = new MiniJVM(classPath, "com.github.hcsp.BinaryTreesClass",
+                    new VMOptions().setHeapSize(heapSize).setCaptureOutput(true));
+            vm.start();
+            guestCollections += vm.getStats().getCollections();
+            hostObjects = Math.max(hostObjects, vm.getHeap().getHostObjectCount());
+        }
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        long[] gcAfter = hostCollections();
+        System.out.printf("guest heap %6dK: %5d guest collections, %5d host objects left, host %6.1f MB allocated, %3d host collections, %5d ms%n",
+                heapSize >> 10, guestCollections, hostObjects, allocated / 1048576.0, gcAfter[0] - gcBefore[0], gcAfter[1] - gcBefore[1]);
+    }
+
+    /**
+     * @return 宿主垃圾收集的总次数和总时间（毫秒）
+     */
+    private static long[] hostCollections() {
+        long[] result = new long[2];
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            result[0] += bean.getCollectionCount();
+            result[1] += bean.getCollectionTime();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,129 @@
+package com.github.hcsp;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Stack;
+
+/**
+ * 对比旧的{@code Stack<Object>}栈帧和新的基本类型栈帧执行同一段整数循环的开销，并用解释器完整地运行一遍{@link LoopClass}。
+ * <p>
+ * 模拟的是{@link LoopClass}中sum方法的循环体：
+ * <pre>
+ * loop: iload_3; iload_0; if_icmpge exit; lload_1; iload_3; i2l; ladd; lstore_1; iinc 3 1; goto loop
+ * </pre>
+ * 最初的解释器不支持lconst_0等指令，运行不了{@link LoopClass}，所以旧的栈帧只能用模拟的循环来对比。
+ * 运行：mvn test-compile，然后以test classpath运行本类的main方法
+ */
+public class IntLoopBenchmark {
+    private static final int ITERATIONS = 10_000_000;
+    private static final int ROUNDS = 5;
+    private static final int VM_RUNS = 20;
+
+    public static void main(String[] args) {
+        String classPath = new File("target/classes").getAbsolutePath();
+        RuntimeClass loopClass = new Metaspace(new String[]{classPath}).loadClass("com.github.hcsp.LoopClass");
+        RuntimeMethod sum = loopClass.getMethod("sum", "(I)J");
+        GuestThread thread = new GuestThread(new VMOptions(), null);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            measure("Stack<Object> frame", () -> legacyLoop(ITERATIONS));
+            measure("primitive frame   ", () -> primitiveLoop(thread, sum, ITERATIONS));
+            measureVm(classPath);
+        }
+    }
+
+    /**
+     * 用默认的解释器从头运行{@link LoopClass}，包括加载和链接，客户的输出被丢弃
+     */
+    private static void measureVm(String classPath) {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        PrintStream hostOut = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }));
+        long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < VM_RUNS; i++) {
+                new MiniJVM(classPath, "com.github.hcsp.LoopClass").start();
+            }
+        } finally {
+            System.setOut(hostOut);
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        System.out.printf("MiniJVM LoopClass  : %6.2f ms/run,       %8.1f KB/run%n",
+                elapsed / 1e6 / VM_RUNS, allocated / 1024.0 / VM_RUNS);
+    }
+
+    private static void measure(String name, LongTask task) {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        long result = task.run();
+        long elapsed = System.nanoTime() - start;
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        System.out.printf("%s: %6.2f ns/iteration, %8.2f bytes/iteration (result %d)%n",
+                name, (double) elapsed / ITERATIONS, (double) allocated / ITERATIONS, result);
+    }
+
+    /**
+     * 旧的表示：局部变量是Object[]，操作数栈是Stack<Object>，每个值都要装箱，每次push/pop都要加锁
+     */
+    private static long legacyLoop(int n) {
+        Object[] locals = new Object[4];
+        Stack<Object> operandStack = new Stack<>();
+        locals[0] = n;
+        locals[1] = 0L;
+        locals[3] = 0;
+        while (true) {
+            operandStack.push(locals[3]);
+            operandStack.push(locals[0]);
+            int value2 = (Integer) operandStack.pop();
+            if ((Integer) operandStack.pop() >= value2) {
+                break;
+            }
+            operandStack.push(locals[1]);
+            operandStack.push(locals[3]);
+            operandStack.push((long) (Integer) operandStack.pop());
+            operandStack.push((Long) operandStack.pop() + (Long) operandStack.pop());
+            locals[1] = operandStack.pop();
+            locals[3] = (Integer) locals[3] + 1;
+        }
+        return (Long) locals[1];
+    }
+
+    private static long primitiveLoop(GuestThread thread, RuntimeMethod method, int n) {
+        StackFrame frame = thread.pushFrame(method);
+        frame.setLocalInt(0, n);
+        frame.setLocalLong(1, 0L);
+        frame.setLocalInt(3, 0);
+        while (true) {
+            frame.pushInt(frame.getLocalInt(3));
+            frame.pushInt(frame.getLocalInt(0));
+            int value2 = frame.popInt();
+            if (frame.popInt() >= value2) {
+                break;
+            }
+            frame.pushLong(frame.getLocalLong(1));
+            frame.pushInt(frame.getLocalInt(3));
+            frame.pushLong(frame.popInt());
+            frame.pushLong(frame.popLong() + frame.popLong());
+            frame.setLocalLong(1, frame.popLong());
+            frame.setLocalInt(3, frame.getLocalInt(3) + 1);
+        }
+        long result = frame.getLocalLong(1);
+        thread.popFrame();
+        return result;
+    }
+
+    private interface LongTask {
+        long run();
+    }
+}
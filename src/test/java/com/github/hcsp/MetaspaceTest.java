@@ -0,0 +1,120 @@
+package com.github.hcsp;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class MetaspaceTest {
+    private String classPath = new File("target/classes").getAbsolutePath();
+
+    @Test
+    public void classIsLoadedOnlyOnce() {
+        Metaspace metaspace = new Metaspace(new String[]{classPath});
+        RuntimeClass first = metaspace.loadClass("com.github.hcsp.SimpleClass");
+        RuntimeClass second = metaspace.loadClass("com/github/hcsp/SimpleClass");
+
+        Assertions.assertSame(first, second);
+        Assertions.assertEquals(1, metaspace.getMissCount());
+        Assertions.assertEquals(1, metaspace.getHitCount());
+        Assertions.assertEquals(1, metaspace.getLoadedClassCount());
+        Assertions.assertTrue(metaspace.getLoadTimeNanos() > 0);
+        Assertions.assertNotNull(first.getMethod("foo", "()I"));
+    }
+
+    @Test
+    public void concurrentLoadsShareOneClass() throws Exception {
+        Metaspace metaspace = new Metaspace(new String[]{classPath});
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<RuntimeClass>> futures = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                futures.add(executor.submit(() -> metaspace.loadClass("com.github.hcsp.RecursiveClass")));
+            }
+            RuntimeClass expected = futures.get(0).get();
+            for (Future<RuntimeClass> future : futures) {
+                Assertions.assertSame(expected, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assertions.assertEquals(1, metaspace.getMissCount());
+        Assertions.assertEquals(63, metaspace.getHitCount());
+    }
+
+    @Test
+    public void missingClassIsReported() {
+        Metaspace metaspace = new Metaspace(new String[]{classPath});
+        RuntimeException e = Assertions.assertThrows(RuntimeException.class, () -> metaspace.loadClass("com.github.hcsp.NoSuchClass"));
+        Assertions.assertTrue(e.getCause() instanceof ClassNotFoundException);
+        Assertions.assertEquals(0, metaspace.getLoadedClassCount());
+    }
+
+    @Test
+    public void vtableAndItableAreBuiltAtLinkTime() {
+        Metaspace metaspace = new Metaspace(new String[]{classPath});
+        RuntimeClass shape = metaspace.loadClass("com.github.hcsp.VirtualDispatchClass$Shape");
+        RuntimeClass square = metaspace.loadClass("com.github.hcsp.VirtualDispatchClass$Square");
+        RuntimeClass cube = metaspace.loadClass("com.github.hcsp.VirtualDispatchClass$Cube");
+        RuntimeClass sided = metaspace.loadClass("com.github.hcsp.VirtualDispatchClass$Sided");
+
+        // 覆盖的方法占用父类方法的vtable下标，继承的方法原样留在表里
+        RuntimeMethod area = shape.getMethod("area", "()I");
+        Assertions.assertSame(square, square.selectMethod(area).getRuntimeClass());
+        Assertions.assertSame(cube, cube.selectMethod(area).getRuntimeClass());
+        Assertions.assertEquals(square.getVtable().length, cube.getVtable().length);
+        Assertions.assertSame(shape.getMethod("scaled", "(I)I"), cube.selectMethod(shape.getMethod("scaled", "(I)I")));
+
+        // 接口方法通过itable分派，没有覆盖的默认方法就是接口中的方法
+        Assertions.assertSame(square.getMethod("sides", "()I"), cube.selectMethod(sided.getMethod("sides", "()I")));
+        Assertions.assertSame(sided.getMethod("angleSum", "()I"), cube.selectMethod(sided.getMethod("angleSum", "()I")));
+        Assertions.assertThrows(GuestException.class, () -> metaspace.loadClass("com.github.hcsp.SimpleClass").getItable(sided));
+    }
+
+    @Test
+    public void uniqueImplementationChangesWhenSubclassIsLoaded() {
+        Metaspace metaspace = new Metaspace(new String[]{classPath});
+        RuntimeMethod next = metaspace.loadClass("com.github.hcsp.ChaClass$Counter").getMethod("next", "(I)I");
+        Assertions.assertSame(next, metaspace.findUniqueImplementation(next));
+
+        metaspace.loadClass("com.github.hcsp.ChaClass$DoublingCounter");
+        Assertions.assertNull(metaspace.findUniqueImplementation(next));
+
+        // 抽象方法只算非抽象的实现
+        RuntimeMethod area = metaspace.loadClass("com.github.hcsp.VirtualDispatchClass$Shape").getMethod("area", "()I");
+        Assertions.assertNull(metaspace.findUniqueImplementation(area));
+        RuntimeClass square = metaspace.loadClass("com.github.hcsp.VirtualDispatchClass$Square");
+        Assertions.assertSame(square.getMethod("area", "()I"), metaspace.findUniqueImplementation(area));
+        metaspace.loadClass("com.github.hcsp.VirtualDispatchClass$Cube");
+        Assertions.assertNull(metaspace.findUniqueImplementation(area));
+    }
+
+    @Test
+    public void fieldsArePackedAtLinkTime() {
+        Metaspace metaspace = new Metaspace(new String[]{classPath});
+        RuntimeClass base = metaspace.loadClass("com.github.hcsp.FieldLayoutClass$Base");
+        RuntimeClass derived = metaspace.loadClass("com.github.hcsp.FieldLayoutClass$Derived");
+
+        // 对象头之后，基本类型按宽度从大到小：long、short、byte，然后是4字节的引用
+        Assertions.assertEquals(16, base.findField("l").getOffset());
+        Assertions.assertEquals(24, base.findField("s").getOffset());
+        Assertions.assertEquals(26, base.findField("b").getOffset());
+        Assertions.assertEquals(28, base.findField("o").getOffset());
+        Assertions.assertEquals(32, base.getInstanceSize());
+
+        // 子类的字段排在父类之后，double按8字节对齐，int和float共用8个字节
+        Assertions.assertEquals(32, derived.findField("d").getOffset());
+        Assertions.assertEquals(40, derived.findField("i").getOffset());
+        Assertions.assertEquals(44, derived.findField("f").getOffset());
+        Assertions.assertEquals(48, derived.findField("c").getOffset());
+        Assertions.assertEquals(50, derived.findField("z").getOffset());
+        Assertions.assertEquals(52, derived.findField("name").getOffset());
+        Assertions.assertEquals(56, derived.getInstanceSize());
+        Assertions.assertArrayEquals(new int[]{28, 52}, derived.getReferenceOffsets());
+    }
+}
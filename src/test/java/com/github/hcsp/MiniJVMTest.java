@@ -2,11 +2,22 @@ package com.github.hcsp;
 
 import com.github.blindpirate.extensions.CaptureSystemOutput;
 import com.github.blindpirate.extensions.CaptureSystemOutputExtension;
+import com.github.zxh.classpy.classfile.jvm.Opcode;
 import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @ExtendWith(CaptureSystemOutputExtension.class)
 public class MiniJVMTest {
@@ -23,6 +34,7 @@ public class MiniJVMTest {
     @CaptureSystemOutput
     public void branchTest(CaptureSystemOutput.OutputCapture capture) {
         capture.expect(Matchers.containsString("200"));
+        capture.expect(Matchers.containsString("75"));
         new MiniJVM(classPath, "com.github.hcsp.BranchClass").start();
     }
 
@@ -32,4 +44,551 @@ public class MiniJVMTest {
         capture.expect(Matchers.containsString("120"));
         new MiniJVM(classPath, "com.github.hcsp.RecursiveClass").start();
     }
+
+    @Test
+    @CaptureSystemOutput
+    public void loopTest(CaptureSystemOutput.OutputCapture capture) {
+        capture.expect(Matchers.containsString("4999950000"));
+        capture.expect(Matchers.containsString("50.5"));
+        // 关掉OSR，让循环一直解释执行
+        MiniJVM vm = new MiniJVM(classPath, "com.github.hcsp.LoopClass", new VMOptions().setOsrThreshold(Integer.MAX_VALUE));
+        vm.start();
+
+        // 循环条件和回边都被合并成了超级指令，每轮至少省掉3次分派
+        Assertions.assertTrue(vm.getStats().getSavedDispatches() >= 3 * 100000);
+    }
+
+    @Test
+    @CaptureSystemOutput
+    public void branchIntoFusedSequenceTest(CaptureSystemOutput.OutputCapture capture) {
+        capture.expect(Matchers.containsString("529"));
+        MiniJVM vm = new MiniJVM(classPath, "com.github.hcsp.FusedBranchClass", new VMOptions().setCompileThreshold(Integer.MAX_VALUE));
+        vm.start();
+
+        // 从序列中间进入时一条一条执行，从头进入时执行超级指令
+        Assertions.assertTrue(vm.getStats().getSavedDispatches() > 0);
+    }
+
+    @Test
+    @CaptureSystemOutput
+    public void countOpcodeSequencesTest(CaptureSystemOutput.OutputCapture capture) {
+        capture.expect(Matchers.containsString("4999950000"));
+        MiniJVM vm = new MiniJVM(classPath, "com.github.hcsp.LoopClass",
+                new VMOptions().setOsrThreshold(Integer.MAX_VALUE).setCountInstructions(true));
+        vm.start();
+
+        // sum的循环条件是i < n，mean的是i <= n，最后一次跳出循环也算执行了这个序列
+        Map<String, Long> triples = OpcodeSequences.count(vm.getMetaspace(), 3);
+        Assertions.assertEquals(100001L, triples.get("ILOAD, ILOAD, IF_ICMPGE"));
+        Assertions.assertEquals(101L, triples.get("ILOAD, ILOAD, IF_ICMPGT"));
+        Map<String, Long> pairs = OpcodeSequences.count(vm.getMetaspace(), 2);
+        Assertions.assertEquals(100000L + 100L, pairs.get("IINC, GOTO"));
+    }
+
+    @Test
+    @CaptureSystemOutput
+    public void switchTest(CaptureSystemOutput.OutputCapture capture) {
+        capture.expect(Matchers.containsString("912349"));
+        capture.expect(Matchers.containsString("4321"));
+        new MiniJVM(classPath, "com.github.hcsp.SwitchClass").start();
+    }
+
+    @Test
+    @CaptureSystemOutput
+    public void staticFieldTest(CaptureSystemOutput.OutputCapture capture) {
+        capture.expect(Matchers.containsString("100"));
+        capture.expect(Matchers.containsString("1234567895073"));
+        capture.expect(Matchers.containsString("25.0"));
+        capture.expect(Matchers.containsString("static"));
+        MiniJVM vm = new MiniJVM(classPath, "com.github.hcsp.StaticFieldClass");
+        vm.start();
+
+        VMStats stats = vm.getStats();
+        Assertions.assertTrue(stats.getQuickenedSites() > 0);
+        Assertions.assertEquals(1, stats.getQuickenedSites(Opcode.invokestatic));
+        Assertions.assertEquals(4, stats.getQuickenedSites(Opcode.invokevirtual));
+    }
+
+    @Test
+    @CaptureSystemOutput
+    public void hotMethodsAreCompiledTest(CaptureSystemOutput.OutputCapture capture) {
+        capture.expect(Matchers.containsString("75025"));
+        capture.expect(Matchers.containsString("242785"));
+        capture.expect(Matchers.containsString("215063"));
+        capture.expect(Matchers.containsString("-452303869"));
+        capture.expect(Matchers.containsString("6748500.0"));
+        MiniJVM vm = new MiniJVM(classPath, "com.github.hcsp.HotMethodClass");
+        vm.start();
+
+        // fib、collatz、digit、scaled都被编译了，main的参数是数组，不会被编译
+        Assertions.assertEquals(4, vm.getStats().getCompiledMethods());
+        Assertions.assertTrue(vm.getStats().getCodeCacheUsed() > 0);
+    }
+
+    @Test
+    @CaptureSystemOutput
+    public void compiledMethodReturnsReferenceTest(CaptureSystemOutput.OutputCapture capture) {
+        capture.expect(Matchers.containsString("0\n2000\nodd"));
+        MiniJVM vm = new MiniJVM(classPath, "com.github.hcsp.RefResultClass");
+        vm.start();
+
+        // pick和second都被编译了，编译之后返回的引用不能丢
+        Assertions.assertEquals(2, vm.getStats().getCompiledMethods());
+    }
+
+    @Test
+    @CaptureSystemOutput
+    public void codeCacheLimitTest(CaptureSystemOutput.OutputCapture capture) {
+        capture.expect(Matchers.containsString("75025"));
+        capture.expect(Matchers.containsString("6748500.0"));
+        MiniJVM vm = new MiniJVM(classPath, "com.github.hcsp.HotMethodClass", new VMOptions().setCodeCacheSize(0));
+        vm.start();
+
+        // 4个热点方法，再加上collatz中的循环尝试了一次OSR编译
+        Assertions.assertEquals(0, vm.getStats().getCompiledMethods());
+        Assertions.assertEquals(0, vm.getStats().getOsrCompilations());
+        Assertions.assertEquals(5, vm.getStats().getCompilationBailouts());
+    }
+
+    @Test
+    @CaptureSystemOutput
+    public void osrTest(CaptureSystemOutput.OutputCapture capture) {
+        capture.expect(Matchers.containsString("750000"));
+        capture.expect(Matchers.containsString("535585525307627025"));
+        capture.expect(Matchers.containsString("1499999.0"));
+        capture.expect(Matchers.containsString("2.5898523"));
+        capture.expect(Matchers.containsString("done"));
+        MiniJVM vm = new MiniJVM(classPath, "com.github.hcsp.OsrClass", new VMOptions().setOsrThreshold(1000));
+        vm.start();
+
+        // main只调用一次，循环执行到第1000轮时切换到编译好的代码，之后的回边不再计数
+        RuntimeMethod main = vm.getMetaspace().loadClass("com.github.hcsp.OsrClass").getMethod("main", "([Ljava/lang/String;)V");
+        Assertions.assertEquals(1, vm.getStats().getOsrCompilations());
+        Assertions.assertEquals(1000, main.getProfile().getBackedgeCount());
+        // mix被内联到了OSR代码里，没有单独编译
+        Assertions.assertEquals(1, vm.getStats().getInlinedCalls());
+        Assertions.assertEquals(0, vm.getStats().getCompiledMethods());
+    }
+
+    @Test
+    @CaptureSystemOutput
+    public void classHierarchyDeoptimizationTest(CaptureSystemOutput.OutputCapture capture) {
+        capture.expect(Matchers.containsString("4515000"));
+        capture.expect(Matchers.containsString("27060000"));
+        capture.expect(Matchers.containsString("6000"));
+        MiniJVM vm = new MiniJVM(classPath, "com.github.hcsp.ChaClass");
+        vm.start();
+
+        // step编译时Counter.next只有一个实现，被直接内联；加载DoublingCounter之后step的编译代码被丢弃，
+        // 再次编译时next有两个实现，只能解释执行
+        Assertions.assertEquals(1, vm.getStats().getDevirtualizedCalls());
+        Assertions.assertEquals(1, vm.getStats().getInlinedCalls());
+        Assertions.assertEquals(1, vm.getMetaspace().getDeoptimizationCount());
+        RuntimeMethod step = vm.getMetaspace().loadClass("com.github.hcsp.ChaClass").getMethod("step", "(Lcom/github/hcsp/ChaClass$Counter;I)J");
+        Assertions.assertEquals(HostCompiler.NOT_COMPILABLE, step.compileState);
+    }
+
+    @Test
+    @CaptureSystemOutput
+    public void inliningDecisionsTest(CaptureSystemOutput.OutputCapture capture) {
+        capture.expect(Matchers.containsString("1879035636428"));
+        capture.expect(Matchers.containsString("900"));
+        MiniJVM vm = new MiniJVM(classPath, "com.github.hcsp.InliningClass");
+        vm.start();
+
+        Map<String, InliningDecision> decisions = new HashMap<>();
+        for (InliningDecision decision : vm.getStats().getInliningDecisions()) {
+            decisions.put(decision.getCaller().getName() + "->" + decision.getCallee().getName() + "@" + decision.getDepth(), decision);
+        }
+        // 静态方法、私有方法和通过类层次分析确定目标的虚方法都被内联了
+        Assertions.assertTrue(decisions.get("compute->square@0").isInlined());
+        Assertions.assertTrue(decisions.get("compute->twice@0").isInlined());
+        Assertions.assertTrue(decisions.get("compute->getValue@0").isInlined());
+        Assertions.assertTrue(decisions.get("compute->setValue@0").isInlined());
+        InliningDecision checksum = decisions.get("compute->checksum@0");
+        Assertions.assertFalse(checksum.isInlined());
+        Assertions.assertEquals("too large: 45 > 35 bytes", checksum.getReason());
+        // 递归调用只内联一层
+        Assertions.assertTrue(decisions.get("depth->depth@0").isInlined());
+        Assertions.assertFalse(decisions.get("depth->depth@1").isInlined());
+        Assertions.assertEquals(5, vm.getStats().getInlinedCalls());
+    }
+
+    @Test
+    @CaptureSystemOutput
+    public void inliningBudgetTest(CaptureSystemOutput.OutputCapture capture) {
+        capture.expect(Matchers.containsString("1879035636428"));
+        MiniJVM vm = new MiniJVM(classPath, "com.github.hcsp.InliningClass", new VMOptions().setMaxInlineSize(0));
+        vm.start();
+
+        Assertions.assertFalse(vm.getStats().getInliningDecisions().isEmpty());
+        Assertions.assertEquals(0, vm.getStats().getInlinedCalls());
+    }
+
+    @Test
+    @CaptureSystemOutput
+    public void virtualDispatchTest(CaptureSystemOutput.OutputCapture capture) {
+        capture.expect(Matchers.containsString("9000"));
+        capture.expect(Matchers.containsString("5000"));
+        capture.expect(Matchers.containsString("300100"));
+        capture.expect(Matchers.containsString("cube"));
+        MiniJVM vm = new MiniJVM(classPath, "com.github.hcsp.VirtualDispatchClass");
+        vm.start();
+
+        List<InlineCache> mainSites = vm.getStats().getInlineCaches().stream()
+                .filter(inlineCache -> inlineCache.getSite().startsWith("com.github.hcsp.VirtualDispatchClass.main("))
+                .collect(Collectors.toList());
+        // square.area()只见过Square
+        InlineCache monomorphic = mainSites.stream().filter(InlineCache::isMonomorphic).findFirst().get();
+        Assertions.assertEquals(999, monomorphic.getHits());
+        Assertions.assertEquals(1, monomorphic.getMisses());
+        // shapeOf(i % 3).scaled(2)见过三个类
+        Assertions.assertTrue(mainSites.stream().anyMatch(inlineCache -> inlineCache.getReceiverClassCount() == 3 && !inlineCache.isMegamorphic()));
+        // shape.area()和sided.angleSum()见过六个类，超过了默认的容量4
+        Assertions.assertEquals(2, mainSites.stream().filter(InlineCache::isMegamorphic).count());
+    }
+
+    @Test
+    @CaptureSystemOutput
+    public void megamorphicThresholdTest(CaptureSystemOutput.OutputCapture capture) {
+        capture.expect(Matchers.containsString("300100"));
+        MiniJVM vm = new MiniJVM(classPath, "com.github.hcsp.VirtualDispatchClass", new VMOptions().setInlineCacheSize(1));
+        vm.start();
+
+        Assertions.assertTrue(vm.getStats().getInlineCaches().stream().filter(InlineCache::isMegamorphic).count() >= 4);
+    }
+
+    @Test
+    @CaptureSystemOutput
+    public void branchAndSwitchProfileTest(CaptureSystemOutput.OutputCapture capture) {
+        capture.expect(Matchers.containsString("912349"));
+        MiniJVM switchVM = new MiniJVM(classPath, "com.github.hcsp.SwitchClass");
+        switchVM.start();
+        RuntimeMethod dense = switchVM.getMetaspace().loadClass("com.github.hcsp.SwitchClass").getMethod("dense", "(I)I");
+        // dense(0)到dense(5)：case 1到4各一次，0和5走default
+        Assertions.assertArrayEquals(new long[]{1, 1, 1, 1, 2}, dense.getProfile().getSwitchCounts(pcOf(dense, Bytecodes.TABLESWITCH)));
+        Assertions.assertEquals(6, dense.getProfile().getInvocationCount());
+
+        MiniJVM branchVM = new MiniJVM(classPath, "com.github.hcsp.BranchClass");
+        branchVM.start();
+        RuntimeClass branchClass = branchVM.getMetaspace().loadClass("com.github.hcsp.BranchClass");
+        RuntimeMethod foo = branchClass.getMethod("foo", "(I)I");
+        Assertions.assertEquals(1, foo.getProfile().getTakenCount(pcOf(foo, Bytecodes.IFNE)));
+        Assertions.assertEquals(0, foo.getProfile().getNotTakenCount(pcOf(foo, Bytecodes.IFNE)));
+        // max(3, 7)跳转，max(5, 2)不跳转，比较和前面的两条iload被合并成了超级指令，计数仍然记在比较指令上
+        RuntimeMethod max = branchClass.getMethod("max", "(II)I");
+        Assertions.assertEquals(0.5, max.getProfile().getTakenProbability(pcOf(max, Bytecodes.IF_ICMPLE)));
+
+        MiniJVM loopVM = new MiniJVM(classPath, "com.github.hcsp.LoopClass", new VMOptions().setOsrThreshold(Integer.MAX_VALUE));
+        loopVM.start();
+        RuntimeMethod sum = loopVM.getMetaspace().loadClass("com.github.hcsp.LoopClass").getMethod("sum", "(I)J");
+        Assertions.assertEquals(100000, sum.getProfile().getBackedgeCount());
+    }
+
+    @Test
+    @CaptureSystemOutput
+    public void receiverTypeProfileTest(CaptureSystemOutput.OutputCapture capture) {
+        capture.expect(Matchers.containsString("9000"));
+        MiniJVM vm = new MiniJVM(classPath, "com.github.hcsp.VirtualDispatchClass");
+        vm.start();
+        RuntimeMethod main = vm.getMetaspace().loadClass("com.github.hcsp.VirtualDispatchClass").getMethod("main", "([Ljava/lang/String;)V");
+        InlineCache squareArea = main.getProfile().getReceiverTypeProfile(pcOf(main, Bytecodes.QUICK_INVOKEVIRTUAL));
+        RuntimeClass square = vm.getMetaspace().loadClass("com.github.hcsp.VirtualDispatchClass$Square");
+        Assertions.assertEquals(Collections.singletonMap(square, 1000L), squareArea.getReceiverTypes());
+    }
+
+    private static int pcOf(RuntimeMethod method, int opcode) {
+        DecodedCode code = method.getCode();
+        for (int i = 0; i < code.length(); i++) {
+            if (code.opcodes[i] == opcode) {
+                return code.pcs[i];
+            }
+        }
+        throw new IllegalArgumentException("No " + opcode + " in " + method);
+    }
+
+    @Test
+    @CaptureSystemOutput
+    public void exceptionTest(CaptureSystemOutput.OutputCapture capture) {
+        capture.expect(Matchers.containsString("135"));
+        capture.expect(Matchers.containsString("bottom"));
+        capture.expect(Matchers.containsString("wrapped"));
+        capture.expect(Matchers.containsString("/ by zero"));
+        capture.expect(Matchers.containsString("npe"));
+        capture.expect(Matchers.containsString("1023"));
+        capture.expect(Matchers.containsString("overflow"));
+        MiniJVM vm = new MiniJVM(classPath, "com.github.hcsp.ExceptionClass", new VMOptions().setMaxStackDepth(100));
+        vm.start();
+
+        Assertions.assertEquals(17, vm.getStats().getExceptionsThrown());
+        // check 10次各1帧，deep(5) 6帧，rethrow中的deep(2) 3帧再加上包装后的1帧，栈溢出时main之上的99帧
+        Assertions.assertEquals(119, vm.getStats().getFramesUnwound());
+    }
+
+    @Test
+    @CaptureSystemOutput
+    public void backtraceTest(CaptureSystemOutput.OutputCapture capture) {
+        capture.expect(Matchers.containsString("0\n1000\n999"));
+        MiniJVM vm = new MiniJVM(classPath, "com.github.hcsp.FastThrowClass");
+        vm.start();
+
+        // 除以零和空指针各1000次，fail()一次；Signal覆盖了fillInStackTrace
+        Assertions.assertEquals(2001, vm.getStats().getBacktracesCaptured());
+        Assertions.assertEquals(0, vm.getStats().getFastThrows());
+    }
+
+    @Test
+    @CaptureSystemOutput
+    public void fastThrowTest(CaptureSystemOutput.OutputCapture capture) {
+        capture.expect(Matchers.containsString("900\n1000\n999"));
+        MiniJVM vm = new MiniJVM(classPath, "com.github.hcsp.FastThrowClass",
+                new VMOptions().setOmitStackTraceInFastThrow(true).setFastThrowThreshold(100));
+        vm.start();
+
+        Assertions.assertEquals(1800, vm.getStats().getFastThrows());
+        Assertions.assertEquals(201, vm.getStats().getBacktracesCaptured());
+    }
+
+    @Test
+    @CaptureSystemOutput
+    public void intrinsicsTest(CaptureSystemOutput.OutputCapture capture) {
+        capture.expect(Matchers.containsString("7\n5\n4.0\n1024.0\n5\ne\n124\n42\nFor input string: \"abc\""));
+        capture.expect(Matchers.containsString("180000\n1999000\nbad number\ntrue"));
+        MiniJVM vm = new MiniJVM(classPath, "com.github.hcsp.IntrinsicsClass");
+        vm.start();
+
+        // 内建方法在链接时就绑定好了，执行时被改写的invokestatic只有调用digitSum和parse的3处
+        Assertions.assertEquals(3, vm.getStats().getQuickenedSites(Opcode.invokestatic));
+        // digitSum和parse被编译之后直接调用宿主方法，parse抛出的NumberFormatException仍然能被main捕获
+        Assertions.assertEquals(2, vm.getStats().getCompiledMethods());
+        Assertions.assertEquals(0, vm.getStats().getCompilationBailouts());
+    }
+
+    @Test
+    @CaptureSystemOutput
+    public void nativeMethodTest(CaptureSystemOutput.OutputCapture capture) {
+        capture.expect(Matchers.containsString("42\n5.49755813888E11\n123\nhello from host\n50005000\nvalue must be positive\nunsatisfied"));
+        for (ExecutionEngine engine : ExecutionEngine.values()) {
+            MiniJVM vm = new MiniJVM(classPath, "com.github.hcsp.NativeClass", new VMOptions().setExecutionEngine(engine));
+            Map<String, NativeMethod> natives = new HashMap<>();
+            natives.put("add(II)I", call -> call.returnInt(call.getInt(0) + call.getInt(1)));
+            natives.put("scale(JD)D", call -> call.returnDouble(call.getLong(0) * call.getDouble(1)));
+            natives.put("offset(I)I", call -> call.returnInt(call.getThis() == null ? -1 : 100 + call.getInt(0)));
+            natives.put("greeting()Ljava/lang/String;", call -> call.returnObject("hello from host"));
+            vm.getNatives()
+                    .registerAll("com.github.hcsp.NativeClass", natives)
+                    .register("com/github/hcsp/NativeClass", "checkPositive", "(I)V", call -> {
+                        if (call.getInt(0) <= 0) {
+                            throw new IllegalArgumentException("value must be positive");
+                        }
+                    });
+            vm.start();
+        }
+    }
+
+    @Test
+    public void bufferedOutputTest() {
+        StringBuilder expected = new StringBuilder("-2147483648\n-9223372036854775808\n-42\nx\ntrue\n0.1\nhéllo\nsum=3\n");
+        for (int i = 0; i < 1000; i++) {
+            expected.append(i).append('\n');
+        }
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        MiniJVM vm = new MiniJVM(classPath, "com.github.hcsp.OutputClass", new VMOptions()
+                .setCaptureOutput(true)
+                .setOutputBufferSize(1024)
+                .setStderr(Channels.newChannel(err)));
+        vm.start();
+
+        ByteBuffer captured = vm.getCapturedOutput();
+        byte[] bytes = new byte[captured.remaining()];
+        captured.get(bytes);
+        Assertions.assertEquals(expected.toString(), new String(bytes, Charset.defaultCharset()));
+        Assertions.assertEquals("done\n", err.toString());
+        // 1000多行输出只写了几批：客户的flush一次，缓冲区满了几次，退出时stdout和stderr各一次
+        Assertions.assertTrue(vm.getStats().getOutputBatches() < 10);
+        Assertions.assertEquals(bytes.length + 5, vm.getStats().getOutputBytes());
+    }
+
+    @Test
+    @CaptureSystemOutput
+    public void fieldLayoutTest(CaptureSystemOutput.OutputCapture capture) {
+        capture.expect(Matchers.containsString("-56\n-1234\n-9223372036854775808\ntrue\ntrue\nZ\n-7\n1.5\n-0.25\nderived\n20839802500\n5090\n-56"));
+        MiniJVM vm = new MiniJVM(classPath, "com.github.hcsp.FieldLayoutClass");
+        vm.start();
+        // Derived.sum()被编译之后按同样的偏移读字段
+        Assertions.assertEquals(1, vm.getStats().getCompiledMethods());
+    }
+
+    @Test
+    @CaptureSystemOutput
+    public void guestHeapTest(CaptureSystemOutput.OutputCapture capture) {
+        capture.expect(Matchers.containsString("derived"));
+        MiniJVM vm = new MiniJVM(classPath, "com.github.hcsp.FieldLayoutClass",
+                new VMOptions().setHeapSize(1024).setGarbageCollector(GarbageCollector.MARK_COMPACT));
+        vm.start();
+        // 一个Derived对象，56字节；name字段中的字符串常量和System.out是宿主对象
+        Assertions.assertEquals(1, vm.getStats().getAllocatedObjects());
+        Assertions.assertEquals(56, vm.getStats().getAllocatedBytes());
+        Assertions.assertEquals(56, vm.getHeap().getUsed());
+        Assertions.assertEquals(2, vm.getHeap().getHostObjectCount());
+
+        MiniJVM small = new MiniJVM(classPath, "com.github.hcsp.FieldLayoutClass", new VMOptions().setHeapSize(32));
+        GuestException e = Assertions.assertThrows(GuestException.class, small::start);
+        Assertions.assertEquals("java.lang.OutOfMemoryError", e.getGuestClassName());
+    }
+
+    @Test
+    @CaptureSystemOutput
+    public void copyingCollectorTest(CaptureSystemOutput.OutputCapture capture) {
+        expectBinaryTrees(capture);
+        // 每个半区256K，放得下最大的那棵树
+        MiniJVM vm = new MiniJVM(classPath, "com.github.hcsp.BinaryTreesClass",
+                new VMOptions().setHeapSize(512 << 10).setGarbageCollector(GarbageCollector.COPYING));
+        vm.start();
+        assertCollected(vm);
+    }
+
+    @Test
+    @CaptureSystemOutput
+    public void markCompactCollectorTest(CaptureSystemOutput.OutputCapture capture) {
+        expectBinaryTrees(capture);
+        MiniJVM vm = new MiniJVM(classPath, "com.github.hcsp.BinaryTreesClass",
+                new VMOptions().setHeapSize(256 << 10).setGarbageCollector(GarbageCollector.MARK_COMPACT));
+        vm.start();
+        assertCollected(vm);
+    }
+
+    @Test
+    @CaptureSystemOutput
+    public void generationalCollectorTest(CaptureSystemOutput.OutputCapture capture) {
+        capture.expect(Matchers.containsString("4999950000\n256\n25073664"));
+        MiniJVM vm = new MiniJVM(classPath, "com.github.hcsp.GenerationalClass", new VMOptions().setHeapSize(256 << 10));
+        vm.start();
+
+        VMStats stats = vm.getStats();
+        // 临时对象都死在了年轻代，链表晋升之后，它引用的新对象只能通过脏卡找到
+        Assertions.assertTrue(stats.getMinorCollections() > 0);
+        Assertions.assertEquals(0, stats.getFullCollections());
+        Assertions.assertTrue(stats.getPromotedBytes() > 0);
+        Assertions.assertTrue(stats.getDirtyCardsScanned() > 0);
+        Assertions.assertTrue(stats.getSurvivorRate() < 0.5);
+        // 每个TLAB 16K，每次换TLAB才需要同步
+        Assertions.assertTrue(stats.getTlabRefills() < stats.getAllocatedObjects() / 100);
+    }
+
+    @Test
+    @CaptureSystemOutput
+    public void fullCollectionTest(CaptureSystemOutput.OutputCapture capture) {
+        expectBinaryTrees(capture);
+        // 老年代放不下年轻代时整理整个堆
+        MiniJVM vm = new MiniJVM(classPath, "com.github.hcsp.BinaryTreesClass", new VMOptions().setHeapSize(256 << 10));
+        vm.start();
+        Assertions.assertTrue(vm.getStats().getMinorCollections() > 0);
+        Assertions.assertTrue(vm.getStats().getFullCollections() > 0);
+    }
+
+    @Test
+    public void parallelCollectionTest() {
+        // 工作线程比宿主的处理器多时也会交错执行，结果必须和只有一个工作线程时一样
+        for (GarbageCollector collector : new GarbageCollector[]{GarbageCollector.GENERATIONAL, GarbageCollector.MARK_COMPACT}) {
+            for (String mainClass : new String[]{"com.github.hcsp.BinaryTreesClass", "com.github.hcsp.GenerationalClass"}) {
+                ByteBuffer expected = null;
+                for (int gcThreads : new int[]{1, 4}) {
+                    MiniJVM vm = new MiniJVM(classPath, mainClass, new VMOptions().setHeapSize(256 << 10)
+                            .setGarbageCollector(collector).setGcThreads(gcThreads).setCaptureOutput(true));
+                    vm.start();
+                    Assertions.assertTrue(vm.getStats().getCollections() > 0);
+                    if (expected == null) {
+                        expected = vm.getCapturedOutput();
+                    } else {
+                        Assertions.assertEquals(expected, vm.getCapturedOutput());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    @CaptureSystemOutput
+    public void concurrentMarkSweepTest(CaptureSystemOutput.OutputCapture capture) {
+        capture.expect(Matchers.containsString("4999950000\n256\n25073664"));
+        MiniJVM vm = new MiniJVM(classPath, "com.github.hcsp.GenerationalClass",
+                new VMOptions().setHeapSize(256 << 10).setGarbageCollector(GarbageCollector.CONCURRENT_MARK_SWEEP));
+        vm.start();
+
+        VMStats stats = vm.getStats();
+        Assertions.assertTrue(stats.getConcurrentCycles() > 0);
+        // 标记赶得上分配，没有在暂停中收集整个堆
+        Assertions.assertEquals(0, stats.getFullCollections());
+        // 每一轮至少有初始标记和重新标记两次暂停
+        Assertions.assertTrue(stats.getGcPauses() >= stats.getConcurrentCycles() * 2);
+        Assertions.assertTrue(stats.getBytesReclaimed() > 0);
+        Assertions.assertTrue(stats.getGcPausePercentile(50) <= stats.getGcPausePercentile(99));
+        Assertions.assertEquals(stats.getMaxGcPauseNanos(), stats.getGcPausePercentile(100));
+
+        // 宿主对象表太大时也只是推进并发收集，表在清除时释放
+        MiniJVM strings = new MiniJVM(classPath, "com.github.hcsp.HostStringClass", new VMOptions().setHeapSize(256 << 10)
+                .setGarbageCollector(GarbageCollector.CONCURRENT_MARK_SWEEP).setCaptureOutput(true));
+        strings.start();
+        Assertions.assertTrue(strings.getStats().getConcurrentCycles() > 0);
+        Assertions.assertEquals(0, strings.getStats().getFullCollections());
+        Assertions.assertTrue(strings.getHeap().getHostObjectCount() < 1024);
+    }
+
+    @Test
+    public void heapTooSmallForLiveDataTest() {
+        // 深度11的树有4095个节点，每个32字节，回收之后也放不下
+        MiniJVM vm = new MiniJVM(classPath, "com.github.hcsp.BinaryTreesClass", new VMOptions().setHeapSize(64 << 10));
+        GuestException e = Assertions.assertThrows(GuestException.class, vm::start);
+        Assertions.assertEquals("java.lang.OutOfMemoryError", e.getGuestClassName());
+        Assertions.assertTrue(vm.getStats().getCollections() > 0);
+    }
+
+    private static void expectBinaryTrees(CaptureSystemOutput.OutputCapture capture) {
+        capture.expect(Matchers.containsString("4095\n1024 4 31744\n256 6 32512\n64 8 32704\n16 10 32752\n2047\nlong lived\ntrue"));
+    }
+
+    private static void assertCollected(MiniJVM vm) {
+        VMStats stats = vm.getStats();
+        Assertions.assertTrue(stats.getCollections() > 0);
+        Assertions.assertEquals(stats.getAllocatedBytes() - vm.getHeap().getUsed(), stats.getBytesReclaimed());
+        Assertions.assertTrue(stats.getSurvivorRate() > 0 && stats.getSurvivorRate() < 1);
+        Assertions.assertTrue(stats.getMaxGcPauseNanos() > 0 && stats.getMaxGcPauseNanos() <= stats.getGcPauseNanos());
+        // 客户对象不占宿主对象表，表中只有System.out和两个字符串常量
+        Assertions.assertEquals(3, vm.getHeap().getHostObjectCount());
+    }
+
+    @Test
+    public void hostObjectSweepTest() {
+        // 循环创建了20000个宿主字符串，只有最近一次收集之后创建的和活对象引用的还留在表中
+        for (GarbageCollector collector : GarbageCollector.values()) {
+            MiniJVM vm = new MiniJVM(classPath, "com.github.hcsp.HostStringClass", new VMOptions().setHeapSize(16 << 10)
+                    .setGarbageCollector(collector).setCaptureOutput(true));
+            vm.start();
+            ByteBuffer captured = vm.getCapturedOutput();
+            byte[] bytes = new byte[captured.remaining()];
+            captured.get(bytes);
+            Assertions.assertEquals("88890\n19000\n", new String(bytes, Charset.defaultCharset()), collector.name());
+            Assertions.assertTrue(vm.getStats().getCollections() > 0, collector.name());
+            Assertions.assertTrue(vm.getHeap().getHostObjectCount() < 1024, collector.name());
+        }
+    }
+
+    @Test
+    public void stackOverflowTest() {
+        MiniJVM vm = new MiniJVM(classPath, "com.github.hcsp.RecursiveClass", new VMOptions().setMaxStackDepth(4));
+        GuestException e = Assertions.assertThrows(GuestException.class, vm::start);
+        Assertions.assertEquals("java.lang.StackOverflowError", e.getGuestClassName());
+
+        StackTraceElement[] stackTrace = e.getGuestStackTrace();
+        Assertions.assertEquals(4, stackTrace.length);
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertEquals("factorial", stackTrace[i].getMethodName());
+            Assertions.assertEquals(12, stackTrace[i].getLineNumber());
+        }
+        Assertions.assertEquals("com.github.hcsp.RecursiveClass", stackTrace[3].getClassName());
+        Assertions.assertEquals("main", stackTrace[3].getMethodName());
+        Assertions.assertEquals("RecursiveClass.java", stackTrace[3].getFileName());
+        Assertions.assertEquals(5, stackTrace[3].getLineNumber());
+    }
 }
@@ -0,0 +1,47 @@
+package com.github.hcsp;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 用解释器运行示例客户程序，按执行次数从高到低输出最常见的两条、三条指令的序列，
+ * 格式和{@link Superinstructions}的合并规则表相同，挑选规则时从这里的输出开始。
+ * <p>
+ * 运行：mvn test-compile，然后以test classpath运行本类的main方法
+ */
+public class SuperinstructionCandidates {
+    private static final String[] MAIN_CLASSES = {
+            "com.github.hcsp.BranchClass",
+            "com.github.hcsp.RecursiveClass",
+            "com.github.hcsp.LoopClass",
+            "com.github.hcsp.SwitchClass",
+            "com.github.hcsp.HotMethodClass",
+            "com.github.hcsp.VirtualDispatchClass",
+            "com.github.hcsp.InliningClass",
+            "com.github.hcsp.BinaryTreesClass",
+    };
+    private static final int TOP = 15;
+
+    public static void main(String[] args) {
+        String classPath = new File("target/classes").getAbsolutePath();
+        for (int length = 2; length <= 3; length++) {
+            Map<String, Long> counts = new HashMap<>();
+            for (String mainClass : MAIN_CLASSES) {
+                // 不编译也不做OSR，所有指令都由解释器执行
+                MiniJVM vm = new MiniJVM(classPath, mainClass, new VMOptions()
+                        .setCompileThreshold(Integer.MAX_VALUE)
+                        .setOsrThreshold(Integer.MAX_VALUE)
+                        .setCountInstructions(true)
+                        .setCaptureOutput(true));
+                vm.start();
+                OpcodeSequences.count(vm.getMetaspace(), length).forEach((sequence, count) -> counts.merge(sequence, count, Long::sum));
+            }
+            counts.entrySet().stream()
+                    .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                    .limit(TOP)
+                    .forEach(entry -> System.out.printf("%-40s// %d%n", "{" + entry.getKey() + "},", entry.getValue()));
+            System.out.println();
+        }
+    }
+}